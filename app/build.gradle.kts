@@ -2,6 +2,7 @@ val lwjglVersion = "3.3.3"
 val lwjglNatives = "natives-windows"
 val imguiVersion = "1.86.11"
 val jomlVersion = "1.10.5"
+val jmhVersion = "1.37"
 
 plugins {
     // Apply the application plugin to add support for building a CLI application in Java.
@@ -13,6 +14,21 @@ repositories {
     mavenCentral()
 }
 
+sourceSets {
+    // JMH benchmarks for the Java side hot paths, run with `gradle jmh`
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+val jmhImplementation by configurations.getting {
+    extendsFrom(configurations.implementation.get())
+}
+val jmhRuntimeOnly by configurations.getting {
+    extendsFrom(configurations.runtimeOnly.get())
+}
+
 dependencies {
     // Use JUnit Jupiter for testing.
     testImplementation("org.junit.jupiter:junit-jupiter:5.9.1")
@@ -38,14 +54,40 @@ dependencies {
     implementation("org.joml", "joml", jomlVersion)
 
     implementation("io.github.spair:imgui-java-app:$imguiVersion")
+
+    jmhImplementation("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+// the SIMD direct sum in gravity uses the incubating Vector API, the module has to be added to compile and run it
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+tasks.withType<JavaCompile>().configureEach {
+    options.compilerArgs.addAll(vectorModule)
 }
 
 application {
     // Define the main class for the application.
     mainClass.set("computeshader.App")
+    applicationDefaultJvmArgs = vectorModule
 }
 
 tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
+    jvmArgs(vectorModule)
+}
+
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks with the gc profiler, -Pjmh.includes=<regex> selects benchmarks"
+    group = "benchmark"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    jvmArgs(vectorModule)
+
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    doFirst {
+        results.parentFile.mkdirs()
+    }
+    args(project.findProperty("jmh.includes") ?: ".*", "-prof", "gc", "-rf", "json", "-rff", results.path)
 }
@@ -0,0 +1,133 @@
+package computeshader.core;
+
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+// the per frame uniform updates, each benchmark sets every registered uniform once like a frame does.
+// glUniform* needs a context, so the OpenGL ones measure the Java side of OpenGLBackend: the location lookup and
+// the MemoryStack packing (MemoryStack needs the lwjgl natives on the runtime classpath)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UniformBenchmark {
+
+    @Param({ "4", "16", "64" })
+    public int numUniforms;
+
+    private String[] names;
+    private int[] handles;
+    private ShaderApp app;
+    private Map<String, Integer> uniformLocationMap;
+
+    private Vector3f vector = new Vector3f(1.0f, 2.0f, 3.0f);
+    private Matrix4f matrix = new Matrix4f().setPerspective(1.0f, 1.0f, 0.1f, 100.0f);
+
+    @Setup
+    public void setup() {
+        app = new ShaderApp(new ShaderAppConfiguration("uniforms", 64, 64, 64, 64), new JavaBackend());
+        uniformLocationMap = new HashMap<>();
+        names = new String[numUniforms];
+        handles = new int[numUniforms];
+        for (int i = 0; i < numUniforms; i++) {
+            names[i] = "Uniform" + i;
+            app.addUniform(names[i]);
+            uniformLocationMap.put(names[i], i);
+            handles[i] = app.getUniform("uniforms", names[i]);
+        }
+    }
+
+    @Benchmark
+    public void javaUInt() {
+        for (int i = 0; i < names.length; i++) {
+            app.setUIntUniform(names[i], i);
+        }
+    }
+
+    @Benchmark
+    public void javaFloat() {
+        for (int i = 0; i < names.length; i++) {
+            app.setFloatUniform(names[i], i * 0.5f);
+        }
+    }
+
+    @Benchmark
+    public void javaVector3f() {
+        for (int i = 0; i < names.length; i++) {
+            app.setVector3fUniform(names[i], vector);
+        }
+    }
+
+    @Benchmark
+    public void javaMatrix4f() {
+        for (int i = 0; i < names.length; i++) {
+            app.setMatrix4fUniform(names[i], matrix);
+        }
+    }
+
+    @Benchmark
+    public void javaUIntHandle() {
+        for (int i = 0; i < handles.length; i++) {
+            app.setUIntUniform(handles[i], i);
+        }
+    }
+
+    @Benchmark
+    public void javaMatrix4fHandle() {
+        for (int i = 0; i < handles.length; i++) {
+            app.setMatrix4fUniform(handles[i], matrix);
+        }
+    }
+
+    @Benchmark
+    public void openGLLookup(Blackhole blackhole) {
+        for (int i = 0; i < names.length; i++) {
+            blackhole.consume(uniformLocationMap.get(names[i]).intValue());
+        }
+    }
+
+    @Benchmark
+    public void openGLVector3f(Blackhole blackhole) {
+        for (int i = 0; i < names.length; i++) {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                FloatBuffer buffer = vector.get(stack.mallocFloat(3));
+                blackhole.consume(uniformLocationMap.get(names[i]).intValue());
+                blackhole.consume(buffer);
+            }
+        }
+    }
+
+    @Benchmark
+    public void openGLMatrix4f(Blackhole blackhole) {
+        for (int i = 0; i < names.length; i++) {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                FloatBuffer buffer = matrix.get(stack.mallocFloat(16));
+                blackhole.consume(uniformLocationMap.get(names[i]).intValue());
+                blackhole.consume(buffer);
+            }
+        }
+    }
+
+}
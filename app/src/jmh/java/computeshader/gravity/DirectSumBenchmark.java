@@ -0,0 +1,66 @@
+package computeshader.gravity;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// stage 0 of the direct sum, scalar against SIMD. the interactions counter is n (n - 1) pair forces per call, JMH
+// reports it per second next to the calls
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = { "--add-modules=jdk.incubator.vector" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 4)
+public class DirectSumBenchmark {
+
+    @Param({ "4096", "8192", "16384", "32768", "65536" })
+    public int numObjects;
+
+    @Param({ "false", "true" })
+    public boolean simd;
+
+    private DirectSum directSum;
+    private float[] objects;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Interactions {
+        public long interactions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            interactions = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        objects = ObjectUtil.createObjects(numObjects, 1920, 1080);
+        directSum = new DirectSum(1.0f, simd);
+        if (directSum.isSimd() != simd) {
+            throw new IllegalStateException("Run with --add-modules jdk.incubator.vector");
+        }
+    }
+
+    // velocities keep growing, positions and so the work stay the same
+    @Benchmark
+    public float[] computeForces(Interactions counter) {
+        directSum.computeForces(objects);
+        counter.interactions += (long) numObjects * (numObjects - 1);
+        return objects;
+    }
+
+}
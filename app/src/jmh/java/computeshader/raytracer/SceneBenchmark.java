@@ -0,0 +1,61 @@
+package computeshader.raytracer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import computeshader.raytracer.RayTracer.Material;
+import computeshader.raytracer.RayTracer.Scene;
+import computeshader.raytracer.RayTracer.Sphere;
+
+// flattening the Scene into the SphereParameters and MaterialParameters buffers, done on every scene edit
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SceneBenchmark {
+
+    @Param({ "1024", "65536", "1048576" })
+    public int numSpheres;
+
+    private Scene scene;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        scene = new Scene();
+        // one material per sphere like the grid scenes
+        for (int i = 0; i < numSpheres; i++) {
+            int material = scene.addMaterial(new Material(
+                    new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()),
+                    new float[] { random.nextFloat() }, new float[] { random.nextFloat() }, 1.5f));
+            scene.addSphere(new Sphere(new float[] { random.nextFloat() * 100.0f, random.nextFloat() * 100.0f,
+                    random.nextFloat() * 100.0f }, 0.5f, material));
+        }
+    }
+
+    @Benchmark
+    public float[] sphereParameters() {
+        return scene.getSphereParameters();
+    }
+
+    @Benchmark
+    public float[] materialParameters() {
+        return scene.getMaterialParameters();
+    }
+
+}
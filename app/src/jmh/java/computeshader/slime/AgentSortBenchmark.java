@@ -0,0 +1,82 @@
+package computeshader.slime;
+
+import static java.lang.Math.toRadians;
+
+import java.awt.Color;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// agent-steps/s of the CPU agent stage at 4K with 2^22 agents spread over the whole trail map, the worst case for
+// an unsorted buffer. the sorts are part of the measured stage
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AgentSortBenchmark {
+    private static final int WIDTH = 1920 * 2;
+    private static final int HEIGHT = 1080 * 2;
+    private static final int NUM_AGENTS = 1 << 22;
+    private static final float DELTA = 1.0f / 60.0f;
+
+    // 0 never sorts
+    @Param({ "0", "1", "8", "32" })
+    public int sortInterval;
+
+    private SlimeSimulation simulation;
+    private AgentSorter sorter;
+    private float[] agentX;
+    private float[] agentY;
+    private int step;
+
+    @Setup
+    public void setup() {
+        float[] shaderParameters = new float[] { WIDTH, HEIGHT, 25.0f, (float) toRadians(35.0f),
+                (float) toRadians(35.0f), 1.0f, 1.0f, 0.5f, 100.0f, 0.0f };
+        float[] agents = AgentUtil.nAgentsRandomColor(NUM_AGENTS, WIDTH, HEIGHT);
+        // anywhere on screen instead of the disc the gradients start in
+        float[] scattered = AgentUtil.nAgents(NUM_AGENTS, WIDTH, HEIGHT, Color.WHITE);
+        agentX = new float[NUM_AGENTS];
+        agentY = new float[NUM_AGENTS];
+        for (int i = 0; i < NUM_AGENTS; i++) {
+            agents[i * 6 + 0] = scattered[i * 6 + 0];
+            agents[i * 6 + 1] = scattered[i * 6 + 1];
+            agentX[i] = scattered[i * 6 + 0];
+            agentY[i] = scattered[i * 6 + 1];
+        }
+
+        simulation = new SlimeSimulation(WIDTH, HEIGHT, agents, shaderParameters);
+        simulation.setSortInterval(sortInterval, SlimeSimulation.SORT_CELL_SIZE);
+        sorter = new AgentSorter(WIDTH, HEIGHT, SlimeSimulation.SORT_CELL_SIZE,
+                ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_AGENTS)
+    public SlimeSimulation moveAgents() {
+        simulation.moveAgents(step++ * DELTA, DELTA);
+        return simulation;
+    }
+
+    // the sort alone, keys and two radix passes, agents per second
+    @Benchmark
+    @OperationsPerInvocation(NUM_AGENTS)
+    public int[] order() {
+        return sorter.order(agentX, agentY, NUM_AGENTS);
+    }
+
+}
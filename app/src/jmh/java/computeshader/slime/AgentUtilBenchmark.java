@@ -0,0 +1,90 @@
+package computeshader.slime;
+
+import java.awt.Color;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// agent generation at the sizes SlimeMain runs with
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AgentUtilBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    // 2^20, 2^21, 2^22
+    @Param({ "1048576", "2097152", "4194304" })
+    public int n;
+
+    private FloatBuffer direct;
+
+    @Setup
+    public void setup() {
+        direct = AgentUtil.allocate(n);
+    }
+
+    @Benchmark
+    public float[] satGradient() {
+        return AgentUtil.nAgentsSatGradient(n, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public float[] hueGradient() {
+        return AgentUtil.nAgentsHueGradient(n, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public float[] rainbow() {
+        return AgentUtil.nAgentsRainbow(n, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public float[] color() {
+        return AgentUtil.nAgents(n, WIDTH, HEIGHT, Color.CYAN);
+    }
+
+    @Benchmark
+    public float[] randomColor() {
+        return AgentUtil.nAgentsRandomColor(n, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public float[] gradient() {
+        return AgentUtil.nAgentsGradient(n, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public float[] random4Colors() {
+        return AgentUtil.nAgentsRandom4Colors(n, WIDTH, HEIGHT);
+    }
+
+    // into a reused direct buffer on every core, what SlimeMain does
+    @Benchmark
+    public FloatBuffer directGradient() {
+        AgentUtil.nAgentsGradient(direct, n, WIDTH, HEIGHT, 0, ForkJoinPool.commonPool());
+        return direct;
+    }
+
+    @Benchmark
+    public FloatBuffer directRandom4Colors() {
+        AgentUtil.nAgentsRandom4Colors(direct, n, WIDTH, HEIGHT, 0, ForkJoinPool.commonPool());
+        return direct;
+    }
+
+}
@@ -0,0 +1,68 @@
+package computeshader.slime;
+
+import static java.lang.Math.toRadians;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import computeshader.core.CpuImage;
+
+// ms per CPU diffuse stage, the nine-tap blur against the separable one with its sliding column sums. an 8K trail
+// is two 530 MB sets of planes
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = { "-Xmx6g" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DiffuseBenchmark {
+    private static final float DELTA = 1.0f / 60.0f;
+
+    @Param({ "1920x1080", "3840x2160", "7680x4320" })
+    public String resolution;
+
+    private SlimeSimulation simulation;
+
+    @Setup
+    public void setup() {
+        int width = Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+        int height = Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+        float[] shaderParameters = new float[] { width, height, 25.0f, (float) toRadians(35.0f),
+                (float) toRadians(35.0f), 1.0f, 1.0f, 0.5f, 100.0f, 0.0f };
+
+        simulation = new SlimeSimulation(width, height, new float[0], shaderParameters);
+        CpuImage trail = new CpuImage(width, height);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                trail.store(x, y, random.nextFloat(), random.nextFloat(), random.nextFloat(), 1.0f);
+            }
+        }
+        simulation.fromImage(trail);
+    }
+
+    @Benchmark
+    public SlimeSimulation naive() {
+        simulation.diffuseNaive(DELTA);
+        return simulation;
+    }
+
+    @Benchmark
+    public SlimeSimulation separable() {
+        simulation.diffuse(DELTA);
+        return simulation;
+    }
+
+}
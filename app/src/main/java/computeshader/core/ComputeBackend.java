@@ -0,0 +1,117 @@
+package computeshader.core;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+public interface ComputeBackend {
+
+    void initialize(ShaderAppConfiguration shaderAppConfig);
+
+    default void createTexture(String name) {
+        createTexture(name, PixelFormat.RGBA32F);
+    }
+
+    // the format of the image declarations in the shaders that use it
+    void createTexture(String name, PixelFormat format);
+
+    void copyTexture(String from, String to);
+
+    // exchanges the textures behind two names, images, display and reads by either name get the other one
+    void swapTextures(String first, String second);
+
+    // reads an RGBA32F texture into destination, rows from the bottom
+    void readTexture(String name, float[] destination);
+
+    // the texels as they are stored in the texture's PixelFormat, rows from the bottom, from position 0 of the buffer
+    void readTexture(String name, ByteBuffer destination);
+
+    void writeTexture(String name, ByteBuffer texels);
+
+    void addUniform(String name);
+
+    // a handle for the per frame setters, only valid while the program is in use
+    int getUniform(String programName, String name);
+
+    // by name, looked up in the program in use
+    void setUIntUniform(String name, int value);
+
+    void setUIntUniform(int uniform, int value);
+
+    void setFloatUniform(String name, float value);
+
+    void setFloatUniform(int uniform, float value);
+
+    void setVector3fUniform(String name, Vector3f value);
+
+    void setVector3fUniform(int uniform, Vector3f value);
+
+    void setMatrix4fUniform(String name, Matrix4f value);
+
+    void setMatrix4fUniform(int uniform, Matrix4f value);
+
+    void createStorageBuffer(String programName, String name, float[] data);
+
+    // data from its position to its limit, direct buffers are uploaded without another copy
+    void createStorageBuffer(String programName, String name, FloatBuffer data);
+
+    void updateStorageBuffer(String name, int index, float[] data);
+
+    // uploads the dirty ranges of data in one go, data mirrors the whole buffer
+    void updateStorageBuffer(String name, float[] data, DirtyRanges ranges);
+
+    long getStorageBufferSize(String name);
+
+    // the whole buffer, from position 0 of destination
+    void readStorageBuffer(String name, ByteBuffer destination);
+
+    // the whole buffer from the position of data, direct buffers are uploaded without another copy
+    void writeStorageBuffer(String name, ByteBuffer data);
+
+    // a small storage buffer written from the CPU every frame, writes may reach a frame that is still running. see
+    // ParameterBlock.setMapped
+    default void createParameterBuffer(String programName, String name, float[] data) {
+        createStorageBuffer(programName, name, data);
+    }
+
+    void createComputeShader(String name, String filePath);
+
+    int[] getWorkGroupSize(String name);
+
+    // a handle for useProgram, -1 if there is no such program
+    int getProgram(String name);
+
+    void useProgram(String name);
+
+    // -1 for no program
+    void useProgram(int program);
+
+    void runComputeShader(int x, int y, int z);
+
+    void beginFrame();
+
+    void endStep();
+
+    // FrameGraph barrier bits, instead of beginFrame and endStep when the steps declare what they access
+    void memoryBarrier(int barriers);
+
+    void display(String textureName);
+
+    void endFrame();
+
+    void dispose();
+
+    // GPU side timings for FrameProfiler, null when the backend has no GPU
+    default FrameProfiler.GpuTimer createGpuTimer(int maxSections) {
+        return null;
+    }
+
+    // kernels are only used by backends that execute shaders in Java
+    default void registerKernel(String filePath, ComputeKernel kernel) {
+    }
+
+}
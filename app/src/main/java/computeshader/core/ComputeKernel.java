@@ -0,0 +1,15 @@
+package computeshader.core;
+
+// Java counterpart of a compute shader: invoke() is called once per global invocation id
+public interface ComputeKernel {
+
+    // mirrors layout (local_size_x, local_size_y, local_size_z)
+    int[] workGroupSize();
+
+    // called once per dispatch before any invocation, read uniforms and resources here
+    default void prepare(JavaBackend backend) {
+    }
+
+    void invoke(int x, int y, int z);
+
+}
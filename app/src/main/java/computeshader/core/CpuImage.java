@@ -0,0 +1,171 @@
+package computeshader.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// image used by the Java backend, laid out like the GL texture (row major) and stored off heap in its PixelFormat,
+// channels are read and written as floats with the conversions GL applies to image loads and stores
+public class CpuImage {
+    public static final int CHANNELS = 4;
+
+    private final int width;
+    private final int height;
+    private final PixelFormat format;
+    private final ByteBuffer data;
+
+    public CpuImage(int width, int height) {
+        this(width, height, PixelFormat.RGBA32F);
+    }
+
+    public CpuImage(int width, int height, PixelFormat format) {
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.data = ByteBuffer.allocateDirect(Math.multiplyExact(width * height, format.getBytesPerPixel()))
+                .order(ByteOrder.nativeOrder());
+    }
+
+    // channels a single channel format doesn't have read as (0, 0, 1) like a GL image load
+    public float get(int x, int y, int channel) {
+        int pixel = y * width + x;
+        switch (format) {
+        case RGBA32F:
+            return data.getFloat((pixel * CHANNELS + channel) * Float.BYTES);
+        case RGBA16F:
+            return PixelFormat.fromHalf(data.getShort((pixel * CHANNELS + channel) * Short.BYTES));
+        case RGBA8:
+            return (data.get(pixel * CHANNELS + channel) & 0xff) / 255.0f;
+        case R16F:
+            return channel == 0 ? PixelFormat.fromHalf(data.getShort(pixel * Short.BYTES)) : missing(channel);
+        case R32UI:
+            return channel == 0 ? (float) Integer.toUnsignedLong(data.getInt(pixel * Integer.BYTES))
+                    : missing(channel);
+        default:
+            throw new IllegalStateException("Unknown format " + format);
+        }
+    }
+
+    private static float missing(int channel) {
+        return channel == 3 ? 1.0f : 0.0f;
+    }
+
+    // channels the format doesn't have are dropped
+    public void set(int x, int y, int channel, float value) {
+        int pixel = y * width + x;
+        switch (format) {
+        case RGBA32F:
+            data.putFloat((pixel * CHANNELS + channel) * Float.BYTES, value);
+            break;
+        case RGBA16F:
+            data.putShort((pixel * CHANNELS + channel) * Short.BYTES, PixelFormat.toHalf(value));
+            break;
+        case RGBA8:
+            data.put(pixel * CHANNELS + channel, unorm8(value));
+            break;
+        case R16F:
+            if (channel == 0) {
+                data.putShort(pixel * Short.BYTES, PixelFormat.toHalf(value));
+            }
+            break;
+        case R32UI:
+            if (channel == 0) {
+                data.putInt(pixel * Integer.BYTES, (int) (long) value);
+            }
+            break;
+        default:
+            throw new IllegalStateException("Unknown format " + format);
+        }
+    }
+
+    public void store(int x, int y, float r, float g, float b, float a) {
+        int pixel = y * width + x;
+        switch (format) {
+        case RGBA32F: {
+            int index = pixel * CHANNELS * Float.BYTES;
+            data.putFloat(index, r);
+            data.putFloat(index + 4, g);
+            data.putFloat(index + 8, b);
+            data.putFloat(index + 12, a);
+            break;
+        }
+        case RGBA16F: {
+            int index = pixel * CHANNELS * Short.BYTES;
+            data.putShort(index, PixelFormat.toHalf(r));
+            data.putShort(index + 2, PixelFormat.toHalf(g));
+            data.putShort(index + 4, PixelFormat.toHalf(b));
+            data.putShort(index + 6, PixelFormat.toHalf(a));
+            break;
+        }
+        case RGBA8: {
+            int index = pixel * CHANNELS;
+            data.put(index, unorm8(r));
+            data.put(index + 1, unorm8(g));
+            data.put(index + 2, unorm8(b));
+            data.put(index + 3, unorm8(a));
+            break;
+        }
+        default:
+            set(x, y, 0, r);
+        }
+    }
+
+    // clamped and rounded like a GL unorm conversion
+    private static byte unorm8(float value) {
+        return (byte) (int) (Math.min(Math.max(value, 0.0f), 1.0f) * 255.0f + 0.5f);
+    }
+
+    public void copyFrom(CpuImage other) {
+        if (other.format != format) {
+            throw new IllegalArgumentException("Can't copy a " + other.format + " image into a " + format + " image");
+        }
+        data.put(0, other.data, 0, data.capacity());
+    }
+
+    // the texels in the layout of the format, from position 0 of destination
+    public void readBytes(ByteBuffer destination) {
+        destination.put(0, data, 0, data.capacity());
+    }
+
+    public void writeBytes(ByteBuffer source) {
+        if (source.remaining() != data.capacity()) {
+            throw new IllegalArgumentException(
+                    "Expected " + data.capacity() + " bytes of " + format + " texels, got " + source.remaining());
+        }
+        data.put(0, source, source.position(), data.capacity());
+    }
+
+    // RGBA floats of every pixel, what glGetTexImage returns for GL_RGBA and GL_FLOAT
+    public void read(float[] destination) {
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    destination[index++] = get(x, y, channel);
+                }
+            }
+        }
+    }
+
+    public float[] toArray() {
+        float[] pixels = new float[width * height * CHANNELS];
+        read(pixels);
+        return pixels;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public PixelFormat format() {
+        return format;
+    }
+
+    public long byteSize() {
+        return data.capacity();
+    }
+
+}
@@ -0,0 +1,87 @@
+package computeshader.core;
+
+import java.util.Arrays;
+
+// sorted, disjoint [start, end) float ranges of a buffer waiting to be uploaded, ranges closer than mergeGap are
+// merged because one slightly larger copy is cheaper than another upload call
+public class DirtyRanges {
+    private final int mergeGap;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int count;
+
+    public DirtyRanges() {
+        this(0);
+    }
+
+    public DirtyRanges(int mergeGap) {
+        this.mergeGap = mergeGap;
+    }
+
+    public void add(int start, int end) {
+        if (end <= start) {
+            return;
+        }
+
+        // first range that ends at or after start - mergeGap, everything before it stays untouched
+        int first = search(start - mergeGap);
+        int last = first;
+        while (last < count && starts[last] <= end + mergeGap) {
+            start = Math.min(start, starts[last]);
+            end = Math.max(end, ends[last]);
+            last++;
+        }
+
+        int removed = last - first;
+        if (removed == 0) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            System.arraycopy(starts, first, starts, first + 1, count - first);
+            System.arraycopy(ends, first, ends, first + 1, count - first);
+            count++;
+        } else if (removed > 1) {
+            System.arraycopy(starts, last, starts, first + 1, count - last);
+            System.arraycopy(ends, last, ends, first + 1, count - last);
+            count -= removed - 1;
+        }
+        starts[first] = start;
+        ends[first] = end;
+    }
+
+    private int search(int position) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getStart(int range) {
+        return starts[range];
+    }
+
+    public int getEnd(int range) {
+        return ends[range];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+}
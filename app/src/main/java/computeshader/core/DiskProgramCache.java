@@ -0,0 +1,185 @@
+package computeshader.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// one file per key in a directory, evicted least recently used first once the files exceed maxBytes. the access
+// order is kept in the modification times so it survives restarts, a file that fails its checks is deleted
+public class DiskProgramCache implements ProgramCache {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final String SUFFIX = ".bin";
+    private static final int MAGIC = 0x43535042; // CSPB
+    private static final int VERSION = 1;
+    // magic, version, format, length, crc
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+
+    private final Path directory;
+    private final long maxBytes;
+    // key to file size, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public DiskProgramCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(DiskProgramCache::lastModified));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            totalBytes += size;
+        }
+        logger.debug("Program cache {}: {} entries, {} bytes", directory, entries.size(), totalBytes);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    @Override
+    public synchronized Binary load(String key) {
+        if (entries.get(key) == null) {
+            return null;
+        }
+
+        Path file = file(key);
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (bytes.remaining() < HEADER_SIZE || bytes.getInt() != MAGIC || bytes.getInt() != VERSION) {
+                throw new IOException("bad header");
+            }
+            int format = bytes.getInt();
+            int length = bytes.getInt();
+            long crc = bytes.getLong();
+            if (length != bytes.remaining()) {
+                throw new IOException("expected " + length + " bytes, found " + bytes.remaining());
+            }
+
+            byte[] data = new byte[length];
+            bytes.get(data);
+            if (crc(data) != crc) {
+                throw new IOException("checksum mismatch");
+            }
+
+            touch(file);
+            return new Binary(format, data);
+        } catch (IOException e) {
+            logger.warn("Discarding program cache entry {}: {}", file, e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    // the access order for the next session, an entry that can't be touched is still a good entry
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.debug("Could not touch program cache entry {}: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void store(String key, Binary binary) {
+        byte[] data = binary.data();
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + data.length);
+        bytes.putInt(MAGIC).putInt(VERSION).putInt(binary.format()).putInt(data.length).putLong(crc(data)).put(data);
+
+        Path file = file(key);
+        Path temporary = null;
+        try {
+            // written next to the entry and moved over it, a crash never leaves half an entry
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, bytes.array());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not write program cache entry {}", file, e);
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException deleteException) {
+                    logger.warn("Could not delete {}", temporary, deleteException);
+                }
+            }
+            return;
+        }
+
+        Long previous = entries.put(key, (long) bytes.capacity());
+        totalBytes += bytes.capacity() - (previous == null ? 0 : previous);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        // the newest entry is kept even when it alone is larger than maxBytes
+        while (totalBytes > maxBytes && entries.size() > 1) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            delete(eldest.getKey());
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+            logger.debug("Evicted program cache entry {}", eldest.getKey());
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        delete(key);
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            logger.warn("Could not delete program cache entry {}", key, e);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+}
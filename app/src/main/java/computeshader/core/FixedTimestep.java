@@ -0,0 +1,81 @@
+package computeshader.core;
+
+// advances a simulation in ticks of a fixed length, whatever the frame rate. the wall clock time of every frame is
+// added to an accumulator and the ticks that are due run as substeps of the frame, at most maxSubsteps of them and
+// only while the frame's tick budget lasts. ticks that can't run are dropped, the simulation slows down instead of
+// spiralling into longer and longer frames
+public class FixedTimestep {
+    private final long tickNanos;
+    private final int maxSubsteps;
+    private final long budgetNanos;
+
+    private long accumulator;
+    private long ticks;
+    private long droppedTicks;
+
+    public FixedTimestep(double tickSeconds, int maxSubsteps, double budgetSeconds) {
+        if (tickSeconds <= 0.0 || maxSubsteps < 1) {
+            throw new IllegalArgumentException(
+                    "Tick length and substeps must be positive: " + tickSeconds + ", " + maxSubsteps);
+        }
+
+        this.tickNanos = Math.max(1, Math.round(tickSeconds * 1e9));
+        this.maxSubsteps = maxSubsteps;
+        this.budgetNanos = Math.round(budgetSeconds * 1e9);
+    }
+
+    // ticks of 1/ticksPerSecond, the budget is the frame time of that rate
+    public static FixedTimestep ofRate(int ticksPerSecond, int maxSubsteps) {
+        return new FixedTimestep(1.0 / ticksPerSecond, maxSubsteps, 1.0 / ticksPerSecond);
+    }
+
+    // the ticks due after elapsedNanos of wall clock time, at most maxSubsteps
+    public int advance(long elapsedNanos) {
+        accumulator += Math.max(0, elapsedNanos);
+        return (int) Math.min(maxSubsteps, accumulator / tickNanos);
+    }
+
+    // ticks are run one at a time, the frame stops when this is false
+    public boolean withinBudget(long tickTimeNanos) {
+        return tickTimeNanos < budgetNanos;
+    }
+
+    public void tick() {
+        accumulator -= tickNanos;
+        ticks++;
+    }
+
+    // drops what is still due, what's left is less than a tick and carries over to the next frame
+    public void endFrame() {
+        long due = accumulator / tickNanos;
+        droppedTicks += due;
+        accumulator -= due * tickNanos;
+    }
+
+    // how far the wall clock is into the next tick, for interpolating what is rendered
+    public double getAlpha() {
+        return (double) accumulator / tickNanos;
+    }
+
+    public double getTickSeconds() {
+        return tickNanos / 1e9;
+    }
+
+    public int getMaxSubsteps() {
+        return maxSubsteps;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    // only depends on the number of ticks, runs with the same ticks are the same
+    public double getSimulationTime() {
+        return ticks * tickNanos / 1e9;
+    }
+
+}
@@ -0,0 +1,334 @@
+package computeshader.core;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import javax.imageio.ImageIO;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// hands RGBA32F frames to writer threads through a bounded set of buffers, the frame loop only copies pixels
+public class FrameExporter implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int FRAME_RATE = 60;
+    private static final Frame END = new Frame(-1, null, 0);
+
+    public enum Format {
+        // numbered PNG files in a directory
+        PNG,
+        // one uncompressed 4:4:4 YUV4MPEG2 stream
+        Y4M
+    }
+
+    public enum Policy {
+        // skip the frame when every buffer is waiting to be written
+        DROP,
+        // wait for a writer to free a buffer
+        BLOCK
+    }
+
+    private record Frame(long sequence, float[] pixels, long submitTime) {
+    }
+
+    private record Encoded(ByteBuffer bytes, long submitTime) {
+    }
+
+    private final Path target;
+    private final Format format;
+    private final int width;
+    private final int height;
+    private final Policy policy;
+
+    private final BlockingQueue<float[]> freeBuffers;
+    private final BlockingQueue<Frame> pendingFrames;
+    private final Thread[] writers;
+    private long nextSequence;
+
+    // Y4M frames are encoded in parallel and written in sequence order
+    private final WritableByteChannel stream;
+    private final Map<Long, Encoded> encodedFrames = new HashMap<>();
+    private long nextWrite;
+    // a frame that was only partly written leaves the rest of the stream unreadable, everything after it fails
+    private volatile boolean streamFailed;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+    public FrameExporter(Path target, Format format, int width, int height, int capacity, int numWriters,
+            Policy policy) throws IOException {
+        this(target, format, width, height, capacity, numWriters, policy, format == Format.Y4M ? open(target) : null);
+    }
+
+    // a Y4M exporter onto any channel
+    FrameExporter(WritableByteChannel stream, int width, int height, int capacity, int numWriters, Policy policy)
+            throws IOException {
+        this(null, Format.Y4M, width, height, capacity, numWriters, policy, stream);
+    }
+
+    private FrameExporter(Path target, Format format, int width, int height, int capacity, int numWriters,
+            Policy policy, WritableByteChannel stream) throws IOException {
+        this.target = target;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.policy = policy;
+        this.stream = stream;
+
+        if (format == Format.PNG) {
+            Files.createDirectories(target);
+        } else {
+            String header = "YUV4MPEG2 W" + width + " H" + height + " F" + FRAME_RATE + ":1 Ip A1:1 C444\n";
+            stream.write(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+        }
+
+        freeBuffers = new ArrayBlockingQueue<>(capacity);
+        pendingFrames = new ArrayBlockingQueue<>(capacity + numWriters);
+        for (int i = 0; i < capacity; i++) {
+            freeBuffers.add(new float[width * height * CpuImage.CHANNELS]);
+        }
+
+        writers = new Thread[numWriters];
+        for (int i = 0; i < numWriters; i++) {
+            writers[i] = new Thread(this::runWriter, "frame-writer-" + i);
+            writers[i].setDaemon(true);
+            writers[i].start();
+        }
+
+        logger.info("Exporting {}x{} frames to {} as {} ({} buffers, {} writers, {})", width, height, target,
+                format, capacity, numWriters, policy);
+    }
+
+    private static FileChannel open(Path target) throws IOException {
+        return FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // a free buffer to read the next frame into, null if the frame is dropped
+    public float[] acquire() {
+        if (policy == Policy.DROP) {
+            float[] buffer = freeBuffers.poll();
+            if (buffer == null) {
+                dropped.incrementAndGet();
+            }
+            return buffer;
+        }
+
+        try {
+            return freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // queues a buffer from acquire(), never blocks because there are never more frames than buffers
+    public void submit(float[] buffer) {
+        pendingFrames.add(new Frame(nextSequence++, buffer, System.nanoTime()));
+        submitted.incrementAndGet();
+    }
+
+    // copies pixels into a free buffer and queues it, false if the frame was dropped
+    public boolean offer(float[] pixels) {
+        float[] buffer = acquire();
+        if (buffer == null) {
+            return false;
+        }
+
+        System.arraycopy(pixels, 0, buffer, 0, buffer.length);
+        submit(buffer);
+        return true;
+    }
+
+    private void runWriter() {
+        while (true) {
+            Frame frame;
+            try {
+                frame = pendingFrames.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (frame == END) {
+                return;
+            }
+
+            if (format == Format.Y4M) {
+                writeY4m(frame);
+                continue;
+            }
+
+            try {
+                writePng(frame);
+                recordWritten(frame.submitTime());
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                logger.error("Exception caught when writing frame {}", frame.sequence(), e);
+            }
+        }
+    }
+
+    private void recordWritten(long submitTime) {
+        written.incrementAndGet();
+        long latency = System.nanoTime() - submitTime;
+        totalLatency.addAndGet(latency);
+        maxLatency.accumulate(latency);
+    }
+
+    private void writePng(Frame frame) throws IOException {
+        int[] rgb = new int[width * height];
+        float[] pixels = frame.pixels();
+        for (int y = 0; y < height; y++) {
+            int row = (height - 1 - y) * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = (y * width + x) * CpuImage.CHANNELS;
+                float alpha = pixels[pixel + 3];
+                rgb[row + x] = toByte(pixels[pixel + 0] * alpha) << 16 | toByte(pixels[pixel + 1] * alpha) << 8
+                        | toByte(pixels[pixel + 2] * alpha);
+            }
+        }
+        freeBuffers.add(pixels);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, rgb, 0, width);
+        Path file = target.resolve(String.format("frame_%06d.png", frame.sequence()));
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    // BT.601 limited range, the same conversion ffmpeg assumes for YUV4MPEG2 input
+    private void writeY4m(Frame frame) {
+        if (streamFailed) {
+            freeBuffers.add(frame.pixels());
+            failed.incrementAndGet();
+            return;
+        }
+
+        byte[] frameHeader = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+        int planeSize = width * height;
+        ByteBuffer encoded = ByteBuffer.allocate(frameHeader.length + 3 * planeSize);
+        encoded.put(frameHeader);
+
+        float[] pixels = frame.pixels();
+        int offset = frameHeader.length;
+        for (int y = 0; y < height; y++) {
+            int row = (height - 1 - y) * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = (y * width + x) * CpuImage.CHANNELS;
+                float alpha = pixels[pixel + 3];
+                float r = clamp(pixels[pixel + 0] * alpha);
+                float g = clamp(pixels[pixel + 1] * alpha);
+                float b = clamp(pixels[pixel + 2] * alpha);
+
+                int index = offset + row + x;
+                encoded.put(index, (byte) (16.0f + 65.481f * r + 128.553f * g + 24.966f * b + 0.5f));
+                encoded.put(index + planeSize, (byte) (128.0f - 37.797f * r - 74.203f * g + 112.0f * b + 0.5f));
+                encoded.put(index + 2 * planeSize, (byte) (128.0f + 112.0f * r - 93.786f * g - 18.214f * b + 0.5f));
+            }
+        }
+        freeBuffers.add(pixels);
+        encoded.position(0);
+
+        // frames parked here wait for the ones before them, whichever writer completes the sequence writes them
+        synchronized (encodedFrames) {
+            if (streamFailed) {
+                failed.incrementAndGet();
+                return;
+            }
+
+            encodedFrames.put(frame.sequence(), new Encoded(encoded, frame.submitTime()));
+            for (Encoded next = encodedFrames.remove(nextWrite); next != null; next = encodedFrames
+                    .remove(nextWrite)) {
+                try {
+                    while (next.bytes().hasRemaining()) {
+                        stream.write(next.bytes());
+                    }
+                } catch (IOException e) {
+                    streamFailed = true;
+                    failed.addAndGet(1 + encodedFrames.size());
+                    encodedFrames.clear();
+                    logger.error("Exception caught when writing frame {}, failing the rest of the stream", nextWrite,
+                            e);
+                    return;
+                }
+                recordWritten(next.submitTime());
+                nextWrite++;
+            }
+        }
+    }
+
+    private static float clamp(float value) {
+        return Math.min(Math.max(value, 0.0f), 1.0f);
+    }
+
+    private static int toByte(float value) {
+        return (int) (clamp(value) * 255.0f + 0.5f);
+    }
+
+    // waits for every queued frame to be written
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < writers.length; i++) {
+            pendingFrames.add(END);
+        }
+        for (Thread writer : writers) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (stream != null) {
+            stream.close();
+        }
+
+        logger.info("Exported {} frames ({} dropped, {} failed), encode latency mean {} ms max {} ms", getWritten(),
+                getDropped(), getFailed(), getMeanLatencyMillis(), getMaxLatencyMillis());
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    // from submit() until the frame is on disk, over the written frames
+    public double getMeanLatencyMillis() {
+        long frames = written.get();
+        return frames == 0 ? 0.0 : totalLatency.get() / 1e6 / frames;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatency.get() / 1e6;
+    }
+
+}
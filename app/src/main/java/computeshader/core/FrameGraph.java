@@ -0,0 +1,351 @@
+package computeshader.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// the process steps of a frame with the images and buffers they read and write, compiled into an order that groups
+// independent steps and the memory barriers that order needs
+public class FrameGraph {
+    // barrier bits, OpenGLBackend maps them to glMemoryBarrier bits
+    // shader image loads and stores after image stores
+    public static final int IMAGE_ACCESS = 1;
+    // shader storage buffer access after storage buffer writes
+    public static final int STORAGE_BUFFER = 2;
+    // sampling a texture for display after image stores, readTexture issues its own barrier
+    public static final int TEXTURE_FETCH = 4;
+
+    public enum Kind {
+        IMAGE(IMAGE_ACCESS, IMAGE_ACCESS | TEXTURE_FETCH),
+        BUFFER(STORAGE_BUFFER, STORAGE_BUFFER);
+
+        // what an access waits for, and what a write leaves pending until a barrier with those bits
+        private final int barrier;
+        private final int pending;
+
+        Kind(int barrier, int pending) {
+            this.barrier = barrier;
+            this.pending = pending;
+        }
+    }
+
+    public static class Step {
+        private final String name;
+        private final Runnable body;
+        private final Map<String, Kind> reads = new LinkedHashMap<>();
+        private final Map<String, Kind> writes = new LinkedHashMap<>();
+        private boolean perFrame;
+
+        private Step(String name, Runnable body) {
+            this.name = name;
+            this.body = body;
+        }
+
+        public Step readsImage(String... names) {
+            return add(reads, Kind.IMAGE, names);
+        }
+
+        public Step writesImage(String... names) {
+            return add(writes, Kind.IMAGE, names);
+        }
+
+        public Step readsBuffer(String... names) {
+            return add(reads, Kind.BUFFER, names);
+        }
+
+        public Step writesBuffer(String... names) {
+            return add(writes, Kind.BUFFER, names);
+        }
+
+        // runs once per rendered frame instead of once per simulation tick, see compileTicked
+        public Step perFrame() {
+            perFrame = true;
+            return this;
+        }
+
+        private Step add(Map<String, Kind> accesses, Kind kind, String[] names) {
+            for (String name : names) {
+                accesses.put(name, kind);
+            }
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Runnable getBody() {
+            return body;
+        }
+
+        public boolean isPerFrame() {
+            return perFrame;
+        }
+    }
+
+    // steps in run order, barriers[i] is issued before steps.get(i) and endBarriers after the last step
+    public record Plan(List<Step> steps, int[] barriers, int endBarriers, int[] levels, boolean[][] dependsOn) {
+
+        public int size() {
+            return steps.size();
+        }
+
+        // the position of the step in the run order
+        public int indexOf(String name) {
+            for (int i = 0; i < steps.size(); i++) {
+                if (steps.get(i).name.equals(name)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("No step " + name);
+        }
+
+        public int barrierBefore(String name) {
+            return barriers[indexOf(name)];
+        }
+
+        // glMemoryBarrier calls per frame
+        public int barrierCount() {
+            int count = endBarriers != 0 ? 1 : 0;
+            for (int barrier : barriers) {
+                count += barrier != 0 ? 1 : 0;
+            }
+            return count;
+        }
+
+        // neither step has to wait for the other, directly or through other steps
+        public boolean independent(String first, String second) {
+            int a = indexOf(first);
+            int b = indexOf(second);
+            return !dependsOn[a][b] && !dependsOn[b][a];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder plan = new StringBuilder();
+            for (int i = 0; i < steps.size(); i++) {
+                if (barriers[i] != 0) {
+                    plan.append("barrier ").append(barrierNames(barriers[i])).append(", ");
+                }
+                plan.append(steps.get(i).name).append(" (level ").append(levels[i]).append("), ");
+            }
+            return plan.append("barrier ").append(barrierNames(endBarriers)).toString();
+        }
+    }
+
+    // the steps of a simulation tick and of a rendered frame, a frame runs any number of ticks before its own steps
+    public record TickedPlan(Plan tick, Plan frame) {
+    }
+
+    // steps of one plan ordered by level, with their levels and transitive dependencies
+    private record Ordered(List<Step> steps, int[] levels, boolean[][] dependsOn) {
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    // the names of an image pair are one resource, the texture behind a name changes every swap
+    private final Map<String, String> aliases = new HashMap<>();
+
+    public Step step(String name, Runnable body) {
+        Step step = new Step(name, body);
+        steps.add(step);
+        return step;
+    }
+
+    public void alias(String name, String resource) {
+        aliases.put(name, resource);
+    }
+
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    private String resource(String name) {
+        return aliases.getOrDefault(name, name);
+    }
+
+    // every step once per frame
+    public Plan compile(String displayTexture) {
+        Ordered ordered = order(steps);
+        String display = displayTexture == null ? null : resource(displayTexture);
+
+        // the barrier bits each resource still waits for when a frame starts, from the writes of the previous frame,
+        // grown until a frame ends with nothing that wasn't pending when it started
+        Map<String, Integer> pending = new HashMap<>();
+        while (true) {
+            Map<String, Integer> end = new HashMap<>(pending);
+            int[] barriers = plan(ordered.steps, end);
+            int endBarriers = endBarriers(display, end);
+
+            if (!grow(pending, end)) {
+                return new Plan(List.copyOf(ordered.steps), barriers, endBarriers, ordered.levels, ordered.dependsOn);
+            }
+        }
+    }
+
+    // perFrame steps once per frame, the others once per tick. a frame can run any number of ticks, none included, so
+    // both plans start from whatever either of them can leave pending
+    public TickedPlan compileTicked(String displayTexture) {
+        Ordered tick = order(steps.stream().filter(step -> !step.perFrame).toList());
+        Ordered frame = order(steps.stream().filter(step -> step.perFrame).toList());
+        String display = displayTexture == null ? null : resource(displayTexture);
+
+        Map<String, Integer> pending = new HashMap<>();
+        while (true) {
+            Map<String, Integer> tickEnd = new HashMap<>(pending);
+            int[] tickBarriers = plan(tick.steps, tickEnd);
+            Map<String, Integer> frameEnd = new HashMap<>(pending);
+            int[] frameBarriers = plan(frame.steps, frameEnd);
+            int endBarriers = endBarriers(display, frameEnd);
+
+            boolean grown = grow(pending, tickEnd);
+            grown |= grow(pending, frameEnd);
+            if (!grown) {
+                return new TickedPlan(
+                        new Plan(List.copyOf(tick.steps), tickBarriers, 0, tick.levels, tick.dependsOn),
+                        new Plan(List.copyOf(frame.steps), frameBarriers, endBarriers, frame.levels,
+                                frame.dependsOn));
+            }
+        }
+    }
+
+    // declaration order is the program order, a step only moves ahead of steps it doesn't depend on
+    private Ordered order(List<Step> steps) {
+        int n = steps.size();
+        boolean[][] dependsOn = new boolean[n][n];
+        int[] levels = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+                if (conflict(steps.get(j), steps.get(i))) {
+                    dependsOn[i][j] = true;
+                    levels[i] = Math.max(levels[i], levels[j] + 1);
+                    for (int k = 0; k < j; k++) {
+                        dependsOn[i][k] |= dependsOn[j][k];
+                    }
+                }
+            }
+        }
+
+        // stable by level, steps of a level have no hazards between them and share the barrier before the level
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(levels[a], levels[b]));
+
+        List<Step> ordered = new ArrayList<>();
+        int[] orderedLevels = new int[n];
+        boolean[][] orderedDependsOn = new boolean[n][n];
+        for (int i = 0; i < n; i++) {
+            ordered.add(steps.get(order[i]));
+            orderedLevels[i] = levels[order[i]];
+            for (int j = 0; j < n; j++) {
+                orderedDependsOn[i][j] = dependsOn[order[i]][order[j]];
+            }
+        }
+        return new Ordered(ordered, orderedLevels, orderedDependsOn);
+    }
+
+    // the display is sampled after the last step, clears what that barrier covers from end
+    private static int endBarriers(String display, Map<String, Integer> end) {
+        int endBarriers = display == null ? 0 : end.getOrDefault(display, 0) & TEXTURE_FETCH;
+        clear(end, endBarriers);
+        return endBarriers;
+    }
+
+    // adds the bits left pending at the end to the ones a frame starts with, true if that added any
+    private static boolean grow(Map<String, Integer> pending, Map<String, Integer> end) {
+        boolean grown = false;
+        for (Map.Entry<String, Integer> bits : end.entrySet()) {
+            int started = pending.getOrDefault(bits.getKey(), 0);
+            if ((started | bits.getValue()) != started) {
+                pending.put(bits.getKey(), started | bits.getValue());
+                grown = true;
+            }
+        }
+        return grown;
+    }
+
+    // barriers for one frame that starts with `pending` writes, leaves the writes pending at the end of the frame
+    private int[] plan(List<Step> ordered, Map<String, Integer> pending) {
+        int[] barriers = new int[ordered.size()];
+        for (int i = 0; i < ordered.size(); i++) {
+            Step step = ordered.get(i);
+            int barrier = 0;
+            // write after write needs the barrier too, write after read doesn't
+            for (Map<String, Kind> accesses : List.of(step.reads, step.writes)) {
+                for (Map.Entry<String, Kind> access : accesses.entrySet()) {
+                    barrier |= pending.getOrDefault(resource(access.getKey()), 0) & access.getValue().barrier;
+                }
+            }
+
+            clear(pending, barrier);
+            for (Map.Entry<String, Kind> write : step.writes.entrySet()) {
+                pending.merge(resource(write.getKey()), write.getValue().pending, (a, b) -> a | b);
+            }
+            barriers[i] = barrier;
+        }
+        return barriers;
+    }
+
+    // one barrier makes every pending write visible to the accesses its bits cover
+    private static void clear(Map<String, Integer> pending, int barrier) {
+        if (barrier != 0) {
+            pending.replaceAll((name, bits) -> bits & ~barrier);
+            pending.values().removeIf(bits -> bits == 0);
+        }
+    }
+
+    // a hazard between an earlier and a later step, read after write, write after write or write after read
+    private boolean conflict(Step earlier, Step later) {
+        Set<String> earlierWrites = resources(earlier.writes);
+        Set<String> laterWrites = resources(later.writes);
+        for (String name : resources(later.reads)) {
+            if (earlierWrites.contains(name)) {
+                return true;
+            }
+        }
+        for (String name : laterWrites) {
+            if (earlierWrites.contains(name)) {
+                return true;
+            }
+        }
+        for (String name : resources(earlier.reads)) {
+            if (laterWrites.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<String> resources(Map<String, Kind> accesses) {
+        Set<String> resources = new HashSet<>();
+        for (String name : accesses.keySet()) {
+            resources.add(resource(name));
+        }
+        return resources;
+    }
+
+    public static String barrierNames(int barriers) {
+        if (barriers == 0) {
+            return "none";
+        }
+
+        List<String> names = new ArrayList<>();
+        if ((barriers & IMAGE_ACCESS) != 0) {
+            names.add("IMAGE_ACCESS");
+        }
+        if ((barriers & STORAGE_BUFFER) != 0) {
+            names.add("STORAGE_BUFFER");
+        }
+        if ((barriers & TEXTURE_FETCH) != 0) {
+            names.add("TEXTURE_FETCH");
+        }
+        return String.join(" | ", names);
+    }
+
+}
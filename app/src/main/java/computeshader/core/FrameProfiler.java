@@ -0,0 +1,147 @@
+package computeshader.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// named CPU and GPU timings of the frame loop, sections are registered up front so recording doesn't allocate. a
+// section that runs several times in a frame, like the steps of fixed timestep ticks, records its total per frame on
+// both sides
+public class FrameProfiler {
+    public static final int MAX_SECTIONS = 64;
+
+    // GPU timestamps are read back some frames later, collect() records the ones that are ready, one sum of every
+    // begin/end pair per section and frame
+    public interface GpuTimer {
+        void begin(int section);
+
+        void end(int section);
+
+        void collect(FrameProfiler profiler);
+    }
+
+    private final String[] names = new String[MAX_SECTIONS];
+    private final LatencyHistogram[] cpu = new LatencyHistogram[MAX_SECTIONS];
+    private final LatencyHistogram[] gpu = new LatencyHistogram[MAX_SECTIONS];
+    private final long[] starts = new long[MAX_SECTIONS];
+    private final long[] frameTotals = new long[MAX_SECTIONS];
+    private final boolean[] ran = new boolean[MAX_SECTIONS];
+    private final Map<String, Integer> sectionMap = new HashMap<>();
+    private int numSections;
+
+    private GpuTimer gpuTimer;
+
+    public int section(String name) {
+        Integer section = sectionMap.get(name);
+        if (section != null) {
+            return section;
+        }
+        if (numSections == MAX_SECTIONS) {
+            throw new IllegalStateException("Too many profiler sections: " + name);
+        }
+
+        int id = numSections++;
+        names[id] = name;
+        cpu[id] = new LatencyHistogram();
+        gpu[id] = new LatencyHistogram();
+        sectionMap.put(name, id);
+        return id;
+    }
+
+    public void setGpuTimer(GpuTimer gpuTimer) {
+        this.gpuTimer = gpuTimer;
+    }
+
+    public void beginFrame() {
+        if (gpuTimer != null) {
+            gpuTimer.collect(this);
+        }
+    }
+
+    public void begin(int section) {
+        if (gpuTimer != null) {
+            gpuTimer.begin(section);
+        }
+        starts[section] = System.nanoTime();
+    }
+
+    public void end(int section) {
+        frameTotals[section] += System.nanoTime() - starts[section];
+        ran[section] = true;
+        if (gpuTimer != null) {
+            gpuTimer.end(section);
+        }
+    }
+
+    // records the CPU totals of the sections that ran since the last call
+    public void endFrame() {
+        for (int i = 0; i < numSections; i++) {
+            if (ran[i]) {
+                cpu[i].record(frameTotals[i]);
+                frameTotals[i] = 0;
+                ran[i] = false;
+            }
+        }
+    }
+
+    public void recordGpu(int section, long nanos) {
+        gpu[section].record(nanos);
+    }
+
+    public int getNumSections() {
+        return numSections;
+    }
+
+    public String getName(int section) {
+        return names[section];
+    }
+
+    public LatencyHistogram getCpu(int section) {
+        return cpu[section];
+    }
+
+    public LatencyHistogram getGpu(int section) {
+        return gpu[section];
+    }
+
+    public boolean hasGpuTimer() {
+        return gpuTimer != null;
+    }
+
+    public void reset() {
+        for (int i = 0; i < numSections; i++) {
+            cpu[i].reset();
+            gpu[i].reset();
+        }
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"sections\": [");
+        for (int i = 0; i < numSections; i++) {
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    { \"name\": \"").append(names[i].replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\", \"cpu\": ");
+            appendHistogram(json, cpu[i]);
+            json.append(", \"gpu\": ");
+            appendHistogram(json, gpu[i]);
+            json.append(" }");
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    // milliseconds
+    private static void appendHistogram(StringBuilder json, LatencyHistogram histogram) {
+        json.append(String.format(Locale.ROOT,
+                "{ \"count\": %d, \"mean\": %.6f, \"p50\": %.6f, \"p99\": %.6f, \"max\": %.6f }",
+                histogram.getCount(), histogram.getMean() / 1e6, histogram.percentile(0.5) / 1e6,
+                histogram.percentile(0.99) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    public void writeJson(Path path) throws IOException {
+        Files.writeString(path, toJson());
+    }
+
+}
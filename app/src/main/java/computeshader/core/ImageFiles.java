@@ -0,0 +1,70 @@
+package computeshader.core;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.imageio.ImageIO;
+
+// image writers for float pixel data stored row by row from the bottom, like the GL textures
+public final class ImageFiles {
+
+    private ImageFiles() {
+    }
+
+    // picks the format from the file extension
+    public static void write(Path path, int width, int height, int channels, float[] data) throws IOException {
+        if (path.toString().toLowerCase().endsWith(".pfm")) {
+            writePfm(path, width, height, channels, data);
+        } else {
+            writePng(path, width, height, channels, data);
+        }
+    }
+
+    // 8-bit RGB, values are clamped to [0, 1] and written as they are
+    public static void writePng(Path path, int width, int height, int channels, float[] data) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = (y * width + x) * channels;
+                int rgb = toByte(data[pixel + 0]) << 16 | toByte(data[pixel + 1]) << 8 | toByte(data[pixel + 2]);
+                image.setRGB(x, height - 1 - y, rgb);
+            }
+        }
+
+        if (!ImageIO.write(image, "png", path.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    // little-endian 32-bit float RGB, PFM stores rows from the bottom so no flip is needed
+    public static void writePfm(Path path, int width, int height, int channels, float[] data) throws IOException {
+        byte[] header = ("PF\n" + width + " " + height + "\n-1.0\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(header.length + width * height * 3 * Float.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(header);
+        for (int i = 0; i < width * height; i++) {
+            buffer.putFloat(data[i * channels + 0]);
+            buffer.putFloat(data[i * channels + 1]);
+            buffer.putFloat(data[i * channels + 2]);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static int toByte(float value) {
+        return (int) (Math.min(Math.max(value, 0.0f), 1.0f) * 255.0f + 0.5f);
+    }
+
+}
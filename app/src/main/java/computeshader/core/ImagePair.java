@@ -0,0 +1,59 @@
+package computeshader.core;
+
+// two textures behind a read name and a write name, a step reads one and writes the other and swap() hands the result
+// to the next step by rebinding the names instead of copying the texture
+public class ImagePair {
+    private final String read;
+    private final String write;
+    private final PixelFormat format;
+    private int swaps;
+
+    public ImagePair(String read, String write) {
+        this(read, write, PixelFormat.RGBA32F);
+    }
+
+    public ImagePair(String read, String write, PixelFormat format) {
+        this.read = read;
+        this.write = write;
+        this.format = format;
+    }
+
+    public void create(ComputeBackend backend) {
+        backend.createTexture(read, format);
+        backend.createTexture(write, format);
+    }
+
+    public void swap(ComputeBackend backend) {
+        backend.swapTextures(read, write);
+        swaps++;
+    }
+
+    // the name the texture behind `name` was created with, read and write trade textures on every swap
+    public String texture(String name) {
+        boolean swapped = (swaps & 1) == 1;
+        if (name.equals(read)) {
+            return swapped ? write : read;
+        }
+        if (name.equals(write)) {
+            return swapped ? read : write;
+        }
+        throw new IllegalArgumentException("Not an image of the " + read + " pair: " + name);
+    }
+
+    public String getRead() {
+        return read;
+    }
+
+    public String getWrite() {
+        return write;
+    }
+
+    public PixelFormat getFormat() {
+        return format;
+    }
+
+    public int getSwaps() {
+        return swaps;
+    }
+
+}
@@ -0,0 +1,375 @@
+package computeshader.core;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+public class JavaBackend implements ComputeBackend {
+    private static final Logger logger = LogManager.getLogger();
+
+    private ShaderAppConfiguration shaderAppConfig;
+    private ForkJoinPool pool;
+
+    private Map<String, ComputeKernel> kernelMap;
+    private Map<String, Integer> programMap;
+    private List<ComputeKernel> programs;
+    private Map<String, CpuImage> imageMap;
+    private Map<String, float[]> storageBufferMap;
+
+    // uniform values by slot, kernels read them by name so every program shares the slots
+    private Map<String, Integer> uniformSlotMap;
+    private int[] uintUniforms = new int[0];
+    private float[] floatUniforms = new float[0];
+    private Vector3f[] vector3fUniforms = new Vector3f[0];
+    private Matrix4f[] matrix4fUniforms = new Matrix4f[0];
+
+    private ComputeKernel currentProgram;
+
+    public JavaBackend() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public JavaBackend(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+
+        kernelMap = new HashMap<>();
+        programMap = new HashMap<>();
+        programs = new ArrayList<>();
+        imageMap = new HashMap<>();
+        storageBufferMap = new HashMap<>();
+        uniformSlotMap = new HashMap<>();
+    }
+
+    @Override
+    public void initialize(ShaderAppConfiguration shaderAppConfig) {
+        this.shaderAppConfig = shaderAppConfig;
+        logger.info("Initialized JavaBackend (parallelism {})", pool.getParallelism());
+    }
+
+    @Override
+    public void registerKernel(String filePath, ComputeKernel kernel) {
+        kernelMap.put(filePath, kernel);
+    }
+
+    @Override
+    public void createTexture(String name, PixelFormat format) {
+        CpuImage image = new CpuImage(shaderAppConfig.textureWidth(), shaderAppConfig.textureHeight(), format);
+        imageMap.put(name, image);
+        logger.debug("Created {} image {} ({} bytes)", format, name, image.byteSize());
+    }
+
+    @Override
+    public void copyTexture(String from, String to) {
+        imageMap.get(to).copyFrom(imageMap.get(from));
+    }
+
+    @Override
+    public void swapTextures(String first, String second) {
+        if (imageMap.get(first).format() != imageMap.get(second).format()) {
+            throw new IllegalArgumentException("Can't swap " + first + " and " + second + ", their formats differ");
+        }
+        imageMap.put(first, imageMap.put(second, imageMap.get(first)));
+    }
+
+    @Override
+    public void readTexture(String name, float[] destination) {
+        imageMap.get(name).read(destination);
+    }
+
+    @Override
+    public void readTexture(String name, ByteBuffer destination) {
+        imageMap.get(name).readBytes(destination);
+    }
+
+    @Override
+    public void writeTexture(String name, ByteBuffer texels) {
+        imageMap.get(name).writeBytes(texels);
+    }
+
+    @Override
+    public void addUniform(String name) {
+        uniformSlot(name);
+        logger.debug("Added uniform {}", name);
+    }
+
+    private int uniformSlot(String name) {
+        Integer slot = uniformSlotMap.get(name);
+        if (slot != null) {
+            return slot;
+        }
+
+        int newSlot = uniformSlotMap.size();
+        uniformSlotMap.put(name, newSlot);
+        uintUniforms = Arrays.copyOf(uintUniforms, newSlot + 1);
+        floatUniforms = Arrays.copyOf(floatUniforms, newSlot + 1);
+        vector3fUniforms = Arrays.copyOf(vector3fUniforms, newSlot + 1);
+        vector3fUniforms[newSlot] = new Vector3f();
+        matrix4fUniforms = Arrays.copyOf(matrix4fUniforms, newSlot + 1);
+        matrix4fUniforms[newSlot] = new Matrix4f();
+        return newSlot;
+    }
+
+    @Override
+    public int getUniform(String programName, String name) {
+        return uniformSlot(name);
+    }
+
+    @Override
+    public void setUIntUniform(String name, int value) {
+        setUIntUniform(uniformSlot(name), value);
+    }
+
+    @Override
+    public void setUIntUniform(int uniform, int value) {
+        uintUniforms[uniform] = value;
+    }
+
+    @Override
+    public void setFloatUniform(String name, float value) {
+        setFloatUniform(uniformSlot(name), value);
+    }
+
+    @Override
+    public void setFloatUniform(int uniform, float value) {
+        floatUniforms[uniform] = value;
+    }
+
+    @Override
+    public void setVector3fUniform(String name, Vector3f value) {
+        setVector3fUniform(uniformSlot(name), value);
+    }
+
+    @Override
+    public void setVector3fUniform(int uniform, Vector3f value) {
+        vector3fUniforms[uniform].set(value);
+    }
+
+    @Override
+    public void setMatrix4fUniform(String name, Matrix4f value) {
+        setMatrix4fUniform(uniformSlot(name), value);
+    }
+
+    @Override
+    public void setMatrix4fUniform(int uniform, Matrix4f value) {
+        matrix4fUniforms[uniform].set(value);
+    }
+
+    @Override
+    public void createStorageBuffer(String programName, String name, float[] data) {
+        storageBufferMap.put(name, data.clone());
+        logger.debug("Created {} storage buffer ({} bytes)", name, data.length * Float.BYTES);
+    }
+
+    @Override
+    public void createStorageBuffer(String programName, String name, FloatBuffer data) {
+        float[] copy = new float[data.remaining()];
+        data.duplicate().get(copy);
+        storageBufferMap.put(name, copy);
+        logger.debug("Created {} storage buffer ({} bytes)", name, copy.length * Float.BYTES);
+    }
+
+    @Override
+    public void updateStorageBuffer(String name, int index, float[] data) {
+        System.arraycopy(data, 0, storageBufferMap.get(name), index, data.length);
+    }
+
+    @Override
+    public void updateStorageBuffer(String name, float[] data, DirtyRanges ranges) {
+        float[] buffer = storageBufferMap.get(name);
+        for (int i = 0; i < ranges.size(); i++) {
+            System.arraycopy(data, ranges.getStart(i), buffer, ranges.getStart(i),
+                    ranges.getEnd(i) - ranges.getStart(i));
+        }
+    }
+
+    @Override
+    public long getStorageBufferSize(String name) {
+        return (long) storageBufferMap.get(name).length * Float.BYTES;
+    }
+
+    @Override
+    public void readStorageBuffer(String name, ByteBuffer destination) {
+        destination.asFloatBuffer().put(0, storageBufferMap.get(name));
+    }
+
+    // straight into the buffer the kernels use
+    @Override
+    public void writeStorageBuffer(String name, ByteBuffer data) {
+        float[] buffer = storageBufferMap.get(name);
+        if (data.remaining() != buffer.length * Float.BYTES) {
+            throw new IllegalArgumentException(
+                    "Expected " + buffer.length * Float.BYTES + " bytes for " + name + ", got " + data.remaining());
+        }
+        data.asFloatBuffer().get(0, buffer);
+    }
+
+    @Override
+    public void createComputeShader(String name, String filePath) {
+        ComputeKernel kernel = kernelMap.get(filePath);
+        if (kernel == null) {
+            logger.error("No kernel registered for {}", filePath);
+            return;
+        }
+
+        programMap.put(name, programs.size());
+        programs.add(kernel);
+        int[] workGroupSize = kernel.workGroupSize();
+        logger.debug("Created {} program from {}", name, kernel.getClass().getSimpleName());
+        logger.debug("  {} work group size: [x {}, y {}, z {}]", name, workGroupSize[0], workGroupSize[1],
+                workGroupSize[2]);
+    }
+
+    @Override
+    public int[] getWorkGroupSize(String name) {
+        return programs.get(getProgram(name)).workGroupSize();
+    }
+
+    @Override
+    public int getProgram(String name) {
+        Integer program = programMap.get(name);
+        return program == null ? -1 : program;
+    }
+
+    @Override
+    public void useProgram(String name) {
+        useProgram(name == null ? -1 : getProgram(name));
+    }
+
+    @Override
+    public void useProgram(int program) {
+        currentProgram = program < 0 ? null : programs.get(program);
+    }
+
+    @Override
+    public void runComputeShader(int x, int y, int z) {
+        if (currentProgram == null) {
+            logger.error("runComputeShader called without a program in use");
+            return;
+        }
+
+        int[] workGroupSize = currentProgram.workGroupSize();
+        int sizeX = x * workGroupSize[0];
+        int sizeY = y * workGroupSize[1];
+        int sizeZ = z * workGroupSize[2];
+        long invocations = (long) sizeX * sizeY * sizeZ;
+        if (invocations == 0) {
+            return;
+        }
+
+        currentProgram.prepare(this);
+
+        long grain = Math.max(1024, invocations / (pool.getParallelism() * 8L));
+        pool.invoke(new Dispatch(currentProgram, sizeX, sizeY, 0, invocations, grain));
+    }
+
+    @Override
+    public void beginFrame() {
+    }
+
+    @Override
+    public void endStep() {
+        // dispatches complete before runComputeShader returns
+    }
+
+    @Override
+    public void memoryBarrier(int barriers) {
+    }
+
+    @Override
+    public void display(String textureName) {
+    }
+
+    @Override
+    public void endFrame() {
+    }
+
+    @Override
+    public void dispose() {
+        pool.shutdown();
+    }
+
+    public CpuImage getImage(String name) {
+        return imageMap.get(name);
+    }
+
+    public float[] getStorageBuffer(String name) {
+        return storageBufferMap.get(name);
+    }
+
+    public int getUIntUniform(String name) {
+        return uintUniforms[uniformSlot(name)];
+    }
+
+    public float getFloatUniform(String name) {
+        return floatUniforms[uniformSlot(name)];
+    }
+
+    public Vector3f getVector3fUniform(String name) {
+        return vector3fUniforms[uniformSlot(name)];
+    }
+
+    public Matrix4f getMatrix4fUniform(String name) {
+        return matrix4fUniforms[uniformSlot(name)];
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    private static class Dispatch extends RecursiveAction {
+        private final ComputeKernel kernel;
+        private final int sizeX;
+        private final int sizeY;
+        private final long from;
+        private final long to;
+        private final long grain;
+
+        private Dispatch(ComputeKernel kernel, int sizeX, int sizeY, long from, long to, long grain) {
+            this.kernel = kernel;
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                long sizeXY = (long) sizeX * sizeY;
+                int x = (int) (from % sizeX);
+                int y = (int) ((from / sizeX) % sizeY);
+                int z = (int) (from / sizeXY);
+                for (long i = from; i < to; i++) {
+                    kernel.invoke(x, y, z);
+                    if (++x == sizeX) {
+                        x = 0;
+                        if (++y == sizeY) {
+                            y = 0;
+                            z++;
+                        }
+                    }
+                }
+                return;
+            }
+
+            long middle = (from + to) >>> 1;
+            invokeAll(new Dispatch(kernel, sizeX, sizeY, from, middle, grain),
+                    new Dispatch(kernel, sizeX, sizeY, middle, to, grain));
+        }
+    }
+
+}
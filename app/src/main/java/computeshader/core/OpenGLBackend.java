@@ -0,0 +1,804 @@
+package computeshader.core;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_PACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11.GL_RED;
+import static org.lwjgl.opengl.GL11.GL_UNPACK_ALIGNMENT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glPixelStorei;
+import static org.lwjgl.opengl.GL11.glTexSubImage2D;
+import static org.lwjgl.opengl.GL15C.glGetBufferSubData;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+import static org.lwjgl.opengl.GL30.GL_RED_INTEGER;
+import static org.lwjgl.opengl.GL42.GL_BUFFER_UPDATE_BARRIER_BIT;
+import static org.lwjgl.opengl.GL11.GL_NEAREST;
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_RGBA8;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glDrawArrays;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL11.GL_RENDERER;
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+import static org.lwjgl.opengl.GL11.GL_VENDOR;
+import static org.lwjgl.opengl.GL11.GL_VERSION;
+import static org.lwjgl.opengl.GL11.glGetString;
+import static org.lwjgl.opengl.GL11.glGetTexImage;
+import static org.lwjgl.opengl.GL15C.GL_DYNAMIC_COPY;
+import static org.lwjgl.opengl.GL15C.GL_READ_WRITE;
+import static org.lwjgl.opengl.GL15C.glBindBuffer;
+import static org.lwjgl.opengl.GL15C.glBufferData;
+import static org.lwjgl.opengl.GL15C.glBufferSubData;
+import static org.lwjgl.opengl.GL15C.glGenBuffers;
+import static org.lwjgl.opengl.GL20.GL_COMPILE_STATUS;
+import static org.lwjgl.opengl.GL20.GL_FRAGMENT_SHADER;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20.GL_VERTEX_SHADER;
+import static org.lwjgl.opengl.GL20.glAttachShader;
+import static org.lwjgl.opengl.GL20.glCompileShader;
+import static org.lwjgl.opengl.GL20.glCreateProgram;
+import static org.lwjgl.opengl.GL20.glCreateShader;
+import static org.lwjgl.opengl.GL20.glGetProgramInfoLog;
+import static org.lwjgl.opengl.GL20.glGetProgrami;
+import static org.lwjgl.opengl.GL20.glGetProgramiv;
+import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
+import static org.lwjgl.opengl.GL20.glGetShaderi;
+import static org.lwjgl.opengl.GL20.glLinkProgram;
+import static org.lwjgl.opengl.GL20.glShaderSource;
+import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL20C.glGetUniformi;
+import static org.lwjgl.opengl.GL20C.glUniform1f;
+import static org.lwjgl.opengl.GL20C.glUniform3f;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.GL_R16F;
+import static org.lwjgl.opengl.GL30.GL_R32UI;
+import static org.lwjgl.opengl.GL30.GL_RGBA16F;
+import static org.lwjgl.opengl.GL30.GL_RGBA32F;
+import static org.lwjgl.opengl.GL30.GL_RGBA_INTEGER;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL30C.glBindBufferBase;
+import static org.lwjgl.opengl.GL30C.glBindFragDataLocation;
+import static org.lwjgl.opengl.GL30C.glBindVertexArray;
+import static org.lwjgl.opengl.GL30C.glMapBufferRange;
+import static org.lwjgl.opengl.GL30C.glUniform1ui;
+import static org.lwjgl.opengl.GL33.glBindSampler;
+import static org.lwjgl.opengl.GL33.glGenSamplers;
+import static org.lwjgl.opengl.GL33.glSamplerParameteri;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_LENGTH;
+import static org.lwjgl.opengl.GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
+import static org.lwjgl.opengl.GL41.glGetProgramBinary;
+import static org.lwjgl.opengl.GL41.glProgramBinary;
+import static org.lwjgl.opengl.GL41.glProgramParameteri;
+import static org.lwjgl.opengl.GL42.GL_SHADER_IMAGE_ACCESS_BARRIER_BIT;
+import static org.lwjgl.opengl.GL42.GL_TEXTURE_FETCH_BARRIER_BIT;
+import static org.lwjgl.opengl.GL42.GL_TEXTURE_UPDATE_BARRIER_BIT;
+import static org.lwjgl.opengl.GL42.glTexStorage2D;
+import static org.lwjgl.opengl.GL42C.glBindImageTexture;
+import static org.lwjgl.opengl.GL42C.glMemoryBarrier;
+import static org.lwjgl.opengl.GL43.GL_ACTIVE_RESOURCES;
+import static org.lwjgl.opengl.GL43.GL_COMPUTE_SHADER;
+import static org.lwjgl.opengl.GL43.GL_COMPUTE_WORK_GROUP_SIZE;
+import static org.lwjgl.opengl.GL43.GL_LOCATION;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BARRIER_BIT;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BLOCK;
+import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
+import static org.lwjgl.opengl.GL43.GL_UNIFORM;
+import static org.lwjgl.opengl.GL43.glCopyImageSubData;
+import static org.lwjgl.opengl.GL43.glDispatchCompute;
+import static org.lwjgl.opengl.GL43.glGetProgramInterfacei;
+import static org.lwjgl.opengl.GL43.glGetProgramResourceName;
+import static org.lwjgl.opengl.GL43.glGetProgramResourceiv;
+import static org.lwjgl.opengl.GL43.glShaderStorageBlockBinding;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44C.glBufferStorage;
+import static org.lwjgl.system.MemoryUtil.memAlloc;
+import static org.lwjgl.system.MemoryUtil.memAllocFloat;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryStack;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+public class OpenGLBackend implements ComputeBackend {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final long PROGRAM_CACHE_BYTES = 64L << 20;
+
+    private ShaderAppConfiguration shaderAppConfig;
+
+    // what a compute program uses, reflected once when it is linked
+    private static final class Program {
+        private final int id;
+        private final int[] workGroupSize;
+        private final Map<String, Integer> uniformLocationMap = new HashMap<>();
+        // image units and the textures bound to them while the program is in use
+        private int[] imageUnits = new int[0];
+        private int[] imageTextures = new int[0];
+        private int[] imageFormats = new int[0];
+
+        private Program(int id, int[] workGroupSize) {
+            this.id = id;
+            this.workGroupSize = workGroupSize;
+        }
+    }
+
+    private Map<String, Integer> textureMap;
+    private Map<String, PixelFormat> textureFormatMap;
+    private int samplerId;
+    private int vertexArrayObjectId;
+    private Map<String, Integer> computeShaderMap;
+    private List<Program> programs;
+    private Program currentProgram;
+    // the program whose images are bound, images stay bound until another program needs its units
+    private Program imageProgram;
+    private Map<String, Integer> storageBufferMap;
+    private Map<String, FloatBuffer> mappedBufferMap;
+    private Map<String, Long> storageBufferSizeMap;
+    // one binding point per buffer name, shared by every program that declares the block
+    private Map<String, Integer> storageBindingMap;
+
+    private int displayShaderProgramId;
+
+    // null to always compile
+    private final ProgramCache programCache;
+    // vendor, renderer and version, part of every program cache key
+    private String driver;
+
+    // caches programs in -Dcomputeshader.programCache=<directory>, ~/.computeshader/programs by default, "none" to
+    // turn the cache off
+    public OpenGLBackend() {
+        this(defaultProgramCache());
+    }
+
+    public OpenGLBackend(ProgramCache programCache) {
+        this.programCache = programCache;
+
+        textureMap = new HashMap<>();
+        textureFormatMap = new HashMap<>();
+        computeShaderMap = new HashMap<>();
+        programs = new ArrayList<>();
+        storageBufferMap = new HashMap<>();
+        mappedBufferMap = new HashMap<>();
+        storageBufferSizeMap = new HashMap<>();
+        storageBindingMap = new HashMap<>();
+    }
+
+    private static ProgramCache defaultProgramCache() {
+        String directory = System.getProperty("computeshader.programCache",
+                Path.of(System.getProperty("user.home"), ".computeshader", "programs").toString());
+        if (directory.equals("none")) {
+            return null;
+        }
+
+        try {
+            return new DiskProgramCache(Path.of(directory), PROGRAM_CACHE_BYTES);
+        } catch (IOException e) {
+            logger.warn("Program cache disabled, could not open {}", directory, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void initialize(ShaderAppConfiguration shaderAppConfig) {
+        this.shaderAppConfig = shaderAppConfig;
+        driver = glGetString(GL_VENDOR) + "\n" + glGetString(GL_RENDERER) + "\n" + glGetString(GL_VERSION);
+        logger.info("OpenGL driver: {}", driver.replace('\n', ' '));
+
+        samplerId = glGenSamplers();
+        glSamplerParameteri(samplerId, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glSamplerParameteri(samplerId, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+
+        vertexArrayObjectId = glGenVertexArrays();
+
+        try {
+            createDisplayShader();
+        } catch (IOException | URISyntaxException e) {
+            logger.error("Exception caught when creating shaders!", e);
+        }
+    }
+
+    @Override
+    public void beginFrame() {
+        glMemoryBarrier(GL_SHADER_IMAGE_ACCESS_BARRIER_BIT);
+    }
+
+    @Override
+    public void endStep() {
+        glMemoryBarrier(GL_SHADER_IMAGE_ACCESS_BARRIER_BIT);
+    }
+
+    @Override
+    public void memoryBarrier(int barriers) {
+        int bits = 0;
+        if ((barriers & FrameGraph.IMAGE_ACCESS) != 0) {
+            bits |= GL_SHADER_IMAGE_ACCESS_BARRIER_BIT;
+        }
+        if ((barriers & FrameGraph.STORAGE_BUFFER) != 0) {
+            bits |= GL_SHADER_STORAGE_BARRIER_BIT;
+        }
+        if ((barriers & FrameGraph.TEXTURE_FETCH) != 0) {
+            bits |= GL_TEXTURE_FETCH_BARRIER_BIT;
+        }
+        glMemoryBarrier(bits);
+    }
+
+    @Override
+    public void display(String textureName) {
+        glUseProgram(displayShaderProgramId);
+        {
+            glBindVertexArray(vertexArrayObjectId);
+            glBindTexture(GL_TEXTURE_2D, textureMap.get(textureName));
+            glBindSampler(0, samplerId);
+            glDrawArrays(GL_TRIANGLES, 0, 3);
+            glBindSampler(0, 0);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            glBindVertexArray(0);
+        }
+        glUseProgram(0);
+    }
+
+    @Override
+    public void endFrame() {
+        if (imageProgram != null) {
+            int[] units = imageProgram.imageUnits;
+            for (int i = 0; i < units.length; i++) {
+                glBindImageTexture(units[i], 0, 0, false, 0, GL_READ_WRITE, GL_RGBA32F);
+            }
+            imageProgram = null;
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    @Override
+    public FrameProfiler.GpuTimer createGpuTimer(int maxSections) {
+        return new OpenGLTimer(maxSections);
+    }
+
+    @Override
+    public void createTexture(String name, PixelFormat format) {
+        int textureId = glGenTextures();
+
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glTexStorage2D(GL_TEXTURE_2D, 1, internalFormat(format), shaderAppConfig.textureWidth(),
+                shaderAppConfig.textureHeight());
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        logger.debug("Created {} texture {} (id {})", format, name, textureId);
+        textureMap.put(name, textureId);
+        textureFormatMap.put(name, format);
+    }
+
+    private static int internalFormat(PixelFormat format) {
+        switch (format) {
+        case R32UI:
+            return GL_R32UI;
+        case R16F:
+            return GL_R16F;
+        case RGBA16F:
+            return GL_RGBA16F;
+        case RGBA8:
+            return GL_RGBA8;
+        case RGBA32F:
+            return GL_RGBA32F;
+        default:
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    // the client side layout of a format, what glGetTexImage and glTexSubImage2D move without converting
+    private static int[] clientFormat(PixelFormat format) {
+        switch (format) {
+        case R32UI:
+            return new int[] { GL_RED_INTEGER, GL_UNSIGNED_INT };
+        case R16F:
+            return new int[] { GL_RED, GL_HALF_FLOAT };
+        case RGBA16F:
+            return new int[] { GL_RGBA, GL_HALF_FLOAT };
+        case RGBA8:
+            return new int[] { GL_RGBA, GL_UNSIGNED_BYTE };
+        case RGBA32F:
+            return new int[] { GL_RGBA, GL_FLOAT };
+        default:
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    @Override
+    public void copyTexture(String from, String to) {
+        glCopyImageSubData(textureMap.get(from), GL_TEXTURE_2D, 0, 0, 0, 0,
+                textureMap.get(to), GL_TEXTURE_2D, 0, 0, 0, 0,
+                shaderAppConfig.textureWidth(), shaderAppConfig.textureHeight(), 1);
+    }
+
+    @Override
+    public void swapTextures(String first, String second) {
+        if (textureFormatMap.get(first) != textureFormatMap.get(second)) {
+            throw new IllegalArgumentException("Can't swap " + first + " and " + second + ", their formats differ");
+        }
+
+        int firstId = textureMap.get(first);
+        int secondId = textureMap.get(second);
+        textureMap.put(first, secondId);
+        textureMap.put(second, firstId);
+
+        // every program that uses the images by name now uses the other texture on the same unit
+        for (Program program : programs) {
+            int[] textures = program.imageTextures;
+            for (int i = 0; i < textures.length; i++) {
+                if (textures[i] == firstId) {
+                    textures[i] = secondId;
+                } else if (textures[i] == secondId) {
+                    textures[i] = firstId;
+                }
+            }
+        }
+
+        if (imageProgram != null) {
+            int[] units = imageProgram.imageUnits;
+            int[] textures = imageProgram.imageTextures;
+            int[] formats = imageProgram.imageFormats;
+            for (int i = 0; i < units.length; i++) {
+                glBindImageTexture(units[i], textures[i], 0, false, 0, GL_READ_WRITE, formats[i]);
+            }
+        }
+    }
+
+    @Override
+    public void readTexture(String name, float[] destination) {
+        glMemoryBarrier(GL_TEXTURE_UPDATE_BARRIER_BIT);
+        glBindTexture(GL_TEXTURE_2D, textureMap.get(name));
+        if (textureFormatMap.get(name).isInteger()) {
+            // integer textures can only be read as integers
+            int[] values = new int[destination.length];
+            glGetTexImage(GL_TEXTURE_2D, 0, GL_RGBA_INTEGER, GL_UNSIGNED_INT, values);
+            for (int i = 0; i < values.length; i++) {
+                destination[i] = Integer.toUnsignedLong(values[i]);
+            }
+        } else {
+            glGetTexImage(GL_TEXTURE_2D, 0, GL_RGBA, GL_FLOAT, destination);
+        }
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    @Override
+    public void readTexture(String name, ByteBuffer destination) {
+        int[] client = clientFormat(textureFormatMap.get(name));
+        glMemoryBarrier(GL_TEXTURE_UPDATE_BARRIER_BIT);
+        // rows of single channel half textures aren't always a multiple of 4 bytes
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glBindTexture(GL_TEXTURE_2D, textureMap.get(name));
+        glGetTexImage(GL_TEXTURE_2D, 0, client[0], client[1], destination.duplicate().clear());
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glPixelStorei(GL_PACK_ALIGNMENT, 4);
+    }
+
+    @Override
+    public void writeTexture(String name, ByteBuffer texels) {
+        int[] client = clientFormat(textureFormatMap.get(name));
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glBindTexture(GL_TEXTURE_2D, textureMap.get(name));
+        glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, shaderAppConfig.textureWidth(), shaderAppConfig.textureHeight(),
+                client[0], client[1], texels);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+    }
+
+    // uniforms are reflected when a program is linked
+    @Override
+    public void addUniform(String name) {
+        logger.debug("Added uniform {}", name);
+    }
+
+    @Override
+    public int getUniform(String programName, String name) {
+        return programs.get(getProgram(programName)).uniformLocationMap.getOrDefault(name, -1);
+    }
+
+    private int location(String name) {
+        return currentProgram == null ? -1 : currentProgram.uniformLocationMap.getOrDefault(name, -1);
+    }
+
+    @Override
+    public void setUIntUniform(String name, int value) {
+        setUIntUniform(location(name), value);
+    }
+
+    @Override
+    public void setUIntUniform(int uniform, int value) {
+        glUniform1ui(uniform, value);
+    }
+
+    @Override
+    public void setFloatUniform(String name, float value) {
+        setFloatUniform(location(name), value);
+    }
+
+    @Override
+    public void setFloatUniform(int uniform, float value) {
+        glUniform1f(uniform, value);
+    }
+
+    @Override
+    public void setVector3fUniform(String name, Vector3f value) {
+        setVector3fUniform(location(name), value);
+    }
+
+    @Override
+    public void setVector3fUniform(int uniform, Vector3f value) {
+        glUniform3f(uniform, value.x, value.y, value.z);
+    }
+
+    @Override
+    public void setMatrix4fUniform(String name, Matrix4f value) {
+        setMatrix4fUniform(location(name), value);
+    }
+
+    @Override
+    public void setMatrix4fUniform(int uniform, Matrix4f value) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            FloatBuffer buffer = value.get(stack.mallocFloat(16));
+            glUniformMatrix4fv(uniform, false, buffer);
+        }
+    }
+
+    @Override
+    public void createStorageBuffer(String programName, String name, float[] data) {
+        createStorageBuffer(programName, name, data.length * Float.BYTES,
+                () -> glBufferData(GL_SHADER_STORAGE_BUFFER, data, GL_DYNAMIC_COPY));
+    }
+
+    @Override
+    public void createStorageBuffer(String programName, String name, FloatBuffer data) {
+        if (data.isDirect()) {
+            createStorageBuffer(programName, name, data.remaining() * Float.BYTES,
+                    () -> glBufferData(GL_SHADER_STORAGE_BUFFER, data, GL_DYNAMIC_COPY));
+        } else {
+            float[] copy = new float[data.remaining()];
+            data.duplicate().get(copy);
+            createStorageBuffer(programName, name, copy);
+        }
+    }
+
+    // upload fills the buffer bound to GL_SHADER_STORAGE_BUFFER, programs find it by block name so any program
+    // that declares the block sees it
+    private void createStorageBuffer(String programName, String name, long bytes, Runnable upload) {
+        int bufferId = glGenBuffers();
+
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferId);
+        upload.run();
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, storageBinding(name), bufferId);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+
+        logger.debug("Created {} storage buffer (id {}, binding {}, {} bytes)", name, bufferId, storageBinding(name),
+                bytes);
+        storageBufferMap.put(name, bufferId);
+        storageBufferSizeMap.put(name, bytes);
+    }
+
+    private int storageBinding(String name) {
+        Integer binding = storageBindingMap.get(name);
+        if (binding == null) {
+            binding = storageBindingMap.size();
+            storageBindingMap.put(name, binding);
+        }
+        return binding;
+    }
+
+    @Override
+    public long getStorageBufferSize(String name) {
+        return storageBufferSizeMap.get(name);
+    }
+
+    @Override
+    public void readStorageBuffer(String name, ByteBuffer destination) {
+        glMemoryBarrier(GL_BUFFER_UPDATE_BARRIER_BIT);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, storageBufferMap.get(name));
+        glGetBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, destination.duplicate().clear());
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    @Override
+    public void writeStorageBuffer(String name, ByteBuffer data) {
+        if (data.remaining() != storageBufferSizeMap.get(name)) {
+            throw new IllegalArgumentException("Expected " + storageBufferSizeMap.get(name) + " bytes for " + name
+                    + ", got " + data.remaining());
+        }
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, storageBufferMap.get(name));
+        glBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, data);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    @Override
+    public void updateStorageBuffer(String name, int index, float[] data) {
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, storageBufferMap.get(name));
+        glBufferSubData(GL_SHADER_STORAGE_BUFFER, index * Float.BYTES, data);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    @Override
+    public void updateStorageBuffer(String name, float[] data, DirtyRanges ranges) {
+        FloatBuffer mapped = mappedBufferMap.get(name);
+        if (mapped != null) {
+            for (int i = 0; i < ranges.size(); i++) {
+                mapped.put(ranges.getStart(i), data, ranges.getStart(i), ranges.getEnd(i) - ranges.getStart(i));
+            }
+            return;
+        }
+
+        // one glBufferSubData over the span of the ranges
+        int start = ranges.getStart(0);
+        int end = ranges.getEnd(ranges.size() - 1);
+        FloatBuffer buffer = memAllocFloat(end - start);
+        try {
+            buffer.put(0, data, start, end - start);
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, storageBufferMap.get(name));
+            glBufferSubData(GL_SHADER_STORAGE_BUFFER, start * Float.BYTES, buffer);
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        } finally {
+            memFree(buffer);
+        }
+    }
+
+    // persistently mapped and coherent, writes land in the buffer without a bind, upload call or barrier. a frame
+    // still in flight may see a new value, so only mapped ParameterBlocks come here. the others are created as
+    // storage buffers and take the glBufferSubData path, which the driver orders after the frames already queued
+    @Override
+    public void createParameterBuffer(String programName, String name, float[] data) {
+        createStorageBuffer(programName, name, data.length * Float.BYTES, () -> {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            glBufferStorage(GL_SHADER_STORAGE_BUFFER, data, flags);
+            ByteBuffer mapped = glMapBufferRange(GL_SHADER_STORAGE_BUFFER, 0, data.length * Float.BYTES, flags);
+            mappedBufferMap.put(name, mapped.order(ByteOrder.nativeOrder()).asFloatBuffer());
+        });
+    }
+
+    @Override
+    public void createComputeShader(String name, String filePath) {
+        int computeProgramShaderId = glCreateProgram();
+        logger.debug("Created {} program (id {})", name, computeProgramShaderId);
+
+        try {
+            String computeShaderSource = Files.readString(Path.of(getClass().getResource(filePath).toURI()));
+            for (String mismatch : PixelFormat.checkDeclarations(computeShaderSource, textureFormatMap)) {
+                logger.error("Image format mismatch in {}: {}", filePath, mismatch);
+            }
+            boolean linked = linkProgram(computeProgramShaderId, name, new String[] { computeShaderSource },
+                    programId -> {
+                        int shaderId = glCreateShader(GL_COMPUTE_SHADER);
+                        glShaderSource(shaderId, computeShaderSource);
+                        glCompileShader(shaderId);
+
+                        if (glGetShaderi(shaderId, GL_COMPILE_STATUS) == 0) {
+                            logger.error("Error compiling Shader code: {}", glGetShaderInfoLog(shaderId, 1024));
+                            return false;
+                        }
+
+                        glAttachShader(programId, shaderId);
+                        return true;
+                    });
+            if (!linked) {
+                return;
+            }
+        } catch (IOException | URISyntaxException e) {
+            logger.error("Exception caught when creating shaders!", e);
+            return;
+        }
+
+        IntBuffer workGroupSize = BufferUtils.createIntBuffer(3);
+        glGetProgramiv(computeProgramShaderId, GL_COMPUTE_WORK_GROUP_SIZE, workGroupSize);
+        Program program = new Program(computeProgramShaderId,
+                new int[] { workGroupSize.get(0), workGroupSize.get(1), workGroupSize.get(2) });
+        logger.debug("  {} work group size: [x {}, y {}, z {}]", name, program.workGroupSize[0],
+                program.workGroupSize[1], program.workGroupSize[2]);
+
+        List<Integer> imageUnits = new ArrayList<>();
+        List<Integer> imageTextures = new ArrayList<>();
+        List<Integer> imageFormats = new ArrayList<>();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer properties = stack.ints(GL_LOCATION);
+            IntBuffer location = stack.mallocInt(1);
+
+            int numUniforms = glGetProgramInterfacei(computeProgramShaderId, GL_UNIFORM, GL_ACTIVE_RESOURCES);
+            for (int i = 0; i < numUniforms; i++) {
+                String uniformName = glGetProgramResourceName(computeProgramShaderId, GL_UNIFORM, i);
+                glGetProgramResourceiv(computeProgramShaderId, GL_UNIFORM, i, properties, null, location);
+                if (location.get(0) < 0) {
+                    // a member of a block
+                    continue;
+                }
+
+                program.uniformLocationMap.put(uniformName, location.get(0));
+                Integer textureId = textureMap.get(uniformName);
+                if (textureId != null) {
+                    // image uniforms hold their layout (binding = n) unit
+                    imageUnits.add(glGetUniformi(computeProgramShaderId, location.get(0)));
+                    imageTextures.add(textureId);
+                    imageFormats.add(internalFormat(textureFormatMap.get(uniformName)));
+                }
+            }
+        }
+        program.imageUnits = imageUnits.stream().mapToInt(Integer::intValue).toArray();
+        program.imageTextures = imageTextures.stream().mapToInt(Integer::intValue).toArray();
+        program.imageFormats = imageFormats.stream().mapToInt(Integer::intValue).toArray();
+        logger.debug("  {} uniform locations: {}", name, program.uniformLocationMap);
+        logger.debug("  {} image units: {}", name, imageUnits);
+
+        int numBlocks = glGetProgramInterfacei(computeProgramShaderId, GL_SHADER_STORAGE_BLOCK, GL_ACTIVE_RESOURCES);
+        for (int i = 0; i < numBlocks; i++) {
+            String blockName = glGetProgramResourceName(computeProgramShaderId, GL_SHADER_STORAGE_BLOCK, i);
+            glShaderStorageBlockBinding(computeProgramShaderId, i, storageBinding(blockName));
+            logger.debug("  {} storage block {} at binding {}", name, blockName, storageBinding(blockName));
+        }
+
+        computeShaderMap.put(name, programs.size());
+        programs.add(program);
+    }
+
+    @Override
+    public int[] getWorkGroupSize(String name) {
+        return programs.get(getProgram(name)).workGroupSize;
+    }
+
+    @Override
+    public int getProgram(String name) {
+        Integer program = computeShaderMap.get(name);
+        return program == null ? -1 : program;
+    }
+
+    @Override
+    public void useProgram(String name) {
+        useProgram(name == null ? -1 : getProgram(name));
+    }
+
+    @Override
+    public void useProgram(int program) {
+        if (program < 0) {
+            currentProgram = null;
+            glUseProgram(0);
+            return;
+        }
+
+        currentProgram = programs.get(program);
+        glUseProgram(currentProgram.id);
+        if (imageProgram != currentProgram) {
+            int[] units = currentProgram.imageUnits;
+            int[] textures = currentProgram.imageTextures;
+            int[] formats = currentProgram.imageFormats;
+            for (int i = 0; i < units.length; i++) {
+                glBindImageTexture(units[i], textures[i], 0, false, 0, GL_READ_WRITE, formats[i]);
+            }
+            imageProgram = currentProgram;
+        }
+    }
+
+    @Override
+    public void runComputeShader(int x, int y, int z) {
+        glDispatchCompute(x, y, z);
+    }
+
+    private void createDisplayShader() throws IOException, URISyntaxException {
+        displayShaderProgramId = glCreateProgram();
+        logger.debug("Created DisplayShader program (id {})", displayShaderProgramId);
+
+        String displayVertShaderSource = Files
+                .readString(Path.of(getClass().getResource("/display.vert.glsl").toURI()));
+        String displayFragShaderSource = Files
+                .readString(Path.of(getClass().getResource("/display.frag.glsl").toURI()));
+
+        boolean linked = linkProgram(displayShaderProgramId, "DisplayShader",
+                new String[] { displayVertShaderSource, displayFragShaderSource }, programId -> {
+                    glAttachShader(programId, createDisplayShader(GL_VERTEX_SHADER, displayVertShaderSource));
+                    glAttachShader(programId, createDisplayShader(GL_FRAGMENT_SHADER, displayFragShaderSource));
+                    glBindFragDataLocation(programId, 0, "color");
+                    return true;
+                });
+        if (!linked) {
+            throw new IOException("Error linking DisplayShader");
+        }
+    }
+
+    private int createDisplayShader(int type, String source) throws IOException {
+        int displayShaderId = glCreateShader(type);
+        logger.debug("Created {} (id {})", type == GL_VERTEX_SHADER ? "DisplayVertexShader" : "DisplayFragmentShader",
+                displayShaderId);
+
+        glShaderSource(displayShaderId, source);
+        glCompileShader(displayShaderId);
+
+        if (glGetShaderi(displayShaderId, GL_COMPILE_STATUS) == 0) {
+            throw new IOException("Error compiling Shader code: " + glGetShaderInfoLog(displayShaderId, 1024));
+        }
+
+        return displayShaderId;
+    }
+
+    // attaches compiled shaders to the program, false if one didn't compile
+    @FunctionalInterface
+    private interface ProgramBuilder {
+        boolean attachShaders(int programId) throws IOException;
+    }
+
+    // links the program from a cached binary when the driver accepts it, otherwise compiles it and caches the result
+    private boolean linkProgram(int programId, String name, String[] sources, ProgramBuilder builder)
+            throws IOException {
+        String[] parts = new String[sources.length + 1];
+        parts[0] = driver;
+        System.arraycopy(sources, 0, parts, 1, sources.length);
+        String key = ProgramCache.key(parts);
+
+        if (programCache != null) {
+            ProgramCache.Binary binary = programCache.load(key);
+            if (binary != null) {
+                ByteBuffer buffer = memAlloc(binary.data().length);
+                try {
+                    buffer.put(0, binary.data());
+                    glProgramBinary(programId, binary.format(), buffer);
+                } finally {
+                    memFree(buffer);
+                }
+
+                if (glGetProgrami(programId, GL_LINK_STATUS) != 0) {
+                    logger.debug("Loaded {} from the program cache", name);
+                    return true;
+                }
+                logger.info("Driver rejected the cached {} binary, compiling it", name);
+                programCache.remove(key);
+            }
+            glProgramParameteri(programId, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+        }
+
+        if (!builder.attachShaders(programId)) {
+            return false;
+        }
+        glLinkProgram(programId);
+        if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
+            logger.error("Error linking {}: {}", name, glGetProgramInfoLog(programId));
+            return false;
+        }
+
+        if (programCache != null) {
+            int length = glGetProgrami(programId, GL_PROGRAM_BINARY_LENGTH);
+            if (length > 0) {
+                ByteBuffer buffer = memAlloc(length);
+                try (MemoryStack stack = MemoryStack.stackPush()) {
+                    IntBuffer format = stack.mallocInt(1);
+                    glGetProgramBinary(programId, null, format, buffer);
+                    byte[] data = new byte[length];
+                    buffer.get(0, data);
+                    programCache.store(key, new ProgramCache.Binary(format.get(0), data));
+                } finally {
+                    memFree(buffer);
+                }
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,84 @@
+package computeshader.core;
+
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL15.glGenQueries;
+import static org.lwjgl.opengl.GL15.glGetQueryObjecti;
+import static org.lwjgl.opengl.GL33.GL_TIMESTAMP;
+import static org.lwjgl.opengl.GL33.glGetQueryObjecti64;
+import static org.lwjgl.opengl.GL33.glQueryCounter;
+
+import java.util.Arrays;
+
+// GL timestamp queries for FrameProfiler sections, kept FRAMES_IN_FLIGHT frames deep so reading them never stalls.
+// every run of a section in a frame gets its own pair of queries, the pairs grow to the most runs a frame has seen
+class OpenGLTimer implements FrameProfiler.GpuTimer {
+    private static final int FRAMES_IN_FLIGHT = 4;
+
+    private final int maxSections;
+    // begin and end query of every run, per frame and section
+    private final int[][] queries;
+    private final int[] runs;
+    private int frame;
+
+    OpenGLTimer(int maxSections) {
+        this.maxSections = maxSections;
+        queries = new int[FRAMES_IN_FLIGHT * maxSections][];
+        runs = new int[FRAMES_IN_FLIGHT * maxSections];
+
+        int[] initial = new int[queries.length * 2];
+        glGenQueries(initial);
+        for (int slot = 0; slot < queries.length; slot++) {
+            queries[slot] = Arrays.copyOfRange(initial, 2 * slot, 2 * slot + 2);
+        }
+    }
+
+    @Override
+    public void begin(int section) {
+        int slot = frame * maxSections + section;
+        int run = runs[slot];
+        if (2 * run == queries[slot].length) {
+            int[] more = new int[queries[slot].length];
+            glGenQueries(more);
+            int[] grown = Arrays.copyOf(queries[slot], 2 * more.length);
+            System.arraycopy(more, 0, grown, more.length, more.length);
+            queries[slot] = grown;
+        }
+        glQueryCounter(queries[slot][2 * run], GL_TIMESTAMP);
+    }
+
+    @Override
+    public void end(int section) {
+        int slot = frame * maxSections + section;
+        glQueryCounter(queries[slot][2 * runs[slot] + 1], GL_TIMESTAMP);
+        runs[slot]++;
+    }
+
+    // moves to the oldest frame and records the sum of every run of its sections, a section whose last query still
+    // isn't ready is skipped. the GPU executes the runs in order, so the earlier ones are ready too
+    @Override
+    public void collect(FrameProfiler profiler) {
+        frame = (frame + 1) % FRAMES_IN_FLIGHT;
+        for (int section = 0; section < maxSections; section++) {
+            int slot = frame * maxSections + section;
+            int count = runs[slot];
+            if (count == 0) {
+                continue;
+            }
+
+            runs[slot] = 0;
+            int[] pairs = queries[slot];
+            if (glGetQueryObjecti(pairs[2 * count - 1], GL_QUERY_RESULT_AVAILABLE) == 0) {
+                continue;
+            }
+
+            long elapsed = 0;
+            for (int run = 0; run < count; run++) {
+                elapsed += glGetQueryObjecti64(pairs[2 * run + 1], GL_QUERY_RESULT)
+                        - glGetQueryObjecti64(pairs[2 * run], GL_QUERY_RESULT);
+            }
+            profiler.recordGpu(section, elapsed);
+        }
+    }
+
+}
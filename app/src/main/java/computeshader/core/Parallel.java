@@ -0,0 +1,59 @@
+package computeshader.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// fork-join helpers for splitting index ranges across cores
+public final class Parallel {
+
+    @FunctionalInterface
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private Parallel() {
+    }
+
+    public static void forRange(ForkJoinPool pool, int from, int to, RangeBody body) {
+        forRange(pool, from, to, grain(pool, to - from), body);
+    }
+
+    public static void forRange(ForkJoinPool pool, int from, int to, int grain, RangeBody body) {
+        if (to <= from) {
+            return;
+        }
+
+        pool.invoke(new RangeTask(body, from, to, Math.max(1, grain)));
+    }
+
+    // roughly eight chunks per worker so stragglers can be stolen
+    public static int grain(ForkJoinPool pool, int n) {
+        return Math.max(1, n / (pool.getParallelism() * 8));
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private final RangeBody body;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        private RangeTask(RangeBody body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(body, from, middle, grain), new RangeTask(body, middle, to, grain));
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package computeshader.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// an array of records with named float fields backing a storage buffer, writes mark dirty ranges that are uploaded
+// together when the block is flushed. fields are declared like the GLSL struct, "albedo[3]" for arrays
+public class ParameterBlock {
+    // 64 bytes, roughly what another glBufferSubData call costs in copying
+    private static final int MERGE_GAP = 16;
+
+    private final String name;
+    private final float[] data;
+    private final int stride;
+    private final Map<String, Integer> fieldMap = new HashMap<>();
+    private final DirtyRanges dirtyRanges = new DirtyRanges(MERGE_GAP);
+    private boolean mapped;
+
+    public ParameterBlock(String name, int count, String... fields) {
+        this(name, null, count, fields);
+    }
+
+    // wraps data without copying, changes made to it directly are uploaded after markDirty
+    public ParameterBlock(String name, float[] data, String... fields) {
+        this(name, data, -1, fields);
+    }
+
+    private ParameterBlock(String name, float[] data, int count, String... fields) {
+        this.name = name;
+
+        int offset = 0;
+        for (String field : fields) {
+            int size = 1;
+            int bracket = field.indexOf('[');
+            if (bracket >= 0) {
+                size = Integer.parseInt(field.substring(bracket + 1, field.indexOf(']')));
+                field = field.substring(0, bracket);
+            }
+            if (fieldMap.put(field, offset) != null) {
+                throw new IllegalArgumentException("Duplicate field " + field + " in " + name);
+            }
+            offset += size;
+        }
+        this.stride = offset;
+
+        if (data == null) {
+            data = new float[count * stride];
+        } else if (data.length % stride != 0) {
+            throw new IllegalArgumentException(name + " has " + data.length + " floats, not a multiple of " + stride);
+        }
+        this.data = data;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return data.length / stride;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    // offset of a field in a record, look it up once and write with the offset
+    public int field(String field) {
+        Integer offset = fieldMap.get(field);
+        if (offset == null) {
+            throw new IllegalArgumentException("No field " + field + " in " + name);
+        }
+        return offset;
+    }
+
+    public float get(int record, int field) {
+        return data[record * stride + field];
+    }
+
+    public void set(int record, int field, float value) {
+        int index = record * stride + field;
+        data[index] = value;
+        dirtyRanges.add(index, index + 1);
+    }
+
+    public void set(int record, int field, float[] values) {
+        int index = record * stride + field;
+        System.arraycopy(values, 0, data, index, values.length);
+        dirtyRanges.add(index, index + values.length);
+    }
+
+    // single record blocks like ShaderParameters
+    public void set(String field, float value) {
+        set(0, field(field), value);
+    }
+
+    public void set(String field, float[] values) {
+        set(0, field(field), values);
+    }
+
+    public void markDirty(int record, int field, int size) {
+        int index = record * stride + field;
+        dirtyRanges.add(index, index + size);
+    }
+
+    public void markDirty() {
+        dirtyRanges.add(0, data.length);
+    }
+
+    // written in place with no synchronization on backends that map parameter buffers, a frame in flight can see a
+    // flush land halfway. only for blocks whose values are read independently, not ones that have to stay consistent
+    // with another buffer like the BVH nodes and the spheres they bound
+    public void setMapped(boolean mapped) {
+        this.mapped = mapped;
+    }
+
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    public float[] data() {
+        return data;
+    }
+
+    public DirtyRanges getDirtyRanges() {
+        return dirtyRanges;
+    }
+
+    // one upload of every dirty range, false if nothing changed
+    public boolean flush(ComputeBackend backend) {
+        if (dirtyRanges.isEmpty()) {
+            return false;
+        }
+
+        backend.updateStorageBuffer(name, data, dirtyRanges);
+        dirtyRanges.clear();
+        return true;
+    }
+
+}
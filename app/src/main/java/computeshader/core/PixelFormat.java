@@ -0,0 +1,164 @@
+package computeshader.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// texel formats of textures and CpuImages, named after the GLSL layout qualifier of the image declarations
+public enum PixelFormat {
+    R32UI("r32ui", 1, 4),
+    R16F("r16f", 1, 2),
+    RGBA16F("rgba16f", 4, 8),
+    RGBA8("rgba8", 4, 4),
+    RGBA32F("rgba32f", 4, 16);
+
+    // layout (binding = 0, rgba32f) uniform image2D Name;
+    private static final Pattern IMAGE_DECLARATION = Pattern
+            .compile("layout\\s*\\(([^)]*)\\)\\s*(?:\\w+\\s+)*?uniform\\s+(?:\\w+\\s+)*?([iu]?image2D)\\s+(\\w+)\\s*;");
+
+    // every half as a float, decoding is a lookup
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int bits = 0; bits < HALF_TO_FLOAT.length; bits++) {
+            HALF_TO_FLOAT[bits] = decodeHalf(bits);
+        }
+    }
+
+    private final String qualifier;
+    private final int channels;
+    private final int bytesPerPixel;
+
+    PixelFormat(String qualifier, int channels, int bytesPerPixel) {
+        this.qualifier = qualifier;
+        this.channels = channels;
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    public String getQualifier() {
+        return qualifier;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    // unsigned integer texels, declared as uimage2D
+    public boolean isInteger() {
+        return this == R32UI;
+    }
+
+    public static PixelFormat fromQualifier(String qualifier) {
+        for (PixelFormat format : values()) {
+            if (format.qualifier.equals(qualifier)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    // image uniforms of GLSL source by name, with their format qualifier and image type
+    public static Map<String, String[]> imageDeclarations(String source) {
+        Map<String, String[]> declarations = new LinkedHashMap<>();
+        Matcher matcher = IMAGE_DECLARATION.matcher(source);
+        while (matcher.find()) {
+            String qualifier = null;
+            for (String part : matcher.group(1).split(",")) {
+                if (fromQualifier(part.trim()) != null) {
+                    qualifier = part.trim();
+                }
+            }
+            declarations.put(matcher.group(3), new String[] { qualifier, matcher.group(2) });
+        }
+        return declarations;
+    }
+
+    // a message for every image of the source whose declaration doesn't match the format of its texture, images
+    // without a texture are left alone
+    public static List<String> checkDeclarations(String source, Map<String, PixelFormat> formats) {
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, String[]> declaration : imageDeclarations(source).entrySet()) {
+            PixelFormat format = formats.get(declaration.getKey());
+            if (format == null) {
+                continue;
+            }
+
+            String qualifier = declaration.getValue()[0];
+            String type = declaration.getValue()[1];
+            String expectedType = format.isInteger() ? "uimage2D" : "image2D";
+            if (!format.qualifier.equals(qualifier) || !type.equals(expectedType)) {
+                mismatches.add(declaration.getKey() + " is declared as " + qualifier + " " + type + " but the texture is "
+                        + format.qualifier + " (" + expectedType + ")");
+            }
+        }
+        return mismatches;
+    }
+
+    // IEEE half precision, rounding to nearest even like the GL conversion
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff) {
+            // infinity stays infinity, NaN stays a quiet NaN
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+
+        int half;
+        int remainder;
+        int halfway;
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            // subnormal, the implicit bit becomes part of the mantissa
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            half = mantissa >> shift;
+            remainder = mantissa & ((1 << shift) - 1);
+            halfway = 1 << (shift - 1);
+        } else {
+            half = (halfExponent << 10) | (mantissa >> 13);
+            remainder = mantissa & 0x1fff;
+            halfway = 0x1000;
+        }
+
+        // a carry out of the mantissa moves to the next exponent, or to infinity
+        if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    static float fromHalf(short half) {
+        return HALF_TO_FLOAT[half & 0xffff];
+    }
+
+    private static float decodeHalf(int bits) {
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign != 0 ? -value : value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+}
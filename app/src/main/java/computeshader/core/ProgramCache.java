@@ -0,0 +1,39 @@
+package computeshader.core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// linked program binaries (glGetProgramBinary output) by key, a binary is only valid for the driver that made it
+public interface ProgramCache {
+
+    record Binary(int format, byte[] data) {
+    }
+
+    // null when there is no usable entry
+    Binary load(String key);
+
+    void store(String key, Binary binary);
+
+    // for entries the driver rejected
+    void remove(String key);
+
+    // SHA-256 of the parts, callers pass the driver strings, defines and every shader source
+    static String key(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                // length prefixed so ("ab", "c") and ("a", "bc") differ
+                digest.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                        (byte) (bytes.length >>> 8), (byte) bytes.length });
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
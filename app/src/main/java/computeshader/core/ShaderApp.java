@@ -1,364 +1,556 @@
 package computeshader.core;
 
-import static org.lwjgl.glfw.GLFW.GLFW_CONTEXT_VERSION_MAJOR;
-import static org.lwjgl.glfw.GLFW.GLFW_CONTEXT_VERSION_MINOR;
-import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
-import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
-import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_CORE_PROFILE;
-import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_FORWARD_COMPAT;
-import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_PROFILE;
-import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
-import static org.lwjgl.glfw.GLFW.GLFW_RESIZABLE;
-import static org.lwjgl.glfw.GLFW.GLFW_TRUE;
-import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
-import static org.lwjgl.glfw.GLFW.glfwGetTime;
-import static org.lwjgl.glfw.GLFW.glfwSetKeyCallback;
-import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
-import static org.lwjgl.glfw.GLFW.glfwWindowHint;
-import static org.lwjgl.opengl.GL11.GL_BLEND;
-import static org.lwjgl.opengl.GL11.GL_GREATER;
-import static org.lwjgl.opengl.GL11.GL_NEAREST;
-import static org.lwjgl.opengl.GL11.GL_ONE_MINUS_SRC_ALPHA;
-import static org.lwjgl.opengl.GL11.GL_SRC_ALPHA;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
-import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
-import static org.lwjgl.opengl.GL11.glAlphaFunc;
-import static org.lwjgl.opengl.GL11.glBindTexture;
-import static org.lwjgl.opengl.GL11.glBlendFunc;
-import static org.lwjgl.opengl.GL11.glDrawArrays;
-import static org.lwjgl.opengl.GL11.glEnable;
-import static org.lwjgl.opengl.GL11.glGenTextures;
-import static org.lwjgl.opengl.GL15C.GL_DYNAMIC_COPY;
-import static org.lwjgl.opengl.GL15C.GL_READ_WRITE;
-import static org.lwjgl.opengl.GL15C.glBindBuffer;
-import static org.lwjgl.opengl.GL15C.glBufferData;
-import static org.lwjgl.opengl.GL15C.glBufferSubData;
-import static org.lwjgl.opengl.GL15C.glGenBuffers;
-import static org.lwjgl.opengl.GL20.GL_COMPILE_STATUS;
-import static org.lwjgl.opengl.GL20.GL_FRAGMENT_SHADER;
-import static org.lwjgl.opengl.GL20.GL_VERTEX_SHADER;
-import static org.lwjgl.opengl.GL20.glAttachShader;
-import static org.lwjgl.opengl.GL20.glCompileShader;
-import static org.lwjgl.opengl.GL20.glCreateProgram;
-import static org.lwjgl.opengl.GL20.glCreateShader;
-import static org.lwjgl.opengl.GL20.glGetProgramiv;
-import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
-import static org.lwjgl.opengl.GL20.glGetShaderi;
-import static org.lwjgl.opengl.GL20.glGetUniformLocation;
-import static org.lwjgl.opengl.GL20.glGetUniformiv;
-import static org.lwjgl.opengl.GL20.glLinkProgram;
-import static org.lwjgl.opengl.GL20.glShaderSource;
-import static org.lwjgl.opengl.GL20.glUniform3fv;
-import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
-import static org.lwjgl.opengl.GL20.glUseProgram;
-import static org.lwjgl.opengl.GL20C.glUniform1f;
-import static org.lwjgl.opengl.GL30.GL_RGBA32F;
-import static org.lwjgl.opengl.GL30.glGenVertexArrays;
-import static org.lwjgl.opengl.GL30C.glBindBufferBase;
-import static org.lwjgl.opengl.GL30C.glBindFragDataLocation;
-import static org.lwjgl.opengl.GL30C.glBindVertexArray;
-import static org.lwjgl.opengl.GL30C.glUniform1ui;
-import static org.lwjgl.opengl.GL33.glBindSampler;
-import static org.lwjgl.opengl.GL33.glGenSamplers;
-import static org.lwjgl.opengl.GL33.glSamplerParameteri;
-import static org.lwjgl.opengl.GL42.GL_SHADER_IMAGE_ACCESS_BARRIER_BIT;
-import static org.lwjgl.opengl.GL42.glTexStorage2D;
-import static org.lwjgl.opengl.GL42C.glBindImageTexture;
-import static org.lwjgl.opengl.GL42C.glMemoryBarrier;
-import static org.lwjgl.opengl.GL43.GL_COMPUTE_SHADER;
-import static org.lwjgl.opengl.GL43.GL_COMPUTE_WORK_GROUP_SIZE;
-import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BLOCK;
-import static org.lwjgl.opengl.GL43.GL_SHADER_STORAGE_BUFFER;
-import static org.lwjgl.opengl.GL43.glCopyImageSubData;
-import static org.lwjgl.opengl.GL43.glDispatchCompute;
-import static org.lwjgl.opengl.GL43.glGetProgramResourceIndex;
-import static org.lwjgl.opengl.GL43.glShaderStorageBlockBinding;
-
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.lwjgl.BufferUtils;
-import org.lwjgl.system.MemoryStack;
 
+import imgui.ImGui;
 import imgui.app.Application;
-import imgui.app.Configuration;
 
-public class ShaderApp extends Application {
+public class ShaderApp {
     private static final Logger logger = LogManager.getLogger();
 
     private ShaderAppConfiguration shaderAppConfig;
+    private ComputeBackend backend;
+    private ShaderWindow window;
 
     private Runnable configuration;
     private Runnable preRun;
+    private Runnable update;
     private Runnable gui;
     private List<Runnable> processSteps;
+    private List<ParameterBlock> parameterBlocks = new ArrayList<>();
+    // everything a snapshot holds, in creation order
+    private Map<String, PixelFormat> textures = new LinkedHashMap<>();
+    private Set<String> storageBuffers = new LinkedHashSet<>();
+    private Path snapshotFile;
+    private Map<String, ImagePair> imagePairs = new HashMap<>();
+    // steps declared with step() run in the order of the compiled plan, with its barriers
+    private FrameGraph frameGraph = new FrameGraph();
+    private FrameGraph.Plan framePlan;
+    private int[] planSections = new int[0];
+    // with a fixed timestep the steps that aren't perFrame run once per tick
+    private FixedTimestep timestep;
+    private FrameGraph.TickedPlan tickedPlan;
+    private int[] tickSections = new int[0];
+    private int[] perFrameSections = new int[0];
+    private long lastFrameTime;
+    private int headlessTicksPerFrame = 1;
 
-    private Map<String, Integer> textureMap;
-    private Map<String, Integer> textureBindingMap;
     private String displayTexture;
-    private int samplerId;
-    private int vertexArrayObjectId;
-    private Map<String, Integer> computeShaderMap;
-    private Map<String, Integer> uniformLocationMap;
-    private Map<String, Integer> storageBufferMap;
-    private Map<String, int[]> workGroupSizeMap;
-
-    private int displayShaderProgramId;
+    private long startTime;
+
+    private FrameExporter exporter;
+    private int exportInterval;
+    private long frameCount;
+
+    // sections are registered when steps and copies are first seen, the frame loop only uses their ids
+    private FrameProfiler profiler = new FrameProfiler();
+    private int[] stepSections = new int[0];
+    private Map<String, Map<String, Integer>> copySections = new HashMap<>();
+    private int frameSection = profiler.section("frame");
+    private int updateSection = profiler.section("update");
+    private int guiSection = profiler.section("gui");
+    private int uploadSection = profiler.section("upload");
+    private int exportSection = profiler.section("export");
+    private int displaySection = profiler.section("display");
+    private int ticksSection = profiler.section("ticks");
+    private Path timingsFile;
 
     public ShaderApp(ShaderAppConfiguration shaderAppConfig) {
+        this(shaderAppConfig, new OpenGLBackend());
+    }
+
+    public ShaderApp(ShaderAppConfiguration shaderAppConfig, ComputeBackend backend) {
         this.shaderAppConfig = shaderAppConfig;
+        this.backend = backend;
 
         configuration = () -> {
         };
         preRun = () -> {
         };
+        update = () -> {
+        };
         gui = () -> {
         };
         processSteps = new ArrayList<>();
 
-        textureMap = new HashMap<>();
-        textureBindingMap = new HashMap<>();
-        computeShaderMap = new HashMap<>();
-        uniformLocationMap = new HashMap<>();
-        storageBufferMap = new HashMap<>();
-        workGroupSizeMap = new HashMap<>();
+        String timings = System.getProperty("computeshader.timings");
+        if (timings != null) {
+            timingsFile = Path.of(timings);
+        }
+        String snapshot = System.getProperty("computeshader.snapshot");
+        if (snapshot != null) {
+            snapshotFile = Path.of(snapshot);
+        }
+
+        startTime = System.nanoTime();
+    }
+
+    public void launch() {
+        window = new ShaderWindow(this, shaderAppConfig);
+        Application.launch(window);
     }
 
-    @Override
-    public void configure(Configuration config) {
-        logger.info("Configuring ShaderApp with {}", shaderAppConfig);
-        config.setTitle(shaderAppConfig.title());
-        config.setWidth(shaderAppConfig.windowWidth);
-        config.setHeight(shaderAppConfig.windowHeight);
+    public void runHeadless(int frames) {
+        runHeadless(frames, 1);
+    }
 
-        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
-        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE);
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 4);
-        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 6);
-        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
-        glfwWindowHint(GLFW_RESIZABLE, GLFW_FALSE);
+    // as fast as possible: no clock, no budget, with a fixed timestep every frame runs ticksPerFrame ticks back to
+    // back and dropped ticks can't happen, runs with the same frames and ticks are the same
+    public void runHeadless(int frames, int ticksPerFrame) {
+        logger.info("Running {} headless with {} for {} frames", shaderAppConfig.title(),
+                backend.getClass().getSimpleName(), frames);
+        headlessTicksPerFrame = ticksPerFrame;
+        runConfiguration();
+        runPreRun();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            runFrame(false);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info("Ran {} frames in {} s ({} frames/s)", frames, seconds, frames / seconds);
+        if (timestep != null) {
+            logger.info("Ran {} ticks of {} s ({} ticks/s)", timestep.getTicks(), timestep.getTickSeconds(),
+                    timestep.getTicks() / seconds);
+        }
 
-        this.colorBg.set(0.0f, 0.0f, 0.0f, 1.0f);
+        runDispose();
+    }
 
+    void runConfiguration() {
         logger.info("Running 'configuration' step");
         configuration.run();
     }
 
-    @Override
-    public void preRun() {
-        // add shutdown hook
-        glfwSetKeyCallback(getHandle(), (window, key, scancode, action, mods) -> {
-            if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE) {
-                glfwSetWindowShouldClose(getHandle(), true);
-            }
-        });
-
-        glEnable(GL_BLEND);
-        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-        glAlphaFunc(GL_GREATER, 0.1f);
+    void runPreRun() {
+        backend.initialize(shaderAppConfig);
+        profiler.setGpuTimer(backend.createGpuTimer(FrameProfiler.MAX_SECTIONS));
 
         logger.info("Running 'preRun' step");
         preRun.run();
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                loadSnapshot(snapshotFile);
+            } catch (IOException e) {
+                logger.error("Exception caught when loading snapshot, starting fresh!", e);
+            }
+        }
+        if (timestep != null) {
+            logger.info("Tick plan: {}, frame plan: {}", getTickedPlan().tick(), getTickedPlan().frame());
+        } else if (!frameGraph.isEmpty()) {
+            logger.info("Frame plan: {}", getFramePlan());
+        }
+        startTime = System.nanoTime();
+        lastFrameTime = startTime;
+    }
 
-        samplerId = glGenSamplers();
-        glSamplerParameteri(samplerId, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glSamplerParameteri(samplerId, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+    void runFrame(boolean withGui) {
+        if (processSteps.isEmpty() && frameGraph.isEmpty()) {
+            return;
+        }
+
+        profiler.beginFrame();
+        profiler.begin(frameSection);
+
+        profiler.begin(updateSection);
+        update.run();
+        profiler.end(updateSection);
+
+        if (withGui) {
+            profiler.begin(guiSection);
+            gui.run();
+            timingsGui();
+            profiler.end(guiSection);
+        }
 
-        vertexArrayObjectId = glGenVertexArrays();
+        profiler.begin(uploadSection);
+        for (int i = 0; i < parameterBlocks.size(); i++) {
+            parameterBlocks.get(i).flush(backend);
+        }
+        profiler.end(uploadSection);
+
+        if (frameGraph.isEmpty()) {
+            backend.beginFrame();
+            for (int i = 0; i < processSteps.size(); i++) {
+                profiler.begin(stepSections[i]);
+                processSteps.get(i).run();
+                backend.endStep();
+                profiler.end(stepSections[i]);
+            }
+        } else if (timestep == null) {
+            runPlan(getFramePlan(), planSections);
+        } else {
+            profiler.begin(ticksSection);
+            runTicks(withGui);
+            profiler.end(ticksSection);
+            runPlan(getTickedPlan().frame(), perFrameSections);
+        }
 
-        try {
-            createDisplayShader();
-        } catch (IOException | URISyntaxException e) {
-            logger.error("Exception caught when creating shaders!", e);
+        if (exporter != null && frameCount % exportInterval == 0) {
+            profiler.begin(exportSection);
+            float[] buffer = exporter.acquire();
+            if (buffer != null) {
+                backend.readTexture(displayTexture, buffer);
+                exporter.submit(buffer);
+            }
+            profiler.end(exportSection);
         }
+        frameCount++;
+
+        profiler.begin(displaySection);
+        backend.display(displayTexture);
+        profiler.end(displaySection);
+        backend.endFrame();
+
+        profiler.end(frameSection);
+        profiler.endFrame();
     }
 
-    @Override
-    public void process() {
-        if (processSteps.isEmpty()) {
-            return;
+    private void runPlan(FrameGraph.Plan plan, int[] sections) {
+        for (int i = 0; i < plan.size(); i++) {
+            if (plan.barriers()[i] != 0) {
+                backend.memoryBarrier(plan.barriers()[i]);
+            }
+            profiler.begin(sections[i]);
+            plan.steps().get(i).getBody().run();
+            profiler.end(sections[i]);
+        }
+        if (plan.endBarriers() != 0) {
+            backend.memoryBarrier(plan.endBarriers());
+        }
+    }
+
+    // the ticks the wall clock made due since the last frame, while the budget lasts. headless runs don't look at the
+    // clock
+    private void runTicks(boolean windowed) {
+        long now = System.nanoTime();
+        int due = windowed ? timestep.advance(now - lastFrameTime) : headlessTicksPerFrame;
+        lastFrameTime = now;
+
+        FrameGraph.Plan plan = getTickedPlan().tick();
+        long start = System.nanoTime();
+        for (int tick = 0; tick < due; tick++) {
+            if (windowed && !timestep.withinBudget(System.nanoTime() - start)) {
+                break;
+            }
+            runPlan(plan, tickSections);
+            timestep.tick();
         }
+        if (windowed) {
+            timestep.endFrame();
+        }
+    }
+
+    private void timingsGui() {
+        ImGui.begin("Timings");
+        if (timestep != null) {
+            ImGui.text(String.format("ticks %d, dropped %d", timestep.getTicks(), timestep.getDroppedTicks()));
+        }
+        ImGui.text(profiler.hasGpuTimer() ? "p50 / p99 / max ms, CPU | GPU" : "p50 / p99 / max ms, CPU");
+        for (int i = 0; i < profiler.getNumSections(); i++) {
+            LatencyHistogram cpu = profiler.getCpu(i);
+            if (cpu.getCount() == 0) {
+                continue;
+            }
+
+            String text = String.format("%-24s %7.3f %7.3f %7.3f", profiler.getName(i), cpu.percentile(0.5) / 1e6,
+                    cpu.percentile(0.99) / 1e6, cpu.getMax() / 1e6);
+            LatencyHistogram gpu = profiler.getGpu(i);
+            if (gpu.getCount() > 0) {
+                text += String.format(" | %7.3f %7.3f %7.3f", gpu.percentile(0.5) / 1e6, gpu.percentile(0.99) / 1e6,
+                        gpu.getMax() / 1e6);
+            }
+            ImGui.text(text);
+        }
+        if (ImGui.button("Reset")) {
+            profiler.reset();
+        }
+        ImGui.end();
+    }
 
-        gui.run();
+    void runDispose() {
+        if (exporter != null) {
+            try {
+                exporter.close();
+            } catch (IOException e) {
+                logger.error("Exception caught when closing frame export!", e);
+            }
+        }
 
-        textureBindingMap.entrySet().forEach(entry -> {
-            glBindImageTexture(entry.getValue(), textureMap.get(entry.getKey()), 0, false, 0, GL_READ_WRITE,
-                    GL_RGBA32F);
-        });
+        for (int i = 0; i < profiler.getNumSections(); i++) {
+            LatencyHistogram cpu = profiler.getCpu(i);
+            if (cpu.getCount() > 0) {
+                logger.info("{}: p50 {} ms, p99 {} ms, max {} ms over {} frames", profiler.getName(i),
+                        cpu.percentile(0.5) / 1e6, cpu.percentile(0.99) / 1e6, cpu.getMax() / 1e6, cpu.getCount());
+            }
+        }
 
-        glMemoryBarrier(GL_SHADER_IMAGE_ACCESS_BARRIER_BIT);
-        processSteps.forEach(step -> {
-            step.run();
-            glMemoryBarrier(GL_SHADER_IMAGE_ACCESS_BARRIER_BIT);
-        });
+        if (snapshotFile != null) {
+            try {
+                saveSnapshot(snapshotFile);
+            } catch (IOException e) {
+                logger.error("Exception caught when saving snapshot!", e);
+            }
+        }
 
-        glUseProgram(displayShaderProgramId);
-        {
-            glBindVertexArray(vertexArrayObjectId);
-            glBindTexture(GL_TEXTURE_2D, textureMap.get(displayTexture));
-            glBindSampler(0, samplerId);
-            glDrawArrays(GL_TRIANGLES, 0, 3);
-            glBindSampler(0, 0);
-            glBindTexture(GL_TEXTURE_2D, 0);
-            glBindVertexArray(0);
+        if (timingsFile != null) {
+            try {
+                profiler.writeJson(timingsFile);
+                logger.info("Wrote timings to {}", timingsFile);
+            } catch (IOException e) {
+                logger.error("Exception caught when writing timings!", e);
+            }
         }
-        glUseProgram(0);
 
-        textureBindingMap.entrySet().forEach(entry -> {
-            glBindImageTexture(entry.getValue(), 0, 0, false, 0, 0, 0);
-        });
+        backend.dispose();
     }
 
-    public void createTexture(String name) {
-        int textureId = glGenTextures();
+    // writes the timing histograms as JSON when the app exits, also set by -Dcomputeshader.timings=<file>
+    public void setTimingsFile(Path timingsFile) {
+        this.timingsFile = timingsFile;
+    }
 
-        glBindTexture(GL_TEXTURE_2D, textureId);
-        glTexStorage2D(GL_TEXTURE_2D, 1, GL_RGBA32F, shaderAppConfig.textureWidth, shaderAppConfig.textureHeight);
-        glBindTexture(GL_TEXTURE_2D, 0);
+    // loaded after preRun when it exists and saved when the app exits, also set by -Dcomputeshader.snapshot=<file>
+    public void setSnapshotFile(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
 
-        logger.debug("Created texture {} (id {})", name, textureId);
-        textureMap.put(name, textureId);
+    // the textures, storage buffers and parameter blocks as they are now
+    public void saveSnapshot(Path path) throws IOException {
+        long start = System.nanoTime();
+        int width = shaderAppConfig.textureWidth();
+        int height = shaderAppConfig.textureHeight();
+        List<Snapshot.Entry> entries = new ArrayList<>();
+        for (Map.Entry<String, PixelFormat> texture : textures.entrySet()) {
+            String name = texture.getKey();
+            PixelFormat format = texture.getValue();
+            entries.add(new Snapshot.Entry(name, Snapshot.Kind.IMAGE, format, width, height,
+                    (long) width * height * format.getBytesPerPixel(), data -> backend.readTexture(name, data)));
+        }
+        for (String name : storageBuffers) {
+            entries.add(new Snapshot.Entry(name, Snapshot.Kind.BUFFER, null, 0, 0,
+                    backend.getStorageBufferSize(name), data -> backend.readStorageBuffer(name, data)));
+        }
+        for (ParameterBlock block : parameterBlocks) {
+            entries.add(new Snapshot.Entry(block.getName(), Snapshot.Kind.PARAMETERS, null, 0, 0,
+                    (long) block.data().length * Float.BYTES, data -> data.asFloatBuffer().put(block.data())));
+        }
+
+        long bytes = Snapshot.write(path, entries);
+        logger.info("Saved snapshot {} ({} sections, {} bytes) in {} ms", path, entries.size(), bytes,
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    // after preRun created the resources, the mapped sections go straight to the backend. every section is checked
+    // against the resource it replaces and against its checksum before anything is uploaded, a bad snapshot leaves
+    // the fresh start as it is
+    public void loadSnapshot(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (Snapshot snapshot = Snapshot.open(path)) {
+            int width = shaderAppConfig.textureWidth();
+            int height = shaderAppConfig.textureHeight();
+            Map<String, ParameterBlock> blocks = new HashMap<>();
+            for (ParameterBlock block : parameterBlocks) {
+                blocks.put(block.getName(), block);
+            }
+
+            for (Snapshot.Section section : snapshot.getSections()) {
+                String name = section.name();
+                boolean matches = switch (section.kind()) {
+                case IMAGE -> section.format() == textures.get(name) && section.width() == width
+                        && section.height() == height;
+                case BUFFER -> storageBuffers.contains(name)
+                        && section.length() == backend.getStorageBufferSize(name);
+                case PARAMETERS -> blocks.containsKey(name)
+                        && section.length() == (long) blocks.get(name).data().length * Float.BYTES;
+                };
+                if (!matches) {
+                    throw new IOException("Snapshot section " + name + " doesn't match the " + section.kind()
+                            .toString().toLowerCase() + " of " + shaderAppConfig.title());
+                }
+            }
+
+            // mapping checks the crc
+            List<ByteBuffer> mapped = new ArrayList<>();
+            for (Snapshot.Section section : snapshot.getSections()) {
+                mapped.add(snapshot.map(section));
+            }
+
+            long bytes = 0;
+            for (int i = 0; i < mapped.size(); i++) {
+                Snapshot.Section section = snapshot.getSections().get(i);
+                ByteBuffer data = mapped.get(i);
+                switch (section.kind()) {
+                case IMAGE -> backend.writeTexture(section.name(), data);
+                case BUFFER -> backend.writeStorageBuffer(section.name(), data);
+                case PARAMETERS -> {
+                    ParameterBlock block = blocks.get(section.name());
+                    data.asFloatBuffer().get(block.data());
+                    block.markDirty();
+                    block.flush(backend);
+                }
+                }
+                bytes += section.length();
+            }
+            logger.info("Loaded snapshot {} ({} sections, {} bytes) in {} ms", path, snapshot.getSections().size(),
+                    bytes, (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    // exports the display texture every `interval` frames
+    public void exportFrames(FrameExporter exporter, int interval) {
+        this.exporter = exporter;
+        this.exportInterval = interval;
+    }
+
+    public void createTexture(String name) {
+        createTexture(name, PixelFormat.RGBA32F);
+    }
+
+    public void createTexture(String name, PixelFormat format) {
+        backend.createTexture(name, format);
+        textures.put(name, format);
     }
 
     public void copyTexture(String from, String to) {
-        glCopyImageSubData(textureMap.get(from), GL_TEXTURE_2D, 0, 0, 0, 0,
-                textureMap.get(to), GL_TEXTURE_2D, 0, 0, 0, 0,
-                shaderAppConfig.textureWidth, shaderAppConfig.textureHeight, 1);
+        Integer section = copySections.computeIfAbsent(from, key -> new HashMap<>()).get(to);
+        if (section == null) {
+            section = profiler.section("copy " + from + " -> " + to);
+            copySections.get(from).put(to, section);
+        }
+
+        profiler.begin(section);
+        backend.copyTexture(from, to);
+        profiler.end(section);
+    }
+
+    // both names start with their own texture, see swapImages
+    public void createImagePair(String read, String write) {
+        createImagePair(read, write, PixelFormat.RGBA32F);
+    }
+
+    public void createImagePair(String read, String write, PixelFormat format) {
+        ImagePair pair = new ImagePair(read, write, format);
+        pair.create(backend);
+        textures.put(read, format);
+        textures.put(write, format);
+        imagePairs.put(read, pair);
+        imagePairs.put(write, pair);
+        frameGraph.alias(write, read);
+        framePlan = null;
+        tickedPlan = null;
+    }
+
+    // after a step wrote the pair's write image, later steps read the result by the read name and write over the
+    // texture that was read before
+    public void swapImages(String name) {
+        imagePairs.get(name).swap(backend);
+    }
+
+    public ImagePair getImagePair(String name) {
+        return imagePairs.get(name);
     }
 
     public void addUniform(String name) {
-        uniformLocationMap.put(name, -1);
-        logger.debug("Added uniform {}", name);
+        backend.addUniform(name);
+    }
+
+    // resolve handles once after createComputeShader, the int setters don't look anything up
+    public int getUniform(String programName, String name) {
+        return backend.getUniform(programName, name);
     }
 
     public void setUIntUniform(String name, int value) {
-        glUniform1ui(uniformLocationMap.get(name), value);
+        backend.setUIntUniform(name, value);
+    }
+
+    public void setUIntUniform(int uniform, int value) {
+        backend.setUIntUniform(uniform, value);
     }
 
     public void setFloatUniform(String name, float value) {
-        glUniform1f(uniformLocationMap.get(name), value);
+        backend.setFloatUniform(name, value);
+    }
+
+    public void setFloatUniform(int uniform, float value) {
+        backend.setFloatUniform(uniform, value);
     }
 
     public void setVector3fUniform(String name, Vector3f value) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            FloatBuffer buffer = value.get(stack.mallocFloat(3));
-            glUniform3fv(uniformLocationMap.get(name), buffer);
-        }        
+        backend.setVector3fUniform(name, value);
     }
 
-    public void setMatrix4fUniform(String name, Matrix4f value) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            FloatBuffer buffer = value.get(stack.mallocFloat(16));
-            glUniformMatrix4fv(uniformLocationMap.get(name), false, buffer);
-        }
+    public void setVector3fUniform(int uniform, Vector3f value) {
+        backend.setVector3fUniform(uniform, value);
     }
 
-    public void createStorageBuffer(String programName, String name, float[] data) {
-        int computeProgramShaderId = computeShaderMap.get(programName);
+    public void setMatrix4fUniform(String name, Matrix4f value) {
+        backend.setMatrix4fUniform(name, value);
+    }
 
-        glUseProgram(computeProgramShaderId);
-        {
-            int bufferId = glGenBuffers();
+    public void setMatrix4fUniform(int uniform, Matrix4f value) {
+        backend.setMatrix4fUniform(uniform, value);
+    }
 
-            int bufferLocation = glGetProgramResourceIndex(computeProgramShaderId, GL_SHADER_STORAGE_BLOCK, name);
-            glShaderStorageBlockBinding(computeProgramShaderId, bufferLocation, bufferLocation);
+    public void createStorageBuffer(String programName, String name, float[] data) {
+        backend.createStorageBuffer(programName, name, data);
+        storageBuffers.add(name);
+    }
 
-            glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferId);
-            glBufferData(GL_SHADER_STORAGE_BUFFER, data, GL_DYNAMIC_COPY);
-            glBindBufferBase(GL_SHADER_STORAGE_BUFFER, bufferLocation, bufferId);
-            glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    public void createStorageBuffer(String programName, String name, FloatBuffer data) {
+        backend.createStorageBuffer(programName, name, data);
+        storageBuffers.add(name);
+    }
 
-            logger.debug("Created {} storage buffer (id {}, {} bytes)", name, bufferId, data.length * Float.BYTES);
-            storageBufferMap.put(name, bufferId);
+    // the block is uploaded before the process steps of every frame it changed in
+    public void createParameterBlock(String programName, ParameterBlock block) {
+        if (block.isMapped()) {
+            backend.createParameterBuffer(programName, block.getName(), block.data());
+        } else {
+            backend.createStorageBuffer(programName, block.getName(), block.data());
         }
-        glUseProgram(0);
+        block.getDirtyRanges().clear();
+        parameterBlocks.add(block);
     }
 
     public void updateStorageBuffer(String name, int index, float[] data) {
-        glBindBuffer(GL_SHADER_STORAGE_BUFFER, storageBufferMap.get(name));
-        glBufferSubData(GL_SHADER_STORAGE_BUFFER, index * Float.BYTES, data);
-        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        backend.updateStorageBuffer(name, index, data);
     }
 
-    public void createComputeShader(String name, String filePath) {
-        int computeProgramShaderId = glCreateProgram();
-        logger.debug("Created {} program (id {})", name, computeProgramShaderId);
-        computeShaderMap.put(name, computeProgramShaderId);
-
-        int shaderId = glCreateShader(GL_COMPUTE_SHADER);
-
-        try {
-            String computeShaderSource = Files.readString(Path.of(getClass().getResource(filePath).toURI()));
-            glShaderSource(shaderId, computeShaderSource);
-            glCompileShader(shaderId);
-        } catch (IOException | URISyntaxException e) {
-            logger.error("Exception caught when creating shaders!", e);
-        }
-
-        if (glGetShaderi(shaderId, GL_COMPILE_STATUS) == 0) {
-            logger.error("Error compiling Shader code: {}", glGetShaderInfoLog(shaderId, 1024));
-            return;
-        }
+    public void registerKernel(String filePath, ComputeKernel kernel) {
+        backend.registerKernel(filePath, kernel);
+    }
 
-        glAttachShader(computeProgramShaderId, shaderId);
-        glLinkProgram(computeProgramShaderId);
-
-        glUseProgram(computeProgramShaderId);
-        {
-            IntBuffer workGroupSize = BufferUtils.createIntBuffer(3);
-            glGetProgramiv(computeProgramShaderId, GL_COMPUTE_WORK_GROUP_SIZE, workGroupSize);
-            int workGroupSizeX = workGroupSize.get();
-            int workGroupSizeY = workGroupSize.get();
-            int workGroupSizeZ = workGroupSize.get();
-            logger.debug("  {} work group size: [x {}, y {}, z {}]", name, workGroupSizeX, workGroupSizeY,
-                    workGroupSizeZ);
-            workGroupSizeMap.put(name, new int[] { workGroupSizeX, workGroupSizeY, workGroupSizeZ });
-
-            int numTextures = textureMap.size();
-            IntBuffer textureUniformLocations = BufferUtils.createIntBuffer(numTextures);
-            textureMap.keySet().forEach(textureName -> {
-                glGetUniformiv(computeProgramShaderId, glGetUniformLocation(computeProgramShaderId, textureName),
-                        textureUniformLocations);
-                textureBindingMap.put(textureName, textureUniformLocations.get());
-            });
-            logger.debug("  {} texture uniform bindings: {}", name, textureBindingMap);
-
-            uniformLocationMap.entrySet().forEach(entry -> {
-                entry.setValue(glGetUniformLocation(computeProgramShaderId, entry.getKey()));
-            });
-            logger.debug("  {} uniform locations: {}", name, uniformLocationMap);
-
-            storageBufferMap.entrySet().forEach(bufferEntry -> {
-                int bufferId = bufferEntry.getValue();
-                glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferId);
-                int bufferLocation = glGetProgramResourceIndex(computeProgramShaderId, GL_SHADER_STORAGE_BLOCK,
-                        bufferEntry.getKey());
-                glShaderStorageBlockBinding(computeProgramShaderId, bufferLocation, bufferLocation);
-            });
-        }
-        glUseProgram(0);
+    public void createComputeShader(String name, String filePath) {
+        backend.createComputeShader(name, filePath);
     }
 
     public int[] getWorkGroupSize(String name) {
-        return workGroupSizeMap.get(name);
+        return backend.getWorkGroupSize(name);
     }
 
     public void runComputeShader(int x, int y, int z) {
-        glDispatchCompute(x, y, z);
+        backend.runComputeShader(x, y, z);
     }
 
     public void runComputeShader(int x) {
@@ -369,81 +561,129 @@ public class ShaderApp extends Application {
         runComputeShader(x, y, 1);
     }
 
-    private void createDisplayShader() throws IOException, URISyntaxException {
-        displayShaderProgramId = glCreateProgram();
-        logger.debug("Created DisplayShader program (id {})", displayShaderProgramId);
-
-        int displayVertShaderId = createDisplayVertexShader();
-        int displayFragShaderId = createDisplayFragmentShader();
-        glAttachShader(displayShaderProgramId, displayVertShaderId);
-        glAttachShader(displayShaderProgramId, displayFragShaderId);
-        glBindFragDataLocation(displayShaderProgramId, 0, "color");
-        glLinkProgram(displayShaderProgramId);
+    public void configuration(Runnable step) {
+        configuration = step;
     }
 
-    private int createDisplayVertexShader() throws IOException, URISyntaxException {
-        int displayVertShaderId = glCreateShader(GL_VERTEX_SHADER);
-        logger.debug("Created DisplayVertexShader (id {})", displayVertShaderId);
+    public void preRun(Runnable step) {
+        preRun = step;
+    }
 
-        String displayVertShaderSource = Files
-                .readString(Path.of(getClass().getResource("/display.vert.glsl").toURI()));
+    public void update(Runnable step) {
+        update = step;
+    }
 
-        glShaderSource(displayVertShaderId, displayVertShaderSource);
-        glCompileShader(displayVertShaderId);
+    public void gui(Runnable step) {
+        gui = step;
+    }
 
-        if (glGetShaderi(displayVertShaderId, GL_COMPILE_STATUS) == 0) {
-            throw new IOException("Error compiling Shader code: " + glGetShaderInfoLog(displayVertShaderId, 1024));
+    public void processSteps(List<Runnable> steps) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            names.add("step " + i);
         }
-
-        return displayVertShaderId;
+        processSteps(names, steps);
     }
 
-    private int createDisplayFragmentShader() throws IOException, URISyntaxException {
-        int displayFragShaderId = glCreateShader(GL_FRAGMENT_SHADER);
-        logger.debug("Created DisplayFragmentShader (id {})", displayFragShaderId);
+    // named steps show up under their names in the timings
+    public void processSteps(List<String> names, List<Runnable> steps) {
+        processSteps = steps;
+        stepSections = new int[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            stepSections[i] = profiler.section(names.get(i));
+        }
+    }
 
-        String displayFragShaderSource = Files
-                .readString(Path.of(getClass().getResource("/display.frag.glsl").toURI()));
+    // a process step of the frame graph, declare the images and buffers it reads and writes on the returned step
+    public FrameGraph.Step step(String name, Runnable body) {
+        framePlan = null;
+        tickedPlan = null;
+        return frameGraph.step(name, body);
+    }
 
-        glShaderSource(displayFragShaderId, displayFragShaderSource);
-        glCompileShader(displayFragShaderId);
+    // compiled when the steps, image pairs or display texture changed
+    public FrameGraph.Plan getFramePlan() {
+        if (framePlan == null) {
+            framePlan = frameGraph.compile(displayTexture);
+            planSections = sections(framePlan);
+        }
+        return framePlan;
+    }
 
-        if (glGetShaderi(displayFragShaderId, GL_COMPILE_STATUS) == 0) {
-            throw new IOException("Error compiling Shader code: " + glGetShaderInfoLog(displayFragShaderId, 1024));
+    // ticks and perFrame steps compiled separately, when the steps, image pairs or display texture changed
+    public FrameGraph.TickedPlan getTickedPlan() {
+        if (tickedPlan == null) {
+            tickedPlan = frameGraph.compileTicked(displayTexture);
+            tickSections = sections(tickedPlan.tick());
+            perFrameSections = sections(tickedPlan.frame());
         }
+        return tickedPlan;
+    }
 
-        return displayFragShaderId;
+    private int[] sections(FrameGraph.Plan plan) {
+        int[] sections = new int[plan.size()];
+        for (int i = 0; i < plan.size(); i++) {
+            sections[i] = profiler.section(plan.steps().get(i).getName());
+        }
+        return sections;
     }
 
-    public void configuration(Runnable step) {
-        configuration = step;
+    // steps that aren't perFrame advance the simulation in the timestep's ticks instead of once per frame
+    public void fixedTimestep(FixedTimestep timestep) {
+        this.timestep = timestep;
+        tickedPlan = null;
     }
 
-    public void preRun(Runnable step) {
-        preRun = step;
+    public FixedTimestep getTimestep() {
+        return timestep;
     }
 
-    public void gui(Runnable step) {
-        gui = step;
+    // the length of a tick, what the steps advance the simulation by
+    public float getTickSeconds() {
+        return (float) timestep.getTickSeconds();
     }
 
-    public void processSteps(List<Runnable> steps) {
-        processSteps = steps;
+    // the ticks run so far times the tick length, the same in every run
+    public float getSimulationTime() {
+        return (float) timestep.getSimulationTime();
     }
 
     public void usingProgram(String program, Runnable step) {
-        int programId = computeShaderMap.get(program);
-        glUseProgram(programId);
+        backend.useProgram(program);
         step.run();
-        glUseProgram(0);
+        backend.useProgram(null);
+    }
+
+    public int getProgram(String name) {
+        return backend.getProgram(name);
+    }
+
+    public void usingProgram(int program, Runnable step) {
+        backend.useProgram(program);
+        step.run();
+        backend.useProgram(-1);
     }
 
     public void display(String textureName) {
         displayTexture = textureName;
+        framePlan = null;
+        tickedPlan = null;
     }
 
     public float getTime() {
-        return (float) glfwGetTime();
+        return (float) ((System.nanoTime() - startTime) / 1e9);
+    }
+
+    public boolean isHeadless() {
+        return window == null;
+    }
+
+    public long getHandle() {
+        return window.getHandle();
+    }
+
+    public ComputeBackend getBackend() {
+        return backend;
     }
 
     public static record ShaderAppConfiguration(String title, int windowWidth, int windowHeight, int textureWidth,
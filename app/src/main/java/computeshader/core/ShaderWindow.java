@@ -0,0 +1,88 @@
+package computeshader.core;
+
+import static org.lwjgl.glfw.GLFW.GLFW_CONTEXT_VERSION_MAJOR;
+import static org.lwjgl.glfw.GLFW.GLFW_CONTEXT_VERSION_MINOR;
+import static org.lwjgl.glfw.GLFW.GLFW_FALSE;
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
+import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_CORE_PROFILE;
+import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_FORWARD_COMPAT;
+import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_PROFILE;
+import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
+import static org.lwjgl.glfw.GLFW.GLFW_RESIZABLE;
+import static org.lwjgl.glfw.GLFW.GLFW_TRUE;
+import static org.lwjgl.glfw.GLFW.GLFW_VISIBLE;
+import static org.lwjgl.glfw.GLFW.glfwSetKeyCallback;
+import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
+import static org.lwjgl.glfw.GLFW.glfwWindowHint;
+import static org.lwjgl.opengl.GL11.GL_BLEND;
+import static org.lwjgl.opengl.GL11.GL_GREATER;
+import static org.lwjgl.opengl.GL11.GL_ONE_MINUS_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11.GL_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11.glAlphaFunc;
+import static org.lwjgl.opengl.GL11.glBlendFunc;
+import static org.lwjgl.opengl.GL11.glEnable;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+import imgui.app.Application;
+import imgui.app.Configuration;
+
+class ShaderWindow extends Application {
+    private static final Logger logger = LogManager.getLogger();
+
+    private ShaderApp shaderApp;
+    private ShaderAppConfiguration shaderAppConfig;
+
+    ShaderWindow(ShaderApp shaderApp, ShaderAppConfiguration shaderAppConfig) {
+        this.shaderApp = shaderApp;
+        this.shaderAppConfig = shaderAppConfig;
+    }
+
+    @Override
+    public void configure(Configuration config) {
+        logger.info("Configuring ShaderApp with {}", shaderAppConfig);
+        config.setTitle(shaderAppConfig.title());
+        config.setWidth(shaderAppConfig.windowWidth());
+        config.setHeight(shaderAppConfig.windowHeight());
+
+        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE);
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 4);
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 6);
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        glfwWindowHint(GLFW_RESIZABLE, GLFW_FALSE);
+
+        this.colorBg.set(0.0f, 0.0f, 0.0f, 1.0f);
+
+        shaderApp.runConfiguration();
+    }
+
+    @Override
+    public void preRun() {
+        // add shutdown hook
+        glfwSetKeyCallback(getHandle(), (window, key, scancode, action, mods) -> {
+            if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE) {
+                glfwSetWindowShouldClose(getHandle(), true);
+            }
+        });
+
+        glEnable(GL_BLEND);
+        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        glAlphaFunc(GL_GREATER, 0.1f);
+
+        shaderApp.runPreRun();
+    }
+
+    @Override
+    public void process() {
+        shaderApp.runFrame(true);
+    }
+
+    @Override
+    public void postRun() {
+        shaderApp.runDispose();
+    }
+
+}
@@ -0,0 +1,246 @@
+package computeshader.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// the buffers, images and parameter blocks of a running app in one file. a little endian header and section table,
+// then every section at a page aligned offset so it can be mapped and handed to the upload path as it is. section
+// data is in the byte order of the machine that wrote it, textures in the layout of their PixelFormat
+//
+// header: magic, version, byte order, section count, crc of header and table, padding to HEADER_SIZE
+// section: name (NAME_SIZE bytes, zero padded), kind, format, width, height, offset, length, crc, padding
+public class Snapshot implements Closeable {
+    private static final int MAGIC = 0x43535353; // CSSS
+    public static final int VERSION = 1;
+    public static final int ALIGNMENT = 4096;
+    private static final int HEADER_SIZE = 32;
+    private static final int NAME_SIZE = 32;
+    private static final int SECTION_SIZE = NAME_SIZE + 4 + 4 + 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int HEADER_CRC_OFFSET = 16;
+
+    public enum Kind {
+        BUFFER,
+        IMAGE,
+        PARAMETERS
+    }
+
+    // format, width and height only mean something for images
+    public record Section(String name, Kind kind, PixelFormat format, int width, int height, long offset,
+            long length, int crc) {
+    }
+
+    // what to write, fill puts exactly length bytes into the buffer it is given
+    public record Entry(String name, Kind kind, PixelFormat format, int width, int height, long length,
+            Consumer<ByteBuffer> fill) {
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<Section> sections;
+
+    private Snapshot(Path path, FileChannel channel, List<Section> sections) {
+        this.path = path;
+        this.channel = channel;
+        this.sections = sections;
+    }
+
+    // written next to the target and moved over it, a crash never leaves half a snapshot. the sections are filled
+    // one at a time into one direct buffer, returns the bytes written
+    public static long write(Path path, List<Entry> entries) throws IOException {
+        long position = align(HEADER_SIZE + (long) SECTION_SIZE * entries.size());
+        long largest = 0;
+        List<Section> sections = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.name.getBytes(StandardCharsets.UTF_8).length > NAME_SIZE) {
+                throw new IllegalArgumentException("Section name longer than " + NAME_SIZE + " bytes: " + entry.name);
+            }
+            if (entry.length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Section " + entry.name + " is too large: " + entry.length);
+            }
+            sections.add(new Section(entry.name, entry.kind, entry.format, entry.width, entry.height, position,
+                    entry.length, 0));
+            position = align(position + entry.length);
+            largest = Math.max(largest, entry.length);
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.allocateDirect((int) largest).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < sections.size(); i++) {
+                Entry entry = entries.get(i);
+                Section section = sections.get(i);
+                data.clear().limit((int) entry.length);
+                entry.fill.accept(data.duplicate().order(ByteOrder.nativeOrder()));
+
+                CRC32C crc = new CRC32C();
+                crc.update(data.duplicate());
+                sections.set(i, new Section(section.name, section.kind, section.format, section.width,
+                        section.height, section.offset, section.length, (int) crc.getValue()));
+                writeFully(channel, data, section.offset);
+            }
+
+            ByteBuffer header = header(sections);
+            writeFully(channel, header, 0);
+            // the file ends at the last section, padding included, so every section maps whole pages
+            channel.truncate(position);
+            if (channel.size() < position) {
+                writeFully(channel, ByteBuffer.allocate(1), position - 1);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return position;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer header(List<Section> sections) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + SECTION_SIZE * sections.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1)
+                .putInt(sections.size()).putInt(0);
+        header.position(HEADER_SIZE);
+        for (Section section : sections) {
+            byte[] name = Arrays.copyOf(section.name.getBytes(StandardCharsets.UTF_8), NAME_SIZE);
+            header.put(name).putInt(section.kind.ordinal())
+                    .putInt(section.format == null ? -1 : section.format.ordinal()).putInt(section.width)
+                    .putInt(section.height).putLong(section.offset).putLong(section.length).putInt(section.crc)
+                    .putInt(0);
+        }
+        header.putInt(HEADER_CRC_OFFSET, headerCrc(header));
+        return header.clear();
+    }
+
+    // over the header and table with the crc field as zero
+    private static int headerCrc(ByteBuffer header) {
+        ByteBuffer copy = ByteBuffer.allocate(header.capacity());
+        copy.put(0, header, 0, header.capacity());
+        copy.putInt(HEADER_CRC_OFFSET, 0);
+        CRC32C crc = new CRC32C();
+        crc.update(copy.array());
+        return (int) crc.getValue();
+    }
+
+    public static Snapshot open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot: " + path);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Snapshot version " + header.getInt(4) + " of " + path + ", expected " + VERSION);
+            }
+            int order = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1;
+            if (header.getInt(8) != order) {
+                throw new IOException("Snapshot " + path + " was written with another byte order");
+            }
+
+            int count = header.getInt(12);
+            if (count < 0 || (long) SECTION_SIZE * count > channel.size()) {
+                throw new IOException("Bad section count " + count + " in " + path);
+            }
+            ByteBuffer table = ByteBuffer.allocate(HEADER_SIZE + SECTION_SIZE * count).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, table, 0);
+            if (headerCrc(table) != table.getInt(HEADER_CRC_OFFSET)) {
+                throw new IOException("Header checksum mismatch in " + path);
+            }
+
+            List<Section> sections = new ArrayList<>();
+            table.position(HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[NAME_SIZE];
+                table.get(name);
+                int length = 0;
+                while (length < NAME_SIZE && name[length] != 0) {
+                    length++;
+                }
+                Kind kind = Kind.values()[table.getInt()];
+                int format = table.getInt();
+                Section section = new Section(new String(name, 0, length, StandardCharsets.UTF_8), kind,
+                        format < 0 ? null : PixelFormat.values()[format], table.getInt(), table.getInt(),
+                        table.getLong(), table.getLong(), table.getInt());
+                table.getInt();
+                if (section.offset % ALIGNMENT != 0 || section.offset + section.length > channel.size()) {
+                    throw new IOException("Section " + section.name + " of " + path + " is out of place");
+                }
+                sections.add(section);
+            }
+            return new Snapshot(path, channel, List.copyOf(sections));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Corrupt snapshot " + path, e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Snapshot ends early");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    public List<Section> getSections() {
+        return sections;
+    }
+
+    // null if there is no such section
+    public Section getSection(String name) {
+        for (Section section : sections) {
+            if (section.name.equals(name)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    // the section's bytes mapped read only, in native order and checked against the checksum. the mapping stays
+    // valid after close
+    public ByteBuffer map(Section section) throws IOException {
+        ByteBuffer data = channel.map(MapMode.READ_ONLY, section.offset, section.length)
+                .order(ByteOrder.nativeOrder());
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        if ((int) crc.getValue() != section.crc) {
+            throw new IOException("Checksum mismatch in section " + section.name + " of " + path);
+        }
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+}
@@ -0,0 +1,342 @@
+package computeshader.gravity;
+
+import static java.lang.Math.max;
+import static java.lang.Math.sqrt;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import computeshader.core.Parallel;
+
+// Barnes-Hut replacement for stage 0 of gravity.glsl, works directly on the ObjectUtil records
+public class BarnesHut {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int OBJECT_SIZE_F = 5;
+    private static final float G = 0.1f;
+    private static final int MAX_DEPTH = 32;
+    private static final int STACK_SIZE = 4 * (MAX_DEPTH + 2);
+
+    private final ForkJoinPool pool;
+    private float theta;
+    private float softening;
+
+    // node arena, children of a node are allocated as 4 contiguous nodes starting at firstChild
+    private int[] firstChild;
+    private int[] nodeBody;
+    private float[] nodeMass;
+    private float[] nodeX;
+    private float[] nodeY;
+    private float[] nodeSize;
+    private int numNodes;
+
+    // bodies sharing a leaf at MAX_DEPTH are chained through nextBody
+    private int[] nextBody;
+    private int numBodies;
+
+    // bodies in depth first tree order, neighbours in this order walk mostly the same nodes
+    private int[] order;
+    private int numOrdered;
+
+    private final ThreadLocal<int[]> stacks = ThreadLocal.withInitial(() -> new int[STACK_SIZE]);
+
+    public BarnesHut(float theta) {
+        this(theta, 0.0f, ForkJoinPool.commonPool());
+    }
+
+    public BarnesHut(float theta, float softening, ForkJoinPool pool) {
+        this.theta = theta;
+        this.softening = softening;
+        this.pool = pool;
+
+        allocateNodes(1024);
+        nextBody = new int[0];
+        order = new int[0];
+    }
+
+    public void build(float[] objects) {
+        numBodies = objects.length / OBJECT_SIZE_F;
+        if (nextBody.length < numBodies) {
+            nextBody = new int[numBodies];
+            order = new int[numBodies];
+        }
+        if (firstChild.length < 2 * numBodies) {
+            allocateNodes(4 * numBodies);
+        }
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < numBodies; i++) {
+            float x = objects[i * OBJECT_SIZE_F + 0];
+            float y = objects[i * OBJECT_SIZE_F + 1];
+            if (Float.isFinite(x) && Float.isFinite(y)) {
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = max(maxX, x);
+                maxY = max(maxY, y);
+            }
+        }
+
+        numNodes = 0;
+        int root = allocateNode(max(max(maxX - minX, maxY - minY), 1.0f) * 1.0001f);
+        for (int i = 0; i < numBodies; i++) {
+            float x = objects[i * OBJECT_SIZE_F + 0];
+            float y = objects[i * OBJECT_SIZE_F + 1];
+            if (Float.isFinite(x) && Float.isFinite(y)) {
+                insert(root, minX, minY, i, x, y, objects[i * OBJECT_SIZE_F + 4], objects);
+            }
+        }
+
+        // mass weighted position sums to centers of mass
+        for (int node = 0; node < numNodes; node++) {
+            if (nodeMass[node] > 0.0f) {
+                nodeX[node] /= nodeMass[node];
+                nodeY[node] /= nodeMass[node];
+            }
+        }
+
+        numOrdered = 0;
+        int[] stack = stacks.get();
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (firstChild[node] < 0) {
+                for (int body = nodeBody[node]; body >= 0; body = nextBody[body]) {
+                    order[numOrdered++] = body;
+                }
+            } else {
+                for (int child = 3; child >= 0; child--) {
+                    stack[top++] = firstChild[node] + child;
+                }
+            }
+        }
+    }
+
+    private void insert(int node, float minX, float minY, int body, float x, float y, float mass, float[] objects) {
+        for (int depth = 0;; depth++) {
+            nodeMass[node] += mass;
+            nodeX[node] += mass * x;
+            nodeY[node] += mass * y;
+
+            if (firstChild[node] < 0) {
+                int occupant = nodeBody[node];
+                if (occupant < 0) {
+                    nodeBody[node] = body;
+                    nextBody[body] = -1;
+                    return;
+                }
+
+                if (depth >= MAX_DEPTH) {
+                    nextBody[body] = occupant;
+                    nodeBody[node] = body;
+                    return;
+                }
+
+                split(node, minX, minY, occupant, objects);
+            }
+
+            float half = nodeSize[node] * 0.5f;
+            int quadrant = 0;
+            if (x >= minX + half) {
+                quadrant |= 1;
+                minX += half;
+            }
+            if (y >= minY + half) {
+                quadrant |= 2;
+                minY += half;
+            }
+            node = firstChild[node] + quadrant;
+        }
+    }
+
+    private void split(int node, float minX, float minY, int occupant, float[] objects) {
+        float half = nodeSize[node] * 0.5f;
+        int children = numNodes;
+        for (int i = 0; i < 4; i++) {
+            allocateNode(half);
+        }
+
+        float x = objects[occupant * OBJECT_SIZE_F + 0];
+        float y = objects[occupant * OBJECT_SIZE_F + 1];
+        float mass = objects[occupant * OBJECT_SIZE_F + 4];
+        int child = children + (x >= minX + half ? 1 : 0) + (y >= minY + half ? 2 : 0);
+        nodeBody[child] = occupant;
+        nodeMass[child] = mass;
+        nodeX[child] = mass * x;
+        nodeY[child] = mass * y;
+
+        nodeBody[node] = -1;
+        firstChild[node] = children;
+    }
+
+    private int allocateNode(float size) {
+        if (numNodes == firstChild.length) {
+            logger.debug("Growing Barnes-Hut node arena to {} nodes", 2 * numNodes);
+            growNodes(2 * numNodes);
+        }
+
+        int node = numNodes++;
+        firstChild[node] = -1;
+        nodeBody[node] = -1;
+        nodeMass[node] = 0.0f;
+        nodeX[node] = 0.0f;
+        nodeY[node] = 0.0f;
+        nodeSize[node] = size;
+        return node;
+    }
+
+    private void allocateNodes(int capacity) {
+        firstChild = new int[capacity];
+        nodeBody = new int[capacity];
+        nodeMass = new float[capacity];
+        nodeX = new float[capacity];
+        nodeY = new float[capacity];
+        nodeSize = new float[capacity];
+    }
+
+    private void growNodes(int capacity) {
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nodeBody = Arrays.copyOf(nodeBody, capacity);
+        nodeMass = Arrays.copyOf(nodeMass, capacity);
+        nodeX = Arrays.copyOf(nodeX, capacity);
+        nodeY = Arrays.copyOf(nodeY, capacity);
+        nodeSize = Arrays.copyOf(nodeSize, capacity);
+    }
+
+    // stage 0: adds the force on every body to its velocity, object 0 stays pinned like in the shader
+    public void computeForces(float[] objects) {
+        build(objects);
+        Parallel.forRange(pool, 0, numOrdered, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int body = order[i];
+                if (body != 0) {
+                    accumulateForce(body, objects);
+                }
+            }
+        });
+    }
+
+    // stage 1
+    public void integrate(float[] objects) {
+        Parallel.forRange(pool, 0, numBodies, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int object = i * OBJECT_SIZE_F;
+                objects[object + 0] += objects[object + 2] * 0.1f;
+                objects[object + 1] += objects[object + 3] * 0.1f;
+            }
+        });
+    }
+
+    public void step(float[] objects) {
+        computeForces(objects);
+        integrate(objects);
+    }
+
+    // force on body i from the tree built by the last build(), added to its dx and dy
+    public void accumulateForce(int i, float[] objects) {
+        int object = i * OBJECT_SIZE_F;
+        float x = objects[object + 0];
+        float y = objects[object + 1];
+        float mass = objects[object + 4];
+        float thetaSquared = theta * theta;
+        float softeningSquared = softening * softening;
+
+        float forceX = 0.0f;
+        float forceY = 0.0f;
+
+        int[] stack = stacks.get();
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (nodeMass[node] == 0.0f) {
+                continue;
+            }
+
+            if (firstChild[node] < 0) {
+                for (int body = nodeBody[node]; body >= 0; body = nextBody[body]) {
+                    if (body == i) {
+                        continue;
+                    }
+
+                    int other = body * OBJECT_SIZE_F;
+                    float differenceX = objects[other + 0] - x;
+                    float differenceY = objects[other + 1] - y;
+                    float distanceSquared = differenceX * differenceX + differenceY * differenceY + softeningSquared;
+                    if (distanceSquared > 0.0f) {
+                        float force = G * mass * objects[other + 4] / distanceSquared;
+                        float inverseDistance = (float) (1.0 / sqrt(distanceSquared));
+                        forceX += differenceX * inverseDistance * force;
+                        forceY += differenceY * inverseDistance * force;
+                    }
+                }
+                continue;
+            }
+
+            float differenceX = nodeX[node] - x;
+            float differenceY = nodeY[node] - y;
+            float distanceSquared = differenceX * differenceX + differenceY * differenceY;
+            if (nodeSize[node] * nodeSize[node] < thetaSquared * distanceSquared) {
+                distanceSquared += softeningSquared;
+                float force = G * mass * nodeMass[node] / distanceSquared;
+                float inverseDistance = (float) (1.0 / sqrt(distanceSquared));
+                forceX += differenceX * inverseDistance * force;
+                forceY += differenceY * inverseDistance * force;
+            } else {
+                int children = firstChild[node];
+                stack[top++] = children + 0;
+                stack[top++] = children + 1;
+                stack[top++] = children + 2;
+                stack[top++] = children + 3;
+            }
+        }
+
+        objects[object + 2] += forceX;
+        objects[object + 3] += forceY;
+    }
+
+    public float getTheta() {
+        return theta;
+    }
+
+    public void setTheta(float theta) {
+        this.theta = theta;
+    }
+
+    public float getSoftening() {
+        return softening;
+    }
+
+    public void setSoftening(float softening) {
+        this.softening = softening;
+    }
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    public static void main(String[] args) {
+        int numObjects = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 18;
+        float theta = args.length > 1 ? Float.parseFloat(args[1]) : 0.5f;
+        int steps = 20;
+
+        float[] objects = ObjectUtil.createObjects(numObjects, 1920, 1080);
+        BarnesHut barnesHut = new BarnesHut(theta, 1.0f, ForkJoinPool.commonPool());
+
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            barnesHut.step(objects);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        logger.info("{} objects, theta {}: {} steps/s ({} nodes)", numObjects, theta, steps / seconds,
+                barnesHut.getNumNodes());
+    }
+
+}
@@ -0,0 +1,185 @@
+package computeshader.gravity;
+
+import static java.lang.Math.sqrt;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import computeshader.core.Parallel;
+
+// exact O(n^2) replacement for stages 0 and 1 of gravity.glsl, the reference BarnesHut is measured against. every
+// step copies positions and masses into structure of arrays, the bodies acting on a band of i are walked in tiles
+// of TILE_SIZE that stay in L1 while the whole band goes over them. with a softening the force is
+// G m1 m2 / (d^2 + softening^2) and two bodies on top of each other don't blow up
+public class DirectSum {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int OBJECT_SIZE_F = 5;
+    private static final float G = 0.1f;
+    // 3 floats per body, 24 KB of a tile in L1
+    static final int TILE_SIZE = 2048;
+
+    // the SIMD path is only there when the JVM runs with --add-modules jdk.incubator.vector
+    private static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private final ForkJoinPool pool;
+    private float softening;
+    private boolean simd;
+
+    // padded to a multiple of the vector length with massless bodies
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] mass = new float[0];
+    private float[] forceX = new float[0];
+    private float[] forceY = new float[0];
+    private int numBodies;
+    private int numPadded;
+
+    public DirectSum(float softening, boolean simd) {
+        this(softening, simd, ForkJoinPool.commonPool());
+    }
+
+    public DirectSum(float softening, boolean simd, ForkJoinPool pool) {
+        this.softening = softening;
+        this.pool = pool;
+        setSimd(simd);
+    }
+
+    private void load(float[] objects) {
+        numBodies = objects.length / OBJECT_SIZE_F;
+        int lanes = simd ? DirectSumVector.lanes() : 1;
+        numPadded = (numBodies + lanes - 1) / lanes * lanes;
+        if (x.length < numPadded) {
+            x = new float[numPadded];
+            y = new float[numPadded];
+            mass = new float[numPadded];
+            forceX = new float[numPadded];
+            forceY = new float[numPadded];
+        }
+
+        Parallel.forRange(pool, 0, numPadded, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                boolean body = i < numBodies;
+                x[i] = body ? objects[i * OBJECT_SIZE_F + 0] : 0.0f;
+                y[i] = body ? objects[i * OBJECT_SIZE_F + 1] : 0.0f;
+                mass[i] = body ? objects[i * OBJECT_SIZE_F + 4] : 0.0f;
+                forceX[i] = 0.0f;
+                forceY[i] = 0.0f;
+            }
+        });
+    }
+
+    // stage 0: adds the force on every body to its velocity, object 0 stays pinned like in the shader
+    public void computeForces(float[] objects) {
+        load(objects);
+        float softeningSquared = softening * softening;
+        boolean vector = simd;
+
+        Parallel.forRange(pool, 1, numBodies, (from, to) -> {
+            for (int tile = 0; tile < numPadded; tile += TILE_SIZE) {
+                int tileEnd = Math.min(numPadded, tile + TILE_SIZE);
+                for (int i = from; i < to; i++) {
+                    if (vector) {
+                        DirectSumVector.accumulate(x, y, mass, i, tile, tileEnd, softeningSquared, forceX, forceY);
+                    } else {
+                        accumulate(i, tile, tileEnd, softeningSquared);
+                    }
+                }
+            }
+
+            for (int i = from; i < to; i++) {
+                int object = i * OBJECT_SIZE_F;
+                objects[object + 2] += G * mass[i] * forceX[i];
+                objects[object + 3] += G * mass[i] * forceY[i];
+            }
+        });
+    }
+
+    // sum of m2 d / |d|^3 over bodies from to to, G and m1 are applied once per body
+    private void accumulate(int i, int from, int to, float softeningSquared) {
+        float x1 = x[i];
+        float y1 = y[i];
+        float sumX = 0.0f;
+        float sumY = 0.0f;
+
+        for (int j = from; j < to; j++) {
+            float differenceX = x[j] - x1;
+            float differenceY = y[j] - y1;
+            float distanceSquared = differenceX * differenceX + differenceY * differenceY + softeningSquared;
+            // only the body itself without softening
+            if (distanceSquared > 0.0f) {
+                float inverseDistance = (float) (1.0 / sqrt(distanceSquared));
+                float scale = mass[j] * inverseDistance * inverseDistance * inverseDistance;
+                sumX += differenceX * scale;
+                sumY += differenceY * scale;
+            }
+        }
+
+        forceX[i] += sumX;
+        forceY[i] += sumY;
+    }
+
+    // stage 1
+    public void integrate(float[] objects) {
+        Parallel.forRange(pool, 0, objects.length / OBJECT_SIZE_F, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int object = i * OBJECT_SIZE_F;
+                objects[object + 0] += objects[object + 2] * 0.1f;
+                objects[object + 1] += objects[object + 3] * 0.1f;
+            }
+        });
+    }
+
+    public void step(float[] objects) {
+        computeForces(objects);
+        integrate(objects);
+    }
+
+    public float getSoftening() {
+        return softening;
+    }
+
+    public void setSoftening(float softening) {
+        this.softening = softening;
+    }
+
+    public boolean isSimd() {
+        return simd;
+    }
+
+    // falls back to the scalar path when the Vector API isn't there
+    public void setSimd(boolean simd) {
+        if (simd && !VECTOR_AVAILABLE) {
+            logger.warn("jdk.incubator.vector is not available, the direct sum runs scalar");
+            simd = false;
+        }
+        this.simd = simd;
+    }
+
+    public static boolean isVectorAvailable() {
+        return VECTOR_AVAILABLE;
+    }
+
+    // DirectSum [numObjects] [scalar|simd]
+    public static void main(String[] args) {
+        int numObjects = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 14;
+        boolean simd = args.length <= 1 || args[1].equals("simd");
+        int steps = 10;
+
+        float[] objects = ObjectUtil.createObjects(numObjects, 1920, 1080);
+        DirectSum directSum = new DirectSum(1.0f, simd);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            directSum.step(objects);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        logger.info("{} objects, {}: {} steps/s, {} interactions/s", numObjects,
+                directSum.isSimd() ? "simd " + DirectSumVector.lanes() + " lanes" : "scalar", steps / seconds,
+                (double) numObjects * (numObjects - 1) * steps / seconds);
+    }
+
+}
@@ -0,0 +1,48 @@
+package computeshader.gravity;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// the SIMD inner loop of DirectSum, kept apart so nothing loads the Vector API classes when the module is missing
+final class DirectSumVector {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private DirectSumVector() {
+    }
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    // DirectSum.accumulate a vector of bodies at a time, from and to are multiples of lanes()
+    static void accumulate(float[] x, float[] y, float[] mass, int i, int from, int to, float softeningSquared,
+            float[] forceX, float[] forceY) {
+        FloatVector x1 = FloatVector.broadcast(SPECIES, x[i]);
+        FloatVector y1 = FloatVector.broadcast(SPECIES, y[i]);
+        FloatVector softening = FloatVector.broadcast(SPECIES, softeningSquared);
+        FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        FloatVector zero = FloatVector.zero(SPECIES);
+        FloatVector sumX = zero;
+        FloatVector sumY = zero;
+
+        for (int j = from; j < to; j += SPECIES.length()) {
+            FloatVector differenceX = FloatVector.fromArray(SPECIES, x, j).sub(x1);
+            FloatVector differenceY = FloatVector.fromArray(SPECIES, y, j).sub(y1);
+            FloatVector distanceSquared = differenceX.mul(differenceX).add(differenceY.mul(differenceY)).add(softening);
+            // the body itself without softening divides 0 by 0, its lane is dropped
+            VectorMask<Float> apart = distanceSquared.compare(VectorOperators.GT, 0.0f);
+            FloatVector inverseDistance = one.div(distanceSquared.sqrt());
+            FloatVector scale = FloatVector.fromArray(SPECIES, mass, j).mul(inverseDistance).mul(inverseDistance)
+                    .mul(inverseDistance);
+            scale = zero.blend(scale, apart);
+            sumX = differenceX.fma(scale, sumX);
+            sumY = differenceY.fma(scale, sumY);
+        }
+
+        forceX[i] += sumX.reduceLanes(VectorOperators.ADD);
+        forceY[i] += sumY.reduceLanes(VectorOperators.ADD);
+    }
+
+}
@@ -0,0 +1,79 @@
+package computeshader.gravity;
+
+// iterative radix-2 complex FFT over split real/imaginary arrays
+public class FFT {
+    private final int n;
+    private final int[] reverse;
+    private final double[] cos;
+    private final double[] sin;
+
+    public FFT(int n) {
+        if (Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two: " + n);
+        }
+
+        this.n = n;
+
+        reverse = new int[n];
+        int bits = Integer.numberOfTrailingZeros(n);
+        for (int i = 0; i < n; i++) {
+            reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+
+        cos = new double[n / 2];
+        sin = new double[n / 2];
+        for (int i = 0; i < n / 2; i++) {
+            double angle = -2.0 * Math.PI * i / n;
+            cos[i] = Math.cos(angle);
+            sin[i] = Math.sin(angle);
+        }
+    }
+
+    public int size() {
+        return n;
+    }
+
+    // in place transform of re[offset..offset+n) and im[offset..offset+n), the inverse is scaled by 1/n
+    public void transform(double[] re, double[] im, int offset, boolean inverse) {
+        for (int i = 0; i < n; i++) {
+            int j = reverse[i];
+            if (i < j) {
+                double tr = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = tr;
+                double ti = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = ti;
+            }
+        }
+
+        double sign = inverse ? -1.0 : 1.0;
+        for (int length = 2; length <= n; length <<= 1) {
+            int half = length >> 1;
+            int step = n / length;
+            for (int start = 0; start < n; start += length) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sign * sin[k * step];
+                    int a = offset + start + k;
+                    int b = a + half;
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+
+        if (inverse) {
+            double scale = 1.0 / n;
+            for (int i = 0; i < n; i++) {
+                re[offset + i] *= scale;
+                im[offset + i] *= scale;
+            }
+        }
+    }
+
+}
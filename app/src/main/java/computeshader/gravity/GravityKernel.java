@@ -0,0 +1,144 @@
+package computeshader.gravity;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.sqrt;
+
+import computeshader.core.ComputeKernel;
+import computeshader.core.CpuImage;
+import computeshader.core.JavaBackend;
+
+// Java port of gravity.glsl
+public class GravityKernel implements ComputeKernel {
+    private static final int OBJECT_SIZE_F = 5;
+
+    private CpuImage display;
+    private float[] objects;
+    private int numObjects;
+    private int stage;
+
+    // replaces the O(n^2) loop of stage 0 when set
+    private BarnesHut barnesHut;
+
+    // replaces the O(pixels * n) field sum of stage 2 when set
+    private ParticleMesh particleMesh;
+
+    // runs stages 0 and 1 as a whole when set
+    private DirectSum directSum;
+
+    public GravityKernel() {
+    }
+
+    public GravityKernel(DirectSum directSum) {
+        this.directSum = directSum;
+    }
+
+    public GravityKernel(BarnesHut barnesHut) {
+        this(barnesHut, null);
+    }
+
+    public GravityKernel(BarnesHut barnesHut, ParticleMesh particleMesh) {
+        this.barnesHut = barnesHut;
+        this.particleMesh = particleMesh;
+    }
+
+    @Override
+    public int[] workGroupSize() {
+        return new int[] { 64, 1, 1 };
+    }
+
+    @Override
+    public void prepare(JavaBackend backend) {
+        display = backend.getImage("Display");
+        objects = backend.getStorageBuffer("ObjectData");
+        numObjects = objects.length / OBJECT_SIZE_F;
+        stage = backend.getUIntUniform("Stage");
+
+        if (stage < 2 && directSum != null) {
+            if (stage == 0) {
+                directSum.computeForces(objects);
+            } else {
+                directSum.integrate(objects);
+            }
+        } else if (stage == 0 && barnesHut != null) {
+            barnesHut.build(objects);
+        } else if (stage == 2 && particleMesh != null) {
+            particleMesh.computeField(objects);
+        }
+    }
+
+    @Override
+    public void invoke(int x, int y, int z) {
+        if (stage < 2 && directSum != null) {
+            // done in prepare
+            return;
+        }
+
+        if (stage == 0) {
+            if (barnesHut == null) {
+                accumulateForce(x);
+            } else if (x != 0) {
+                barnesHut.accumulateForce(x, objects);
+            }
+        } else if (stage == 1) {
+            int i = x * OBJECT_SIZE_F;
+            objects[i + 0] += objects[i + 2] * 0.1f;
+            objects[i + 1] += objects[i + 3] * 0.1f;
+        } else if (stage == 2) {
+            if (particleMesh == null) {
+                drawField(x, y);
+            } else {
+                display.store(x, y, 1.0f, 1.0f, 1.0f, sigmoid(particleMesh.sample(x, y)));
+            }
+        }
+    }
+
+    private void accumulateForce(int i) {
+        int a = i * OBJECT_SIZE_F;
+        float mass1 = objects[a + 4];
+        float x1 = objects[a + 0];
+        float y1 = objects[a + 1];
+        float forceX = 0.0f;
+        float forceY = 0.0f;
+
+        for (int j = 0; j < numObjects; j++) {
+            if (i == j || i == 0) continue;
+
+            int b = j * OBJECT_SIZE_F;
+            float mass2 = objects[b + 4];
+            float differenceX = x1 - objects[b + 0];
+            float differenceY = y1 - objects[b + 1];
+            float distanceSquared = Math.max(0.0f, differenceX * differenceX + differenceY * differenceY);
+            float force = 0.1f * (mass1 * mass2) / distanceSquared;
+
+            float length = (float) sqrt(distanceSquared);
+            forceX += -differenceX / length * force;
+            forceY += -differenceY / length * force;
+        }
+
+        objects[a + 2] += forceX;
+        objects[a + 3] += forceY;
+    }
+
+    private void drawField(int x, int y) {
+        float mass1 = 1.0f;
+
+        float totalForce = 0.0f;
+        for (int i = 0; i < numObjects; i++) {
+            int object = i * OBJECT_SIZE_F;
+            float mass2 = objects[object + 4];
+            float differenceX = x - objects[object + 0];
+            float differenceY = y - objects[object + 1];
+            float distanceSquared = differenceX * differenceX + differenceY * differenceY;
+
+            totalForce += (mass1 * mass2) / distanceSquared;
+        }
+
+        display.store(x, y, 1.0f, 1.0f, 1.0f, sigmoid(totalForce));
+    }
+
+    static float sigmoid(float x) {
+        float v = (float) (1.0 / (1.0 + exp(x)));
+        return 2.0f * (0.5f - v);
+    }
+
+}
@@ -1,18 +1,24 @@
 package computeshader.gravity;
 
-import java.util.List;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import computeshader.core.ComputeBackend;
+import computeshader.core.FixedTimestep;
+import computeshader.core.FrameGraph;
+import computeshader.core.JavaBackend;
+import computeshader.core.OpenGLBackend;
+import computeshader.core.PixelFormat;
 import computeshader.core.ShaderApp;
 import computeshader.core.ShaderApp.ShaderAppConfiguration;
 import imgui.ImGui;
-import imgui.app.Application;
 
 public class GravityMain {
     private static final Logger logger = LogManager.getLogger();
 
+    private static final int TICKS_PER_SECOND = 60;
+    private static final int MAX_SUBSTEPS = 4;
+
     private ShaderApp app;
 
     private String title = "Gravity";
@@ -27,15 +33,38 @@ public class GravityMain {
     private double previousFrameTime = 0.0;
     private double deltaTime = 0.0;
 
+    // handles resolved once the program is linked
+    private int gravityShader;
+    private int[] workGroupSize;
+    private int stageUniform;
+
     public GravityMain() {
-        app = new ShaderApp(new ShaderAppConfiguration(title, windowWidth, windowHeight, textureWidth, textureHeight));
+        this(new OpenGLBackend(), 1920, 1080, (int) Math.pow(2, 12));
+    }
 
-        app.preRun(() -> {
-            app.createTexture("Display");
+    public GravityMain(ComputeBackend backend, int textureWidth, int textureHeight, int numObjects) {
+        this(backend, textureWidth, textureHeight, numObjects, new GravityKernel());
+    }
+
+    public GravityMain(ComputeBackend backend, int textureWidth, int textureHeight, int numObjects,
+            GravityKernel kernel) {
+        this.textureWidth = textureWidth;
+        this.textureHeight = textureHeight;
+        this.numObjects = numObjects;
 
-            app.addUniform("Stage");
+        app = new ShaderApp(new ShaderAppConfiguration(title, windowWidth, windowHeight, textureWidth, textureHeight),
+                backend);
+        app.registerKernel("/gravity.glsl", kernel);
+        // the shader moves objects by a fixed 0.1 of their velocity, one tick is that step
+        app.fixedTimestep(FixedTimestep.ofRate(TICKS_PER_SECOND, MAX_SUBSTEPS));
+
+        app.preRun(() -> {
+            app.createTexture("Display", PixelFormat.RGBA8);
 
             app.createComputeShader("GravityShader", "/gravity.glsl");
+            gravityShader = app.getProgram("GravityShader");
+            workGroupSize = app.getWorkGroupSize("GravityShader");
+            stageUniform = app.getUniform("GravityShader", "Stage");
 
             app.createStorageBuffer("GravityShader", "ShaderParameters", new float[] {
                     (float) textureWidth,
@@ -46,38 +75,87 @@ public class GravityMain {
             app.createStorageBuffer("GravityShader", "ObjectData", ObjectUtil.createObjects(numObjects, textureWidth, textureHeight));
         });
 
-        app.gui(() -> {
+        app.update(() -> {
             currentTime = app.getTime();
             deltaTime = currentTime - previousFrameTime;
             previousFrameTime = currentTime;
+        });
 
+        app.gui(() -> {
             ImGui.text("Runtime: " + currentTime);
             ImGui.text("Delta  : " + deltaTime);
             ImGui.text("Object Count: " + numObjects);
         });
 
-        app.processSteps(List.of(() -> {
-            app.setUIntUniform("Stage", 0);
+        app.step("forces", () -> {
+            app.usingProgram(gravityShader, () -> {
+                app.setUIntUniform(stageUniform, 0);
+
+                app.runComputeShader(numObjects / workGroupSize[0]);
+            });
+        }).readsBuffer("ShaderParameters", "ObjectData").writesBuffer("ObjectData");
+
+        app.step("integrate", () -> {
+            app.usingProgram(gravityShader, () -> {
+                app.setUIntUniform(stageUniform, 1);
 
-            int[] workGroupSize = app.getWorkGroupSize("GravityShader");
-            app.runComputeShader(numObjects / workGroupSize[0]);
-        }, () -> {
-            app.setUIntUniform("Stage", 1);
+                app.runComputeShader(numObjects / workGroupSize[0]);
+            });
+        }).readsBuffer("ObjectData").writesBuffer("ObjectData");
 
-            int[] workGroupSize = app.getWorkGroupSize("GravityShader");
-            app.runComputeShader(numObjects / workGroupSize[0]);
-        }, () -> {
-            app.setUIntUniform("Stage", 2);
+        app.step("field", () -> {
+            app.usingProgram(gravityShader, () -> {
+                app.setUIntUniform(stageUniform, 2);
 
-            int[] workGroupSize = app.getWorkGroupSize("GravityShader");
-            app.runComputeShader(textureWidth / workGroupSize[0], textureHeight / workGroupSize[1]);
-        }));
+                app.runComputeShader(textureWidth / workGroupSize[0], textureHeight / workGroupSize[1]);
+            });
+        }).readsBuffer("ShaderParameters", "ObjectData").writesImage("Display").perFrame();
 
         app.display("Display");
     }
 
+    public FrameGraph.Plan getFramePlan() {
+        return app.getFramePlan();
+    }
+
+    public FrameGraph.TickedPlan getTickedPlan() {
+        return app.getTickedPlan();
+    }
+
+    public void runHeadless(int frames) {
+        app.runHeadless(frames);
+    }
+
+    public void runHeadless(int frames, int ticksPerFrame) {
+        app.runHeadless(frames, ticksPerFrame);
+    }
+
+    // the smallest power of two at least as tall as the grid at 1920x1080, the FFT only takes powers of two
+    static int gridHeightFor(int gridWidth) {
+        int height = Math.max(2, gridWidth * 1080 / 1920);
+        return Integer.highestOneBit(height * 2 - 1);
+    }
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+            // optional Barnes-Hut theta (0 keeps the direct sum) and particle-mesh grid width for the field
+            float theta = args.length > 2 ? Float.parseFloat(args[2]) : 0.0f;
+            int gridWidth = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+            // or scalar / simd for the softened structure of arrays direct sum, theta and the grid are ignored
+            String directSum = args.length > 4 ? args[4] : "";
+            BarnesHut barnesHut = theta > 0.0f ? new BarnesHut(theta) : null;
+            ParticleMesh particleMesh = gridWidth > 0
+                    ? new ParticleMesh(1920, 1080, gridWidth, gridHeightFor(gridWidth))
+                    : null;
+            GravityKernel kernel = directSum.isEmpty() ? new GravityKernel(barnesHut, particleMesh)
+                    : new GravityKernel(new DirectSum(1.0f, directSum.equals("simd")));
+            GravityMain main = new GravityMain(new JavaBackend(), 1920, 1080, (int) Math.pow(2, 12), kernel);
+            main.runHeadless(frames);
+            return;
+        }
+
         GravityMain main = new GravityMain();
-        Application.launch(main.app);
+        main.app.launch();
     }
 }
@@ -0,0 +1,188 @@
+package computeshader.gravity;
+
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import computeshader.core.Parallel;
+
+// particle-mesh version of stage 2 of gravity.glsl: cloud-in-cell deposit, FFT convolution with 1/r^2, bilinear sample
+public class ParticleMesh {
+    private static final int OBJECT_SIZE_F = 5;
+
+    private final ForkJoinPool pool;
+    private final int width;
+    private final int height;
+    private final int gridWidth;
+    private final int gridHeight;
+    private final float cellWidth;
+    private final float cellHeight;
+
+    // zero padded to twice the grid so the circular convolution doesn't wrap around
+    private final int paddedWidth;
+    private final int paddedHeight;
+    private final FFT rowFFT;
+    private final FFT columnFFT;
+
+    private final double[] kernelRe;
+    private final double[] kernelIm;
+    private final double[] re;
+    private final double[] im;
+    private final float[] field;
+
+    public ParticleMesh(int width, int height, int gridWidth, int gridHeight) {
+        this(width, height, gridWidth, gridHeight, ForkJoinPool.commonPool());
+    }
+
+    public ParticleMesh(int width, int height, int gridWidth, int gridHeight, ForkJoinPool pool) {
+        // sample interpolates between two cells in each direction
+        if (gridWidth < 2 || gridHeight < 2) {
+            throw new IllegalArgumentException("Grid must be at least 2x2: " + gridWidth + "x" + gridHeight);
+        }
+
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.cellWidth = (float) width / gridWidth;
+        this.cellHeight = (float) height / gridHeight;
+
+        paddedWidth = 2 * gridWidth;
+        paddedHeight = 2 * gridHeight;
+        rowFFT = new FFT(paddedWidth);
+        columnFFT = new FFT(paddedHeight);
+
+        re = new double[paddedWidth * paddedHeight];
+        im = new double[paddedWidth * paddedHeight];
+        field = new float[gridWidth * gridHeight];
+
+        kernelRe = new double[paddedWidth * paddedHeight];
+        kernelIm = new double[paddedWidth * paddedHeight];
+        createKernel();
+    }
+
+    // 1/r^2 for every cell offset, the singular self term uses half the cell diagonal as the distance
+    private void createKernel() {
+        for (int j = 0; j < paddedHeight; j++) {
+            int dy = j < gridHeight ? j : j - paddedHeight;
+            for (int i = 0; i < paddedWidth; i++) {
+                int dx = i < gridWidth ? i : i - paddedWidth;
+                double distanceX = dx * cellWidth;
+                double distanceY = dy * cellHeight;
+                double distanceSquared = distanceX * distanceX + distanceY * distanceY;
+                if (dx == 0 && dy == 0) {
+                    distanceSquared = 0.25 * (cellWidth * cellWidth + cellHeight * cellHeight);
+                }
+                kernelRe[j * paddedWidth + i] = 1.0 / distanceSquared;
+            }
+        }
+
+        transform2D(kernelRe, kernelIm, false);
+    }
+
+    public void computeField(float[] objects) {
+        Arrays.fill(re, 0.0);
+        Arrays.fill(im, 0.0);
+        deposit(objects);
+
+        transform2D(re, im, false);
+        Parallel.forRange(pool, 0, re.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double a = re[i];
+                double b = im[i];
+                re[i] = a * kernelRe[i] - b * kernelIm[i];
+                im[i] = a * kernelIm[i] + b * kernelRe[i];
+            }
+        });
+        transform2D(re, im, true);
+
+        Parallel.forRange(pool, 0, gridHeight, (from, to) -> {
+            for (int j = from; j < to; j++) {
+                for (int i = 0; i < gridWidth; i++) {
+                    field[j * gridWidth + i] = (float) re[j * paddedWidth + i];
+                }
+            }
+        });
+    }
+
+    // cloud-in-cell, objects that left the display are not part of the mesh
+    private void deposit(float[] objects) {
+        int numObjects = objects.length / OBJECT_SIZE_F;
+        for (int n = 0; n < numObjects; n++) {
+            float x = objects[n * OBJECT_SIZE_F + 0];
+            float y = objects[n * OBJECT_SIZE_F + 1];
+            float mass = objects[n * OBJECT_SIZE_F + 4];
+            if (!(x >= 0.0f && x < width && y >= 0.0f && y < height)) {
+                continue;
+            }
+
+            float u = x / cellWidth - 0.5f;
+            float v = y / cellHeight - 0.5f;
+            int i0 = (int) floor(u);
+            int j0 = (int) floor(v);
+            float fx = u - i0;
+            float fy = v - j0;
+            int i1 = min(i0 + 1, gridWidth - 1);
+            int j1 = min(j0 + 1, gridHeight - 1);
+            i0 = max(i0, 0);
+            j0 = max(j0, 0);
+
+            re[j0 * paddedWidth + i0] += mass * (1.0f - fx) * (1.0f - fy);
+            re[j0 * paddedWidth + i1] += mass * fx * (1.0f - fy);
+            re[j1 * paddedWidth + i0] += mass * (1.0f - fx) * fy;
+            re[j1 * paddedWidth + i1] += mass * fx * fy;
+        }
+    }
+
+    private void transform2D(double[] re, double[] im, boolean inverse) {
+        Parallel.forRange(pool, 0, paddedHeight, (from, to) -> {
+            for (int j = from; j < to; j++) {
+                rowFFT.transform(re, im, j * paddedWidth, inverse);
+            }
+        });
+
+        Parallel.forRange(pool, 0, paddedWidth, (from, to) -> {
+            double[] columnRe = new double[paddedHeight];
+            double[] columnIm = new double[paddedHeight];
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < paddedHeight; j++) {
+                    columnRe[j] = re[j * paddedWidth + i];
+                    columnIm[j] = im[j * paddedWidth + i];
+                }
+                columnFFT.transform(columnRe, columnIm, 0, inverse);
+                for (int j = 0; j < paddedHeight; j++) {
+                    re[j * paddedWidth + i] = columnRe[j];
+                    im[j * paddedWidth + i] = columnIm[j];
+                }
+            }
+        });
+    }
+
+    // sum of mass / distance^2 at pixel (x, y), bilinear between cell centers
+    public float sample(float x, float y) {
+        float u = min(max(x / cellWidth - 0.5f, 0.0f), gridWidth - 1);
+        float v = min(max(y / cellHeight - 0.5f, 0.0f), gridHeight - 1);
+        int i0 = min((int) u, gridWidth - 2);
+        int j0 = min((int) v, gridHeight - 2);
+        float fx = u - i0;
+        float fy = v - j0;
+
+        int cell = j0 * gridWidth + i0;
+        float top = field[cell] * (1.0f - fx) + field[cell + 1] * fx;
+        float bottom = field[cell + gridWidth] * (1.0f - fx) + field[cell + gridWidth + 1] * fx;
+        return top * (1.0f - fy) + bottom * fy;
+    }
+
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+}
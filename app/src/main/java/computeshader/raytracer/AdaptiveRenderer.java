@@ -0,0 +1,233 @@
+package computeshader.raytracer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import computeshader.core.ImageFiles;
+import computeshader.core.Parallel;
+
+// OfflineRenderer that spends samples where the image is noisy. a first pass gives every pixel initialSamples paths
+// and tracks the mean and variance of their luminance, then every pass gives the tiles whose error is still above
+// the threshold the samples their variance says they need, until every tile is below it or at maxSamples. a tile's
+// error is the RMS over its pixels of the standard error of the mean luminance, in the linear units of the image.
+// flat sky converges in the first pass, contact shadows and glossy edges get the rest
+public class AdaptiveRenderer {
+    private static final Logger logger = LogManager.getLogger();
+
+    static final int TILE_SIZE = 16;
+    private static final int MAX_GROWTH = 4;
+    private static final double MARGIN = 1.1;
+
+    private final PathTracer tracer;
+    private final ForkJoinPool pool;
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+
+    // linear RGB, row 0 at the bottom like Image
+    private final float[] image;
+    // running sums per pixel, doubles so thousands of samples add up exactly enough
+    private final double[] sums;
+    private final double[] luminanceSquares;
+    // every pixel of a tile has the same number of samples
+    private final int[] tileSamples;
+    private final double[] tileErrors;
+    private final LongAdder rays = new LongAdder();
+    private int passes;
+
+    public AdaptiveRenderer(PathTracer tracer, ForkJoinPool pool) {
+        this.tracer = tracer;
+        this.pool = pool;
+        this.width = tracer.getWidth();
+        this.height = tracer.getHeight();
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.image = new float[width * height * 3];
+        this.sums = new double[width * height * 3];
+        this.luminanceSquares = new double[width * height];
+        this.tileSamples = new int[tilesX * tilesY];
+        this.tileErrors = new double[tilesX * tilesY];
+    }
+
+    public float[] render(int initialSamples, int maxSamples, double threshold, int seed) {
+        if (initialSamples < 2 || maxSamples < initialSamples) {
+            throw new IllegalArgumentException(
+                    "Need at least 2 initial samples and no fewer max samples: " + initialSamples + ", " + maxSamples);
+        }
+
+        rays.reset();
+        Arrays.fill(sums, 0.0);
+        Arrays.fill(luminanceSquares, 0.0);
+        Arrays.fill(tileSamples, 0);
+        passes = 0;
+
+        int tiles = tilesX * tilesY;
+        int[] active = new int[tiles];
+        for (int tile = 0; tile < tiles; tile++) {
+            active[tile] = tile;
+        }
+        int numActive = tiles;
+
+        while (numActive > 0) {
+            int pass = passes++;
+            int[] passTiles = active;
+            Parallel.forRange(pool, 0, numActive, 1, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    int tile = passTiles[i];
+                    int samples = tileSamples[tile] == 0 ? initialSamples
+                            : samplesToAdd(tileSamples[tile], tileErrors[tile], threshold, maxSamples);
+                    renderTile(tile, samples, OfflineRenderer.tileSeed(OfflineRenderer.tileSeed(seed, pass), tile));
+                }
+            });
+
+            int next = 0;
+            for (int i = 0; i < numActive; i++) {
+                int tile = active[i];
+                if (tileErrors[tile] > threshold && tileSamples[tile] < maxSamples) {
+                    active[next++] = tile;
+                }
+            }
+            numActive = next;
+        }
+
+        return image;
+    }
+
+    // the error of a mean falls with the square root of its samples, what the tile needs to reach the threshold
+    // with a little margin. at most MAX_GROWTH times what it has, an early estimate can be far off
+    static int samplesToAdd(int samples, double error, double threshold, int maxSamples) {
+        double needed = samples * (error / threshold) * (error / threshold) * MARGIN;
+        long target = Math.min((long) samples * MAX_GROWTH, (long) Math.ceil(needed));
+        return (int) Math.max(1, Math.min(maxSamples, target) - samples);
+    }
+
+    private void renderTile(int tile, int samples, int seed) {
+        int startX = (tile % tilesX) * TILE_SIZE;
+        int startY = (tile / tilesX) * TILE_SIZE;
+        int endX = Math.min(startX + TILE_SIZE, width);
+        int endY = Math.min(startY + TILE_SIZE, height);
+        int n = tileSamples[tile] + samples;
+
+        PathTracer.Path path = tracer.newPath();
+        path.seed(seed);
+        double squaredErrors = 0.0;
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                int pixel = y * width + x;
+                double sumR = sums[pixel * 3 + 0];
+                double sumG = sums[pixel * 3 + 1];
+                double sumB = sums[pixel * 3 + 2];
+                double squares = luminanceSquares[pixel];
+                for (int i = 0; i < samples; i++) {
+                    path.sample(x, y);
+                    sumR += path.r();
+                    sumG += path.g();
+                    sumB += path.b();
+                    double luminance = luminance(path.r(), path.g(), path.b());
+                    squares += luminance * luminance;
+                }
+                sums[pixel * 3 + 0] = sumR;
+                sums[pixel * 3 + 1] = sumG;
+                sums[pixel * 3 + 2] = sumB;
+                luminanceSquares[pixel] = squares;
+
+                image[pixel * 3 + 0] = (float) (sumR / n);
+                image[pixel * 3 + 1] = (float) (sumG / n);
+                image[pixel * 3 + 2] = (float) (sumB / n);
+
+                // sample variance of the luminance, over n the variance of its mean
+                double mean = luminance(sumR, sumG, sumB) / n;
+                double variance = Math.max(0.0, (squares - n * mean * mean) / (n - 1));
+                squaredErrors += variance / n;
+            }
+        }
+
+        tileSamples[tile] = n;
+        tileErrors[tile] = Math.sqrt(squaredErrors / ((endX - startX) * (endY - startY)));
+        rays.add(path.rays());
+    }
+
+    private static double luminance(double r, double g, double b) {
+        return 0.2126 * r + 0.7152 * g + 0.0722 * b;
+    }
+
+    // gamma of the display, sqrt like raytrace.glsl
+    public float[] toDisplay() {
+        float[] display = new float[image.length];
+        for (int i = 0; i < image.length; i++) {
+            display[i] = (float) Math.sqrt(image[i]);
+        }
+        return display;
+    }
+
+    public float[] getImage() {
+        return image;
+    }
+
+    // paths traced in the last render
+    public long getTotalSamples() {
+        long total = 0;
+        for (int tile = 0; tile < tileSamples.length; tile++) {
+            int startX = (tile % tilesX) * TILE_SIZE;
+            int startY = (tile / tilesX) * TILE_SIZE;
+            long pixels = (long) (Math.min(startX + TILE_SIZE, width) - startX)
+                    * (Math.min(startY + TILE_SIZE, height) - startY);
+            total += pixels * tileSamples[tile];
+        }
+        return total;
+    }
+
+    public int[] getTileSamples() {
+        return tileSamples;
+    }
+
+    public double getMaxTileError() {
+        double max = 0.0;
+        for (double error : tileErrors) {
+            max = Math.max(max, error);
+        }
+        return max;
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    public long getRays() {
+        return rays.sum();
+    }
+
+    // AdaptiveRenderer [output] [width] [threshold] [initialSamples] [maxSamples] [gridSize] [threads]
+    public static void main(String[] args) throws IOException {
+        Path output = Path.of(args.length > 0 ? args[0] : "render.png");
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+        int initialSamples = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        int maxSamples = args.length > 4 ? Integer.parseInt(args[4]) : 1024;
+        int gridSize = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+        int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+        int height = (int) (width / (1600.0f / 900.0f));
+
+        RenderJob job = RenderJob.gridScene(gridSize, 0, width, height, initialSamples, 0);
+        AdaptiveRenderer renderer = new AdaptiveRenderer(job.newTracer(), new ForkJoinPool(threads));
+        long start = System.nanoTime();
+        renderer.render(initialSamples, maxSamples, threshold, 0);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        logger.info("Rendered {}x{} to error {} in {} passes, {} s, {} samples per pixel on average ({} Mrays/s)",
+                width, height, renderer.getMaxTileError(), renderer.getPasses(), seconds,
+                (double) renderer.getTotalSamples() / (width * height), renderer.getRays() / seconds / 1e6);
+
+        boolean pfm = output.toString().toLowerCase().endsWith(".pfm");
+        ImageFiles.write(output, width, height, 3, pfm ? renderer.getImage() : renderer.toDisplay());
+        logger.info("Wrote {}", output);
+    }
+
+}
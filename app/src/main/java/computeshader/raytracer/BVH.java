@@ -0,0 +1,297 @@
+package computeshader.raytracer;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+// bounding volume hierarchy over SphereParameters, built with a binned surface area heuristic and flattened
+// depth first so every node is followed by its left child and links to the node after its subtree (its miss index)
+public class BVH {
+    private static final Logger logger = LogManager.getLogger();
+
+    static final int NODE_SIZE_F = 9;
+    private static final int SPHERE_SIZE_F = PathTracer.SPHERE_SIZE_F;
+    private static final int NUM_BINS = 16;
+    private static final int MAX_LEAF_SIZE = 4;
+    // cost of a box test relative to a sphere test
+    private static final float TRAVERSAL_COST = 1.0f;
+
+    // spheres reordered so the spheres of a leaf are contiguous, slots maps a Scene index to its reordered index
+    private final float[] spheres;
+    private final int[] slots;
+    private final float[] nodes;
+    private final int numNodes;
+
+    // build scratch, per sphere bounds indexed by the original sphere index
+    private int[] indices;
+    private float[] bounds;
+    private int nodeCount;
+
+    private final int[] binCounts = new int[NUM_BINS];
+    private final float[] binBounds = new float[NUM_BINS * 6];
+    private final float[] rightCosts = new float[NUM_BINS];
+
+    public BVH(float[] sphereParameters) {
+        int numSpheres = sphereParameters.length / SPHERE_SIZE_F;
+        if (numSpheres == 0 || numSpheres > 1 << 23) {
+            // node fields are stored as floats like materialIndex, which keeps indices exact up to 2^24
+            throw new IllegalArgumentException("BVH needs between 1 and 2^23 spheres: " + numSpheres);
+        }
+
+        indices = new int[numSpheres];
+        bounds = new float[numSpheres * 6];
+        for (int i = 0; i < numSpheres; i++) {
+            indices[i] = i;
+            int sphere = i * SPHERE_SIZE_F;
+            float radius = Math.abs(sphereParameters[sphere + 3]);
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[i * 6 + axis] = sphereParameters[sphere + axis] - radius;
+                bounds[i * 6 + 3 + axis] = sphereParameters[sphere + axis] + radius;
+            }
+        }
+
+        float[] nodes = new float[(2 * numSpheres - 1) * NODE_SIZE_F];
+        nodeCount = 0;
+        build(nodes, 0, numSpheres);
+        this.numNodes = nodeCount;
+        this.nodes = Arrays.copyOf(nodes, numNodes * NODE_SIZE_F);
+
+        spheres = new float[sphereParameters.length];
+        slots = new int[numSpheres];
+        for (int i = 0; i < numSpheres; i++) {
+            System.arraycopy(sphereParameters, indices[i] * SPHERE_SIZE_F, spheres, i * SPHERE_SIZE_F, SPHERE_SIZE_F);
+            slots[indices[i]] = i;
+        }
+
+        indices = null;
+        bounds = null;
+    }
+
+    private void build(float[] nodes, int start, int end) {
+        int node = nodeCount++;
+        int n = node * NODE_SIZE_F;
+        int count = end - start;
+
+        float[] centroidBounds = new float[] {
+                Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+        setEmpty(nodes, n);
+        for (int i = start; i < end; i++) {
+            int sphere = indices[i] * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                nodes[n + axis] = min(nodes[n + axis], bounds[sphere + axis]);
+                nodes[n + 3 + axis] = max(nodes[n + 3 + axis], bounds[sphere + 3 + axis]);
+                float centroid = 0.5f * (bounds[sphere + axis] + bounds[sphere + 3 + axis]);
+                centroidBounds[axis] = min(centroidBounds[axis], centroid);
+                centroidBounds[3 + axis] = max(centroidBounds[3 + axis], centroid);
+            }
+        }
+
+        int axis = 0;
+        for (int i = 1; i < 3; i++) {
+            if (centroidBounds[3 + i] - centroidBounds[i] > centroidBounds[3 + axis] - centroidBounds[axis]) {
+                axis = i;
+            }
+        }
+        float axisMin = centroidBounds[axis];
+        float extent = centroidBounds[3 + axis] - axisMin;
+
+        int mid = -1;
+        if (count > 1 && extent > 0.0f) {
+            // bin the centroids along the widest axis and sweep both directions for the cheapest split
+            Arrays.fill(binCounts, 0);
+            for (int bin = 0; bin < NUM_BINS; bin++) {
+                setEmpty(binBounds, bin * 6);
+            }
+            float binScale = NUM_BINS / extent;
+            for (int i = start; i < end; i++) {
+                int bin = bin(indices[i], axis, axisMin, binScale);
+                binCounts[bin]++;
+                grow(binBounds, bin * 6, bounds, indices[i] * 6);
+            }
+
+            float[] sweep = new float[6];
+            setEmpty(sweep, 0);
+            int rightCount = 0;
+            for (int bin = NUM_BINS - 1; bin > 0; bin--) {
+                grow(sweep, 0, binBounds, bin * 6);
+                rightCount += binCounts[bin];
+                rightCosts[bin] = rightCount * area(sweep, 0);
+            }
+
+            setEmpty(sweep, 0);
+            int leftCount = 0;
+            float bestCost = Float.POSITIVE_INFINITY;
+            int bestSplit = -1;
+            for (int bin = 0; bin < NUM_BINS - 1; bin++) {
+                grow(sweep, 0, binBounds, bin * 6);
+                leftCount += binCounts[bin];
+                if (leftCount == 0 || leftCount == count) {
+                    continue;
+                }
+
+                float cost = TRAVERSAL_COST + (leftCount * area(sweep, 0) + rightCosts[bin + 1]) / area(nodes, n);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestSplit = bin + 1;
+                }
+            }
+
+            if (bestSplit > 0 && (bestCost < count || count > MAX_LEAF_SIZE)) {
+                mid = start;
+                for (int i = start; i < end; i++) {
+                    if (bin(indices[i], axis, axisMin, binScale) < bestSplit) {
+                        int swap = indices[i];
+                        indices[i] = indices[mid];
+                        indices[mid++] = swap;
+                    }
+                }
+            }
+        } else if (count > MAX_LEAF_SIZE) {
+            // coincident centroids can't be binned, any split keeps the leaves small
+            mid = start + count / 2;
+        }
+
+        if (mid < 0) {
+            nodes[n + 7] = start;
+            nodes[n + 8] = count;
+        } else {
+            nodes[n + 7] = 0.0f;
+            nodes[n + 8] = 0.0f;
+            build(nodes, start, mid);
+            build(nodes, mid, end);
+        }
+        nodes[n + 6] = nodeCount;
+    }
+
+    private int bin(int sphere, int axis, float axisMin, float binScale) {
+        float centroid = 0.5f * (bounds[sphere * 6 + axis] + bounds[sphere * 6 + 3 + axis]);
+        return min(NUM_BINS - 1, (int) ((centroid - axisMin) * binScale));
+    }
+
+    private static void setEmpty(float[] box, int offset) {
+        Arrays.fill(box, offset, offset + 3, Float.POSITIVE_INFINITY);
+        Arrays.fill(box, offset + 3, offset + 6, Float.NEGATIVE_INFINITY);
+    }
+
+    private static void grow(float[] box, int offset, float[] other, int otherOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[offset + axis] = min(box[offset + axis], other[otherOffset + axis]);
+            box[offset + 3 + axis] = max(box[offset + 3 + axis], other[otherOffset + 3 + axis]);
+        }
+    }
+
+    private static float area(float[] box, int offset) {
+        float x = box[offset + 3] - box[offset + 0];
+        float y = box[offset + 4] - box[offset + 1];
+        float z = box[offset + 5] - box[offset + 2];
+        if (!(x >= 0.0f)) {
+            return 0.0f;
+        }
+        return 2.0f * (x * y + y * z + z * x);
+    }
+
+    // moves sphere `index` of the Scene and refits the node bounds, the tree itself is kept
+    public void moveSphere(int index, float[] position) {
+        setPosition(index, position);
+        refit();
+    }
+
+    // without the refit, for moving several spheres before one refit()
+    public void setPosition(int index, float[] position) {
+        System.arraycopy(position, 0, spheres, slots[index] * SPHERE_SIZE_F, 3);
+    }
+
+    // children come after their parent, so a reverse sweep sees both children before the parent
+    public void refit() {
+        for (int node = numNodes - 1; node >= 0; node--) {
+            int n = node * NODE_SIZE_F;
+            setEmpty(nodes, n);
+
+            int count = (int) nodes[n + 8];
+            if (count > 0) {
+                int first = (int) nodes[n + 7];
+                for (int i = first; i < first + count; i++) {
+                    int sphere = i * SPHERE_SIZE_F;
+                    float radius = Math.abs(spheres[sphere + 3]);
+                    for (int axis = 0; axis < 3; axis++) {
+                        nodes[n + axis] = min(nodes[n + axis], spheres[sphere + axis] - radius);
+                        nodes[n + 3 + axis] = max(nodes[n + 3 + axis], spheres[sphere + axis] + radius);
+                    }
+                }
+            } else {
+                int left = node + 1;
+                int right = (int) nodes[left * NODE_SIZE_F + 6];
+                grow(nodes, n, nodes, left * NODE_SIZE_F);
+                grow(nodes, n, nodes, right * NODE_SIZE_F);
+            }
+        }
+    }
+
+    public float[] getSpheres() {
+        return spheres;
+    }
+
+    public float[] getNodes() {
+        return nodes;
+    }
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    public int getSlot(int index) {
+        return slots[index];
+    }
+
+    // nanoseconds per ray (one bounce of a path) with the default RayTracer camera
+    private static double nanosPerRay(PathTracer tracer, int samples) {
+        PathTracer.Path path = tracer.newPath();
+        long start = System.nanoTime();
+        for (int y = 0; y < tracer.getHeight(); y++) {
+            for (int x = 0; x < tracer.getWidth(); x++) {
+                path.render(x, y, samples, y * tracer.getWidth() + x);
+            }
+        }
+        return (double) (System.nanoTime() - start) / path.rays();
+    }
+
+    public static void main(String[] args) {
+        int width = 160;
+        int height = 90;
+        int samples = 4;
+
+        Vector3f position = new Vector3f(0.0f, 0.0f, 10.0f);
+        Matrix4f invProjection = new Matrix4f().setPerspective((float) Math.toRadians(45.0), 1.0f, 0.1f, 100.0f)
+                .invert();
+        Matrix4f invView = new Matrix4f().setLookAt(position, new Vector3f(), new Vector3f(0.0f, 1.0f, 0.0f))
+                .invert();
+
+        float[][] grid = SceneUtil.createGridScene(5, 0);
+        PathTracer linear = new PathTracer(grid[0], grid[1], width, height);
+        linear.setCamera(position, invProjection, invView);
+        nanosPerRay(linear, samples);
+        logger.info("{} spheres, linear: {} ns/ray", grid[1].length / SPHERE_SIZE_F, nanosPerRay(linear, samples));
+
+        for (int n : new int[] { 5, 50, 160 }) {
+            float[][] scene = SceneUtil.createGridScene(n, 0);
+
+            long start = System.nanoTime();
+            BVH bvh = new BVH(scene[1]);
+            double buildMillis = (System.nanoTime() - start) / 1e6;
+
+            PathTracer tracer = new PathTracer(scene[0], bvh.getSpheres(), bvh.getNodes(), width, height);
+            tracer.setCamera(position, invProjection, invView);
+            nanosPerRay(tracer, samples);
+            logger.info("{} spheres, BVH ({} nodes, built in {} ms): {} ns/ray", scene[1].length / SPHERE_SIZE_F,
+                    bvh.getNumNodes(), buildMillis, nanosPerRay(tracer, samples));
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package computeshader.raytracer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joml.Math;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+// orbit camera shared by RayTracer and the offline renderer
+class Camera {
+    private static final Logger logger = LogManager.getLogger();
+
+    private Matrix4f projection = new Matrix4f();
+    private Matrix4f view = new Matrix4f();
+    private Matrix4f invProjection = new Matrix4f();
+    private Matrix4f invView = new Matrix4f();
+
+    private float[] verticalFov = new float[] { Math.toRadians(45.0f) };
+    private float nearClip = 0.1f;
+    private float farClip = 100.0f;
+    private Vector3f center = new Vector3f(0.0f, 0.0f, 0.0f);
+    private Vector3f position = new Vector3f(0.0f, 0.0f, 0.0f);
+    private Vector3f forward = new Vector3f(0.0f, 0.0f, -1.0f);
+    private Vector3f up = new Vector3f(0.0f, 1.0f, 0.0f);
+    private float distance = 10.0f;
+    private float latitude = 0.0f;
+    private float longitude = 0.0f;
+    private Vector3f euclidean = new Vector3f();
+    private int viewportWidth;
+    private int viewportHeight;
+    private boolean changed = true;
+
+    Camera(int viewportWidth, int viewportHeight) {
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+
+        calculateProjection();
+        update();
+
+        logger.info("Created {}", this);
+    }
+
+    void update() {
+        calculatePosition();
+        calculateView();
+    }
+
+    private void calculatePosition() {
+        calculateEuclidean();
+
+        center.add(euclidean.mul(distance), position);
+    }
+
+    private void calculateView() {
+        view.setLookAt(position, center, up);
+        view.invert(invView);
+    }
+
+    void calculateProjection() {
+        float aspectRatio = viewportWidth / viewportHeight;
+        projection.setPerspective(verticalFov[0], aspectRatio, nearClip, farClip);
+        projection.invert(invProjection);
+        changed = true;
+    }
+
+    private void calculateEuclidean() {
+        float latitudeRad = Math.toRadians(latitude);
+        float longitudeRad = Math.toRadians(longitude);
+        euclidean.set(Math.cos(latitudeRad) * Math.sin(longitudeRad), Math.sin(latitudeRad),
+                Math.cos(latitudeRad) * Math.cos(longitudeRad));
+    }
+
+    void orbit(float deltaX, float deltaY) {
+        if (deltaX == 0.0f && deltaY == 0.0f) {
+            return;
+        }
+
+        changed = true;
+        longitude -= deltaX;
+
+        if (longitude < 0.0f) {
+            longitude += 360.0f;
+        }
+
+        if (longitude > 360.0f) {
+            longitude -= 360.0f;
+        }
+
+        latitude = Math.clamp(-85.0f, 85.0f, latitude + deltaY);
+    }
+
+    void zoom(float zoom) {
+        float previousDistance = distance;
+        distance = Math.clamp(2.0f, 100.0f, distance + zoom);
+        changed |= distance != previousDistance;
+    }
+
+    // true once after the view or projection changed
+    boolean takeChanged() {
+        boolean wasChanged = changed;
+        changed = false;
+        return wasChanged;
+    }
+
+    Vector3f getPosition() {
+        return position;
+    }
+
+    Matrix4f getInvProjection() {
+        return invProjection;
+    }
+
+    Matrix4f getInvView() {
+        return invView;
+    }
+
+    float[] getVerticalFov() {
+        return verticalFov;
+    }
+
+    @Override
+    public String toString() {
+        return "Camera [verticalFov=" + verticalFov + ", nearClip=" + nearClip + ", farClip=" + farClip
+                + ", forward=" + forward + ", up=" + up + ", viewportWidth=" + viewportWidth + ", viewportHeight="
+                + viewportHeight + "]";
+    }
+}
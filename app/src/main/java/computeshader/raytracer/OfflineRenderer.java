@@ -0,0 +1,167 @@
+package computeshader.raytracer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import computeshader.core.ImageFiles;
+import computeshader.core.Parallel;
+
+// renders RayTracer scenes on the CPU without a window, tile by tile on a work-stealing pool
+public class OfflineRenderer {
+    private static final Logger logger = LogManager.getLogger();
+
+    static final int TILE_SIZE = 32;
+
+    private final PathTracer tracer;
+    private final ForkJoinPool pool;
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+
+    // linear RGB, row 0 at the bottom like Image
+    private final float[] image;
+    private final LongAdder rays = new LongAdder();
+
+    public OfflineRenderer(PathTracer tracer, ForkJoinPool pool) {
+        this.tracer = tracer;
+        this.pool = pool;
+        this.width = tracer.getWidth();
+        this.height = tracer.getHeight();
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.image = new float[width * height * 3];
+    }
+
+    public float[] render(int samples, int seed) {
+        rays.reset();
+        // one tile per task so idle workers steal whole tiles
+        Parallel.forRange(pool, 0, tilesX * tilesY, 1, (from, to) -> {
+            for (int tile = from; tile < to; tile++) {
+                renderTile(tile, samples, seed);
+            }
+        });
+        return image;
+    }
+
+    void renderTile(int tile, int samples, int seed) {
+        int startX = (tile % tilesX) * TILE_SIZE;
+        int startY = (tile / tilesX) * TILE_SIZE;
+        int endX = Math.min(startX + TILE_SIZE, width);
+        int endY = Math.min(startY + TILE_SIZE, height);
+
+        PathTracer.Path path = tracer.newPath();
+        path.seed(tileSeed(seed, tile));
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                path.render(x, y, samples);
+                int pixel = (y * width + x) * 3;
+                image[pixel + 0] = path.r();
+                image[pixel + 1] = path.g();
+                image[pixel + 2] = path.b();
+            }
+        }
+
+        rays.add(path.rays());
+    }
+
+    // a tile's pixels row by row, what a TileWorker sends back
+    float[] copyTile(int tile) {
+        int startX = (tile % tilesX) * TILE_SIZE;
+        int startY = (tile / tilesX) * TILE_SIZE;
+        int tileWidth = Math.min(startX + TILE_SIZE, width) - startX;
+        int tileHeight = Math.min(startY + TILE_SIZE, height) - startY;
+        float[] pixels = new float[tileWidth * tileHeight * 3];
+        for (int y = 0; y < tileHeight; y++) {
+            System.arraycopy(image, ((startY + y) * width + startX) * 3, pixels, y * tileWidth * 3, tileWidth * 3);
+        }
+        return pixels;
+    }
+
+    void putTile(int tile, float[] pixels) {
+        int startX = (tile % tilesX) * TILE_SIZE;
+        int startY = (tile / tilesX) * TILE_SIZE;
+        int tileWidth = Math.min(startX + TILE_SIZE, width) - startX;
+        int tileHeight = Math.min(startY + TILE_SIZE, height) - startY;
+        if (pixels.length != tileWidth * tileHeight * 3) {
+            throw new IllegalArgumentException("Tile " + tile + " has " + tileWidth * tileHeight * 3 + " values, got "
+                    + pixels.length);
+        }
+        for (int y = 0; y < tileHeight; y++) {
+            System.arraycopy(pixels, y * tileWidth * 3, image, ((startY + y) * width + startX) * 3, tileWidth * 3);
+        }
+    }
+
+    // every tile gets its own random stream, so the image doesn't depend on which thread renders it
+    static int tileSeed(int seed, int tile) {
+        int h = seed * 0x9E3779B9 + tile;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // gamma of the display, sqrt like raytrace.glsl
+    public float[] toDisplay() {
+        float[] display = new float[image.length];
+        for (int i = 0; i < image.length; i++) {
+            display[i] = (float) Math.sqrt(image[i]);
+        }
+        return display;
+    }
+
+    public float[] getImage() {
+        return image;
+    }
+
+    public int getTileCount() {
+        return tilesX * tilesY;
+    }
+
+    public long getRays() {
+        return rays.sum();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path output = Path.of(args.length > 0 ? args[0] : "render.png");
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int samples = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int gridSize = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        int height = (int) (width / (1600.0f / 900.0f));
+
+        float[][] scene = SceneUtil.createGridScene(gridSize, 0);
+        BVH bvh = new BVH(scene[1]);
+        PathTracer tracer = new PathTracer(scene[0], bvh.getSpheres(), bvh.getNodes(), width, height);
+        Camera camera = new Camera(width, height);
+        tracer.setCamera(camera.getPosition(), camera.getInvProjection(), camera.getInvView());
+
+        OfflineRenderer renderer = new OfflineRenderer(tracer, new ForkJoinPool(threads));
+        long start = System.nanoTime();
+        renderer.render(samples, 0);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        logger.info("Rendered {}x{} at {} samples on {} threads in {} s ({} Mrays/s)", width, height, samples,
+                threads, seconds, renderer.getRays() / seconds / 1e6);
+
+        boolean pfm = output.toString().toLowerCase().endsWith(".pfm");
+        ImageFiles.write(output, width, height, 3, pfm ? renderer.getImage() : renderer.toDisplay());
+        logger.info("Wrote {}", output);
+    }
+
+}
@@ -0,0 +1,339 @@
+package computeshader.raytracer;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+// Java port of the path tracing in raytrace.glsl, shared by the Java kernel and the offline renderers
+public class PathTracer {
+    static final int MATERIAL_SIZE_F = 6;
+    static final int SPHERE_SIZE_F = 5;
+    private static final int MAX_BOUNCES = 50;
+    private static final float FLT_MAX = Float.MAX_VALUE;
+
+    private final float[] materials;
+    private final float[] spheres;
+    private final int numSpheres;
+    // BVH nodes over spheres, null tests every sphere like the original HitAnything
+    private final float[] nodes;
+    private final int numNodes;
+    private final int width;
+    private final int height;
+
+    private final float[] invProjection = new float[16];
+    private final float[] invView = new float[16];
+    private float cameraX, cameraY, cameraZ;
+
+    public PathTracer(float[] materials, float[] spheres, int width, int height) {
+        this(materials, spheres, null, width, height);
+    }
+
+    public PathTracer(float[] materials, float[] spheres, float[] nodes, int width, int height) {
+        this.materials = materials;
+        this.spheres = spheres;
+        this.numSpheres = spheres.length / SPHERE_SIZE_F;
+        this.nodes = nodes;
+        this.numNodes = nodes == null ? 0 : nodes.length / BVH.NODE_SIZE_F;
+        this.width = width;
+        this.height = height;
+    }
+
+    public void setCamera(Vector3f position, Matrix4f invProjection, Matrix4f invView) {
+        cameraX = position.x;
+        cameraY = position.y;
+        cameraZ = position.z;
+        invProjection.get(this.invProjection);
+        invView.get(this.invView);
+    }
+
+    public Path newPath() {
+        return new Path();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // PixelSeed of raytrace.glsl, the random stream of a pixel in a frame
+    public static int pixelSeed(int pixelIndex, int frame) {
+        return hash(pixelIndex ^ hash(frame));
+    }
+
+    // Hash of raytrace.glsl, one PCG step
+    static int hash(int value) {
+        return permute(value * 747796405 + 0xAC564B05);
+    }
+
+    // PCG (permuted congruential generator) output permutation. Thanks to:
+    // www.pcg-random.org and www.shadertoy.com/view/XlGcRh
+    private static int permute(int state) {
+        int result = ((state >>> ((state >>> 28) + 4)) ^ state) * 277803737;
+        return (result >>> 22) ^ result;
+    }
+
+    // per-thread tracing state, the Java equivalent of the shader's local variables
+    public class Path {
+        private int rngState;
+
+        private float originX, originY, originZ;
+        private float directionX, directionY, directionZ;
+
+        private float hitT;
+        private float pointX, pointY, pointZ;
+        private float normalX, normalY, normalZ;
+        private int hitMaterial;
+
+        private float randomX, randomY, randomZ;
+
+        private float r, g, b;
+
+        // rays cast by this path so far, one per bounce
+        private long rays;
+
+        private Path() {
+        }
+
+        // mean linear color of `samples` paths through pixel (x, y), seeded like the shader's rngState
+        public void render(int x, int y, int samples, int seed) {
+            seed(seed);
+            render(x, y, samples);
+        }
+
+        public void seed(int seed) {
+            rngState = seed;
+        }
+
+        // continues the current random stream instead of reseeding
+        public void render(int x, int y, int samples) {
+            float sumR = 0.0f;
+            float sumG = 0.0f;
+            float sumB = 0.0f;
+            for (int i = 0; i < samples; i++) {
+                sample(x, y);
+                sumR += r;
+                sumG += g;
+                sumB += b;
+            }
+
+            r = sumR / samples;
+            g = sumG / samples;
+            b = sumB / samples;
+        }
+
+        // the color of a single path through pixel (x, y), continuing the random stream
+        public void sample(int x, int y) {
+            float aspectRatio = (float) width / height;
+            float xCoord = (x + (randomValue() - 1.0f)) / width * 2.0f - 1.0f;
+            float yCoord = ((y + (randomValue() - 1.0f)) / height * 2.0f - 1.0f) / aspectRatio;
+
+            float[] p = invProjection;
+            float targetX = p[0] * xCoord + p[4] * yCoord + p[8] + p[12];
+            float targetY = p[1] * xCoord + p[5] * yCoord + p[9] + p[13];
+            float targetZ = p[2] * xCoord + p[6] * yCoord + p[10] + p[14];
+            float targetW = p[3] * xCoord + p[7] * yCoord + p[11] + p[15];
+            targetX /= targetW;
+            targetY /= targetW;
+            targetZ /= targetW;
+            float length = (float) Math.sqrt(targetX * targetX + targetY * targetY + targetZ * targetZ);
+            targetX /= length;
+            targetY /= length;
+            targetZ /= length;
+
+            float[] v = invView;
+            originX = cameraX;
+            originY = cameraY;
+            originZ = cameraZ;
+            directionX = v[0] * targetX + v[4] * targetY + v[8] * targetZ;
+            directionY = v[1] * targetX + v[5] * targetY + v[9] * targetZ;
+            directionZ = v[2] * targetX + v[6] * targetY + v[10] * targetZ;
+
+            rayColor();
+        }
+
+        public float r() {
+            return r;
+        }
+
+        public float g() {
+            return g;
+        }
+
+        public float b() {
+            return b;
+        }
+
+        public long rays() {
+            return rays;
+        }
+
+        private void rayColor() {
+            float initialX = directionX;
+            float initialY = directionY;
+            float initialZ = directionZ;
+            float attenuationR = 1.0f;
+            float attenuationG = 1.0f;
+            float attenuationB = 1.0f;
+
+            for (int i = 0; i < MAX_BOUNCES; i++) {
+                if (hitAnything(0.001f, FLT_MAX)) {
+                    int material = hitMaterial * MATERIAL_SIZE_F;
+                    attenuationR *= materials[material + 0];
+                    attenuationG *= materials[material + 1];
+                    attenuationB *= materials[material + 2];
+
+                    randomUnitVector();
+                    originX = pointX;
+                    originY = pointY;
+                    originZ = pointZ;
+                    directionX = normalX + randomX;
+                    directionY = normalY + randomY;
+                    directionZ = normalZ + randomZ;
+                } else {
+                    float length = (float) Math.sqrt(initialX * initialX + initialY * initialY + initialZ * initialZ);
+                    float t = 0.5f * (initialY / length + 1.0f);
+                    r = ((1.0f - t) + t * 0.5f) * attenuationR;
+                    g = ((1.0f - t) + t * 0.7f) * attenuationG;
+                    b = ((1.0f - t) + t * 1.0f) * attenuationB;
+                    return;
+                }
+            }
+
+            r = 0.0f;
+            g = 0.0f;
+            b = 0.0f;
+        }
+
+        private boolean hitAnything(float tMin, float tMax) {
+            rays++;
+            if (nodes != null) {
+                return hitNodes(tMin, tMax);
+            }
+
+            boolean hit = false;
+            float closest = tMax;
+
+            for (int i = 0; i < numSpheres; i++) {
+                if (hitSphere(i, tMin, closest)) {
+                    hit = true;
+                    closest = hitT;
+                }
+            }
+
+            return hit;
+        }
+
+        // stackless walk of the depth first node array, a missed box or a finished leaf continues at its miss index
+        private boolean hitNodes(float tMin, float tMax) {
+            boolean hit = false;
+            float closest = tMax;
+
+            float inverseX = 1.0f / directionX;
+            float inverseY = 1.0f / directionY;
+            float inverseZ = 1.0f / directionZ;
+
+            int node = 0;
+            while (node < numNodes) {
+                int n = node * BVH.NODE_SIZE_F;
+                if (hitBox(n, inverseX, inverseY, inverseZ, tMin, closest)) {
+                    int count = (int) nodes[n + 8];
+                    if (count == 0) {
+                        node++;
+                        continue;
+                    }
+
+                    int first = (int) nodes[n + 7];
+                    for (int i = first; i < first + count; i++) {
+                        if (hitSphere(i, tMin, closest)) {
+                            hit = true;
+                            closest = hitT;
+                        }
+                    }
+                }
+                node = (int) nodes[n + 6];
+            }
+
+            return hit;
+        }
+
+        private boolean hitBox(int n, float inverseX, float inverseY, float inverseZ, float tMin, float tMax) {
+            float x0 = (nodes[n + 0] - originX) * inverseX;
+            float x1 = (nodes[n + 3] - originX) * inverseX;
+            float y0 = (nodes[n + 1] - originY) * inverseY;
+            float y1 = (nodes[n + 4] - originY) * inverseY;
+            float z0 = (nodes[n + 2] - originZ) * inverseZ;
+            float z1 = (nodes[n + 5] - originZ) * inverseZ;
+
+            float enter = Math.max(Math.max(Math.min(x0, x1), Math.min(y0, y1)), Math.max(Math.min(z0, z1), tMin));
+            float exit = Math.min(Math.min(Math.max(x0, x1), Math.max(y0, y1)), Math.min(Math.max(z0, z1), tMax));
+            return enter <= exit;
+        }
+
+        private boolean hitSphere(int index, float tMin, float tMax) {
+            int sphere = index * SPHERE_SIZE_F;
+            float centerX = spheres[sphere + 0];
+            float centerY = spheres[sphere + 1];
+            float centerZ = spheres[sphere + 2];
+            float radius = spheres[sphere + 3];
+
+            float ocX = originX - centerX;
+            float ocY = originY - centerY;
+            float ocZ = originZ - centerZ;
+            float a = directionX * directionX + directionY * directionY + directionZ * directionZ;
+            float b = ocX * directionX + ocY * directionY + ocZ * directionZ;
+            float c = ocX * ocX + ocY * ocY + ocZ * ocZ - radius * radius;
+            float disc = b * b - a * c;
+            if (disc < 0.0f) {
+                return false;
+            }
+
+            float root = (-b - (float) Math.sqrt(disc)) / a;
+            if (!(tMin < root && root < tMax)) {
+                return false;
+            }
+
+            hitT = root;
+            pointX = originX + root * directionX;
+            pointY = originY + root * directionY;
+            pointZ = originZ + root * directionZ;
+            normalX = (pointX - centerX) / radius;
+            normalY = (pointY - centerY) / radius;
+            normalZ = (pointZ - centerZ) / radius;
+            hitMaterial = (int) spheres[sphere + 4];
+
+            return true;
+        }
+
+        private void randomUnitVector() {
+            while (true) {
+                float x = randomValue(-1.0f, 1.0f);
+                float y = randomValue(-1.0f, 1.0f);
+                float z = randomValue(-1.0f, 1.0f);
+                float lengthSquared = x * x + y * y + z * z;
+                if (lengthSquared < 1.0f) {
+                    float length = (float) Math.sqrt(lengthSquared);
+                    randomX = x / length;
+                    randomY = y / length;
+                    randomZ = z / length;
+                    return;
+                }
+            }
+        }
+
+        private int nextRandom() {
+            rngState = rngState * 747796405 + 0xAC564B05;
+            return permute(rngState);
+        }
+
+        private float randomValue() {
+            return (nextRandom() & 0xFFFFFFFFL) / 4294967295.0f;
+        }
+
+        private float randomValue(float min, float max) {
+            return min + (max - min) * randomValue();
+        }
+    }
+
+}
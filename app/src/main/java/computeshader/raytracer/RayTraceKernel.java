@@ -0,0 +1,60 @@
+package computeshader.raytracer;
+
+import computeshader.core.ComputeKernel;
+import computeshader.core.CpuImage;
+import computeshader.core.JavaBackend;
+
+// Java port of raytrace.glsl
+public class RayTraceKernel implements ComputeKernel {
+    private CpuImage image;
+    private CpuImage accumulation;
+    private PathTracer tracer;
+    private int width;
+    private int samples;
+    private int frame;
+
+    @Override
+    public int[] workGroupSize() {
+        return new int[] { 64, 1, 1 };
+    }
+
+    @Override
+    public void prepare(JavaBackend backend) {
+        image = backend.getImage("Image");
+        accumulation = backend.getImage("Accumulation");
+
+        float[] params = backend.getStorageBuffer("ShaderParameters");
+        width = (int) params[0];
+        tracer = new PathTracer(backend.getStorageBuffer("MaterialParameters"),
+                backend.getStorageBuffer("SphereParameters"), backend.getStorageBuffer("BVHNodes"), width,
+                (int) params[1]);
+        tracer.setCamera(backend.getVector3fUniform("CameraPosition"), backend.getMatrix4fUniform("InvProjection"),
+                backend.getMatrix4fUniform("InvView"));
+        samples = backend.getUIntUniform("Samples");
+        frame = backend.getUIntUniform("Frame");
+    }
+
+    @Override
+    public void invoke(int x, int y, int z) {
+        int pixelIndex = y * width + x;
+
+        PathTracer.Path path = tracer.newPath();
+        path.render(x, y, samples, PathTracer.pixelSeed(pixelIndex, frame));
+
+        float sumR = path.r() * samples;
+        float sumG = path.g() * samples;
+        float sumB = path.b() * samples;
+        float count = samples;
+        if (frame > 0) {
+            sumR += accumulation.get(x, y, 0);
+            sumG += accumulation.get(x, y, 1);
+            sumB += accumulation.get(x, y, 2);
+            count += accumulation.get(x, y, 3);
+        }
+
+        accumulation.store(x, y, sumR, sumG, sumB, count);
+        image.store(x, y, (float) Math.sqrt(sumR / count), (float) Math.sqrt(sumG / count),
+                (float) Math.sqrt(sumB / count), 1.0f);
+    }
+
+}
@@ -18,15 +18,17 @@ import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.joml.Math;
-import org.joml.Matrix4f;
-import org.joml.Random;
 import org.joml.Vector3f;
 
+import computeshader.core.ComputeBackend;
+import computeshader.core.FrameGraph;
+import computeshader.core.JavaBackend;
+import computeshader.core.OpenGLBackend;
+import computeshader.core.ParameterBlock;
+import computeshader.core.PixelFormat;
 import computeshader.core.ShaderApp;
 import computeshader.core.ShaderApp.ShaderAppConfiguration;
 import imgui.ImGui;
-import imgui.app.Application;
 
 public class RayTracer {
     private static final Logger logger = LogManager.getLogger();
@@ -51,56 +53,101 @@ public class RayTracer {
     private double[] yMouse = new double[1];
 
     private Scene scene;
-    private int[] numSamples = new int[] { 10 };
+    private BVH bvh;
+    private boolean refit;
+    private ParameterBlock materialParameters;
+    private ParameterBlock sphereParameters;
+    private ParameterBlock bvhNodes;
+    private int gridSize = 5;
+    private long sceneSeed = 0;
+    private int[] numSamples = new int[] { 1 };
+
+    // frames summed into Accumulation since the view or the scene last changed
+    private boolean accumulate = true;
+    private int accumulatedFrames = 0;
+
+    // handles resolved once the program is linked
+    private int rayShader;
+    private int[] workGroupSize;
+    private int cameraPositionUniform;
+    private int invProjectionUniform;
+    private int invViewUniform;
+    private int timeUniform;
+    private int samplesUniform;
+    private int frameUniform;
 
     public RayTracer() {
-        app = new ShaderApp(new ShaderAppConfiguration(title, windowWidth, windowHeight, textureWidth, textureHeight));
+        this(new OpenGLBackend(), 1024);
+    }
 
-        app.configuration(() -> {
-            camera = new Camera(textureWidth, textureHeight);
+    public RayTracer(ComputeBackend backend, int textureWidth) {
+        this(backend, textureWidth, 5);
+    }
 
-            scene = new Scene();
-            int ground = scene.addMaterial(new Material(new Vector3f(0.5f, 0.5f, 0.5f), new float[] { 1.0f }, new float[] { 1.0f }, 0.0f));
-            scene.addSphere(new Sphere(new float[] { 0.0f, -1000.0f, 0.0f }, 1000.0f, ground));
+    public RayTracer(ComputeBackend backend, int textureWidth, int gridSize) {
+        this(backend, textureWidth, gridSize, 0);
+    }
 
-            Random random = new Random();
+    public RayTracer(ComputeBackend backend, int textureWidth, int gridSize, long sceneSeed) {
+        this.textureWidth = textureWidth;
+        this.gridSize = gridSize;
+        this.sceneSeed = sceneSeed;
+        this.textureHeight = (int) (textureWidth / aspectRatio);
 
-            int n = 5;
+        app = new ShaderApp(new ShaderAppConfiguration(title, windowWidth, windowHeight, textureWidth, textureHeight),
+                backend);
+        app.registerKernel("/raytrace.glsl", new RayTraceKernel());
 
-            for (int i = -n; i < n; i++) {
-                for (int j = -n; j < n; j++) {
-                    Vector3f albedo = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
-                    int material = scene.addMaterial(new Material(albedo, new float[] { random.nextFloat() }, new float[] { random.nextFloat() }, 0.0f));
+        app.configuration(() -> {
+            camera = new Camera(textureWidth, textureHeight);
 
-                    float[] center = new float[] { i + 0.9f * random.nextFloat(), 0.2f /*+ random.nextInt(10)*/, j + 0.9f * random.nextFloat() };
-                    scene.addSphere(new Sphere(center, 0.2f, material));
-                }
-            }
+            // the OfflineRenderer and RenderJob scene for the same grid size and seed
+            float[][] parameters = SceneUtil.createGridScene(gridSize, sceneSeed);
+            scene = Scene.fromParameters(parameters[0], parameters[1]);
 
             // logger.info("Created {}", scene);
             logger.info("Scene materials: {}", scene.materials.size());
             logger.info("Scene spheres: {}", scene.spheres.size());
+
+            bvh = new BVH(scene.getSphereParameters());
+            logger.info("Scene BVH nodes: {}", bvh.getNumNodes());
         });
 
         app.preRun(() -> {
-            app.createTexture("Image");
-            // app.createTexture("ImageOut");
-
-            app.addUniform("CameraPosition");
-            app.addUniform("InvProjection");
-            app.addUniform("InvView");
-            app.addUniform("Time");
-            app.addUniform("Samples");
+            app.createTexture("Image", PixelFormat.RGBA8);
+            app.createTexture("Accumulation", PixelFormat.RGBA32F);
 
             app.createComputeShader("RayShader", "/raytrace.glsl");
+            rayShader = app.getProgram("RayShader");
+            workGroupSize = app.getWorkGroupSize("RayShader");
+            cameraPositionUniform = app.getUniform("RayShader", "CameraPosition");
+            invProjectionUniform = app.getUniform("RayShader", "InvProjection");
+            invViewUniform = app.getUniform("RayShader", "InvView");
+            timeUniform = app.getUniform("RayShader", "Time");
+            samplesUniform = app.getUniform("RayShader", "Samples");
+            frameUniform = app.getUniform("RayShader", "Frame");
 
             app.createStorageBuffer("RayShader", "ShaderParameters", new float[] {
                     (float) textureWidth,
                     (float) textureHeight,
             });
 
-            app.createStorageBuffer("RayShader", "MaterialParameters", scene.getMaterialParameters());
-            app.createStorageBuffer("RayShader", "SphereParameters", scene.getSphereParameters());
+            materialParameters = new ParameterBlock("MaterialParameters", scene.getMaterialParameters(), "albedo[3]",
+                    "roughness", "metallic", "refraction");
+            sphereParameters = new ParameterBlock("SphereParameters", bvh.getSpheres(), "position[3]", "radius",
+                    "materialIndex");
+            bvhNodes = new ParameterBlock("BVHNodes", bvh.getNodes(), "min[3]", "max[3]", "missIndex",
+                    "firstSphere", "sphereCount");
+            // the sliders set one value of one material at a time. the spheres and nodes have to change together
+            // between frames, they stay on the ordered upload path
+            materialParameters.setMapped(true);
+            app.createParameterBlock("RayShader", materialParameters);
+            app.createParameterBlock("RayShader", sphereParameters);
+            app.createParameterBlock("RayShader", bvhNodes);
+
+            if (app.isHeadless()) {
+                return;
+            }
 
             windowHandle = app.getHandle();
 
@@ -109,10 +156,14 @@ public class RayTracer {
             });
         });
 
-        app.gui(() -> {
+        app.update(() -> {
             currentTime = app.getTime();
             deltaTime = (float) (currentTime - previousFrameTime);
             previousFrameTime = currentTime;
+        });
+
+        app.gui(() -> {
+            handleInput();
 
             ImGui.text("Runtime: " + currentTime);
             ImGui.text("Delta  : " + deltaTime);
@@ -125,16 +176,24 @@ public class RayTracer {
                 
             }            
 
+            if (ImGui.checkbox("Accumulate", accumulate)) {
+                accumulate = !accumulate;
+                resetAccumulation();
+            }
+            ImGui.text("Accumulated frames: " + accumulatedFrames);
+
             if (ImGui.treeNode("Scene")) {
                 if (ImGui.treeNode("Materials")) {
                     for (int i = 0; i < scene.materials.size(); i++) {
                         Material material = scene.materials.get(i);
                         if (ImGui.treeNode("Material " + i)) {
                             if (ImGui.sliderFloat("Roughness", material.roughness, 0.0f, 1.0f)) {
-                                app.updateStorageBuffer("MaterialParameters", 6 * i + 3, material.roughness);
+                                materialParameters.set(i, materialParameters.field("roughness"), material.roughness);
+                                resetAccumulation();
                             }
                             if (ImGui.sliderFloat("Metallic", material.metallic, 0.0f, 1.0f)) {
-                                app.updateStorageBuffer("MaterialParameters", 6 * i + 4, material.metallic);
+                                materialParameters.set(i, materialParameters.field("metallic"), material.metallic);
+                                resetAccumulation();
                             }                            
 
                             ImGui.treePop();
@@ -147,8 +206,10 @@ public class RayTracer {
                         if (ImGui.treeNode("Sphere " + i)) {
                             Sphere sphere = scene.spheres.get(i);
                             if (ImGui.dragFloat3("Center", sphere.position)) {
-                                app.updateStorageBuffer("SphereParameters", 5 * i + 0, sphere.position);
-                            };
+                                bvh.setPosition(i, sphere.position);
+                                sphereParameters.markDirty(bvh.getSlot(i), sphereParameters.field("position"), 3);
+                                refit = true;
+                            }
 
                             ImGui.treePop();
                         }
@@ -159,165 +220,101 @@ public class RayTracer {
 
                 ImGui.treePop();
             }
-        });
-
-        app.processSteps(List.of(() -> {
-            if (ImGui.getIO().getWantCaptureMouse()) {
-                return;
-            }
-
-            camera.zoom(mouseScroll);
-            mouseScroll = 0.0f;
 
-            float lastMouseX = (float) xMouse[0];
-            float lastMouseY = (float) yMouse[0];
-            glfwGetCursorPos(windowHandle, xMouse, yMouse);
-            float currMouseX = (float) xMouse[0];
-            float currMouseY = (float) yMouse[0];
-            float deltaX = currMouseX - lastMouseX;
-            float deltaY = currMouseY - lastMouseY;
-
-            if (!(glfwGetMouseButton(windowHandle, GLFW_MOUSE_BUTTON_1) == GLFW_PRESS)) {
-                glfwSetInputMode(windowHandle, GLFW_RAW_MOUSE_MOTION, GLFW_FALSE);
-                glfwSetInputMode(windowHandle, GLFW_CURSOR, GLFW_CURSOR_NORMAL);
-                return;
+            // one refit and node upload however many spheres moved this frame
+            if (refit) {
+                bvh.refit();
+                bvhNodes.markDirty();
+                resetAccumulation();
+                refit = false;
             }
+        });
 
-            glfwSetInputMode(windowHandle, GLFW_CURSOR, GLFW_CURSOR_DISABLED);
-            glfwSetInputMode(windowHandle, GLFW_RAW_MOUSE_MOTION, GLFW_TRUE);
-
-            camera.orbit(deltaX * 0.1f, deltaY * 0.1f);
-        }, () -> {
+        app.step("trace", () -> {
             camera.update();
+            if (camera.takeChanged() || !accumulate) {
+                resetAccumulation();
+            }
 
-            app.usingProgram("RayShader", () -> {
-                app.setVector3fUniform("CameraPosition", camera.getPosition());
-                app.setMatrix4fUniform("InvProjection", camera.getInvProjection());
-                app.setMatrix4fUniform("InvView", camera.getInvView());
-                app.setFloatUniform("Time", (float) currentTime);
-                app.setUIntUniform("Samples", numSamples[0]);
+            app.usingProgram(rayShader, () -> {
+                app.setVector3fUniform(cameraPositionUniform, camera.getPosition());
+                app.setMatrix4fUniform(invProjectionUniform, camera.getInvProjection());
+                app.setMatrix4fUniform(invViewUniform, camera.getInvView());
+                app.setFloatUniform(timeUniform, (float) currentTime);
+                app.setUIntUniform(samplesUniform, numSamples[0]);
+                app.setUIntUniform(frameUniform, accumulatedFrames);
 
-                int[] workGroupSize = app.getWorkGroupSize("RayShader");
                 app.runComputeShader(textureWidth / workGroupSize[0], textureHeight / workGroupSize[1]);
             });
-        }));
+
+            accumulatedFrames++;
+        }).readsImage("Accumulation").writesImage("Accumulation", "Image").readsBuffer("ShaderParameters",
+                "MaterialParameters", "SphereParameters", "BVHNodes");
 
         app.display("Image");
     }
 
-    public static void main(String[] args) {
-        RayTracer main = new RayTracer();
-        Application.launch(main.app);
+    private void resetAccumulation() {
+        accumulatedFrames = 0;
     }
 
-    private class Camera {
-        private Matrix4f projection = new Matrix4f();
-        private Matrix4f view = new Matrix4f();
-        private Matrix4f invProjection = new Matrix4f();
-        private Matrix4f invView = new Matrix4f();
-
-        private float[] verticalFov = new float[] { Math.toRadians(45.0f) };
-        private float nearClip = 0.1f;
-        private float farClip = 100.0f;
-        private Vector3f center = new Vector3f(0.0f, 0.0f, 0.0f);
-        private Vector3f position = new Vector3f(0.0f, 0.0f, 0.0f);
-        private Vector3f forward = new Vector3f(0.0f, 0.0f, -1.0f);
-        private Vector3f up = new Vector3f(0.0f, 1.0f, 0.0f);
-        private float distance = 10.0f;
-        private float latitude = 0.0f;
-        private float longitude = 0.0f;
-        private Vector3f euclidean = new Vector3f();
-        private int viewportWidth;
-        private int viewportHeight;
-
-        private Camera(int viewportWidth, int viewportHeight) {
-            this.viewportWidth = viewportWidth;
-            this.viewportHeight = viewportHeight;
-
-            calculateProjection();
-            update();
-
-            logger.info("Created {}", this);
+    private void handleInput() {
+        if (ImGui.getIO().getWantCaptureMouse()) {
+            return;
         }
 
-        private void update() {
-            calculatePosition();
-            calculateView();
+        camera.zoom(mouseScroll);
+        mouseScroll = 0.0f;
+
+        float lastMouseX = (float) xMouse[0];
+        float lastMouseY = (float) yMouse[0];
+        glfwGetCursorPos(windowHandle, xMouse, yMouse);
+        float currMouseX = (float) xMouse[0];
+        float currMouseY = (float) yMouse[0];
+        float deltaX = currMouseX - lastMouseX;
+        float deltaY = currMouseY - lastMouseY;
+
+        if (!(glfwGetMouseButton(windowHandle, GLFW_MOUSE_BUTTON_1) == GLFW_PRESS)) {
+            glfwSetInputMode(windowHandle, GLFW_RAW_MOUSE_MOTION, GLFW_FALSE);
+            glfwSetInputMode(windowHandle, GLFW_CURSOR, GLFW_CURSOR_NORMAL);
+            return;
         }
 
-        private void calculatePosition() {
-            calculateEuclidean();
+        glfwSetInputMode(windowHandle, GLFW_CURSOR, GLFW_CURSOR_DISABLED);
+        glfwSetInputMode(windowHandle, GLFW_RAW_MOUSE_MOTION, GLFW_TRUE);
 
-            center.add(euclidean.mul(distance), position);
-        }
-
-        private void calculateView() {
-            view.setLookAt(position, center, up);
-            view.invert(invView);
-        }
-
-        private void calculateProjection() {
-            float aspectRatio = viewportWidth / viewportHeight;
-            projection.setPerspective(verticalFov[0], aspectRatio, nearClip, farClip);
-            projection.invert(invProjection);
-        }
-
-        private void calculateEuclidean() {
-            float latitudeRad = Math.toRadians(latitude);
-            float longitudeRad = Math.toRadians(longitude);
-            euclidean.set(Math.cos(latitudeRad) * Math.sin(longitudeRad), Math.sin(latitudeRad),
-                    Math.cos(latitudeRad) * Math.cos(longitudeRad));
-        }
-
-        private void orbit(float deltaX, float deltaY) {
-            longitude -= deltaX;
-
-            if (longitude < 0.0f) {
-                longitude += 360.0f;
-            }
-
-            if (longitude > 360.0f) {
-                longitude -= 360.0f;
-            }
-
-            latitude = Math.clamp(-85.0f, 85.0f, latitude + deltaY);
-        }
-
-        private void zoom(float zoom) {
-            distance = Math.clamp(2.0f, 100.0f, distance + zoom);
-        }
-
-        private Vector3f getPosition() {
-            return position;
-        }
+        camera.orbit(deltaX * 0.1f, deltaY * 0.1f);
+    }
 
-        private Matrix4f getInvProjection() {
-            return invProjection;
-        }
+    public FrameGraph.Plan getFramePlan() {
+        return app.getFramePlan();
+    }
 
-        private Matrix4f getInvView() {
-            return invView;
-        }
+    public void runHeadless(int frames) {
+        app.runHeadless(frames);
+    }
 
-        private float[] getVerticalFov() {
-            return verticalFov;
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+            int gridSize = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+            long sceneSeed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+            RayTracer main = new RayTracer(new JavaBackend(), 1024, gridSize, sceneSeed);
+            main.runHeadless(frames);
+            return;
         }
 
-        @Override
-        public String toString() {
-            return "Camera [verticalFov=" + verticalFov + ", nearClip=" + nearClip + ", farClip=" + farClip
-                    + ", forward=" + forward + ", up=" + up + ", viewportWidth=" + viewportWidth + ", viewportHeight="
-                    + viewportHeight + "]";
-        }
+        RayTracer main = new RayTracer();
+        main.app.launch();
     }
 
-    private record Material(Vector3f albedo, float[] roughness, float[] metallic, float refraction) {
+    record Material(Vector3f albedo, float[] roughness, float[] metallic, float refraction) {
     }
 
-    private record Sphere(float[] position, float radius, int materialIndex) {
+    record Sphere(float[] position, float radius, int materialIndex) {
     }
 
-    private class Scene {
+    static class Scene {
         private List<Material> materials;
         private List<Sphere> spheres;
 
@@ -326,9 +323,25 @@ public class RayTracer {
             spheres = new ArrayList<>();
         }
 
+        // the editable form of MaterialParameters and SphereParameters
+        public static Scene fromParameters(float[] materials, float[] spheres) {
+            Scene scene = new Scene();
+            for (int i = 0; i < materials.length / PathTracer.MATERIAL_SIZE_F; i++) {
+                int m = i * PathTracer.MATERIAL_SIZE_F;
+                scene.addMaterial(new Material(new Vector3f(materials[m + 0], materials[m + 1], materials[m + 2]),
+                        new float[] { materials[m + 3] }, new float[] { materials[m + 4] }, materials[m + 5]));
+            }
+            for (int i = 0; i < spheres.length / PathTracer.SPHERE_SIZE_F; i++) {
+                int s = i * PathTracer.SPHERE_SIZE_F;
+                scene.addSphere(new Sphere(new float[] { spheres[s + 0], spheres[s + 1], spheres[s + 2] },
+                        spheres[s + 3], (int) spheres[s + 4]));
+            }
+            return scene;
+        }
+
         public int addMaterial(Material material) {
             materials.add(material);
-            return materials.indexOf(material);
+            return materials.size() - 1;
         }
 
         public void addSphere(Sphere sphere) {
@@ -0,0 +1,75 @@
+package computeshader.raytracer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+// everything a TileWorker needs to render tiles of a frame: the scene as PathTracer takes it, with the BVH already
+// built so every process walks the same nodes, the camera and the samples and seed. serialized once by the
+// coordinator and sent to every worker as it is
+public record RenderJob(int width, int height, int samples, int seed, float[] materials, float[] spheres,
+        float[] nodes, float[] cameraPosition, float[] invProjection, float[] invView) {
+
+    // the OfflineRenderer scene, a grid of spheres seen by the default camera
+    public static RenderJob gridScene(int gridSize, long sceneSeed, int width, int height, int samples, int seed) {
+        float[][] scene = SceneUtil.createGridScene(gridSize, sceneSeed);
+        BVH bvh = new BVH(scene[1]);
+        Camera camera = new Camera(width, height);
+        Vector3f position = camera.getPosition();
+        return new RenderJob(width, height, samples, seed, scene[0], bvh.getSpheres(), bvh.getNodes(),
+                new float[] { position.x, position.y, position.z }, camera.getInvProjection().get(new float[16]),
+                camera.getInvView().get(new float[16]));
+    }
+
+    public PathTracer newTracer() {
+        PathTracer tracer = new PathTracer(materials, spheres, nodes, width, height);
+        tracer.setCamera(new Vector3f(cameraPosition), new Matrix4f().set(invProjection),
+                new Matrix4f().set(invView));
+        return tracer;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(samples);
+            out.writeInt(seed);
+            for (float[] array : new float[][] { materials, spheres, nodes, cameraPosition, invProjection, invView }) {
+                writeArray(out, array);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static RenderJob read(DataInputStream in) throws IOException {
+        return new RenderJob(in.readInt(), in.readInt(), in.readInt(), in.readInt(), readArray(in), readArray(in),
+                readArray(in), readArray(in), readArray(in), readArray(in));
+    }
+
+    private static void writeArray(DataOutputStream out, float[] array) throws IOException {
+        out.writeInt(array.length);
+        for (float value : array) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static float[] readArray(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Bad array length " + length);
+        }
+        float[] array = new float[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = in.readFloat();
+        }
+        return array;
+    }
+
+}
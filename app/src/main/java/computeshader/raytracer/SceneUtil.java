@@ -0,0 +1,47 @@
+package computeshader.raytracer;
+
+import org.joml.Random;
+
+public class SceneUtil {
+    private static final int MATERIAL_SIZE_F = PathTracer.MATERIAL_SIZE_F;
+    private static final int SPHERE_SIZE_F = PathTracer.SPHERE_SIZE_F;
+
+    // MaterialParameters and SphereParameters of the RayTracer scene: the ground and a (2n)^2 grid of small spheres
+    public static float[][] createGridScene(int n, long seed) {
+        Random random = new Random(seed);
+        int numSpheres = 1 + 4 * n * n;
+        float[] materials = new float[numSpheres * MATERIAL_SIZE_F];
+        float[] spheres = new float[numSpheres * SPHERE_SIZE_F];
+
+        materials[0] = 0.5f;
+        materials[1] = 0.5f;
+        materials[2] = 0.5f;
+        materials[3] = 1.0f;
+        materials[4] = 1.0f;
+        spheres[1] = -1000.0f;
+        spheres[3] = 1000.0f;
+
+        int index = 1;
+        for (int i = -n; i < n; i++) {
+            for (int j = -n; j < n; j++) {
+                int material = index * MATERIAL_SIZE_F;
+                materials[material + 0] = random.nextFloat();
+                materials[material + 1] = random.nextFloat();
+                materials[material + 2] = random.nextFloat();
+                materials[material + 3] = random.nextFloat();
+                materials[material + 4] = random.nextFloat();
+
+                int sphere = index * SPHERE_SIZE_F;
+                spheres[sphere + 0] = i + 0.9f * random.nextFloat();
+                spheres[sphere + 1] = 0.2f;
+                spheres[sphere + 2] = j + 0.9f * random.nextFloat();
+                spheres[sphere + 3] = 0.2f;
+                spheres[sphere + 4] = index;
+                index++;
+            }
+        }
+
+        return new float[][] { materials, spheres };
+    }
+
+}
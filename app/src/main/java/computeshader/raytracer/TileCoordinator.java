@@ -0,0 +1,315 @@
+package computeshader.raytracer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import computeshader.core.ImageFiles;
+
+// renders a RenderJob on TileWorker processes over TCP. the job is serialized once and sent to every worker that
+// connects, then tiles are handed out as the workers ask for them: every worker keeps TILES_PER_THREAD tiles per
+// thread in flight, a fast one simply comes back for more. a worker that disconnects or takes longer than the tile
+// timeout for a result is dropped and its tiles go back to the front of the queue. once the queue is empty, idle
+// workers get copies of the tiles still out so one slow worker doesn't hold up the frame, the first result wins.
+// tiles are seeded on their own like in OfflineRenderer, the image is the one a single process renders
+public class TileCoordinator implements Closeable {
+    private static final Logger logger = LogManager.getLogger();
+
+    static final int MAGIC = 0x43535254; // CSRT
+    static final int VERSION = 1;
+    static final int DONE = -1;
+
+    private static final int TILES_PER_THREAD = 2;
+    // the original and one backup
+    private static final int MAX_COPIES = 2;
+
+    private final byte[] jobBytes;
+    private final OfflineRenderer assembly;
+    private final ServerSocket server;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tile-coordinator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int tileTimeoutMillis = 60_000;
+
+    // guarded by this
+    private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+    private final int[] copies;
+    private final boolean[] done;
+    private int remaining;
+    private int duplicateTiles;
+    private int droppedWorkers;
+
+    public TileCoordinator(RenderJob job, int port) throws IOException {
+        this.jobBytes = job.toBytes();
+        // only the image and tile layout are used, nothing is rendered here
+        this.assembly = new OfflineRenderer(job.newTracer(), ForkJoinPool.commonPool());
+        this.server = new ServerSocket(port);
+
+        copies = new int[assembly.getTileCount()];
+        done = new boolean[assembly.getTileCount()];
+        remaining = assembly.getTileCount();
+        for (int tile = 0; tile < remaining; tile++) {
+            pending.add(tile);
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public void setTileTimeoutMillis(int tileTimeoutMillis) {
+        this.tileTimeoutMillis = tileTimeoutMillis;
+    }
+
+    // blocks until every tile is in, linear RGB with row 0 at the bottom like OfflineRenderer
+    public float[] render(long timeoutMillis) throws IOException {
+        Thread acceptor = new Thread(this::accept, "tile-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        long start = System.nanoTime();
+        long deadline = start + timeoutMillis * 1_000_000;
+        synchronized (this) {
+            try {
+                while (remaining > 0) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        throw new IOException("Timed out with " + remaining + " of " + done.length + " tiles left");
+                    }
+                    wait(Math.max(1, left / 1_000_000));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted with " + remaining + " tiles left");
+            }
+        }
+
+        logger.info("Rendered {} tiles in {} s, {} duplicate results, {} workers dropped", done.length,
+                (System.nanoTime() - start) / 1e9, duplicateTiles, droppedWorkers);
+        server.close();
+        return assembly.getImage();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    logger.warn("Accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        String name = socket.getRemoteSocketAddress().toString();
+        Set<Integer> inFlight = new HashSet<>();
+        int rendered = 0;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(tileTimeoutMillis);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a tile worker of version " + VERSION);
+            }
+            int window = Math.max(1, in.readInt() * TILES_PER_THREAD);
+            out.writeInt(jobBytes.length);
+            out.write(jobBytes);
+            out.flush();
+            logger.info("Worker {} connected, {} tiles in flight", name, window);
+
+            while (!isFinished()) {
+                while (inFlight.size() < window) {
+                    int tile = nextTile(inFlight);
+                    if (tile < 0) {
+                        break;
+                    }
+                    inFlight.add(tile);
+                    out.writeInt(tile);
+                }
+                out.flush();
+
+                if (inFlight.isEmpty()) {
+                    if (!awaitWork()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                int tile = in.readInt();
+                int length = in.readInt();
+                if (!inFlight.remove(tile) || length < 0 || length > 3 * OfflineRenderer.TILE_SIZE
+                        * OfflineRenderer.TILE_SIZE) {
+                    throw new IOException("unexpected result for tile " + tile);
+                }
+                byte[] bytes = new byte[length * Float.BYTES];
+                in.readFully(bytes);
+                float[] pixels = new float[length];
+                ByteBuffer.wrap(bytes).asFloatBuffer().get(pixels);
+                complete(tile, pixels);
+                rendered++;
+            }
+
+            out.writeInt(DONE);
+            out.flush();
+            logger.info("Worker {} rendered {} tiles", name, rendered);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Dropped worker {} after {} tiles, {} back in the queue: {}", name, rendered,
+                    inFlight.size(), e.getMessage());
+            synchronized (this) {
+                droppedWorkers++;
+            }
+        } finally {
+            release(inFlight);
+        }
+    }
+
+    // the next tile for a worker, -1 when there is nothing it could take
+    private synchronized int nextTile(Set<Integer> inFlight) {
+        Integer tile = pending.poll();
+        if (tile != null) {
+            copies[tile]++;
+            return tile;
+        }
+
+        // the queue is empty, back up the tile that is out on the fewest workers
+        int backup = -1;
+        for (int t = 0; t < done.length; t++) {
+            if (!done[t] && copies[t] < MAX_COPIES && !inFlight.contains(t)
+                    && (backup < 0 || copies[t] < copies[backup])) {
+                backup = t;
+            }
+        }
+        if (backup >= 0) {
+            copies[backup]++;
+        }
+        return backup;
+    }
+
+    // false once every tile is in
+    private synchronized boolean awaitWork() throws InterruptedIOException {
+        try {
+            if (remaining > 0 && pending.isEmpty()) {
+                wait(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return remaining > 0;
+    }
+
+    private synchronized void complete(int tile, float[] pixels) {
+        if (done[tile]) {
+            duplicateTiles++;
+            return;
+        }
+
+        assembly.putTile(tile, pixels);
+        done[tile] = true;
+        remaining--;
+        notifyAll();
+    }
+
+    // tiles nobody is rendering any more go back to the front of the queue
+    private synchronized void release(Set<Integer> tiles) {
+        for (int tile : tiles) {
+            copies[tile]--;
+            if (!done[tile] && copies[tile] == 0) {
+                pending.addFirst(tile);
+            }
+        }
+        notifyAll();
+    }
+
+    private synchronized boolean isFinished() {
+        return remaining == 0;
+    }
+
+    public synchronized int getDuplicateTiles() {
+        return duplicateTiles;
+    }
+
+    public synchronized int getDroppedWorkers() {
+        return droppedWorkers;
+    }
+
+    public OfflineRenderer getAssembly() {
+        return assembly;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdownNow();
+    }
+
+    // a TileWorker in a new JVM on this machine, with the classpath of this one
+    public static Process startLocalWorker(int port, String... options) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TileWorker.class.getName());
+        command.add("localhost");
+        command.add(Integer.toString(port));
+        command.addAll(List.of(options));
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    // TileCoordinator <output> [width] [samples] [gridSize] [localWorkers] [port], remote workers connect with
+    // TileWorker <host> <port>
+    public static void main(String[] args) throws IOException {
+        Path output = Path.of(args.length > 0 ? args[0] : "render.png");
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int samples = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int gridSize = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int localWorkers = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        int port = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+        int height = (int) (width / (1600.0f / 900.0f));
+
+        RenderJob job = RenderJob.gridScene(gridSize, 0, width, height, samples, 0);
+        List<Process> workers = new ArrayList<>();
+        try (TileCoordinator coordinator = new TileCoordinator(job, port)) {
+            logger.info("Waiting for workers on port {}", coordinator.getPort());
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, localWorkers));
+            for (int i = 0; i < localWorkers; i++) {
+                workers.add(startLocalWorker(coordinator.getPort(), Integer.toString(threads)));
+            }
+
+            coordinator.render(TimeUnit.DAYS.toMillis(1));
+            boolean pfm = output.toString().toLowerCase().endsWith(".pfm");
+            OfflineRenderer image = coordinator.getAssembly();
+            ImageFiles.write(output, width, height, 3, pfm ? image.getImage() : image.toDisplay());
+            logger.info("Wrote {}", output);
+        } finally {
+            workers.forEach(Process::destroy);
+        }
+    }
+
+}
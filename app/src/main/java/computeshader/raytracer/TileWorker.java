@@ -0,0 +1,156 @@
+package computeshader.raytracer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// renders tiles for a TileCoordinator. connects, says how many threads it has, reads the job and then renders
+// every tile index it is sent on its pool, results go back as they finish. exits when the coordinator is done
+public class TileWorker {
+    private static final Logger logger = LogManager.getLogger();
+
+    private final String host;
+    private final int port;
+    private final ForkJoinPool pool;
+
+    // for trying out the coordinator, a slow worker and one that dies halfway
+    private long tileDelayMillis;
+    private int failAfter = -1;
+
+    public TileWorker(String host, int port, ForkJoinPool pool) {
+        this.host = host;
+        this.port = port;
+        this.pool = pool;
+    }
+
+    public void setTileDelayMillis(long tileDelayMillis) {
+        this.tileDelayMillis = tileDelayMillis;
+    }
+
+    // halts the JVM when it starts on tile failAfter + 1, negative never fails
+    public void setFailAfter(int failAfter) {
+        this.failAfter = failAfter;
+    }
+
+    // returns the number of tiles rendered once the coordinator says it's done
+    public int run() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(TileCoordinator.MAGIC);
+            out.writeInt(TileCoordinator.VERSION);
+            out.writeInt(pool.getParallelism());
+            out.flush();
+
+            byte[] jobBytes = new byte[in.readInt()];
+            in.readFully(jobBytes);
+            RenderJob job = RenderJob.read(new DataInputStream(new ByteArrayInputStream(jobBytes)));
+            OfflineRenderer renderer = new OfflineRenderer(job.newTracer(), pool);
+            logger.info("Rendering {}x{} at {} samples for {}:{} on {} threads", job.width(), job.height(),
+                    job.samples(), host, port, pool.getParallelism());
+
+            AtomicInteger started = new AtomicInteger();
+            AtomicInteger rendered = new AtomicInteger();
+            while (true) {
+                int tile = in.readInt();
+                if (tile == TileCoordinator.DONE) {
+                    break;
+                }
+
+                pool.execute(() -> {
+                    if (failAfter >= 0 && started.getAndIncrement() >= failAfter) {
+                        logger.warn("Failing after {} tiles", failAfter);
+                        Runtime.getRuntime().halt(1);
+                    }
+
+                    renderer.renderTile(tile, job.samples(), job.seed());
+                    if (tileDelayMillis > 0) {
+                        try {
+                            Thread.sleep(tileDelayMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    send(socket, out, tile, renderer.copyTile(tile));
+                    rendered.incrementAndGet();
+                });
+            }
+
+            logger.info("Rendered {} tiles", rendered.get());
+            return rendered.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void send(Socket socket, DataOutputStream out, int tile, float[] pixels) {
+        ByteBuffer bytes = ByteBuffer.allocate(pixels.length * Float.BYTES);
+        bytes.asFloatBuffer().put(pixels);
+        try {
+            synchronized (out) {
+                out.writeInt(tile);
+                out.writeInt(pixels.length);
+                out.write(bytes.array());
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the coordinator hands the tile to someone else
+            logger.warn("Lost the coordinator: {}", e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException closeException) {
+                logger.debug("Close failed", closeException);
+            }
+        }
+    }
+
+    private static void usage() {
+        logger.error("Usage: TileWorker <host> <port> [threads] [--delay ms] [--fail-after tiles]");
+    }
+
+    // TileWorker <host> <port> [threads] [--delay ms] [--fail-after tiles]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        long delay = 0;
+        int failAfter = -1;
+        for (int i = 2; i < args.length; i++) {
+            boolean option = args[i].startsWith("--");
+            if (option && i + 1 == args.length) {
+                logger.error("Missing value for {}", args[i]);
+                usage();
+                return;
+            }
+
+            switch (args[i]) {
+            case "--delay" -> delay = Long.parseLong(args[++i]);
+            case "--fail-after" -> failAfter = Integer.parseInt(args[++i]);
+            default -> threads = Integer.parseInt(args[i]);
+            }
+        }
+
+        TileWorker worker = new TileWorker(host, port, new ForkJoinPool(threads));
+        worker.setTileDelayMillis(delay);
+        worker.setFailAfter(failAfter);
+        worker.run();
+    }
+
+}
@@ -0,0 +1,188 @@
+package computeshader.slime;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import computeshader.core.Parallel;
+
+// orders agents by the Morton (Z-order) code of the cell they are in, so agents next to each other in the buffer
+// sense and deposit in the same part of the trail map. the keys are sorted with a stable parallel LSD radix sort:
+// every pass counts digits per block, turns the counts into offsets and scatters the blocks in parallel
+public class AgentSorter {
+    // blocks of at least this many agents, up to four per worker so a slow block can be stolen
+    private static final int MIN_BLOCK_SIZE = 1 << 14;
+    private static final int MAX_DIGIT_BITS = 11;
+
+    private final ForkJoinPool pool;
+    private final int cellSize;
+    private final int cellBits;
+    private final int keyBits;
+
+    private int[] keys = new int[0];
+    private int[] order = new int[0];
+    private int[] keysScratch = new int[0];
+    private int[] orderScratch = new int[0];
+
+    public AgentSorter(int width, int height, int cellSize, ForkJoinPool pool) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+
+        this.pool = pool;
+        this.cellSize = cellSize;
+        int cells = max((width + cellSize - 1) / cellSize, (height + cellSize - 1) / cellSize);
+        this.cellBits = max(1, 32 - Integer.numberOfLeadingZeros(cells - 1));
+        this.keyBits = 2 * cellBits;
+        if (cellBits > 15) {
+            throw new IllegalArgumentException("Too many cells for a 31 bit key: " + cells);
+        }
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getKeyBits() {
+        return keyBits;
+    }
+
+    // the lower cellBits bits of x spread out to every other bit
+    static int spread(int x) {
+        x &= 0xffff;
+        x = (x | (x << 8)) & 0x00ff00ff;
+        x = (x | (x << 4)) & 0x0f0f0f0f;
+        x = (x | (x << 2)) & 0x33333333;
+        x = (x | (x << 1)) & 0x55555555;
+        return x;
+    }
+
+    static int morton(int cellX, int cellY) {
+        return spread(cellX) | (spread(cellY) << 1);
+    }
+
+    public int key(float x, float y) {
+        int cellX = min((int) x / cellSize, (1 << cellBits) - 1);
+        int cellY = min((int) y / cellSize, (1 << cellBits) - 1);
+        return morton(max(0, cellX), max(0, cellY));
+    }
+
+    // the agent that moves to position i is order()[i], agents in the same cell keep their relative order
+    public int[] order(float[] x, float[] y, int n) {
+        ensureCapacity(n);
+        Parallel.forRange(pool, 0, n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                keys[i] = key(x[i], y[i]);
+                order[i] = i;
+            }
+        });
+        sort(n);
+        return order;
+    }
+
+    // the same for interleaved agents like the AgentData buffer, x and y are the first two floats of an agent
+    public int[] order(float[] agents, int stride, int n) {
+        ensureCapacity(n);
+        Parallel.forRange(pool, 0, n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                keys[i] = key(agents[i * stride], agents[i * stride + 1]);
+                order[i] = i;
+            }
+        });
+        sort(n);
+        return order;
+    }
+
+    // sorts the agents of an interleaved buffer in place, scratch holds at least n * stride floats
+    public void sort(float[] agents, float[] scratch, int stride, int n) {
+        int[] sorted = order(agents, stride, n);
+        Parallel.forRange(pool, 0, n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                System.arraycopy(agents, sorted[i] * stride, scratch, i * stride, stride);
+            }
+        });
+        System.arraycopy(scratch, 0, agents, 0, n * stride);
+    }
+
+    // gathers values into scratch in sorted order, the caller swaps the two arrays
+    public void permute(int[] sorted, float[] values, float[] scratch, int n) {
+        Parallel.forRange(pool, 0, n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                scratch[i] = values[sorted[i]];
+            }
+        });
+    }
+
+    public int[] getKeys() {
+        return keys;
+    }
+
+    private void ensureCapacity(int n) {
+        if (keys.length < n) {
+            keys = new int[n];
+            order = new int[n];
+            keysScratch = new int[n];
+            orderScratch = new int[n];
+        }
+    }
+
+    private void sort(int n) {
+        int passes = (keyBits + MAX_DIGIT_BITS - 1) / MAX_DIGIT_BITS;
+        int digitBits = (keyBits + passes - 1) / passes;
+        int radix = 1 << digitBits;
+        int numBlocks = max(1, min(n / MIN_BLOCK_SIZE, pool.getParallelism() * 4));
+        int[][] offsets = new int[numBlocks][radix];
+
+        for (int pass = 0; pass < passes; pass++) {
+            int shift = pass * digitBits;
+            int mask = radix - 1;
+            int[] inKeys = keys;
+            int[] inOrder = order;
+            int[] outKeys = keysScratch;
+            int[] outOrder = orderScratch;
+
+            Parallel.forRange(pool, 0, numBlocks, 1, (fromBlock, toBlock) -> {
+                for (int block = fromBlock; block < toBlock; block++) {
+                    int[] counts = offsets[block];
+                    Arrays.fill(counts, 0);
+                    for (int i = blockStart(block, numBlocks, n); i < blockStart(block + 1, numBlocks, n); i++) {
+                        counts[(inKeys[i] >>> shift) & mask]++;
+                    }
+                }
+            });
+
+            // digit major, block minor, so equal digits keep the order of the blocks and the sort stays stable
+            int offset = 0;
+            for (int digit = 0; digit < radix; digit++) {
+                for (int block = 0; block < numBlocks; block++) {
+                    int count = offsets[block][digit];
+                    offsets[block][digit] = offset;
+                    offset += count;
+                }
+            }
+
+            Parallel.forRange(pool, 0, numBlocks, 1, (fromBlock, toBlock) -> {
+                for (int block = fromBlock; block < toBlock; block++) {
+                    int[] next = offsets[block];
+                    for (int i = blockStart(block, numBlocks, n); i < blockStart(block + 1, numBlocks, n); i++) {
+                        int position = next[(inKeys[i] >>> shift) & mask]++;
+                        outKeys[position] = inKeys[i];
+                        outOrder[position] = inOrder[i];
+                    }
+                }
+            });
+
+            keysScratch = keys;
+            orderScratch = order;
+            keys = outKeys;
+            order = outOrder;
+        }
+    }
+
+    private static int blockStart(int block, int numBlocks, int n) {
+        return (int) ((long) block * n / numBlocks);
+    }
+
+}
@@ -3,266 +3,277 @@ package computeshader.slime;
 import static java.lang.Math.PI;
 import static java.lang.Math.cos;
 import static java.lang.Math.min;
-import static java.lang.Math.random;
 import static java.lang.Math.sin;
 import static java.lang.Math.sqrt;
 
 import java.awt.Color;
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 
+import computeshader.core.Parallel;
+
+// agents are generated in fixed size chunks, each with its own random stream seeded from (seed, chunk), so the
+// output for a seed doesn't depend on how many threads fill the buffer
 public class AgentUtil {
     private static final int AGENT_SIZE_F = 6;
+    private static final int CHUNK_SIZE = 1 << 12;
+
+    private static final float[][] RAINBOW = new float[][] {
+            rgb(Color.RED),
+            rgb(Color.ORANGE),
+            rgb(Color.YELLOW),
+            rgb(Color.GREEN),
+            rgb(Color.CYAN),
+            rgb(Color.BLUE),
+            rgb(Color.MAGENTA)
+    };
+
+    // writes r, g, b of agent i at offset
+    @FunctionalInterface
+    private interface AgentColor {
+        void put(FloatBuffer agents, int offset, int i, SplittableRandom random);
+    }
+
+    // native order direct buffer for n agents, ready for glBufferData
+    public static FloatBuffer allocate(int n) {
+        return ByteBuffer.allocateDirect(n * AGENT_SIZE_F * Float.BYTES).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
 
     public static float[] nAgentsSatGradient(int n, int width, int height) {
         float[] agents = new float[n * AGENT_SIZE_F];
-
-        float centerX = width / 2.0f;
-        float centerY = height / 2.0f;
-
-        float hue = (float) Math.random();
-        float brightness = 1.0f;
-
-        for (int i = 0; i < n; i++) {
-            float radius = min(width, height) / 256.0f * (float) sqrt(random());
-            float theta = (float) (random() * 2 * PI);
-            float x = (float) (centerX + radius * cos(theta));
-            float y = (float) (centerY + radius * sin(theta));
-
-            // position + rotation
-            agents[i * AGENT_SIZE_F + 0] = x;
-            agents[i * AGENT_SIZE_F + 1] = y;
-            agents[i * AGENT_SIZE_F + 2] = (float) (random() * 360.0);
-
-            float t = ((float) i / n);
-            float saturation = t;
-
-            Color color = Color.getHSBColor(hue, saturation, brightness);
-
-            // color
-            agents[i * AGENT_SIZE_F + 3] = color.getRed() / 255.0f;
-            agents[i * AGENT_SIZE_F + 4] = color.getGreen() / 255.0f;
-            agents[i * AGENT_SIZE_F + 5] = color.getBlue() / 255.0f;
-        }
-
+        nAgentsSatGradient(FloatBuffer.wrap(agents), n, width, height, randomSeed(), ForkJoinPool.commonPool());
         return agents;
     }
 
+    public static void nAgentsSatGradient(FloatBuffer agents, int n, int width, int height, long seed,
+            ForkJoinPool pool) {
+        float hue = new SplittableRandom(seed).nextFloat();
+        generate(agents, n, width, height, true, seed, pool,
+                (buffer, offset, i, random) -> putHsb(buffer, offset, hue, (float) i / n, 1.0f));
+    }
+
     public static float[] nAgentsHueGradient(int n, int width, int height) {
         float[] agents = new float[n * AGENT_SIZE_F];
-
-        float centerX = width / 2.0f;
-        float centerY = height / 2.0f;
-
-        float saturation = 1.0f;
-        float brightness = 1.0f;
-
-        for (int i = 0; i < n; i++) {
-            float radius = min(width, height) / 256.0f * (float) sqrt(random());
-            float theta = (float) (random() * 2 * PI);
-            float x = (float) (centerX + radius * cos(theta));
-            float y = (float) (centerY + radius * sin(theta));
-
-            // position + rotation
-            agents[i * AGENT_SIZE_F + 0] = x;
-            agents[i * AGENT_SIZE_F + 1] = y;
-            agents[i * AGENT_SIZE_F + 2] = (float) (random() * 360.0);
-
-            float t = ((float) i / n);
-            float hue = t;
-
-            Color color = Color.getHSBColor(hue, saturation, brightness);
-
-            // color
-            agents[i * AGENT_SIZE_F + 3] = color.getRed() / 255.0f;
-            agents[i * AGENT_SIZE_F + 4] = color.getGreen() / 255.0f;
-            agents[i * AGENT_SIZE_F + 5] = color.getBlue() / 255.0f;
-        }
-
+        nAgentsHueGradient(FloatBuffer.wrap(agents), n, width, height, randomSeed(), ForkJoinPool.commonPool());
         return agents;
     }
 
+    public static void nAgentsHueGradient(FloatBuffer agents, int n, int width, int height, long seed,
+            ForkJoinPool pool) {
+        generate(agents, n, width, height, true, seed, pool,
+                (buffer, offset, i, random) -> putHsb(buffer, offset, (float) i / n, 1.0f, 1.0f));
+    }
+
     public static float[] nAgentsRainbow(int n, int width, int height) {
         float[] agents = new float[n * AGENT_SIZE_F];
-
-        Color[] colors = new Color[] {
-                Color.RED,
-                Color.ORANGE,
-                Color.YELLOW,
-                Color.GREEN,
-                Color.CYAN,
-                Color.BLUE,
-                Color.MAGENTA
-        };
-
-        Random random = new Random();
-
-        float centerX = width / 2.0f;
-        float centerY = height / 2.0f;
-
-        for (int i = 0; i < n; i++) {
-            float radius = min(width, height) / 256.0f * (float) sqrt(random());
-            float theta = (float) (random() * 2 * PI);
-            float x = (float) (centerX + radius * cos(theta));
-            float y = (float) (centerY + radius * sin(theta));
-
-            // position + rotation
-            agents[i * AGENT_SIZE_F + 0] = x;
-            agents[i * AGENT_SIZE_F + 1] = y;
-            agents[i * AGENT_SIZE_F + 2] = (float) (random() * 360.0);
-
-            Color color = colors[random.nextInt(colors.length)];
-
-            // color
-            agents[i * AGENT_SIZE_F + 3] = color.getRed() / 255.0f;
-            agents[i * AGENT_SIZE_F + 4] = color.getGreen() / 255.0f;
-            agents[i * AGENT_SIZE_F + 5] = color.getBlue() / 255.0f;
-        }
-
+        nAgentsRainbow(FloatBuffer.wrap(agents), n, width, height, randomSeed(), ForkJoinPool.commonPool());
         return agents;
     }
 
+    public static void nAgentsRainbow(FloatBuffer agents, int n, int width, int height, long seed,
+            ForkJoinPool pool) {
+        generate(agents, n, width, height, true, seed, pool, (buffer, offset, i, random) -> {
+            float[] color = RAINBOW[random.nextInt(RAINBOW.length)];
+            buffer.put(offset + 0, color[0]);
+            buffer.put(offset + 1, color[1]);
+            buffer.put(offset + 2, color[2]);
+        });
+    }
+
     public static float[] nAgents(int n, int width, int height, Color color) {
         float[] agents = new float[n * AGENT_SIZE_F];
-
-        for (int i = 0; i < n; i++) {
-            // position + rotation
-            agents[i * AGENT_SIZE_F + 0] = (float) (random() * width);
-            agents[i * AGENT_SIZE_F + 1] = (float) (random() * height);
-            agents[i * AGENT_SIZE_F + 2] = (float) (random() * 360.0);
-
-            // color
-            agents[i * AGENT_SIZE_F + 3] = color.getRed() / 255.0f;
-            agents[i * AGENT_SIZE_F + 4] = color.getGreen() / 255.0f;
-            agents[i * AGENT_SIZE_F + 5] = color.getBlue() / 255.0f;
-        }
-
+        nAgents(FloatBuffer.wrap(agents), n, width, height, color, randomSeed(), ForkJoinPool.commonPool());
         return agents;
     }
 
+    public static void nAgents(FloatBuffer agents, int n, int width, int height, Color color, long seed,
+            ForkJoinPool pool) {
+        float[] rgb = rgb(color);
+        generate(agents, n, width, height, false, seed, pool, (buffer, offset, i, random) -> {
+            buffer.put(offset + 0, rgb[0]);
+            buffer.put(offset + 1, rgb[1]);
+            buffer.put(offset + 2, rgb[2]);
+        });
+    }
+
     public static float[] nAgentsRandomColor(int n, int width, int height) {
         float[] agents = new float[n * AGENT_SIZE_F];
-
-        Random random = new Random();
-
-        float centerX = width / 2.0f;
-        float centerY = height / 2.0f;
-
-        for (int i = 0; i < n; i++) {
-            float radius = min(width, height) / 256.0f * (float) sqrt(random());
-            float theta = (float) (random() * 2 * PI);
-            float x = (float) (centerX + radius * cos(theta));
-            float y = (float) (centerY + radius * sin(theta));
-
-            // position + rotation
-            agents[i * AGENT_SIZE_F + 0] = x;
-            agents[i * AGENT_SIZE_F + 1] = y;
-            agents[i * AGENT_SIZE_F + 2] = (float) (random() * 360.0);
-
-            Color color = randomColor(random);
-
-            // color
-            agents[i * AGENT_SIZE_F + 3] = color.getRed() / 255.0f;
-            agents[i * AGENT_SIZE_F + 4] = color.getGreen() / 255.0f;
-            agents[i * AGENT_SIZE_F + 5] = color.getBlue() / 255.0f;
-        }
-
+        nAgentsRandomColor(FloatBuffer.wrap(agents), n, width, height, randomSeed(), ForkJoinPool.commonPool());
         return agents;
     }
 
+    public static void nAgentsRandomColor(FloatBuffer agents, int n, int width, int height, long seed,
+            ForkJoinPool pool) {
+        generate(agents, n, width, height, true, seed, pool,
+                (buffer, offset, i, random) -> putHsb(buffer, offset, random.nextFloat(), 1.0f, 1.0f));
+    }
+
     public static float[] nAgentsGradient(int n, int width, int height) {
         float[] agents = new float[n * AGENT_SIZE_F];
+        nAgentsGradient(FloatBuffer.wrap(agents), n, width, height, randomSeed(), ForkJoinPool.commonPool());
+        return agents;
+    }
 
-        Random random = new Random();
-        Color colorA = randomColor(random);
-        Color colorB = randomColor(random);
-
-        // Color colorA = Color.RED;
-        // Color colorB = Color.BLUE;
-
-        float centerX = width / 2.0f;
-        float centerY = height / 2.0f;
-
-        for (int i = 0; i < n; i++) {
-            float radius = min(width, height) / 256.0f * (float) sqrt(random());
-            float theta = (float) (random() * 2 * PI);
-            float x = (float) (centerX + radius * cos(theta));
-            float y = (float) (centerY + radius * sin(theta));
-
-            // position + rotation
-            agents[i * AGENT_SIZE_F + 0] = x;
-            agents[i * AGENT_SIZE_F + 1] = y;
-            agents[i * AGENT_SIZE_F + 2] = (float) (Math.random() * 360.0);
+    public static void nAgentsGradient(FloatBuffer agents, int n, int width, int height, long seed,
+            ForkJoinPool pool) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[] colorA = randomColor(random);
+        float[] colorB = randomColor(random);
 
+        generate(agents, n, width, height, true, seed, pool, (buffer, offset, i, chunkRandom) -> {
             float t = ((float) i / n);
-            float r, g, b;
-            r = colorA.getRed() * t + colorB.getRed() * (1.0f - t);
-            g = colorA.getGreen() * t + colorB.getGreen() * (1.0f - t);
-            b = colorA.getBlue() * t + colorB.getBlue() * (1.0f - t);
-
-            // color
-            agents[i * AGENT_SIZE_F + 3] = r / 255.0f;
-            agents[i * AGENT_SIZE_F + 4] = g / 255.0f;
-            agents[i * AGENT_SIZE_F + 5] = b / 255.0f;
-        }
-
-        return agents;
+            putMix(buffer, offset, colorA, colorB, t);
+        });
     }
 
     public static float[] nAgentsRandom4Colors(int n, int width, int height) {
         float[] agents = new float[n * AGENT_SIZE_F];
+        nAgentsRandom4Colors(FloatBuffer.wrap(agents), n, width, height, randomSeed(), ForkJoinPool.commonPool());
+        return agents;
+    }
 
-        Random random = new Random();
-        Color colorA = randomColor(random);
-        Color colorB = randomColor(random);
-        Color colorC = randomColor(random);
-        Color colorD = randomColor(random);
+    public static void nAgentsRandom4Colors(FloatBuffer agents, int n, int width, int height, long seed,
+            ForkJoinPool pool) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[] colorA = randomColor(random);
+        float[] colorB = randomColor(random);
+        float[] colorC = randomColor(random);
+        float[] colorD = randomColor(random);
 
-        // Color colorA = Color.RED;
-        // Color colorB = Color.BLUE;
-        // Color colorC = Color.RED;
-        // Color colorD = Color.WHITE;
+        generate(agents, n, width, height, true, seed, pool, (buffer, offset, i, chunkRandom) -> {
+            float t = ((float) i / n) * 2.0f;
+            if (t <= 1.0f) {
+                putMix(buffer, offset, colorA, colorB, t);
+            } else {
+                putMix(buffer, offset, colorC, colorD, t - 1.0f);
+            }
+        });
+    }
+
+    // agents start in a small disc around the center, or anywhere on screen
+    private static void generate(FloatBuffer agents, int n, int width, int height, boolean disc, long seed,
+            ForkJoinPool pool, AgentColor color) {
+        if (agents.capacity() < n * AGENT_SIZE_F) {
+            throw new IllegalArgumentException("Buffer too small for " + n + " agents: " + agents.capacity());
+        }
 
         float centerX = width / 2.0f;
         float centerY = height / 2.0f;
+        float maxRadius = min(width, height) / 256.0f;
+
+        int numChunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Parallel.forRange(pool, 0, numChunks, (fromChunk, toChunk) -> {
+            for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+                SplittableRandom random = new SplittableRandom(chunkSeed(seed, chunk));
+                int end = min(n, (chunk + 1) * CHUNK_SIZE);
+                for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                    float x;
+                    float y;
+                    if (disc) {
+                        float radius = maxRadius * (float) sqrt(random.nextDouble());
+                        float theta = (float) (random.nextDouble() * 2 * PI);
+                        x = (float) (centerX + radius * cos(theta));
+                        y = (float) (centerY + radius * sin(theta));
+                    } else {
+                        x = (float) (random.nextDouble() * width);
+                        y = (float) (random.nextDouble() * height);
+                    }
+
+                    // position + rotation
+                    int offset = i * AGENT_SIZE_F;
+                    agents.put(offset + 0, x);
+                    agents.put(offset + 1, y);
+                    agents.put(offset + 2, (float) (random.nextDouble() * 360.0));
+
+                    // color
+                    color.put(agents, offset + 3, i, random);
+                }
+            }
+        });
+    }
 
-        for (int i = 0; i < n; i++) {
-            float radius = min(width, height) / 256.0f * (float) sqrt(random());
-            float theta = (float) (random() * 2 * PI);
-            float x = (float) (centerX + radius * cos(theta));
-            float y = (float) (centerY + radius * sin(theta));
+    // murmur3 finalizer, neighbouring chunks get unrelated streams
+    static long chunkSeed(long seed, int chunk) {
+        long h = seed ^ (chunk * 0x9E3779B97F4A7C15L);
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
 
-            // position + rotation
-            agents[i * AGENT_SIZE_F + 0] = x;
-            agents[i * AGENT_SIZE_F + 1] = y;
-            agents[i * AGENT_SIZE_F + 2] = (float) (Math.random() * 360.0);
+    private static long randomSeed() {
+        return ThreadLocalRandom.current().nextLong();
+    }
 
-            float t = ((float) i / n) * 2.0f;
-            float r, g, b;
-            if (t <= 1.0f) {
-                r = colorA.getRed() * t + colorB.getRed() * (1.0f - t);
-                g = colorA.getGreen() * t + colorB.getGreen() * (1.0f - t);
-                b = colorA.getBlue() * t + colorB.getBlue() * (1.0f - t);
-            } else {
-                r = colorC.getRed() * (t - 1.0f) + colorD.getRed() * (2.0f - t);
-                g = colorC.getGreen() * (t - 1.0f) + colorD.getGreen() * (2.0f - t);
-                b = colorC.getBlue() * (t - 1.0f) + colorD.getBlue() * (2.0f - t);
-            }
+    private static void putMix(FloatBuffer agents, int offset, float[] colorA, float[] colorB, float t) {
+        agents.put(offset + 0, colorA[0] * t + colorB[0] * (1.0f - t));
+        agents.put(offset + 1, colorA[1] * t + colorB[1] * (1.0f - t));
+        agents.put(offset + 2, colorA[2] * t + colorB[2] * (1.0f - t));
+    }
 
-            // color
-            agents[i * AGENT_SIZE_F + 3] = r / 255.0f;
-            agents[i * AGENT_SIZE_F + 4] = g / 255.0f;
-            agents[i * AGENT_SIZE_F + 5] = b / 255.0f;
+    // Color.HSBtoRGB without the Color or the rounding to 8 bits
+    private static void putHsb(FloatBuffer agents, int offset, float hue, float saturation, float brightness) {
+        float h = (hue - (float) Math.floor(hue)) * 6.0f;
+        float f = h - (float) Math.floor(h);
+        float p = brightness * (1.0f - saturation);
+        float q = brightness * (1.0f - saturation * f);
+        float t = brightness * (1.0f - saturation * (1.0f - f));
+
+        float r, g, b;
+        switch ((int) h) {
+        case 0 -> {
+            r = brightness;
+            g = t;
+            b = p;
+        }
+        case 1 -> {
+            r = q;
+            g = brightness;
+            b = p;
+        }
+        case 2 -> {
+            r = p;
+            g = brightness;
+            b = t;
+        }
+        case 3 -> {
+            r = p;
+            g = q;
+            b = brightness;
+        }
+        case 4 -> {
+            r = t;
+            g = p;
+            b = brightness;
+        }
+        default -> {
+            r = brightness;
+            g = p;
+            b = q;
+        }
         }
 
-        return agents;
+        agents.put(offset + 0, r);
+        agents.put(offset + 1, g);
+        agents.put(offset + 2, b);
+    }
+
+    private static float[] rgb(Color color) {
+        return new float[] { color.getRed() / 255.0f, color.getGreen() / 255.0f, color.getBlue() / 255.0f };
     }
 
     // https://stackoverflow.com/a/8739276
-    private static Color randomColor(Random random) {
+    private static float[] randomColor(SplittableRandom random) {
         final float hue = random.nextFloat();
         final float saturation = 1.0f;
         final float luminance = 1.0f;
-        return Color.getHSBColor(hue, saturation, luminance);
+        FloatBuffer color = FloatBuffer.allocate(3);
+        putHsb(color, 0, hue, saturation, luminance);
+        return color.array();
     }
 
 }
@@ -0,0 +1,353 @@
+package computeshader.slime;
+
+import static java.lang.Math.toRadians;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import computeshader.core.ImageFiles;
+
+// many short headless slime runs over a grid or a random sample of the ShaderParameters fields, one CSV row of
+// metrics per run. every worker thread runs one simulation at a time on a pool of its own, memory is threads times
+// one simulation and the runs/hour grow with the cores. a single threaded simulation deposits in a fixed order, a
+// run's metrics don't depend on how many run next to it
+public class ParameterSweep {
+    private static final Logger logger = LogManager.getLogger();
+
+    // the tunable ShaderParameters fields, in buffer order after frameBufferWidth and frameBufferHeight
+    public static final List<String> PARAMETERS = List.of("sensingDistance", "sensingAngle", "turningAngle",
+            "depositAmount", "diffuseAmount", "decayAmount", "stepSize", "randomAmount");
+    // SlimeMain's starting values
+    private static final float[] DEFAULTS = new float[] { 25.0f, (float) toRadians(35.0f), (float) toRadians(35.0f),
+            1.0f, 1.0f, 0.5f, 100.0f, 0.0f };
+    // what random samples cover when no range is given, roughly the ImGui slider ranges
+    private static final float[][] DEFAULT_RANGES = new float[][] { { 1.0f, 100.0f }, { 0.0f, (float) Math.PI },
+            { 0.0f, (float) Math.PI }, { 0.01f, 1.0f }, { 0.0f, 1.0f }, { 0.0f, 1.0f }, { 10.0f, 500.0f },
+            { 0.0f, 1.0f } };
+
+    private static final float DELTA = 1.0f / 60.0f;
+    private static final int HISTOGRAM_BINS = 256;
+    // a pixel counts as covered once it shows on screen
+    private static final float COVERAGE_THRESHOLD = 1.0f / 255.0f;
+
+    // parameters in PARAMETERS order, the seed places the agents
+    public record Run(int index, long seed, float[] parameters) {
+    }
+
+    // of the trail's intensity, the mean of r, g and b clamped to [0, 1] like the display. coverage is the fraction
+    // of visible pixels, entropy is in bits over a 256 bin histogram
+    public record Metrics(double coverage, double meanIntensity, double entropy) {
+
+        public static Metrics of(float[] red, float[] green, float[] blue) {
+            long[] histogram = new long[HISTOGRAM_BINS];
+            long covered = 0;
+            double sum = 0.0;
+            for (int i = 0; i < red.length; i++) {
+                float intensity = Math.min(1.0f, Math.max(0.0f, (red[i] + green[i] + blue[i]) / 3.0f));
+                if (intensity >= COVERAGE_THRESHOLD) {
+                    covered++;
+                }
+                sum += intensity;
+                histogram[Math.min(HISTOGRAM_BINS - 1, (int) (intensity * HISTOGRAM_BINS))]++;
+            }
+
+            double entropy = 0.0;
+            for (long count : histogram) {
+                if (count > 0) {
+                    double p = (double) count / red.length;
+                    entropy -= p * Math.log(p) / Math.log(2.0);
+                }
+            }
+            return new Metrics((double) covered / red.length, sum / red.length, entropy);
+        }
+    }
+
+    public record Result(Run run, Metrics metrics, long nanos) {
+    }
+
+    private final int width;
+    private final int height;
+    private final int numAgents;
+    private final int steps;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path thumbnails;
+
+    public ParameterSweep(int width, int height, int numAgents, int steps) {
+        this.width = width;
+        this.height = height;
+        this.numAgents = numAgents;
+        this.steps = steps;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    // a PNG of the final trail per run in this directory, null writes none
+    public void setThumbnails(Path thumbnails) {
+        this.thumbnails = thumbnails;
+    }
+
+    private static int parameter(String name) {
+        int index = PARAMETERS.indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown parameter " + name + ", expected one of " + PARAMETERS);
+        }
+        return index;
+    }
+
+    // every combination of the axes' values, the parameters without an axis keep their defaults. the last axis
+    // changes fastest
+    public static List<Run> grid(Map<String, float[]> axes, long seed) {
+        List<float[]> combinations = new ArrayList<>();
+        combinations.add(DEFAULTS.clone());
+        for (Map.Entry<String, float[]> axis : axes.entrySet()) {
+            int index = parameter(axis.getKey());
+            List<float[]> next = new ArrayList<>();
+            for (float[] combination : combinations) {
+                for (float value : axis.getValue()) {
+                    float[] parameters = combination.clone();
+                    parameters[index] = value;
+                    next.add(parameters);
+                }
+            }
+            combinations = next;
+        }
+
+        List<Run> runs = new ArrayList<>();
+        for (float[] parameters : combinations) {
+            runs.add(new Run(runs.size(), seed + runs.size(), parameters));
+        }
+        return runs;
+    }
+
+    // count runs with every parameter uniform in its range, ranges are { min, max } and replace the defaults
+    public static List<Run> random(int count, Map<String, float[]> ranges, long seed) {
+        float[][] bounds = DEFAULT_RANGES.clone();
+        for (Map.Entry<String, float[]> range : ranges.entrySet()) {
+            bounds[parameter(range.getKey())] = range.getValue();
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Run> runs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] parameters = new float[PARAMETERS.size()];
+            for (int p = 0; p < parameters.length; p++) {
+                parameters[p] = bounds[p][0] + (float) random.nextDouble() * (bounds[p][1] - bounds[p][0]);
+            }
+            runs.add(new Run(i, seed + i, parameters));
+        }
+        return runs;
+    }
+
+    // runs on the calling thread, the simulation is single threaded on pool
+    public Result run(Run run, ForkJoinPool pool) throws IOException {
+        long start = System.nanoTime();
+        float[] shaderParameters = new float[2 + PARAMETERS.size()];
+        shaderParameters[0] = width;
+        shaderParameters[1] = height;
+        System.arraycopy(run.parameters, 0, shaderParameters, 2, PARAMETERS.size());
+
+        float[] agents = new float[numAgents * 6];
+        AgentUtil.nAgentsRandomColor(FloatBuffer.wrap(agents), numAgents, width, height, run.seed, pool);
+        SlimeSimulation simulation = new SlimeSimulation(width, height, agents, shaderParameters, pool);
+        for (int step = 0; step < steps; step++) {
+            simulation.step(step * DELTA, DELTA);
+        }
+
+        float[] red = simulation.getTrail(0);
+        float[] green = simulation.getTrail(1);
+        float[] blue = simulation.getTrail(2);
+        Metrics metrics = Metrics.of(red, green, blue);
+        if (thumbnails != null) {
+            float[] rgb = new float[width * height * 3];
+            for (int i = 0; i < width * height; i++) {
+                rgb[i * 3 + 0] = red[i];
+                rgb[i * 3 + 1] = green[i];
+                rgb[i * 3 + 2] = blue[i];
+            }
+            ImageFiles.writePng(thumbnails.resolve(String.format("run-%05d.png", run.index)), width, height, 3, rgb);
+        }
+        return new Result(run, metrics, System.nanoTime() - start);
+    }
+
+    // rows are written and flushed as runs finish, in that order, the run column gives the sweep order
+    public List<Result> run(List<Run> runs, Path csv) throws IOException {
+        if (thumbnails != null) {
+            Files.createDirectories(thumbnails);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<ForkJoinPool> pools = new ArrayList<>();
+        ThreadLocal<ForkJoinPool> pool = ThreadLocal.withInitial(() -> {
+            ForkJoinPool workerPool = new ForkJoinPool(1);
+            synchronized (pools) {
+                pools.add(workerPool);
+            }
+            return workerPool;
+        });
+
+        long start = System.nanoTime();
+        List<Result> results = new ArrayList<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write(header());
+            writer.newLine();
+
+            CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+            for (Run run : runs) {
+                completion.submit(() -> run(run, pool.get()));
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                Result result = completion.take().get();
+                results.add(result);
+                writer.write(row(result));
+                writer.newLine();
+                writer.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sweep interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Run failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            synchronized (pools) {
+                pools.forEach(ForkJoinPool::shutdown);
+            }
+        }
+
+        double hours = (System.nanoTime() - start) / 3.6e12;
+        logger.info("{} runs of {} steps at {}x{} with {} agents on {} threads, {} runs/hour", runs.size(), steps,
+                width, height, numAgents, threads, runs.size() / hours);
+        return results;
+    }
+
+    private static String header() {
+        return "run,seed," + String.join(",", PARAMETERS) + ",coverage,meanIntensity,entropy,millis";
+    }
+
+    private static String row(Result result) {
+        StringBuilder row = new StringBuilder();
+        row.append(result.run.index).append(',').append(result.run.seed);
+        for (float parameter : result.run.parameters) {
+            row.append(',').append(parameter);
+        }
+        row.append(',').append(result.metrics.coverage).append(',').append(result.metrics.meanIntensity)
+                .append(',').append(result.metrics.entropy).append(',').append(result.nanos / 1_000_000);
+        return row.toString();
+    }
+
+    // name=v1,v2,... or name=min:max
+    private static Map.Entry<String, float[]> parseValues(String argument, String separator) {
+        int equals = argument.indexOf('=');
+        if (equals < 0) {
+            throw new IllegalArgumentException("Expected name=values, got " + argument);
+        }
+        String name = argument.substring(0, equals);
+        parameter(name);
+        String[] parts = argument.substring(equals + 1).split(separator);
+        float[] values = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Float.parseFloat(parts[i]);
+        }
+        return Map.entry(name, values);
+    }
+
+    private static void usage() {
+        logger.error("Usage: ParameterSweep <out.csv> [--grid name=v1,v2,...] [--random count] "
+                + "[--range name=min:max] [--steps n] [--size WxH] [--agents n] [--threads n] [--seed n] "
+                + "[--thumbnails dir]");
+    }
+
+    // ParameterSweep <out.csv> [--grid name=v1,v2,...]... [--random count] [--range name=min:max]...
+    //     [--steps n] [--size WxH] [--agents n] [--threads n] [--seed n] [--thumbnails dir]
+    // values are in shader units, angles in radians. a grid without axes is a single run of the defaults
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            usage();
+            return;
+        }
+
+        Path csv = Path.of(args[0]);
+        Map<String, float[]> axes = new LinkedHashMap<>();
+        Map<String, float[]> ranges = new LinkedHashMap<>();
+        int randomRuns = 0;
+        int steps = 300;
+        int width = 480;
+        int height = 270;
+        int numAgents = 1 << 15;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        Path thumbnails = null;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                logger.error("Missing value for {}", args[i]);
+                usage();
+                return;
+            }
+
+            String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                case "--grid" -> {
+                    Map.Entry<String, float[]> axis = parseValues(value, ",");
+                    axes.put(axis.getKey(), axis.getValue());
+                }
+                case "--range" -> {
+                    Map.Entry<String, float[]> range = parseValues(value, ":");
+                    float[] bounds = range.getValue();
+                    if (bounds.length != 2 || !(bounds[0] <= bounds[1])) {
+                        throw new IllegalArgumentException("Expected name=min:max with min <= max, got " + value);
+                    }
+                    ranges.put(range.getKey(), bounds);
+                }
+                case "--random" -> randomRuns = Integer.parseInt(value);
+                case "--steps" -> steps = Integer.parseInt(value);
+                case "--size" -> {
+                    int x = value.indexOf('x');
+                    if (x < 0) {
+                        throw new IllegalArgumentException("Expected WxH, got " + value);
+                    }
+                    width = Integer.parseInt(value.substring(0, x));
+                    height = Integer.parseInt(value.substring(x + 1));
+                }
+                case "--agents" -> numAgents = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--thumbnails" -> thumbnails = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException included
+                logger.error("Bad option {} {}: {}", args[i], value, e.getMessage());
+                usage();
+                return;
+            }
+        }
+
+        List<Run> runs = randomRuns > 0 ? random(randomRuns, ranges, seed) : grid(axes, seed);
+        ParameterSweep sweep = new ParameterSweep(width, height, numAgents, steps);
+        sweep.setThreads(threads);
+        sweep.setThumbnails(thumbnails);
+        sweep.run(runs, csv);
+        logger.info("Wrote {}", csv);
+    }
+
+}
@@ -0,0 +1,218 @@
+package computeshader.slime;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.signum;
+import static java.lang.Math.sin;
+
+import computeshader.core.ComputeKernel;
+import computeshader.core.CpuImage;
+import computeshader.core.JavaBackend;
+
+// Java port of slime.glsl
+public class SlimeKernel implements ComputeKernel {
+    private static final int AGENT_SIZE_F = 6;
+
+    private CpuImage agentMap;
+    private CpuImage agentMapOut;
+    private CpuImage trailMap;
+    private CpuImage trailMapOut;
+    private float[] params;
+    private float[] agents;
+
+    private int stage;
+    private float time;
+    private float delta;
+
+    @Override
+    public int[] workGroupSize() {
+        return new int[] { 1024, 1, 1 };
+    }
+
+    @Override
+    public void prepare(JavaBackend backend) {
+        agentMap = backend.getImage("AgentMap");
+        agentMapOut = backend.getImage("AgentMapOut");
+        trailMap = backend.getImage("TrailMap");
+        trailMapOut = backend.getImage("TrailMapOut");
+        params = backend.getStorageBuffer("ShaderParameters");
+        agents = backend.getStorageBuffer("AgentData");
+
+        stage = backend.getUIntUniform("Stage");
+        time = backend.getFloatUniform("Time");
+        delta = backend.getFloatUniform("Delta");
+    }
+
+    @Override
+    public void invoke(int x, int y, int z) {
+        if (stage == 0) {
+            moveAgent(x);
+        } else {
+            diffuse(x);
+        }
+    }
+
+    private void moveAgent(int gid) {
+        int width = (int) params[0];
+        int height = (int) params[1];
+        int agent = gid * AGENT_SIZE_F;
+
+        float angle = agents[agent + 2];
+        float positionX = agents[agent + 0];
+        float positionY = agents[agent + 1];
+        int pixelX = (int) positionX;
+        int pixelY = (int) positionY;
+
+        float rnd = scaleToRange01(hash(pixelY * width + pixelX + hash(gid + (int) time * 100000)));
+
+        float sensingDistance = params[2];
+        float sensingAngle = params[3];
+
+        float r = agents[agent + 3];
+        float g = agents[agent + 4];
+        float b = agents[agent + 5];
+
+        float colorHue = hue(r, g, b);
+        float frontV = sense(colorHue, positionX, positionY, angle, sensingDistance, width, height);
+        float leftV = sense(colorHue, positionX, positionY, angle + sensingAngle, sensingDistance, width, height);
+        float rightV = sense(colorHue, positionX, positionY, angle - sensingAngle, sensingDistance, width, height);
+
+        float turningAngle = params[4];
+        float randomAmount = params[9];
+        if ((leftV < frontV) && (rightV < frontV)) {
+            angle += signum(rnd - 0.5f) * (turningAngle - turningAngle * (1.0f - randomAmount));
+        } else if (leftV < rightV) {
+            angle += (turningAngle - turningAngle * (1.0f - rnd) * randomAmount);
+        } else if (rightV < leftV) {
+            angle -= (turningAngle - turningAngle * (1.0f - rnd) * randomAmount);
+        } else {
+            angle += (rnd - 0.5f) * 4.0f * (float) PI * randomAmount;
+        }
+
+        float stepSize = params[8] * delta;
+        float newX = mod(positionX + stepSize * (float) cos(angle), width);
+        float newY = mod(positionY + stepSize * (float) sin(angle), height);
+        int newPixelX = (int) newX;
+        int newPixelY = (int) newY;
+
+        float depositAmount = params[5];
+        trailMap.store(newPixelX, newPixelY,
+                min(trailMap.get(pixelX, pixelY, 0) + r * depositAmount * delta, 1.0f),
+                min(trailMap.get(pixelX, pixelY, 1) + g * depositAmount * delta, 1.0f),
+                min(trailMap.get(pixelX, pixelY, 2) + b * depositAmount * delta, 1.0f),
+                min(trailMap.get(pixelX, pixelY, 3) + depositAmount * delta, 1.0f));
+
+        agentMapOut.set(newPixelX, newPixelY, 0, agentMap.get(newPixelX, newPixelY, 0) + 1.0f);
+
+        agents[agent + 0] = newX;
+        agents[agent + 1] = newY;
+        agents[agent + 2] = angle;
+    }
+
+    private float sense(float colorHue, float x, float y, float angle, float distance, int width, int height) {
+        int sensorX = (int) mod(x + distance * (float) cos(angle), width);
+        int sensorY = (int) mod(y + distance * (float) sin(angle), height);
+
+        float sensorHue = hue(trailMap.get(sensorX, sensorY, 0), trailMap.get(sensorX, sensorY, 1),
+                trailMap.get(sensorX, sensorY, 2));
+        float difference = abs(colorHue - sensorHue);
+        return difference * difference;
+    }
+
+    private void diffuse(int gid) {
+        int width = (int) params[0];
+        int height = (int) params[1];
+        if (gid >= width * height) {
+            return;
+        }
+
+        int x = gid % width;
+        int y = gid / width;
+
+        // the shader's column sums, left, middle and right are each three rows added top to bottom
+        int left = max(0, x - 1);
+        int right = min(width - 1, x + 1);
+        int up = max(0, y - 1);
+        int down = min(height - 1, y + 1);
+        float sumR = columnSum(left, up, y, down, 0) + columnSum(x, up, y, down, 0) + columnSum(right, up, y, down, 0);
+        float sumG = columnSum(left, up, y, down, 1) + columnSum(x, up, y, down, 1) + columnSum(right, up, y, down, 1);
+        float sumB = columnSum(left, up, y, down, 2) + columnSum(x, up, y, down, 2) + columnSum(right, up, y, down, 2);
+        float sumA = columnSum(left, up, y, down, 3) + columnSum(x, up, y, down, 3) + columnSum(right, up, y, down, 3);
+
+        float decayAmount = 1.0f - (params[7] * delta);
+        float diffuseAmount = params[6];
+        trailMapOut.store(x, y, blur(trailMap.get(x, y, 0), sumR, diffuseAmount) * decayAmount,
+                blur(trailMap.get(x, y, 1), sumG, diffuseAmount) * decayAmount,
+                blur(trailMap.get(x, y, 2), sumB, diffuseAmount) * decayAmount,
+                blur(trailMap.get(x, y, 3), sumA, diffuseAmount) * decayAmount);
+
+        agentMapOut.set(x, y, 0, 0.0f);
+    }
+
+    private float columnSum(int x, int up, int y, int down, int channel) {
+        return trailMap.get(x, up, channel) + trailMap.get(x, y, channel) + trailMap.get(x, down, channel);
+    }
+
+    private static float blur(float trailColor, float sum, float diffuseAmount) {
+        return trailColor * (1.0f - diffuseAmount) + (sum / 9.0f) * diffuseAmount;
+    }
+
+    // hue component of rgb2hsv in slime.glsl
+    static float hue(float r, float g, float b) {
+        float px, py, pz, pw;
+        if (b <= g) {
+            px = g;
+            py = b;
+            pz = 0.0f;
+            pw = -1.0f / 3.0f;
+        } else {
+            px = b;
+            py = g;
+            pz = -1.0f;
+            pw = 2.0f / 3.0f;
+        }
+
+        float qx, qy, qz, qw;
+        if (px <= r) {
+            qx = r;
+            qy = py;
+            qz = pz;
+            qw = px;
+        } else {
+            qx = px;
+            qy = py;
+            qz = pw;
+            qw = r;
+        }
+
+        float d = qx - min(qw, qy);
+        float e = 1.0e-10f;
+        return abs(qz + (qw - qy) / (6.0f * d + e));
+    }
+
+    // Hash function www.cs.ubc.ca/~rbridson/docs/schechter-sca08-turbulence.pdf
+    static int hash(int state) {
+        state ^= 0xA3C59AC3;
+        state *= 0x9E3779B9;
+        state ^= state >>> 16;
+        state *= 0x9E3779B9;
+        state ^= state >>> 16;
+        state *= 0x9E3779B9;
+        return state;
+    }
+
+    static float scaleToRange01(int state) {
+        return (float) (Integer.toUnsignedLong(state) / 4294967295.0);
+    }
+
+    // GLSL mod for floats, rounding up to y wraps to 0 so the result is always a valid pixel
+    static float mod(float x, float y) {
+        float result = x - y * (float) floor(x / y);
+        return result < y ? result : 0.0f;
+    }
+
+}
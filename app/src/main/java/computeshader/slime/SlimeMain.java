@@ -3,19 +3,35 @@ package computeshader.slime;
 import static java.lang.Math.pow;
 import static java.lang.Math.toRadians;
 
-import java.util.List;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import computeshader.core.ComputeBackend;
+import computeshader.core.FixedTimestep;
+import computeshader.core.FrameExporter;
+import computeshader.core.FrameExporter.Format;
+import computeshader.core.FrameExporter.Policy;
+import computeshader.core.FrameGraph;
+import computeshader.core.JavaBackend;
+import computeshader.core.OpenGLBackend;
+import computeshader.core.ParameterBlock;
+import computeshader.core.PixelFormat;
 import computeshader.core.ShaderApp;
 import computeshader.core.ShaderApp.ShaderAppConfiguration;
 import imgui.ImGui;
-import imgui.app.Application;
 
 public class SlimeMain {
     private static final Logger logger = LogManager.getLogger();
 
+    private static final int AGENT_SIZE_F = 6;
+    private static final int TICKS_PER_SECOND = 60;
+    private static final int MAX_SUBSTEPS = 4;
+
     private ShaderApp app;
     private String title = "Slime";
     private int windowWidth = 1600;
@@ -24,7 +40,6 @@ public class SlimeMain {
     private int textureHeight = 1080 * 2;
 
     private int numAgents = (int) pow(2, 22);
-    private float[] agentData = AgentUtil.nAgentsGradient(numAgents, textureWidth, textureHeight);
     private float[] sensingDistanceParameter = new float[] { 25.0f };
     private float[] sensingAngleParameter = new float[] { (float) toRadians(35.0f) };
     private float[] turningAngleParameter = new float[] { (float) toRadians(35.0f) };
@@ -34,113 +49,205 @@ public class SlimeMain {
     private float[] stepSizeParameter = new float[] { 100.0f };
     private float[] randomAmountParameter = new float[] { 0.0f };
 
+    // handles resolved once the program is linked
+    private int agentShader;
+    private int[] workGroupSize;
+    private int stageUniform;
+    private int timeUniform;
+    private int deltaUniform;
+
+    private ParameterBlock shaderParameters = new ParameterBlock("ShaderParameters", 1, "frameBufferWidth",
+            "frameBufferHeight", "sensingDistance", "sensingAngle", "turningAngle", "depositAmount", "diffuseAmount",
+            "decayAmount", "stepSize", "randomAmount");
+
     private double currentTime = 0.0f;
     private double previousFrameTime = 0.0;
     private double deltaTime = 0.0;
+    private boolean sorting;
 
     public SlimeMain() {
-        app = new ShaderApp(new ShaderAppConfiguration(title, windowWidth, windowHeight, textureWidth, textureHeight));
-
-        app.preRun(() -> {
-            app.createTexture("AgentMap");
-            app.createTexture("AgentMapOut");
-            app.createTexture("TrailMap");
-            app.createTexture("TrailMapOut");
+        this(new OpenGLBackend(), 1920 * 2, 1080 * 2, (int) pow(2, 22));
+    }
 
-            app.addUniform("Stage");
-            app.addUniform("Time");
-            app.addUniform("Delta");
+    public SlimeMain(ComputeBackend backend, int textureWidth, int textureHeight, int numAgents) {
+        this.textureWidth = textureWidth;
+        this.textureHeight = textureHeight;
+        this.numAgents = numAgents;
 
-            app.createComputeShader("AgentShader", "/slime.glsl");
+        app = new ShaderApp(new ShaderAppConfiguration(title, windowWidth, windowHeight, textureWidth, textureHeight),
+                backend);
+        app.registerKernel("/slime.glsl", new SlimeKernel());
+        app.fixedTimestep(FixedTimestep.ofRate(TICKS_PER_SECOND, MAX_SUBSTEPS));
 
-            app.createStorageBuffer("AgentShader", "ShaderParameters", new float[] {
-                    (float) textureWidth,
-                    (float) textureHeight,
-                    sensingDistanceParameter[0],
-                    sensingAngleParameter[0],
-                    turningAngleParameter[0],
-                    depositAmountParameter[0],
-                    diffuseAmountParameter[0],
-                    decayAmountParameter[0],
-                    stepSizeParameter[0],
-                    randomAmountParameter[0]
-            });
+        app.preRun(() -> {
+            app.createImagePair("AgentMap", "AgentMapOut", PixelFormat.R32UI);
+            app.createImagePair("TrailMap", "TrailMapOut", PixelFormat.RGBA16F);
 
-            logger.info("Creating {} agents", numAgents);
-            app.createStorageBuffer("AgentShader", "AgentData", agentData);
+            app.createComputeShader("AgentShader", "/slime.glsl");
+            agentShader = app.getProgram("AgentShader");
+            workGroupSize = app.getWorkGroupSize("AgentShader");
+            stageUniform = app.getUniform("AgentShader", "Stage");
+            timeUniform = app.getUniform("AgentShader", "Time");
+            deltaUniform = app.getUniform("AgentShader", "Delta");
+
+            shaderParameters.set("frameBufferWidth", textureWidth);
+            shaderParameters.set("frameBufferHeight", textureHeight);
+            shaderParameters.set("sensingDistance", sensingDistanceParameter[0]);
+            shaderParameters.set("sensingAngle", sensingAngleParameter[0]);
+            shaderParameters.set("turningAngle", turningAngleParameter[0]);
+            shaderParameters.set("depositAmount", depositAmountParameter[0]);
+            shaderParameters.set("diffuseAmount", diffuseAmountParameter[0]);
+            shaderParameters.set("decayAmount", decayAmountParameter[0]);
+            shaderParameters.set("stepSize", stepSizeParameter[0]);
+            shaderParameters.set("randomAmount", randomAmountParameter[0]);
+            // slider values, a frame may run with half of an edit
+            shaderParameters.setMapped(true);
+            app.createParameterBlock("AgentShader", shaderParameters);
+
+            long seed = System.nanoTime();
+            long start = System.nanoTime();
+            FloatBuffer agents = AgentUtil.allocate(numAgents);
+            AgentUtil.nAgentsGradient(agents, numAgents, textureWidth, textureHeight, seed,
+                    ForkJoinPool.commonPool());
+            logger.info("Created {} agents (seed {}) in {} ms", numAgents, seed, (System.nanoTime() - start) / 1e6);
+            app.createStorageBuffer("AgentShader", "AgentData", agents);
         });
 
-        app.gui(() -> {
+        app.update(() -> {
             currentTime = app.getTime();
             deltaTime = currentTime - previousFrameTime;
             previousFrameTime = currentTime;
+        });
 
+        app.gui(() -> {
             ImGui.text("Runtime: " + currentTime);
             ImGui.text("Delta  : " + deltaTime);
             ImGui.text("Particle Count: " + numAgents);
 
             if (ImGui.dragFloat("Sensing Distance", sensingDistanceParameter, 1.0f, 1.0f, 1000.0f)) {
-                app.updateStorageBuffer("ShaderParameters", 2, sensingDistanceParameter);
+                shaderParameters.set("sensingDistance", sensingDistanceParameter[0]);
             }
 
             if (ImGui.sliderAngle("Sensing Angle", sensingAngleParameter, 0.0f, 180.0f)) {
-                app.updateStorageBuffer("ShaderParameters", 3, sensingAngleParameter);
+                shaderParameters.set("sensingAngle", sensingAngleParameter[0]);
             }
 
             if (ImGui.sliderAngle("Turning Angle", turningAngleParameter, 0.0f, 180.0f)) {
-                app.updateStorageBuffer("ShaderParameters", 4, turningAngleParameter);
+                shaderParameters.set("turningAngle", turningAngleParameter[0]);
             }
 
             if (ImGui.sliderFloat("Deposit Amount", depositAmountParameter, 0.01f, 1.0f)) {
-                app.updateStorageBuffer("ShaderParameters", 5, depositAmountParameter);
+                shaderParameters.set("depositAmount", depositAmountParameter[0]);
             }
 
             if (ImGui.sliderFloat("Diffuse Amount", diffuseAmountParameter, 0.0f, 1.0f)) {
-                app.updateStorageBuffer("ShaderParameters", 6, diffuseAmountParameter);
+                shaderParameters.set("diffuseAmount", diffuseAmountParameter[0]);
             }
 
             if (ImGui.sliderFloat("Decay Amount", decayAmountParameter, 0.0f, 1.0f)) {
-                app.updateStorageBuffer("ShaderParameters", 7, decayAmountParameter);
+                shaderParameters.set("decayAmount", decayAmountParameter[0]);
             }
 
             if (ImGui.dragFloat("Step Size", stepSizeParameter, 10.0f, 0.0f, 10000.0f)) {
-                app.updateStorageBuffer("ShaderParameters", 8, stepSizeParameter);
+                shaderParameters.set("stepSize", stepSizeParameter[0]);
             }
 
             if (ImGui.sliderFloat("Random", randomAmountParameter, 0.0f, 1.0f)) {
-                app.updateStorageBuffer("ShaderParameters", 9, randomAmountParameter);
+                shaderParameters.set("randomAmount", randomAmountParameter[0]);
             }
         });
 
-        app.processSteps(List.of(() -> {
-            app.usingProgram("AgentShader", () -> {
-                app.setUIntUniform("Stage", 0);
-                app.setFloatUniform("Time", (float) currentTime);
-                app.setFloatUniform("Delta", (float) deltaTime);
+        // agents deposit into the trail map they sense, so only the counts and the diffused trail need a swap
+        app.step("move agents", () -> {
+            app.usingProgram(agentShader, () -> {
+                app.setUIntUniform(stageUniform, 0);
+                app.setFloatUniform(timeUniform, app.getSimulationTime());
+                app.setFloatUniform(deltaUniform, app.getTickSeconds());
 
-                int[] workGroupSize = app.getWorkGroupSize("AgentShader");
                 app.runComputeShader(numAgents / workGroupSize[0]);
             });
-        }, () -> {
-            app.copyTexture("TrailMapOut", "TrailMap");
-            app.copyTexture("AgentMapOut", "AgentMap");
-        }, () -> {
-            app.usingProgram("AgentShader", () -> {
-                app.setUIntUniform("Stage", 1);
-
-                int[] workGroupSize = app.getWorkGroupSize("AgentShader");
+            app.swapImages("AgentMap");
+        }).readsImage("AgentMap", "TrailMap").writesImage("AgentMapOut", "TrailMap")
+                .readsBuffer("ShaderParameters", "AgentData").writesBuffer("AgentData");
+
+        app.step("diffuse", () -> {
+            app.usingProgram(agentShader, () -> {
+                app.setUIntUniform(stageUniform, 1);
+
                 app.runComputeShader(textureWidth * textureHeight / workGroupSize[0]);
             });
-        }, () -> {
-            app.copyTexture("TrailMapOut", "TrailMap");
-        }));
+            app.swapImages("TrailMap");
+        }).readsImage("TrailMap").writesImage("TrailMapOut", "AgentMapOut").readsBuffer("ShaderParameters");
 
         app.display("TrailMap");
     }
 
-    public static void main(String[] args) {
+    // re-sorts AgentData by Morton cell every sortInterval ticks, 0 never sorts. only the Java backend can reach
+    // the agents, and the step can only be added once
+    public void setSortInterval(int sortInterval, int cellSize) {
+        if (sortInterval <= 0) {
+            return;
+        }
+        if (sorting) {
+            throw new IllegalStateException("Agent sorting is already set up");
+        }
+        if (!(app.getBackend() instanceof JavaBackend backend)) {
+            logger.warn("Agent sorting needs the Java backend, agents stay in their order");
+            return;
+        }
+
+        AgentSorter sorter = new AgentSorter(textureWidth, textureHeight, cellSize, backend.getPool());
+        sorting = true;
+        float[] scratch = new float[numAgents * AGENT_SIZE_F];
+        int[] ticks = new int[1];
+        app.step("sort agents", () -> {
+            if (++ticks[0] % sortInterval == 0) {
+                sorter.sort(backend.getStorageBuffer("AgentData"), scratch, AGENT_SIZE_F, numAgents);
+            }
+        }).readsBuffer("AgentData").writesBuffer("AgentData");
+    }
+
+    // warm starts from the agents, trail and parameters of the last run, see ShaderApp.setSnapshotFile
+    public void setSnapshotFile(Path snapshotFile) {
+        app.setSnapshotFile(snapshotFile);
+    }
+
+    public FrameGraph.Plan getFramePlan() {
+        return app.getFramePlan();
+    }
+
+    public FrameGraph.TickedPlan getTickedPlan() {
+        return app.getTickedPlan();
+    }
+
+    public void runHeadless(int frames) {
+        app.runHeadless(frames);
+    }
+
+    public void runHeadless(int frames, int ticksPerFrame) {
+        app.runHeadless(frames, ticksPerFrame);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+            int width = 1920 * 2;
+            int height = 1080 * 2;
+            SlimeMain main = new SlimeMain(new JavaBackend(), width, height, (int) pow(2, 22));
+
+            // optional export target, a .y4m file or a directory of PNG frames
+            if (args.length > 2) {
+                Path target = Path.of(args[2]);
+                Format format = target.toString().endsWith(".y4m") ? Format.Y4M : Format.PNG;
+                main.app.exportFrames(new FrameExporter(target, format, width, height, 4, 2, Policy.BLOCK), 1);
+            }
+
+            main.runHeadless(frames);
+            return;
+        }
+
         SlimeMain main = new SlimeMain();
-        Application.launch(main.app);
+        main.app.launch();
     }
 
 }
@@ -0,0 +1,415 @@
+package computeshader.slime;
+
+import static computeshader.slime.SlimeKernel.hash;
+import static computeshader.slime.SlimeKernel.hue;
+import static computeshader.slime.SlimeKernel.mod;
+import static computeshader.slime.SlimeKernel.scaleToRange01;
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.pow;
+import static java.lang.Math.signum;
+import static java.lang.Math.sin;
+import static java.lang.Math.toRadians;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import computeshader.core.CpuImage;
+import computeshader.core.Parallel;
+
+// CPU Physarum simulation mirroring stages 0 and 1 of slime.glsl, agents and trail kept as structure of arrays
+public class SlimeSimulation {
+    private static final Logger logger = LogManager.getLogger();
+
+    private static final int AGENT_SIZE_F = 6;
+    private static final int CHANNELS = CpuImage.CHANNELS;
+    // Morton cells of 4x4 pixels, a 4K trail map needs 20 bit keys and two radix passes
+    public static final int SORT_CELL_SIZE = 4;
+
+    private final ForkJoinPool pool;
+    private final int width;
+    private final int height;
+    private final int numAgents;
+
+    // swapped with sortScratch when the agents are re-sorted
+    private float[] agentX;
+    private float[] agentY;
+    private float[] agentAngle;
+    private float[] agentR;
+    private float[] agentG;
+    private float[] agentB;
+    private float[] agentHue;
+
+    // agents drift apart in the trail map, every sortInterval agent stages they are put back in Morton order
+    private AgentSorter sorter;
+    private float[] sortScratch;
+    private int sortInterval;
+    private int stepsSinceSort;
+
+    // one plane per channel, swapped with trailOut after every diffuse
+    private float[][] trail;
+    private float[][] trailOut;
+    // hue of the trail after the last diffuse, what stage 0 senses
+    private final float[] trailHue;
+
+    // same layout as the ShaderParameters buffer
+    private final float[] params = new float[10];
+
+    private long agentSteps;
+    private long agentStepNanos;
+    private long sortNanos;
+
+    public SlimeSimulation(int width, int height, float[] agentData, float[] shaderParameters) {
+        this(width, height, agentData, shaderParameters, ForkJoinPool.commonPool());
+    }
+
+    public SlimeSimulation(int width, int height, float[] agentData, float[] shaderParameters, ForkJoinPool pool) {
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        this.numAgents = agentData.length / AGENT_SIZE_F;
+
+        agentX = new float[numAgents];
+        agentY = new float[numAgents];
+        agentAngle = new float[numAgents];
+        agentR = new float[numAgents];
+        agentG = new float[numAgents];
+        agentB = new float[numAgents];
+        agentHue = new float[numAgents];
+
+        trail = new float[CHANNELS][width * height];
+        trailOut = new float[CHANNELS][width * height];
+        trailHue = new float[width * height];
+
+        loadAgents(agentData);
+        updateParameters(0, shaderParameters);
+    }
+
+    public void loadAgents(float[] agentData) {
+        Parallel.forRange(pool, 0, numAgents, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int agent = i * AGENT_SIZE_F;
+                agentX[i] = agentData[agent + 0];
+                agentY[i] = agentData[agent + 1];
+                agentAngle[i] = agentData[agent + 2];
+                agentR[i] = agentData[agent + 3];
+                agentG[i] = agentData[agent + 4];
+                agentB[i] = agentData[agent + 5];
+                agentHue[i] = hue(agentR[i], agentG[i], agentB[i]);
+            }
+        });
+    }
+
+    // same contract as ShaderApp.updateStorageBuffer("ShaderParameters", index, data)
+    public void updateParameters(int index, float[] data) {
+        System.arraycopy(data, 0, params, index, min(data.length, params.length - index));
+        params[0] = width;
+        params[1] = height;
+    }
+
+    // 0 never sorts, cellSize is the side of a Morton cell in pixels
+    public void setSortInterval(int sortInterval, int cellSize) {
+        this.sortInterval = sortInterval;
+        if (sortInterval > 0 && (sorter == null || sorter.getCellSize() != cellSize)) {
+            sorter = new AgentSorter(width, height, cellSize, pool);
+            sortScratch = new float[numAgents];
+        }
+    }
+
+    public void sortAgents() {
+        long start = System.nanoTime();
+        int[] order = sorter.order(agentX, agentY, numAgents);
+        agentX = permute(order, agentX);
+        agentY = permute(order, agentY);
+        agentAngle = permute(order, agentAngle);
+        agentR = permute(order, agentR);
+        agentG = permute(order, agentG);
+        agentB = permute(order, agentB);
+        agentHue = permute(order, agentHue);
+        stepsSinceSort = 0;
+        sortNanos += System.nanoTime() - start;
+    }
+
+    // the sorted copy, the old array becomes the scratch of the next one
+    private float[] permute(int[] order, float[] values) {
+        float[] sorted = sortScratch;
+        sorter.permute(order, values, sorted, numAgents);
+        sortScratch = values;
+        return sorted;
+    }
+
+    public void step(float time, float delta) {
+        moveAgents(time, delta);
+        diffuse(delta);
+    }
+
+    // stage 0: sense, turn, move and deposit
+    public void moveAgents(float time, float delta) {
+        long start = System.nanoTime();
+        if (sortInterval > 0 && stepsSinceSort >= sortInterval) {
+            sortAgents();
+        }
+        stepsSinceSort++;
+
+        float sensingDistance = params[2];
+        float sensingAngle = params[3];
+        float turningAngle = params[4];
+        float depositAmount = params[5];
+        float stepSize = params[8] * delta;
+        float randomAmount = params[9];
+        int timeSeed = (int) time * 100000;
+
+        // the sort replaces the agent arrays, the loop works on the current ones
+        float[] positionsX = agentX;
+        float[] positionsY = agentY;
+        float[] angles = agentAngle;
+        float[] red = agentR;
+        float[] green = agentG;
+        float[] blue = agentB;
+        float[] hues = agentHue;
+        float[] trailR = trail[0];
+        float[] trailG = trail[1];
+        float[] trailB = trail[2];
+        float[] trailA = trail[3];
+
+        Parallel.forRange(pool, 0, numAgents, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                float angle = angles[i];
+                float positionX = positionsX[i];
+                float positionY = positionsY[i];
+                int pixel = (int) positionY * width + (int) positionX;
+
+                float rnd = scaleToRange01(hash(pixel + hash(i + timeSeed)));
+
+                float colorHue = hues[i];
+                float frontV = sense(colorHue, positionX, positionY, angle, sensingDistance);
+                float leftV = sense(colorHue, positionX, positionY, angle + sensingAngle, sensingDistance);
+                float rightV = sense(colorHue, positionX, positionY, angle - sensingAngle, sensingDistance);
+
+                if ((leftV < frontV) && (rightV < frontV)) {
+                    angle += signum(rnd - 0.5f) * (turningAngle - turningAngle * (1.0f - randomAmount));
+                } else if (leftV < rightV) {
+                    angle += (turningAngle - turningAngle * (1.0f - rnd) * randomAmount);
+                } else if (rightV < leftV) {
+                    angle -= (turningAngle - turningAngle * (1.0f - rnd) * randomAmount);
+                } else {
+                    angle += (rnd - 0.5f) * 4.0f * (float) PI * randomAmount;
+                }
+
+                float newX = mod(positionX + stepSize * (float) cos(angle), width);
+                float newY = mod(positionY + stepSize * (float) sin(angle), height);
+                int newPixel = (int) newY * width + (int) newX;
+
+                // like the shader, concurrent deposits to the same pixel race and the last write wins
+                trailR[newPixel] = min(trailR[pixel] + red[i] * depositAmount * delta, 1.0f);
+                trailG[newPixel] = min(trailG[pixel] + green[i] * depositAmount * delta, 1.0f);
+                trailB[newPixel] = min(trailB[pixel] + blue[i] * depositAmount * delta, 1.0f);
+                trailA[newPixel] = min(trailA[pixel] + depositAmount * delta, 1.0f);
+
+                positionsX[i] = newX;
+                positionsY[i] = newY;
+                angles[i] = angle;
+            }
+        });
+
+        agentSteps += numAgents;
+        agentStepNanos += System.nanoTime() - start;
+    }
+
+    private float sense(float colorHue, float x, float y, float angle, float distance) {
+        int sensorX = (int) mod(x + distance * (float) cos(angle), width);
+        int sensorY = (int) mod(y + distance * (float) sin(angle), height);
+
+        float difference = abs(colorHue - trailHue[sensorY * width + sensorX]);
+        return difference * difference;
+    }
+
+    // stage 1: 3x3 blur, diffuse and decay. separable like the shader, a band of rows per task and a window of three
+    // column sums sliding along each row, every column is summed once instead of three times. the sums are added in
+    // the shader's order, top to bottom then left to right, so the trail is bit for bit the one of SlimeKernel
+    public void diffuse(float delta) {
+        float decayAmount = 1.0f - (params[7] * delta);
+        float diffuseAmount = params[6];
+        float[][] in = trail;
+        float[][] out = trailOut;
+
+        Parallel.forRange(pool, 0, height, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                int up = max(0, y - 1) * width;
+                int row = y * width;
+                int down = min(height - 1, y + 1) * width;
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    float[] plane = in[channel];
+                    float[] outPlane = out[channel];
+                    // left of the first column is the first column again
+                    float middle = plane[up] + plane[row] + plane[down];
+                    float left = middle;
+                    for (int x = 0; x < width; x++) {
+                        int right = min(width - 1, x + 1);
+                        float next = plane[up + right] + plane[row + right] + plane[down + right];
+                        float sum = left + middle + next;
+
+                        float blurredColor = plane[row + x] * (1.0f - diffuseAmount) + (sum / 9.0f) * diffuseAmount;
+                        outPlane[row + x] = blurredColor * decayAmount;
+                        left = middle;
+                        middle = next;
+                    }
+                }
+
+                for (int x = 0; x < width; x++) {
+                    trailHue[row + x] = hue(out[0][row + x], out[1][row + x], out[2][row + x]);
+                }
+            }
+        });
+
+        trailOut = in;
+        trail = out;
+    }
+
+    // the nine loads per pixel stage 1 used to do, kept to measure the separable one against. the sums are added in
+    // another order, the trail differs from diffuse's in the last bits
+    public void diffuseNaive(float delta) {
+        float decayAmount = 1.0f - (params[7] * delta);
+        float diffuseAmount = params[6];
+        float[][] in = trail;
+        float[][] out = trailOut;
+
+        Parallel.forRange(pool, 0, height, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                int up = max(0, y - 1) * width;
+                int row = y * width;
+                int down = min(height - 1, y + 1) * width;
+                for (int x = 0; x < width; x++) {
+                    int left = max(0, x - 1);
+                    int right = min(width - 1, x + 1);
+                    for (int channel = 0; channel < CHANNELS; channel++) {
+                        float[] plane = in[channel];
+                        float sum = 0.0f;
+                        sum += plane[up + left];
+                        sum += plane[row + left];
+                        sum += plane[down + left];
+                        sum += plane[up + x];
+                        sum += plane[row + x];
+                        sum += plane[down + x];
+                        sum += plane[up + right];
+                        sum += plane[row + right];
+                        sum += plane[down + right];
+
+                        float blurredColor = plane[row + x] * (1.0f - diffuseAmount) + (sum / 9.0f) * diffuseAmount;
+                        out[channel][row + x] = blurredColor * decayAmount;
+                    }
+
+                    trailHue[row + x] = hue(out[0][row + x], out[1][row + x], out[2][row + x]);
+                }
+            }
+        });
+
+        trailOut = in;
+        trail = out;
+    }
+
+    public void toImage(CpuImage image) {
+        Parallel.forRange(pool, 0, height, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                for (int x = 0; x < width; x++) {
+                    int pixel = y * width + x;
+                    image.store(x, y, trail[0][pixel], trail[1][pixel], trail[2][pixel], trail[3][pixel]);
+                }
+            }
+        });
+    }
+
+    public void fromImage(CpuImage image) {
+        Parallel.forRange(pool, 0, height, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                for (int x = 0; x < width; x++) {
+                    int pixel = y * width + x;
+                    for (int channel = 0; channel < CHANNELS; channel++) {
+                        trail[channel][pixel] = image.get(x, y, channel);
+                    }
+                    trailHue[pixel] = hue(trail[0][pixel], trail[1][pixel], trail[2][pixel]);
+                }
+            }
+        });
+    }
+
+    // sorting is part of the agent stage time
+    public double getAgentStepsPerSecond() {
+        return agentStepNanos == 0 ? 0.0 : agentSteps / (agentStepNanos / 1e9);
+    }
+
+    public long getSortNanos() {
+        return sortNanos;
+    }
+
+    public int getNumAgents() {
+        return numAgents;
+    }
+
+    public float getAgentX(int i) {
+        return agentX[i];
+    }
+
+    public float getAgentY(int i) {
+        return agentY[i];
+    }
+
+    public float getAgentAngle(int i) {
+        return agentAngle[i];
+    }
+
+    public float[] getTrail(int channel) {
+        return trail[channel];
+    }
+
+    // SlimeSimulation [steps] [sortInterval...], every sort interval runs from the same agents, 0 never sorts
+    public static void main(String[] args) {
+        int width = 1920 * 2;
+        int height = 1080 * 2;
+        int numAgents = (int) pow(2, 22);
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int[] sortIntervals = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 0 };
+
+        float[] shaderParameters = new float[] {
+                (float) width,
+                (float) height,
+                25.0f,
+                (float) toRadians(35.0f),
+                (float) toRadians(35.0f),
+                1.0f,
+                1.0f,
+                0.5f,
+                100.0f,
+                0.0f
+        };
+
+        logger.info("Creating {} agents", numAgents);
+        float[] agents = AgentUtil.nAgentsGradient(numAgents, width, height);
+
+        for (int sortInterval : sortIntervals) {
+            SlimeSimulation simulation = new SlimeSimulation(width, height, agents, shaderParameters);
+            simulation.setSortInterval(sortInterval, SORT_CELL_SIZE);
+
+            float delta = 1.0f / 60.0f;
+            long start = System.nanoTime();
+            for (int i = 0; i < steps; i++) {
+                simulation.step(i * delta, delta);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            logger.info("{} steps at {}x{} in {} s ({} steps/s), sort interval {}", steps, width, height, seconds,
+                    steps / seconds, sortInterval);
+            logger.info("Agent stage: {} agent-steps/s, {} ms sorting", simulation.getAgentStepsPerSecond(),
+                    simulation.getSortNanos() / 1e6);
+        }
+    }
+
+}
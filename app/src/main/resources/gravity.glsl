@@ -2,7 +2,7 @@
 
 layout (local_size_x = 64, local_size_y = 1, local_size_z = 1) in;
 
-layout (binding = 0, rgba32f) uniform image2D Display;
+layout (binding = 0, rgba8) uniform image2D Display;
 
 layout (std430) restrict buffer ShaderParameters {
     float width;
@@ -22,6 +22,15 @@ uint NextRandom(inout uint state) {
     return result;
 }
 
+uint Hash(uint value) {
+    return NextRandom(value);
+}
+
+// the random stream of a pixel in a frame, both hashed so that no pixel continues the stream of another one
+uint PixelSeed(uint pixelIndex, uint frame) {
+    return Hash(pixelIndex ^ Hash(frame));
+}
+
 float RandomValue(inout uint state) {
     return NextRandom(state) / 4294967295.0; // 2^32 - 1
 }
@@ -62,8 +71,9 @@ vec3 RandomOnHemisphere(inout uint state, vec3 normal) {
 
 layout (local_size_x = 64, local_size_y = 1, local_size_z = 1) in;
 
-layout (binding = 0, rgba32f) uniform image2D Image;
-//layout (binding = 1, rgba32f) uniform image2D ImageOut;
+layout (binding = 0, rgba8) uniform image2D Image;
+// running sum of linear color, alpha holds the number of samples
+layout (binding = 1, rgba32f) uniform image2D Accumulation;
 
 layout (std430) restrict buffer ShaderParameters {
     float width;
@@ -91,11 +101,26 @@ layout (std430) restrict buffer SphereParameters {
     Sphere Spheres[];
 };
 
+// BVH over Spheres in depth first order, the left child of a node is the next node
+struct Node {
+    float minX, minY, minZ;
+    float maxX, maxY, maxZ;
+    float missIndex;
+    float firstSphere;
+    float sphereCount;
+};
+
+layout (std430) restrict buffer BVHNodes {
+    Node Nodes[];
+};
+
 uniform vec3 CameraPosition;
 uniform mat4 InvProjection;
 uniform mat4 InvView;
 uniform float Time;
 uniform uint Samples;
+// frames accumulated since the last reset, 0 starts a new sum
+uniform uint Frame;
 
 struct Ray {
     vec3 origin;
@@ -164,18 +189,45 @@ bool HitSphere(in Sphere sphere, in Ray ray, in Interval tInt, inout HitRecord r
     return true;
 }
 
+bool HitBox(in Node node, in Ray ray, in vec3 inverseDirection, in Interval tInt) {
+    vec3 t0 = (vec3(node.minX, node.minY, node.minZ) - ray.origin) * inverseDirection;
+    vec3 t1 = (vec3(node.maxX, node.maxY, node.maxZ) - ray.origin) * inverseDirection;
+    vec3 tNear = min(t0, t1);
+    vec3 tFar = max(t0, t1);
+
+    float enter = max(max(tNear.x, tNear.y), max(tNear.z, tInt.min));
+    float exit = min(min(tFar.x, tFar.y), min(tFar.z, tInt.max));
+    return enter <= exit;
+}
+
+// stackless: a missed box or a finished leaf continues at its miss index
 bool HitAnything(in Ray ray, in Interval tInt, inout HitRecord record) {
     HitRecord r;
     bool hit = false;
     float closest = tInt.max;
-
-    for (int i = 0; i < Spheres.length(); i++) {
-        Sphere sphere = Spheres[i];
-        if (HitSphere(sphere, ray, Interval(tInt.min, closest), r)) {
-            hit = true;
-            closest = r.t;
-            record = r;
+    vec3 inverseDirection = 1.0f / ray.direction;
+
+    uint numNodes = Nodes.length();
+    uint index = 0;
+    while (index < numNodes) {
+        Node node = Nodes[index];
+        if (HitBox(node, ray, inverseDirection, Interval(tInt.min, closest))) {
+            uint count = uint(node.sphereCount);
+            if (count == 0) {
+                index++;
+                continue;
+            }
+
+            uint first = uint(node.firstSphere);
+            for (uint i = first; i < first + count; i++) {
+                if (HitSphere(Spheres[i], ray, Interval(tInt.min, closest), r)) {
+                    hit = true;
+                    closest = r.t;
+                    record = r;
+                }
+            }
         }
+        index = uint(node.missIndex);
     }
 
     return hit;
@@ -221,7 +273,7 @@ vec3 RayColor(in Ray ray, inout uint rngState) {
 void main() {
     ivec2 gid = ivec2(gl_GlobalInvocationID.xy);
     uint pixelIndex = gid.y * uint(Params.width) + gid.x;
-    uint rngState = uint(pixelIndex);
+    uint rngState = PixelSeed(pixelIndex, Frame);
 
     // ivec2 index = ivec2(gid.x, Params.height - gid.y);
     float aspectRatio = Params.width / Params.height;
@@ -237,5 +289,11 @@ void main() {
         color += RayColor(ray, rngState);
     }
 
-    imageStore(Image, gid, vec4(sqrt(color / Samples), 1.0f));
+    vec4 sum = vec4(color, float(Samples));
+    if (Frame > 0) {
+        sum += imageLoad(Accumulation, gid);
+    }
+
+    imageStore(Accumulation, gid, sum);
+    imageStore(Image, gid, vec4(sqrt(sum.rgb / sum.a), 1.0f));
 }
\ No newline at end of file
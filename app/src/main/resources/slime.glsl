@@ -4,10 +4,11 @@
 
 layout (local_size_x = 1024, local_size_y = 1, local_size_z = 1) in;
 
-layout (binding = 0, rgba32f) uniform image2D AgentMap;
-layout (binding = 1, rgba32f) uniform image2D AgentMapOut;
-layout (binding = 2, rgba32f) uniform image2D TrailMap;
-layout (binding = 3, rgba32f) uniform image2D TrailMapOut;
+// agents that moved onto each pixel
+layout (binding = 0, r32ui) uniform uimage2D AgentMap;
+layout (binding = 1, r32ui) uniform uimage2D AgentMapOut;
+layout (binding = 2, rgba16f) uniform image2D TrailMap;
+layout (binding = 3, rgba16f) uniform image2D TrailMapOut;
 
 layout (std430) restrict buffer ShaderParameters {
     float frameBufferWidth;
@@ -89,6 +90,17 @@ vec4 sense(ivec2 position, vec4 color) {
     return imageLoad(TrailMap, position);
 }
 
+// stage 1 column sums of the workgroup, in scan order with one column on either side
+shared vec4 columnSums[gl_WorkGroupSize.x + 2];
+
+// the vertical pass, three rows of one column with the edges clamped
+vec4 columnSum(int x, int y, int height) {
+    vec4 up = imageLoad(TrailMap, ivec2(x, max(0, y - 1)));
+    vec4 row = imageLoad(TrailMap, ivec2(x, y));
+    vec4 down = imageLoad(TrailMap, ivec2(x, min(height - 1, y + 1)));
+    return up + row + down;
+}
+
 // https://github.com/erlingpaulsen/godot-physarum/blob/main/physarum_compute_shader.glsl
 
 void main() {
@@ -158,8 +170,7 @@ void main() {
 
         ivec2 new_pixel = ivec2(int(new_position.x), int(new_position.y));
 
-        vec4 AgentMapV = imageLoad(AgentMap, pixel);
-        vec4 AgentMapNewV = imageLoad(AgentMap, new_pixel);
+        uint AgentMapNewV = imageLoad(AgentMap, new_pixel).r;
         vec4 TrailMapV = imageLoad(TrailMap, pixel);
         vec4 TrailMapNewV = imageLoad(TrailMap, new_pixel);
 
@@ -168,8 +179,8 @@ void main() {
         vec4 new_color = full_color * depositAmount;
         vec4 new_value = min(TrailMapV + new_color * Delta, 1.0f);
 
-        imageStore(AgentMapOut, new_pixel, AgentMapNewV + 1.0f);
-        imageStore(TrailMapOut, new_pixel, new_value);
+        imageStore(AgentMapOut, new_pixel, uvec4(AgentMapNewV + 1u));
+        imageStore(TrailMap, new_pixel, new_value);
 
         agents[gid].x = new_position.x;
         agents[gid].y = new_position.y;
@@ -200,31 +211,42 @@ void main() {
         imageStore(TrailMapOut, coord, max(blurredColor - (params.decayAmount) * Delta, 0.0f));
         */
         
-        if (gid >= width * height) {
-            return;
-        }
-
-        int x = int(mod(gid, width));
+        // separable blur, the vertical pass sums three rows into the workgroup's column sums, the horizontal pass
+        // sums three of those. a workgroup is 1024 pixels of the image in scan order, plus one column on each side
+        uint pixels = width * height;
+        uint local = gl_LocalInvocationID.x;
+        int x = int(gid % width);
         int y = int(gid / width);
         ivec2 coord = ivec2(x, y);
 
-        vec4 sum = vec4(0.0f);
-        vec4 trailColor = imageLoad(TrailMap, coord);
-        for (int offsetX = -1; offsetX <= 1; offsetX++) {
-            for (int offsetY = -1; offsetY <= 1; offsetY++) {
-                uint sampleX = min(width - 1, max(0, x + offsetX));
-                uint sampleY = min(height - 1, max(0, y + offsetY));
-                sum += imageLoad(TrailMap, ivec2(sampleX, sampleY));
-            }
+        if (gid < pixels) {
+            columnSums[local + 1] = columnSum(x, y, int(height));
+        }
+        if (local == 0 && gid > 0 && gid - 1 < pixels) {
+            columnSums[0] = columnSum(int((gid - 1) % width), int((gid - 1) / width), int(height));
+        }
+        if (local == gl_WorkGroupSize.x - 1 && gid + 1 < pixels) {
+            columnSums[local + 2] = columnSum(int((gid + 1) % width), int((gid + 1) / width), int(height));
         }
+        barrier();
+
+        if (gid >= pixels) {
+            return;
+        }
+
+        // the neighbours across a row end belong to another row, the edge clamps to its own column
+        vec4 middle = columnSums[local + 1];
+        vec4 left = x > 0 ? columnSums[local] : middle;
+        vec4 right = x < int(width) - 1 ? columnSums[local + 2] : middle;
+        vec4 sum = left + middle + right;
+        vec4 trailColor = imageLoad(TrailMap, coord);
 
         float decayAmount = 1.0f - (params.decayAmount * Delta);
         vec4 blurredColor = sum / 9.0f;
         float diffuseAmount = params.diffuseAmount;
         blurredColor = trailColor * (1.0f - diffuseAmount) + blurredColor * (diffuseAmount);
-        //imageStore(TrailMapOut, coord, max(blurredColor - (params.decayAmount) * Delta, 0.0f));
         imageStore(TrailMapOut, coord,  blurredColor * decayAmount);
-        imageStore(AgentMapOut, coord, vec4(0.0f));
+        imageStore(AgentMapOut, coord, uvec4(0u));
         
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DirtyRangesTest {
+
+    private static int[] ranges(DirtyRanges dirtyRanges) {
+        int[] ranges = new int[dirtyRanges.size() * 2];
+        for (int i = 0; i < dirtyRanges.size(); i++) {
+            ranges[i * 2] = dirtyRanges.getStart(i);
+            ranges[i * 2 + 1] = dirtyRanges.getEnd(i);
+        }
+        return ranges;
+    }
+
+    @Test
+    void disjointRangesStaySorted() {
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(20, 25);
+        ranges.add(0, 3);
+        ranges.add(10, 12);
+        assertArrayEquals(new int[] { 0, 3, 10, 12, 20, 25 }, ranges(ranges));
+    }
+
+    @Test
+    void overlappingAndAdjacentRangesMerge() {
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(0, 5);
+        ranges.add(3, 8);
+        ranges.add(8, 10);
+        ranges.add(20, 30);
+        ranges.add(25, 26);
+        assertArrayEquals(new int[] { 0, 10, 20, 30 }, ranges(ranges));
+
+        // spans everything in between
+        ranges.add(40, 50);
+        ranges.add(9, 41);
+        assertArrayEquals(new int[] { 0, 50 }, ranges(ranges));
+    }
+
+    @Test
+    void gapsBelowMergeGapMerge() {
+        DirtyRanges ranges = new DirtyRanges(4);
+        ranges.add(0, 1);
+        ranges.add(5, 6);
+        ranges.add(11, 12);
+        assertArrayEquals(new int[] { 0, 6, 11, 12 }, ranges(ranges));
+    }
+
+    @Test
+    void emptyRangesAreIgnoredAndClearResets() {
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(5, 5);
+        assertTrue(ranges.isEmpty());
+        ranges.add(1, 2);
+        ranges.clear();
+        assertTrue(ranges.isEmpty());
+    }
+
+    // against a dirty flag per float
+    @Test
+    void matchesBitmap() {
+        Random random = new Random(3);
+        for (int gap : new int[] { 0, 3 }) {
+            for (int round = 0; round < 200; round++) {
+                DirtyRanges ranges = new DirtyRanges(gap);
+                boolean[] dirty = new boolean[256];
+                for (int i = 0; i < 1 + random.nextInt(40); i++) {
+                    int start = random.nextInt(250);
+                    int end = start + 1 + random.nextInt(6);
+                    ranges.add(start, end);
+                    for (int j = start; j < end; j++) {
+                        dirty[j] = true;
+                    }
+                }
+
+                boolean[] covered = new boolean[256];
+                for (int i = 0; i < ranges.size(); i++) {
+                    assertTrue(ranges.getStart(i) < ranges.getEnd(i));
+                    if (i > 0) {
+                        // merged ranges are further apart than the gap
+                        assertTrue(ranges.getStart(i) - ranges.getEnd(i - 1) > gap);
+                    }
+                    for (int j = ranges.getStart(i); j < ranges.getEnd(i); j++) {
+                        covered[j] = true;
+                    }
+                    // every range starts and ends on a dirty float
+                    assertTrue(dirty[ranges.getStart(i)] && dirty[ranges.getEnd(i) - 1]);
+                }
+                for (int j = 0; j < dirty.length; j++) {
+                    if (dirty[j]) {
+                        assertTrue(covered[j]);
+                    }
+                    if (gap == 0) {
+                        assertTrue(covered[j] == dirty[j]);
+                    }
+                }
+            }
+        }
+    }
+
+}
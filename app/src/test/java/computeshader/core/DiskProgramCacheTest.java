@@ -0,0 +1,144 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import computeshader.core.ProgramCache.Binary;
+
+class DiskProgramCacheTest {
+    // header bytes in front of every entry
+    private static final int HEADER_SIZE = 24;
+
+    @TempDir
+    Path directory;
+
+    private static Binary binary(int format, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31 + format);
+        }
+        return new Binary(format, data);
+    }
+
+    @Test
+    void storedBinariesLoad() throws IOException {
+        DiskProgramCache cache = new DiskProgramCache(directory, 1 << 20);
+        assertNull(cache.load("missing"));
+
+        Binary binary = binary(7, 1000);
+        cache.store("program", binary);
+        Binary loaded = cache.load("program");
+        assertEquals(7, loaded.format());
+        assertArrayEquals(binary.data(), loaded.data());
+
+        // and from a new instance, like the next launch
+        loaded = new DiskProgramCache(directory, 1 << 20).load("program");
+        assertArrayEquals(binary.data(), loaded.data());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        int entrySize = HEADER_SIZE + 100;
+        DiskProgramCache cache = new DiskProgramCache(directory, 3 * entrySize);
+        cache.store("a", binary(1, 100));
+        cache.store("b", binary(2, 100));
+        cache.store("c", binary(3, 100));
+        assertEquals(3 * entrySize, cache.getTotalBytes());
+
+        // a is now the most recently used, so b goes first
+        assertNotNull(cache.load("a"));
+        cache.store("d", binary(4, 100));
+        assertNull(cache.load("b"));
+        assertFalse(Files.exists(directory.resolve("b.bin")));
+        assertNotNull(cache.load("a"));
+        assertNotNull(cache.load("c"));
+        assertNotNull(cache.load("d"));
+        assertEquals(3, cache.size());
+
+        // an entry larger than the cache pushes out everything else
+        cache.store("large", binary(5, 10 * entrySize));
+        assertEquals(1, cache.size());
+        assertNotNull(cache.load("large"));
+    }
+
+    @Test
+    void accessOrderSurvivesRestart() throws IOException {
+        int entrySize = HEADER_SIZE + 100;
+        DiskProgramCache cache = new DiskProgramCache(directory, 2 * entrySize);
+        cache.store("old", binary(1, 100));
+        cache.store("new", binary(2, 100));
+        Files.setLastModifiedTime(directory.resolve("old.bin"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(directory.resolve("new.bin"), FileTime.fromMillis(2000));
+
+        cache = new DiskProgramCache(directory, 2 * entrySize);
+        cache.store("newest", binary(3, 100));
+        assertNull(cache.load("old"));
+        assertNotNull(cache.load("new"));
+    }
+
+    @Test
+    void corruptEntriesAreDiscarded() throws IOException {
+        DiskProgramCache cache = new DiskProgramCache(directory, 1 << 20);
+        cache.store("flipped", binary(1, 100));
+        cache.store("truncated", binary(2, 100));
+        cache.store("garbage", binary(3, 100));
+
+        Path flipped = directory.resolve("flipped.bin");
+        byte[] bytes = Files.readAllBytes(flipped);
+        bytes[HEADER_SIZE + 50] ^= 1;
+        Files.write(flipped, bytes);
+
+        Path truncated = directory.resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(Files.readAllBytes(truncated), HEADER_SIZE + 10));
+
+        Files.writeString(directory.resolve("garbage.bin"), "not a program");
+
+        for (String key : new String[] { "flipped", "truncated", "garbage" }) {
+            assertNull(cache.load(key), key);
+            assertFalse(Files.exists(directory.resolve(key + ".bin")), key);
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getTotalBytes());
+
+        // a file deleted behind the cache's back is a miss
+        cache.store("deleted", binary(4, 100));
+        Files.delete(directory.resolve("deleted.bin"));
+        assertNull(cache.load("deleted"));
+    }
+
+    @Test
+    void rejectedEntriesCanBeRemoved() throws IOException {
+        DiskProgramCache cache = new DiskProgramCache(directory, 1 << 20);
+        cache.store("program", binary(1, 100));
+        cache.remove("program");
+        assertNull(cache.load("program"));
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    void keysChangeWithSourceAndDriver() {
+        String key = ProgramCache.key("vendor renderer 4.6", "void main() {}");
+        assertEquals(key, ProgramCache.key("vendor renderer 4.6", "void main() {}"));
+        assertEquals(64, key.length());
+        assertNotEquals(key, ProgramCache.key("vendor renderer 4.6", "void main() { }"));
+        assertNotEquals(key, ProgramCache.key("vendor renderer 4.7", "void main() {}"));
+        // part boundaries count
+        assertNotEquals(ProgramCache.key("ab", "c"), ProgramCache.key("a", "bc"));
+        assertTrue(key.matches("[0-9a-f]+"));
+    }
+
+}
@@ -0,0 +1,79 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+class FixedTimestepTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void accumulatesWallClockIntoTicks() {
+        FixedTimestep timestep = new FixedTimestep(0.010, 4, 0.016);
+        assertEquals(0, timestep.advance(5 * MS));
+        assertEquals(0.5, timestep.getAlpha(), 1e-9);
+
+        // 5 + 16 ms, two ticks and a millisecond carried over
+        assertEquals(2, timestep.advance(16 * MS));
+        timestep.tick();
+        timestep.tick();
+        timestep.endFrame();
+        assertEquals(2, timestep.getTicks());
+        assertEquals(0, timestep.getDroppedTicks());
+        assertEquals(0.1, timestep.getAlpha(), 1e-9);
+        assertEquals(0.020, timestep.getSimulationTime(), 1e-12);
+    }
+
+    @Test
+    void dropsTicksUnderOverload() {
+        FixedTimestep timestep = new FixedTimestep(0.010, 4, 0.016);
+        // a 105 ms stall, only the substeps run
+        assertEquals(4, timestep.advance(105 * MS));
+        for (int i = 0; i < 4; i++) {
+            timestep.tick();
+        }
+        timestep.endFrame();
+        assertEquals(6, timestep.getDroppedTicks());
+        assertEquals(0.5, timestep.getAlpha(), 1e-9);
+
+        // the next frame starts from the remainder, not from the backlog
+        assertEquals(1, timestep.advance(5 * MS));
+        assertTrue(timestep.withinBudget(15 * MS));
+        assertFalse(timestep.withinBudget(16 * MS));
+    }
+
+    @Test
+    void rejectsEmptyTicks() {
+        assertThrows(IllegalArgumentException.class, () -> new FixedTimestep(0.0, 1, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> new FixedTimestep(0.1, 0, 0.1));
+    }
+
+    @Test
+    void headlessRunsTicksBackToBack() {
+        ShaderApp app = new ShaderApp(new ShaderAppConfiguration("Test", 0, 0, 8, 8), new JavaBackend(1));
+        FixedTimestep timestep = FixedTimestep.ofRate(60, 2);
+        app.fixedTimestep(timestep);
+        int[] runs = new int[2];
+        float[] times = new float[1];
+        app.step("tick", () -> {
+            runs[0]++;
+            times[0] = app.getSimulationTime();
+            assertEquals(1.0f / 60.0f, app.getTickSeconds());
+        }).writesBuffer("State");
+        app.step("render", () -> runs[1]++).readsBuffer("State").perFrame();
+
+        // more ticks per frame than the substeps, there is no clock or budget to drop them
+        app.runHeadless(3, 5);
+        assertEquals(15, runs[0]);
+        assertEquals(3, runs[1]);
+        assertEquals(15, timestep.getTicks());
+        assertEquals(0, timestep.getDroppedTicks());
+        assertEquals(14.0f / 60.0f, times[0], 1e-6f);
+    }
+
+}
@@ -0,0 +1,161 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import computeshader.core.FrameExporter.Format;
+import computeshader.core.FrameExporter.Policy;
+
+class FrameExporterTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    @TempDir
+    Path directory;
+
+    // frame n has red n / 10 everywhere and a white bottom left pixel at half alpha
+    private static float[] frame(int n) {
+        float[] pixels = new float[WIDTH * HEIGHT * CpuImage.CHANNELS];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            pixels[i * 4 + 0] = n / 10.0f;
+            pixels[i * 4 + 3] = 1.0f;
+        }
+        pixels[0] = 1.0f;
+        pixels[1] = 1.0f;
+        pixels[2] = 1.0f;
+        pixels[3] = 0.5f;
+        return pixels;
+    }
+
+    @Test
+    void writesPngSequence() throws IOException {
+        Path target = directory.resolve("frames");
+        FrameExporter exporter = new FrameExporter(target, Format.PNG, WIDTH, HEIGHT, 2, 2, Policy.BLOCK);
+        for (int n = 0; n < 10; n++) {
+            assertTrue(exporter.offer(frame(n)));
+        }
+        exporter.close();
+
+        assertEquals(10, exporter.getWritten());
+        assertEquals(0, exporter.getDropped());
+        for (int n = 0; n < 10; n++) {
+            BufferedImage png = ImageIO.read(target.resolve(String.format("frame_%06d.png", n)).toFile());
+            assertEquals(Math.round(n / 10.0f * 255.0f), (png.getRGB(3, 1) >> 16) & 0xFF);
+            // composited over black like the window, and flipped so row 0 is the bottom
+            assertEquals(0x808080, png.getRGB(0, HEIGHT - 1) & 0xFFFFFF);
+        }
+    }
+
+    @Test
+    void writesY4mStreamInOrder() throws IOException {
+        Path target = directory.resolve("frames.y4m");
+        FrameExporter exporter = new FrameExporter(target, Format.Y4M, WIDTH, HEIGHT, 3, 3, Policy.BLOCK);
+        for (int n = 0; n < 10; n++) {
+            exporter.offer(frame(n));
+        }
+        exporter.close();
+
+        byte[] bytes = Files.readAllBytes(target);
+        String header = "YUV4MPEG2 W8 H4 F60:1 Ip A1:1 C444\n";
+        assertEquals(header, new String(bytes, 0, header.length(), StandardCharsets.US_ASCII));
+
+        int frameSize = "FRAME\n".length() + 3 * WIDTH * HEIGHT;
+        assertEquals(header.length() + 10 * frameSize, bytes.length);
+        for (int n = 0; n < 10; n++) {
+            int luma = header.length() + n * frameSize + "FRAME\n".length();
+            // top left pixel, pure red at n / 10
+            assertEquals((int) (16.0f + 65.481f * (n / 10.0f) + 0.5f), bytes[luma] & 0xFF);
+        }
+    }
+
+    // accepts the header and `frames` frames, then fails every write
+    private static WritableByteChannel failingChannel(int frames) {
+        return new WritableByteChannel() {
+            private int writes;
+
+            @Override
+            public int write(ByteBuffer source) throws IOException {
+                if (writes++ > frames) {
+                    throw new IOException("disk full");
+                }
+                int length = source.remaining();
+                source.position(source.limit());
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    void y4mWriteFailureFailsTheRestOfTheStream() throws IOException {
+        FrameExporter exporter = new FrameExporter(failingChannel(3), WIDTH, HEIGHT, 2, 2, Policy.BLOCK);
+        for (int n = 0; n < 10; n++) {
+            exporter.offer(frame(n));
+        }
+        exporter.close();
+
+        // every buffer came back, nothing is left waiting for the failed frame
+        assertEquals(10, exporter.getSubmitted());
+        assertEquals(3, exporter.getWritten());
+        assertEquals(7, exporter.getFailed());
+        assertNotNull(exporter.acquire());
+        assertNotNull(exporter.acquire());
+    }
+
+    @Test
+    void dropPolicyNeverWaits() throws IOException {
+        FrameExporter exporter = new FrameExporter(directory, Format.PNG, WIDTH, HEIGHT, 2, 1, Policy.DROP);
+        assertNotNull(exporter.acquire());
+        assertNotNull(exporter.acquire());
+
+        // both buffers are held by the frame loop, so the next frame is dropped immediately
+        assertNull(exporter.acquire());
+        assertFalse(exporter.offer(frame(0)));
+        assertEquals(2, exporter.getDropped());
+        exporter.close();
+    }
+
+    @Test
+    void shaderAppExportsEveryNthFrame() throws IOException {
+        JavaBackend backend = new JavaBackend();
+        ShaderApp app = new ShaderApp(new ShaderApp.ShaderAppConfiguration("Test", 0, 0, WIDTH, HEIGHT), backend);
+        app.preRun(() -> app.createTexture("Display"));
+        app.processSteps(List.of(() -> {
+        }));
+        app.display("Display");
+
+        Path target = directory.resolve("app");
+        FrameExporter exporter = new FrameExporter(target, Format.PNG, WIDTH, HEIGHT, 2, 1, Policy.BLOCK);
+        app.exportFrames(exporter, 3);
+        app.runHeadless(7);
+
+        assertEquals(3, exporter.getWritten());
+        assertTrue(exporter.getMaxLatencyMillis() >= exporter.getMeanLatencyMillis());
+    }
+
+}
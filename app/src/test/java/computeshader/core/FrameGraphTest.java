@@ -0,0 +1,156 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import static computeshader.core.FrameGraph.IMAGE_ACCESS;
+import static computeshader.core.FrameGraph.STORAGE_BUFFER;
+import static computeshader.core.FrameGraph.TEXTURE_FETCH;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.gravity.GravityMain;
+import computeshader.raytracer.RayTracer;
+import computeshader.slime.SlimeMain;
+
+class FrameGraphTest {
+
+    private static final Runnable NOTHING = () -> {
+    };
+
+    private static List<String> names(FrameGraph.Plan plan) {
+        List<String> names = new ArrayList<>();
+        for (FrameGraph.Step step : plan.steps()) {
+            names.add(step.getName());
+        }
+        return names;
+    }
+
+    @Test
+    void independentStepsShareABarrier() {
+        FrameGraph graph = new FrameGraph();
+        graph.step("a", NOTHING).writesImage("X");
+        graph.step("b", NOTHING).readsImage("X");
+        graph.step("c", NOTHING).writesImage("Z");
+        graph.step("d", NOTHING).readsImage("Z");
+
+        FrameGraph.Plan plan = graph.compile(null);
+        assertEquals(List.of("a", "c", "b", "d"), names(plan));
+        assertEquals(0, plan.barrierBefore("a"));
+        assertEquals(0, plan.barrierBefore("c"));
+        assertEquals(IMAGE_ACCESS, plan.barrierBefore("b"));
+        assertEquals(0, plan.barrierBefore("d"));
+        assertEquals(0, plan.endBarriers());
+        assertEquals(1, plan.barrierCount());
+
+        assertTrue(plan.independent("a", "c"));
+        assertTrue(plan.independent("b", "d"));
+        assertFalse(plan.independent("a", "b"));
+        assertFalse(plan.independent("c", "d"));
+    }
+
+    @Test
+    void dependenciesAreTransitive() {
+        FrameGraph graph = new FrameGraph();
+        graph.step("a", NOTHING).writesBuffer("X");
+        graph.step("b", NOTHING).readsBuffer("X").writesBuffer("Y");
+        graph.step("c", NOTHING).readsBuffer("Y");
+
+        FrameGraph.Plan plan = graph.compile(null);
+        assertFalse(plan.independent("a", "c"));
+        assertEquals(STORAGE_BUFFER, plan.barrierBefore("b"));
+        assertEquals(STORAGE_BUFFER, plan.barrierBefore("c"));
+        assertEquals(2, plan.levels()[plan.indexOf("c")]);
+    }
+
+    @Test
+    void writeAfterReadOnlyOrders() {
+        FrameGraph graph = new FrameGraph();
+        graph.step("read", NOTHING).readsImage("X");
+        graph.step("write", NOTHING).writesImage("X");
+
+        FrameGraph.Plan plan = graph.compile(null);
+        assertEquals(List.of("read", "write"), names(plan));
+        assertEquals(0, plan.barrierBefore("write"));
+        // the write is only read in the next frame
+        assertEquals(IMAGE_ACCESS, plan.barrierBefore("read"));
+    }
+
+    @Test
+    void imagePairNamesAreOneResource() {
+        FrameGraph graph = new FrameGraph();
+        graph.step("write", NOTHING).writesImage("MapOut");
+        graph.step("read", NOTHING).readsImage("Map");
+        assertTrue(graph.compile(null).independent("write", "read"));
+
+        graph.alias("MapOut", "Map");
+        FrameGraph.Plan plan = graph.compile("Map");
+        assertFalse(plan.independent("write", "read"));
+        assertEquals(IMAGE_ACCESS, plan.barrierBefore("read"));
+        assertEquals(TEXTURE_FETCH, plan.endBarriers());
+    }
+
+    @Test
+    void slimePlan() {
+        // the image pairs are created in preRun
+        SlimeMain slime = new SlimeMain(new JavaBackend(1), 64, 64, 1024);
+        slime.runHeadless(1);
+
+        FrameGraph.Plan plan = slime.getFramePlan();
+        assertEquals(List.of("move agents", "diffuse"), names(plan));
+        // the trail and agent maps from last frame's diffuse, the agents from last frame's move
+        assertEquals(IMAGE_ACCESS | STORAGE_BUFFER, plan.barrierBefore("move agents"));
+        assertEquals(IMAGE_ACCESS, plan.barrierBefore("diffuse"));
+        assertEquals(TEXTURE_FETCH, plan.endBarriers());
+        assertFalse(plan.independent("move agents", "diffuse"));
+    }
+
+    @Test
+    void gravityPlan() {
+        FrameGraph.TickedPlan plan = new GravityMain(new JavaBackend(1), 64, 64, 1024).getTickedPlan();
+        assertEquals(List.of("forces", "integrate"), names(plan.tick()));
+        assertEquals(List.of("field"), names(plan.frame()));
+        // forces reads the positions the previous tick's integrate wrote, and integrate reads the velocities forces
+        // just wrote, so both need a storage buffer barrier
+        assertEquals(STORAGE_BUFFER, plan.tick().barrierBefore("forces"));
+        assertEquals(STORAGE_BUFFER, plan.tick().barrierBefore("integrate"));
+        assertEquals(0, plan.tick().endBarriers());
+        // the display written by last frame's field
+        assertEquals(STORAGE_BUFFER | IMAGE_ACCESS, plan.frame().barrierBefore("field"));
+        assertEquals(TEXTURE_FETCH, plan.frame().endBarriers());
+    }
+
+    @Test
+    void tickedPlanHoldsForAnyNumberOfTicks() {
+        FrameGraph graph = new FrameGraph();
+        graph.step("simulate", NOTHING).readsImage("State").writesImage("State");
+        graph.step("render", NOTHING).readsImage("State").writesImage("Display").perFrame();
+
+        FrameGraph.TickedPlan plan = graph.compileTicked("Display");
+        // after another tick, or after last frame's render when a frame runs no ticks
+        assertEquals(IMAGE_ACCESS, plan.tick().barrierBefore("simulate"));
+        assertEquals(IMAGE_ACCESS, plan.frame().barrierBefore("render"));
+        assertEquals(TEXTURE_FETCH, plan.frame().endBarriers());
+
+        // without perFrame steps the display still gets its barrier after the ticks
+        FrameGraph ticksOnly = new FrameGraph();
+        ticksOnly.step("simulate", NOTHING).readsImage("State").writesImage("State");
+        FrameGraph.TickedPlan ticksOnlyPlan = ticksOnly.compileTicked("State");
+        assertEquals(0, ticksOnlyPlan.frame().size());
+        assertEquals(TEXTURE_FETCH, ticksOnlyPlan.frame().endBarriers());
+    }
+
+    @Test
+    void rayTracePlan() {
+        FrameGraph.Plan plan = new RayTracer(new JavaBackend(1), 64, 1).getFramePlan();
+        assertEquals(List.of("trace"), names(plan));
+        assertEquals(IMAGE_ACCESS, plan.barrierBefore("trace"));
+        assertEquals(TEXTURE_FETCH, plan.endBarriers());
+        assertEquals(2, plan.barrierCount());
+    }
+
+}
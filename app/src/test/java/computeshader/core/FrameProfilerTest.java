@@ -0,0 +1,141 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+class FrameProfilerTest {
+    private static final long RUN_NANOS = 1_000_000;
+
+    // a GPU on which every run of a section takes RUN_NANOS, results are ready at the next frame
+    private static class FakeGpuTimer implements FrameProfiler.GpuTimer {
+        private final int[] runs = new int[FrameProfiler.MAX_SECTIONS];
+
+        @Override
+        public void begin(int section) {
+        }
+
+        @Override
+        public void end(int section) {
+            runs[section]++;
+        }
+
+        @Override
+        public void collect(FrameProfiler profiler) {
+            for (int section = 0; section < runs.length; section++) {
+                if (runs[section] > 0) {
+                    profiler.recordGpu(section, runs[section] * RUN_NANOS);
+                    runs[section] = 0;
+                }
+            }
+        }
+    }
+
+    @Test
+    void histogramPercentilesAreClose() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000L, histogram.getMax());
+        assertEquals(500_500.0, histogram.getMean());
+        assertEquals(500_000.0, histogram.percentile(0.5), 500_000.0 / 32);
+        assertEquals(990_000.0, histogram.percentile(0.99), 990_000.0 / 32);
+        assertEquals(1_000_000L, histogram.percentile(1.0));
+    }
+
+    @Test
+    void bucketsCoverEveryValue() {
+        long[] values = { 0, 1, 31, 32, 33, 63, 64, 1000, 123_456_789L, Long.MAX_VALUE };
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= value, "value " + value);
+            if (value < Long.MAX_VALUE) {
+                assertTrue(LatencyHistogram.bucket(value + 1) >= bucket);
+            }
+        }
+    }
+
+    @Test
+    void recordingDoesNotAllocate() {
+        FrameProfiler profiler = new FrameProfiler();
+        int section = profiler.section("step");
+        for (int i = 0; i < 10_000; i++) {
+            profiler.begin(section);
+            profiler.end(section);
+        }
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            profiler.beginFrame();
+            profiler.begin(section);
+            profiler.end(section);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // slack for the measurement itself, an allocation per iteration would be several megabytes
+        assertTrue(allocated < 64 * 1024, "allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void shaderAppTimesNamedSteps() {
+        ShaderApp app = new ShaderApp(new ShaderApp.ShaderAppConfiguration("Test", 0, 0, 4, 4), new JavaBackend());
+        app.preRun(() -> {
+            app.createTexture("A");
+            app.createTexture("B");
+        });
+        app.processSteps(List.of("first", "second"), List.of(() -> {
+        }, () -> {
+            app.copyTexture("A", "B");
+        }));
+        app.display("B");
+        app.runHeadless(5);
+
+        FrameProfiler profiler = app.getProfiler();
+        String json = profiler.toJson();
+        assertEquals(5, profiler.getCpu(profiler.section("first")).getCount());
+        assertEquals(5, profiler.getCpu(profiler.section("copy A -> B")).getCount());
+        assertEquals(5, profiler.getCpu(profiler.section("frame")).getCount());
+        assertEquals(0, profiler.getGpu(profiler.section("frame")).getCount());
+        assertTrue(json.contains("\"name\": \"second\""));
+        assertTrue(json.contains("\"p99\""));
+    }
+
+    @Test
+    void tickStepsRecordTheirFrameTotal() {
+        FakeGpuTimer timer = new FakeGpuTimer();
+        JavaBackend backend = new JavaBackend(1) {
+            @Override
+            public FrameProfiler.GpuTimer createGpuTimer(int maxSections) {
+                return timer;
+            }
+        };
+        ShaderApp app = new ShaderApp(new ShaderApp.ShaderAppConfiguration("Test", 0, 0, 4, 4), backend);
+        app.fixedTimestep(FixedTimestep.ofRate(60, 4));
+        app.step("tick", () -> {
+        }).writesBuffer("State");
+        app.step("render", () -> {
+        }).readsBuffer("State").perFrame();
+        app.runHeadless(5, 4);
+
+        // one sample per frame on both sides, the GPU one covers all four ticks. the last frame is collected by the
+        // frame after it
+        FrameProfiler profiler = app.getProfiler();
+        int tick = profiler.section("tick");
+        assertEquals(5, profiler.getCpu(tick).getCount());
+        assertEquals(4, profiler.getGpu(tick).getCount());
+        assertEquals(4 * RUN_NANOS, profiler.getGpu(tick).getMax());
+        assertEquals(RUN_NANOS, profiler.getGpu(profiler.section("render")).getMax());
+        assertEquals(5, profiler.getCpu(profiler.section("ticks")).getCount());
+    }
+
+}
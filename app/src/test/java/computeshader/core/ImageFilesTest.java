@@ -0,0 +1,70 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImageFilesTest {
+    private static final int WIDTH = 3;
+    private static final int HEIGHT = 2;
+
+    @TempDir
+    Path directory;
+
+    // RGBA with a distinct red ramp per pixel, row 0 at the bottom
+    private static float[] image() {
+        float[] data = new float[WIDTH * HEIGHT * 4];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            data[i * 4 + 0] = i / 5.0f;
+            data[i * 4 + 1] = 0.5f;
+            data[i * 4 + 2] = 2.0f;
+            data[i * 4 + 3] = 1.0f;
+        }
+        return data;
+    }
+
+    @Test
+    void pngIsFlippedAndClamped() throws IOException {
+        Path path = directory.resolve("image.png");
+        ImageFiles.write(path, WIDTH, HEIGHT, 4, image());
+
+        BufferedImage png = ImageIO.read(path.toFile());
+        assertEquals(WIDTH, png.getWidth());
+        assertEquals(HEIGHT, png.getHeight());
+        // bottom left pixel of the data is the first pixel of the last PNG row
+        assertEquals(0x0080FF, png.getRGB(0, HEIGHT - 1) & 0xFFFFFF);
+        assertEquals(0xFF80FF, png.getRGB(WIDTH - 1, 0) & 0xFFFFFF);
+    }
+
+    @Test
+    void pfmKeepsFloats() throws IOException {
+        Path path = directory.resolve("image.pfm");
+        float[] data = image();
+        ImageFiles.write(path, WIDTH, HEIGHT, 4, data);
+
+        byte[] bytes = Files.readAllBytes(path);
+        String header = "PF\n3 2\n-1.0\n";
+        assertEquals(header, new String(bytes, 0, header.length(), StandardCharsets.US_ASCII));
+        assertEquals(header.length() + WIDTH * HEIGHT * 3 * Float.BYTES, bytes.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, header.length(), bytes.length - header.length())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertEquals(data[i * 4 + 0], buffer.getFloat());
+            assertEquals(data[i * 4 + 1], buffer.getFloat());
+            assertEquals(data[i * 4 + 2], buffer.getFloat());
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+class ImagePairTest {
+    private static final int SIZE = 32;
+
+    // Map = MapIn + 1 for every pixel
+    private static class IncrementKernel implements ComputeKernel {
+        private CpuImage in;
+        private CpuImage out;
+
+        @Override
+        public int[] workGroupSize() {
+            return new int[] { SIZE, SIZE, 1 };
+        }
+
+        @Override
+        public void prepare(JavaBackend backend) {
+            in = backend.getImage("Map");
+            out = backend.getImage("MapOut");
+        }
+
+        @Override
+        public void invoke(int x, int y, int z) {
+            for (int channel = 0; channel < CpuImage.CHANNELS; channel++) {
+                out.set(x, y, channel, in.get(x, y, channel) + 1.0f);
+            }
+        }
+    }
+
+    @Test
+    void swapTradesTexturesBetweenNames() {
+        JavaBackend backend = new JavaBackend(1);
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, SIZE, SIZE));
+        ImagePair pair = new ImagePair("Map", "MapOut");
+        pair.create(backend);
+        CpuImage map = backend.getImage("Map");
+        CpuImage mapOut = backend.getImage("MapOut");
+
+        pair.swap(backend);
+        assertSame(mapOut, backend.getImage("Map"));
+        assertSame(map, backend.getImage("MapOut"));
+        assertEquals("MapOut", pair.texture("Map"));
+        assertEquals("Map", pair.texture("MapOut"));
+
+        pair.swap(backend);
+        assertSame(map, backend.getImage("Map"));
+        assertEquals("Map", pair.texture("Map"));
+        assertEquals(2, pair.getSwaps());
+        assertThrows(IllegalArgumentException.class, () -> pair.texture("Other"));
+        backend.dispose();
+    }
+
+    @Test
+    void stepsReadWhatThePreviousStepWrote() {
+        JavaBackend backend = new JavaBackend(1);
+        ShaderApp app = new ShaderApp(new ShaderAppConfiguration("Test", 0, 0, SIZE, SIZE), backend);
+        app.registerKernel("/increment.glsl", new IncrementKernel());
+
+        // the texture each step reads and writes, recorded as the names they were created with
+        List<String> plan = new ArrayList<>();
+        Runnable step = () -> {
+            ImagePair pair = app.getImagePair("Map");
+            plan.add(pair.texture("Map") + " -> " + pair.texture("MapOut"));
+            app.usingProgram("Increment", () -> app.runComputeShader(1));
+            app.swapImages("Map");
+        };
+        app.preRun(() -> {
+            app.createImagePair("Map", "MapOut");
+            app.createComputeShader("Increment", "/increment.glsl");
+        });
+        app.processSteps(List.of("first", "second", "third"), List.of(step, step, step));
+        app.display("Map");
+        app.runHeadless(2);
+
+        assertEquals(List.of("Map -> MapOut", "MapOut -> Map", "Map -> MapOut", "MapOut -> Map", "Map -> MapOut",
+                "MapOut -> Map"), plan);
+        // six increments with no copies in between
+        assertEquals(6.0f, backend.getImage("Map").get(SIZE - 1, SIZE - 1, 0));
+        assertEquals(5.0f, backend.getImage("MapOut").get(SIZE - 1, SIZE - 1, 0));
+        FrameProfiler profiler = app.getProfiler();
+        for (int i = 0; i < profiler.getNumSections(); i++) {
+            assertFalse(profiler.getName(i).startsWith("copy"), profiler.getName(i));
+        }
+    }
+
+}
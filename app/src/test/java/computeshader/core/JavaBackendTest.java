@@ -0,0 +1,151 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+import computeshader.gravity.GravityMain;
+import computeshader.raytracer.RayTracer;
+import computeshader.slime.SlimeMain;
+
+class JavaBackendTest {
+    private static final int FRAMES = 3;
+
+    @Test
+    void dispatchRunsEveryInvocationOnce() {
+        AtomicIntegerArray counts = new AtomicIntegerArray(64 * 6 * 2);
+        JavaBackend backend = new JavaBackend(4);
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, 1, 1));
+        backend.registerKernel("/test.glsl", new ComputeKernel() {
+            @Override
+            public int[] workGroupSize() {
+                return new int[] { 8, 2, 1 };
+            }
+
+            @Override
+            public void invoke(int x, int y, int z) {
+                counts.incrementAndGet((z * 6 + y) * 64 + x);
+            }
+        });
+
+        backend.createComputeShader("Test", "/test.glsl");
+        backend.useProgram("Test");
+        backend.runComputeShader(8, 3, 2);
+        backend.dispose();
+
+        for (int i = 0; i < counts.length(); i++) {
+            assertEquals(1, counts.get(i));
+        }
+    }
+
+    @Test
+    void programsAndUniformsHaveHandles() {
+        JavaBackend backend = new JavaBackend(1);
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, 1, 1));
+        int[][] seen = new int[2][];
+        for (int i = 0; i < 2; i++) {
+            int program = i;
+            backend.registerKernel("/test" + i + ".glsl", new ComputeKernel() {
+                @Override
+                public int[] workGroupSize() {
+                    return new int[] { program + 1, 1, 1 };
+                }
+
+                @Override
+                public void prepare(JavaBackend backend) {
+                    seen[program] = new int[] { backend.getUIntUniform("Stage"),
+                            (int) backend.getFloatUniform("Time") };
+                }
+
+                @Override
+                public void invoke(int x, int y, int z) {
+                }
+            });
+            backend.createComputeShader("Test" + i, "/test" + i + ".glsl");
+        }
+
+        int first = backend.getProgram("Test0");
+        int second = backend.getProgram("Test1");
+        assertEquals(-1, backend.getProgram("Missing"));
+        assertEquals(1, backend.getWorkGroupSize("Test0")[0]);
+        assertEquals(2, backend.getWorkGroupSize("Test1")[0]);
+
+        int stage = backend.getUniform("Test0", "Stage");
+        int time = backend.getUniform("Test0", "Time");
+        backend.useProgram(first);
+        backend.setUIntUniform(stage, 3);
+        backend.setFloatUniform(time, 7.0f);
+        backend.runComputeShader(1, 1, 1);
+        backend.useProgram(second);
+        backend.setUIntUniform("Stage", 4);
+        backend.runComputeShader(1, 1, 1);
+        backend.useProgram(-1);
+        backend.dispose();
+
+        assertArrayEquals(new int[] { 3, 7 }, seen[0]);
+        assertArrayEquals(new int[] { 4, 7 }, seen[1]);
+    }
+
+    @Test
+    void uniformHandlesDontAllocate() {
+        ShaderApp app = new ShaderApp(new ShaderAppConfiguration("Test", 0, 0, 1, 1), new JavaBackend(1));
+        int uint = app.getUniform("Test", "Stage");
+        int matrix = app.getUniform("Test", "InvView");
+        Matrix4f value = new Matrix4f();
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            app.setUIntUniform(uint, i);
+            app.setMatrix4fUniform(matrix, value);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // the name based setters box every value, several megabytes over this loop
+        assertTrue(allocated < 64 * 1024, allocated + " bytes allocated");
+    }
+
+    @Test
+    void slimeRunsHeadless() {
+        JavaBackend backend = new JavaBackend();
+        new SlimeMain(backend, 128, 64, 2048).runHeadless(FRAMES);
+
+        assertTrue(sum(backend.getImage("TrailMap")) > 0.0f);
+    }
+
+    @Test
+    void gravityRunsHeadless() {
+        JavaBackend backend = new JavaBackend();
+        new GravityMain(backend, 128, 64, 128).runHeadless(FRAMES);
+
+        assertTrue(sum(backend.getImage("Display")) > 0.0f);
+    }
+
+    @Test
+    void rayTracerRunsHeadless() {
+        JavaBackend backend = new JavaBackend();
+        new RayTracer(backend, 64).runHeadless(FRAMES);
+
+        assertTrue(sum(backend.getImage("Image")) > 0.0f);
+        // one sample per frame, accumulated since the first frame
+        assertEquals(FRAMES, backend.getImage("Accumulation").get(0, 0, 3));
+    }
+
+    private static float sum(CpuImage image) {
+        float sum = 0.0f;
+        for (float value : image.toArray()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,107 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+import computeshader.raytracer.RayTracer;
+
+class ParameterBlockTest {
+
+    private static class CountingBackend extends JavaBackend {
+        private int uploads;
+        private final Set<String> parameterBuffers = new HashSet<>();
+
+        @Override
+        public void createParameterBuffer(String programName, String name, float[] data) {
+            parameterBuffers.add(name);
+            super.createParameterBuffer(programName, name, data);
+        }
+
+        @Override
+        public void updateStorageBuffer(String name, float[] data, DirtyRanges ranges) {
+            uploads++;
+            super.updateStorageBuffer(name, data, ranges);
+        }
+    }
+
+    private static CountingBackend backend() {
+        CountingBackend backend = new CountingBackend();
+        backend.initialize(new ShaderAppConfiguration("test", 64, 64, 64, 64));
+        return backend;
+    }
+
+    @Test
+    void fieldsFollowTheDeclaration() {
+        ParameterBlock block = new ParameterBlock("MaterialParameters", 10, "albedo[3]", "roughness", "metallic",
+                "refraction");
+        assertEquals(6, block.getStride());
+        assertEquals(10, block.getCount());
+        assertEquals(0, block.field("albedo"));
+        assertEquals(3, block.field("roughness"));
+        assertEquals(5, block.field("refraction"));
+        assertThrows(IllegalArgumentException.class, () -> block.field("missing"));
+        assertThrows(IllegalArgumentException.class, () -> new ParameterBlock("Sphere", new float[7], "position[3]",
+                "radius", "materialIndex"));
+    }
+
+    @Test
+    void manyWritesAreOneUpload() {
+        CountingBackend backend = backend();
+        ParameterBlock block = new ParameterBlock("SphereParameters", 1000, "position[3]", "radius",
+                "materialIndex");
+        backend.createParameterBuffer("program", block.getName(), block.data());
+
+        int position = block.field("position");
+        for (int i = 0; i < 1000; i += 7) {
+            block.set(i, position, new float[] { i, i + 1, i + 2 });
+        }
+        block.set(3, block.field("radius"), 0.5f);
+
+        assertTrue(block.flush(backend));
+        assertEquals(1, backend.uploads);
+        assertArrayEquals(block.data(), backend.getStorageBuffer("SphereParameters"));
+
+        // nothing changed since
+        assertFalse(block.flush(backend));
+        assertEquals(1, backend.uploads);
+    }
+
+    @Test
+    void wrappedDataIsUploadedAfterMarkDirty() {
+        CountingBackend backend = backend();
+        float[] data = new float[] { 1.0f, 2.0f, 3.0f, 4.0f, 5.0f, 6.0f };
+        ParameterBlock block = new ParameterBlock("ShaderParameters", data, "width", "height");
+        backend.createParameterBuffer("program", block.getName(), block.data());
+
+        data[4] = 50.0f;
+        data[5] = 60.0f;
+        block.markDirty(2, 0, 2);
+        block.set("height", 20.0f);
+        // close enough to be merged into one range
+        assertEquals(1, block.getDirtyRanges().size());
+        block.flush(backend);
+
+        assertArrayEquals(new float[] { 1.0f, 20.0f, 3.0f, 4.0f, 50.0f, 60.0f },
+                backend.getStorageBuffer("ShaderParameters"));
+        assertEquals(1, backend.uploads);
+    }
+
+    @Test
+    void onlyMappedBlocksBecomeParameterBuffers() {
+        CountingBackend backend = new CountingBackend();
+        new RayTracer(backend, 64, 1).runHeadless(1);
+
+        // the nodes and spheres are uploaded in order with the frames, never written under a running trace
+        assertEquals(Set.of("MaterialParameters"), backend.parameterBuffers);
+    }
+
+}
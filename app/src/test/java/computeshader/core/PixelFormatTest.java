@@ -0,0 +1,141 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+import computeshader.gravity.GravityMain;
+import computeshader.raytracer.RayTracer;
+import computeshader.slime.SlimeMain;
+
+class PixelFormatTest {
+
+    @Test
+    void halfConversionRoundsToNearestEven() {
+        assertEquals(0x3c00, PixelFormat.toHalf(1.0f));
+        assertEquals((short) 0xc000, PixelFormat.toHalf(-2.0f));
+        assertEquals(0x7bff, PixelFormat.toHalf(65504.0f));
+        assertEquals(0x7c00, PixelFormat.toHalf(65520.0f));
+        assertEquals(0x0001, PixelFormat.toHalf(0x1p-24f));
+        assertEquals(0x0000, PixelFormat.toHalf(0x1p-26f));
+        // halfway between 1 and the next half, and between the next two
+        assertEquals(0x3c00, PixelFormat.toHalf(1.0f + 0x1p-11f));
+        assertEquals(0x3c02, PixelFormat.toHalf(1.0f + 3 * 0x1p-11f));
+        assertEquals(0x3c01, PixelFormat.toHalf(1.0f + 0x1p-11f + 0x1p-20f));
+        assertTrue(Float.isNaN(PixelFormat.fromHalf(PixelFormat.toHalf(Float.NaN))));
+    }
+
+    @Test
+    void everyHalfSurvivesARoundTrip() {
+        for (int bits = 0; bits < 0x10000; bits++) {
+            float value = PixelFormat.fromHalf((short) bits);
+            if (!Float.isNaN(value)) {
+                assertEquals((short) bits, PixelFormat.toHalf(value), "half " + Integer.toHexString(bits));
+            }
+        }
+    }
+
+    @Test
+    void imagesConvertLikeGl() {
+        CpuImage rgba8 = new CpuImage(2, 2, PixelFormat.RGBA8);
+        rgba8.store(1, 1, 0.5f, -1.0f, 2.0f, 1.0f);
+        assertEquals(128 / 255.0f, rgba8.get(1, 1, 0));
+        assertEquals(0.0f, rgba8.get(1, 1, 1));
+        assertEquals(1.0f, rgba8.get(1, 1, 2));
+        assertEquals(16, rgba8.byteSize());
+
+        CpuImage counts = new CpuImage(2, 2, PixelFormat.R32UI);
+        counts.set(0, 1, 0, 3.0f);
+        counts.set(0, 1, 1, 5.0f);
+        assertEquals(3.0f, counts.get(0, 1, 0));
+        // missing channels read as (0, 0, 1)
+        assertEquals(0.0f, counts.get(0, 1, 1));
+        assertEquals(1.0f, counts.get(0, 1, 3));
+
+        CpuImage trail = new CpuImage(2, 2, PixelFormat.RGBA16F);
+        trail.store(0, 0, 0.1f, 0.25f, 1.0f, 0.0f);
+        assertEquals(PixelFormat.fromHalf(PixelFormat.toHalf(0.1f)), trail.get(0, 0, 0));
+        assertEquals(0.25f, trail.get(0, 0, 1));
+        assertEquals(32, trail.byteSize());
+
+        CpuImage copy = new CpuImage(2, 2, PixelFormat.RGBA16F);
+        copy.copyFrom(trail);
+        assertEquals(trail.get(0, 0, 0), copy.get(0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> copy.copyFrom(rgba8));
+    }
+
+    @Test
+    void mismatchedDeclarationsAreReported() {
+        String source = """
+                layout (local_size_x = 64, local_size_y = 1, local_size_z = 1) in;
+                layout (binding = 0, r32ui) uniform uimage2D Counts;
+                layout (binding = 1, rgba16f) restrict uniform image2D Trail;
+                layout (std430) restrict buffer Data {
+                    float values[];
+                };
+                """;
+        Map<String, PixelFormat> formats = new HashMap<>();
+        formats.put("Counts", PixelFormat.R32UI);
+        formats.put("Trail", PixelFormat.RGBA16F);
+        assertEquals(List.of(), PixelFormat.checkDeclarations(source, formats));
+
+        formats.put("Trail", PixelFormat.RGBA32F);
+        formats.put("Counts", PixelFormat.R16F);
+        assertEquals(2, PixelFormat.checkDeclarations(source, formats).size());
+    }
+
+    private static String resource(String path) throws IOException {
+        try (InputStream input = PixelFormatTest.class.getResourceAsStream(path)) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void assertDeclarationsMatch(String shader, JavaBackend backend, String... images)
+            throws IOException {
+        Map<String, PixelFormat> formats = new HashMap<>();
+        for (String image : images) {
+            formats.put(image, backend.getImage(image).format());
+        }
+        assertEquals(List.of(), PixelFormat.checkDeclarations(resource(shader), formats));
+        assertEquals(images.length, PixelFormat.imageDeclarations(resource(shader)).size());
+    }
+
+    @Test
+    void shadersDeclareTheFormatsTheirTexturesUse() throws IOException {
+        JavaBackend slime = new JavaBackend(1);
+        new SlimeMain(slime, 64, 64, 1024).runHeadless(1);
+        assertDeclarationsMatch("/slime.glsl", slime, "AgentMap", "AgentMapOut", "TrailMap", "TrailMapOut");
+        // a quarter and half of RGBA32F
+        assertEquals(64 * 64 * 4, slime.getImage("AgentMap").byteSize());
+        assertEquals(64 * 64 * 8, slime.getImage("TrailMap").byteSize());
+
+        JavaBackend gravity = new JavaBackend(1);
+        new GravityMain(gravity, 64, 64, 64).runHeadless(1);
+        assertDeclarationsMatch("/gravity.glsl", gravity, "Display");
+
+        JavaBackend rayTracer = new JavaBackend(1);
+        new RayTracer(rayTracer, 64, 1).runHeadless(1);
+        assertDeclarationsMatch("/raytrace.glsl", rayTracer, "Image", "Accumulation");
+    }
+
+    @Test
+    void pairsKeepOneFormat() {
+        JavaBackend backend = new JavaBackend(1);
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, 4, 4));
+        backend.createTexture("A", PixelFormat.R16F);
+        backend.createTexture("B", PixelFormat.RGBA8);
+        assertThrows(IllegalArgumentException.class, () -> backend.swapTextures("A", "B"));
+        backend.dispose();
+    }
+
+}
@@ -0,0 +1,163 @@
+package computeshader.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import computeshader.slime.SlimeMain;
+
+class SnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private static Snapshot.Entry bytes(String name, int length, int seed) {
+        return new Snapshot.Entry(name, Snapshot.Kind.BUFFER, null, 0, 0, length, data -> {
+            for (int i = 0; i < length; i++) {
+                data.put(i, (byte) (i * 31 + seed));
+            }
+        });
+    }
+
+    @Test
+    void sectionsRoundTripAligned() throws IOException {
+        Path file = directory.resolve("state.snapshot");
+        Snapshot.Entry image = new Snapshot.Entry("Image", Snapshot.Kind.IMAGE, PixelFormat.RGBA16F, 3, 5, 3 * 5 * 8,
+                data -> data.asShortBuffer().put(0, new short[3 * 5 * 4]));
+        long size = Snapshot.write(file, List.of(bytes("a", 5000, 1), image, bytes("b", 1, 2)));
+        assertEquals(size, Files.size(file));
+
+        try (Snapshot snapshot = Snapshot.open(file)) {
+            assertEquals(3, snapshot.getSections().size());
+            for (Snapshot.Section section : snapshot.getSections()) {
+                assertEquals(0, section.offset() % Snapshot.ALIGNMENT);
+            }
+            assertNull(snapshot.getSection("missing"));
+
+            Snapshot.Section imageSection = snapshot.getSection("Image");
+            assertEquals(PixelFormat.RGBA16F, imageSection.format());
+            assertEquals(3, imageSection.width());
+            assertEquals(5, imageSection.height());
+
+            ByteBuffer a = snapshot.map(snapshot.getSection("a"));
+            assertEquals(5000, a.remaining());
+            for (int i = 0; i < 5000; i++) {
+                assertEquals((byte) (i * 31 + 1), a.get(i));
+            }
+            assertEquals((byte) 2, snapshot.map(snapshot.getSection("b")).get(0));
+        }
+    }
+
+    @Test
+    void corruptionIsDetected() throws IOException {
+        Path file = directory.resolve("state.snapshot");
+        Snapshot.write(file, List.of(bytes("a", 100, 1)));
+        long offset;
+        try (Snapshot snapshot = Snapshot.open(file)) {
+            offset = snapshot.getSection("a").offset();
+        }
+
+        // a flipped byte in the section fails its checksum when it is mapped
+        flip(file, offset + 10);
+        try (Snapshot snapshot = Snapshot.open(file)) {
+            assertThrows(IOException.class, () -> snapshot.map(snapshot.getSection("a")));
+        }
+
+        // one in the table fails the header
+        flip(file, 40);
+        assertThrows(IOException.class, () -> Snapshot.open(file));
+
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> Snapshot.open(file));
+    }
+
+    private static void flip(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) ~b.get(0)).clear();
+            channel.write(b, position);
+        }
+    }
+
+    @Test
+    void slimeWarmStartsFromItsSnapshot() throws IOException {
+        Path file = directory.resolve("slime.snapshot");
+        JavaBackend saved = new JavaBackend(1);
+        SlimeMain slime = new SlimeMain(saved, 64, 32, 1024);
+        slime.setSnapshotFile(file);
+        // saved when the run ends
+        slime.runHeadless(3);
+        assertTrue(Files.exists(file));
+
+        // loaded after preRun replaced everything with a fresh start, no frames so nothing moves
+        JavaBackend loaded = new JavaBackend(1);
+        SlimeMain warm = new SlimeMain(loaded, 64, 32, 1024);
+        warm.setSnapshotFile(file);
+        warm.runHeadless(0);
+
+        for (String image : List.of("AgentMap", "AgentMapOut", "TrailMap", "TrailMapOut")) {
+            assertEquals(saved.getImage(image).format(), loaded.getImage(image).format());
+            assertArrayEquals(saved.getImage(image).toArray(), loaded.getImage(image).toArray(), image);
+        }
+        assertArrayEquals(saved.getStorageBuffer("AgentData"), loaded.getStorageBuffer("AgentData"));
+        assertArrayEquals(saved.getStorageBuffer("ShaderParameters"), loaded.getStorageBuffer("ShaderParameters"));
+    }
+
+    @Test
+    void corruptSectionLoadsNothing() throws IOException {
+        Path file = directory.resolve("slime.snapshot");
+        JavaBackend saved = new JavaBackend(1);
+        SlimeMain slime = new SlimeMain(saved, 64, 32, 1024);
+        slime.setSnapshotFile(file);
+        slime.runHeadless(3);
+
+        // the images come first, a bad last section must not leave them loaded over the fresh start
+        try (Snapshot snapshot = Snapshot.open(file)) {
+            List<Snapshot.Section> sections = snapshot.getSections();
+            assertEquals(Snapshot.Kind.PARAMETERS, sections.get(sections.size() - 1).kind());
+            flip(file, sections.get(sections.size() - 1).offset());
+        }
+
+        JavaBackend loaded = new JavaBackend(1);
+        SlimeMain fresh = new SlimeMain(loaded, 64, 32, 1024);
+        fresh.setSnapshotFile(file);
+        fresh.runHeadless(0);
+
+        assertFalse(Arrays.equals(saved.getImage("TrailMap").toArray(), loaded.getImage("TrailMap").toArray()));
+        assertFalse(Arrays.equals(saved.getStorageBuffer("AgentData"), loaded.getStorageBuffer("AgentData")));
+    }
+
+    @Test
+    void mismatchedSnapshotIsRejected() throws IOException {
+        Path file = directory.resolve("slime.snapshot");
+        SlimeMain slime = new SlimeMain(new JavaBackend(1), 64, 32, 1024);
+        slime.setSnapshotFile(file);
+        slime.runHeadless(1);
+
+        // another trail map size, the run starts fresh and replaces the snapshot
+        JavaBackend other = new JavaBackend(1);
+        SlimeMain larger = new SlimeMain(other, 128, 32, 1024);
+        larger.setSnapshotFile(file);
+        larger.runHeadless(0);
+        try (Snapshot snapshot = Snapshot.open(file)) {
+            assertEquals(128, snapshot.getSection("TrailMap").width());
+        }
+    }
+
+}
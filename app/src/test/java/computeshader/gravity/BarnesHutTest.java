@@ -0,0 +1,90 @@
+package computeshader.gravity;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.JavaBackend;
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+class BarnesHutTest {
+    private static final int NUM_OBJECTS = 4096;
+
+    // stage 0 of the shader port, with velocities zeroed so dx and dy hold the force
+    private static float[] directSum(float[] objects) {
+        JavaBackend backend = new JavaBackend();
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, 64, 1));
+        backend.registerKernel("/gravity.glsl", new GravityKernel());
+        backend.createTexture("Display");
+        backend.createComputeShader("GravityShader", "/gravity.glsl");
+        backend.createStorageBuffer("GravityShader", "ObjectData", objects);
+        backend.useProgram("GravityShader");
+        backend.setUIntUniform("Stage", 0);
+        backend.runComputeShader(objects.length / 5 / 64, 1, 1);
+        backend.dispose();
+        return backend.getStorageBuffer("ObjectData");
+    }
+
+    private static float[] barnesHut(float[] objects, float theta) {
+        float[] result = objects.clone();
+        new BarnesHut(theta, 0.0f, ForkJoinPool.commonPool()).computeForces(result);
+        return result;
+    }
+
+    private static float[] objects() {
+        float[] objects = ObjectUtil.createObjects(NUM_OBJECTS, 1920, 1080);
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            objects[i * 5 + 2] = 0.0f;
+            objects[i * 5 + 3] = 0.0f;
+        }
+        return objects;
+    }
+
+    // mean and max of |F_bh - F_direct| / |F_direct| over all free objects
+    private static double[] relativeErrors(float[] expected, float[] actual) {
+        double sum = 0.0;
+        double max = 0.0;
+        for (int i = 1; i < NUM_OBJECTS; i++) {
+            double ex = expected[i * 5 + 2];
+            double ey = expected[i * 5 + 3];
+            double dx = actual[i * 5 + 2] - ex;
+            double dy = actual[i * 5 + 3] - ey;
+            double error = Math.sqrt(dx * dx + dy * dy) / Math.sqrt(ex * ex + ey * ey);
+            sum += error;
+            max = Math.max(max, error);
+        }
+        return new double[] { sum / (NUM_OBJECTS - 1), max };
+    }
+
+    @Test
+    void zeroThetaMatchesDirectSum() {
+        float[] objects = objects();
+        double[] errors = relativeErrors(directSum(objects), barnesHut(objects, 0.0f));
+
+        assertTrue(errors[0] < 1e-5, "mean relative error " + errors[0]);
+        assertTrue(errors[1] < 1e-3, "max relative error " + errors[1]);
+    }
+
+    @Test
+    void openingAngleKeepsForcesAccurate() {
+        float[] objects = objects();
+        float[] expected = directSum(objects);
+
+        double[] fineErrors = relativeErrors(expected, barnesHut(objects, 0.3f));
+        assertTrue(fineErrors[0] < 0.01, "mean relative error " + fineErrors[0]);
+
+        double[] errors = relativeErrors(expected, barnesHut(objects, 0.5f));
+        assertTrue(errors[0] < 0.03, "mean relative error " + errors[0]);
+        assertTrue(errors[0] >= fineErrors[0]);
+    }
+
+    @Test
+    void objectZeroStaysPinned() {
+        float[] objects = barnesHut(objects(), 0.5f);
+
+        assertTrue(objects[2] == 0.0f && objects[3] == 0.0f);
+    }
+
+}
@@ -0,0 +1,111 @@
+package computeshader.gravity;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.JavaBackend;
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+class DirectSumTest {
+    // the shader port has no bounds check, it needs whole work groups
+    private static final int NUM_OBJECTS = 65 * 64;
+    // not a multiple of any vector length or of the tile size
+    private static final int ODD_NUM_OBJECTS = 4099;
+
+    // stage 0 of the shader port, with velocities zeroed so dx and dy hold the force
+    private static float[] shaderPort(float[] objects) {
+        JavaBackend backend = new JavaBackend();
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, 64, 1));
+        backend.registerKernel("/gravity.glsl", new GravityKernel());
+        backend.createTexture("Display");
+        backend.createComputeShader("GravityShader", "/gravity.glsl");
+        backend.createStorageBuffer("GravityShader", "ObjectData", objects);
+        backend.useProgram("GravityShader");
+        backend.setUIntUniform("Stage", 0);
+        backend.runComputeShader(objects.length / 5 / 64, 1, 1);
+        backend.dispose();
+        return backend.getStorageBuffer("ObjectData");
+    }
+
+    private static float[] directSum(float[] objects, float softening, boolean simd) {
+        float[] result = objects.clone();
+        new DirectSum(softening, simd, ForkJoinPool.commonPool()).computeForces(result);
+        return result;
+    }
+
+    // the layout of ObjectUtil.createObjects from a fixed seed. summing in another order moves a force whose pulls
+    // almost cancel by more than the tolerance, random bodies now and then have one
+    private static float[] objects(int numObjects) {
+        Random random = new Random(1);
+        float[] objects = new float[numObjects * 5];
+        objects[0] = 1920 / 2.0f;
+        objects[1] = 1080 / 2.0f;
+        objects[4] = 1000.0f;
+        for (int i = 1; i < numObjects; i++) {
+            objects[i * 5 + 0] = random.nextFloat() * 1920;
+            objects[i * 5 + 1] = random.nextFloat() * 1080;
+            objects[i * 5 + 4] = random.nextFloat() * 100.0f;
+        }
+        return objects;
+    }
+
+    // max of |F - F_expected| / |F_expected| over all free objects
+    private static double maxRelativeError(float[] expected, float[] actual) {
+        double max = 0.0;
+        for (int i = 1; i < expected.length / 5; i++) {
+            double ex = expected[i * 5 + 2];
+            double ey = expected[i * 5 + 3];
+            double dx = actual[i * 5 + 2] - ex;
+            double dy = actual[i * 5 + 3] - ey;
+            max = Math.max(max, Math.sqrt(dx * dx + dy * dy) / Math.sqrt(ex * ex + ey * ey));
+        }
+        return max;
+    }
+
+    @Test
+    void vectorApiIsAvailable() {
+        // the build adds jdk.incubator.vector to the test JVM, without it the SIMD tests would compare scalar to scalar
+        assertTrue(DirectSum.isVectorAvailable());
+        assertTrue(new DirectSum(1.0f, true).isSimd());
+    }
+
+    @Test
+    void withoutSofteningMatchesShaderPort() {
+        float[] objects = objects(NUM_OBJECTS);
+        float[] expected = shaderPort(objects);
+
+        double scalarError = maxRelativeError(expected, directSum(objects, 0.0f, false));
+        assertTrue(scalarError < 1e-3, "scalar max relative error " + scalarError);
+        double simdError = maxRelativeError(expected, directSum(objects, 0.0f, true));
+        assertTrue(simdError < 1e-3, "simd max relative error " + simdError);
+    }
+
+    @Test
+    void simdMatchesScalar() {
+        float[] objects = objects(ODD_NUM_OBJECTS);
+        double error = maxRelativeError(directSum(objects, 1.0f, false), directSum(objects, 1.0f, true));
+        assertTrue(error < 1e-4, "max relative error " + error);
+    }
+
+    @Test
+    void softeningKeepsCoincidentBodiesFinite() {
+        float[] objects = objects(ODD_NUM_OBJECTS);
+        // two free bodies on the same spot
+        objects[2 * 5 + 0] = objects[1 * 5 + 0];
+        objects[2 * 5 + 1] = objects[1 * 5 + 1];
+
+        for (boolean simd : new boolean[] { false, true }) {
+            float[] result = directSum(objects, 1.0f, simd);
+            for (int i = 0; i < ODD_NUM_OBJECTS; i++) {
+                assertTrue(Float.isFinite(result[i * 5 + 2]) && Float.isFinite(result[i * 5 + 3]), "object " + i);
+            }
+            // object 0 is pinned
+            assertTrue(result[2] == 0.0f && result[3] == 0.0f);
+        }
+    }
+
+}
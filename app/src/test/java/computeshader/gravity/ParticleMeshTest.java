@@ -0,0 +1,156 @@
+package computeshader.gravity;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.CpuImage;
+import computeshader.core.JavaBackend;
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+class ParticleMeshTest {
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 128;
+    private static final int NUM_OBJECTS = 64;
+
+    private static float[] objects() {
+        Random random = new Random(7);
+        float[] objects = new float[NUM_OBJECTS * 5];
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            objects[i * 5 + 0] = random.nextFloat() * WIDTH;
+            objects[i * 5 + 1] = random.nextFloat() * HEIGHT;
+            objects[i * 5 + 4] = random.nextFloat() * 100.0f;
+        }
+        return objects;
+    }
+
+    // stage 2 of gravity.glsl before the sigmoid
+    private static double exactField(float[] objects, int x, int y) {
+        double total = 0.0;
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            double dx = x - objects[i * 5 + 0];
+            double dy = y - objects[i * 5 + 1];
+            total += objects[i * 5 + 4] / (dx * dx + dy * dy);
+        }
+        return total;
+    }
+
+    private static double nearestDistance(float[] objects, int x, int y) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            nearest = Math.min(nearest, Math.hypot(x - objects[i * 5 + 0], y - objects[i * 5 + 1]));
+        }
+        return nearest;
+    }
+
+    @Test
+    void fftMatchesDiscreteFourierTransform() {
+        int n = 16;
+        Random random = new Random(1);
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = random.nextDouble();
+            im[i] = random.nextDouble();
+        }
+        double[] originalRe = re.clone();
+        double[] originalIm = im.clone();
+
+        FFT fft = new FFT(n);
+        fft.transform(re, im, 0, false);
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0.0;
+            double sumIm = 0.0;
+            for (int t = 0; t < n; t++) {
+                double angle = -2.0 * Math.PI * k * t / n;
+                sumRe += originalRe[t] * Math.cos(angle) - originalIm[t] * Math.sin(angle);
+                sumIm += originalRe[t] * Math.sin(angle) + originalIm[t] * Math.cos(angle);
+            }
+            assertEquals(sumRe, re[k], 1e-9);
+            assertEquals(sumIm, im[k], 1e-9);
+        }
+
+        fft.transform(re, im, 0, true);
+        assertArrayEquals(originalRe, re, 1e-12);
+        assertArrayEquals(originalIm, im, 1e-12);
+    }
+
+    @Test
+    void fftRequiresPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new FFT(12));
+    }
+
+    @Test
+    void gridNeedsTwoCellsEachWay() {
+        assertThrows(IllegalArgumentException.class, () -> new ParticleMesh(1920, 1080, 64, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ParticleMesh(1920, 1080, 1, 64));
+    }
+
+    @Test
+    void gridHeightIsPowerOfTwoAboveAspect() {
+        assertEquals(64, GravityMain.gridHeightFor(64));
+        assertEquals(128, GravityMain.gridHeightFor(128));
+        assertEquals(256, GravityMain.gridHeightFor(256));
+        assertEquals(2, GravityMain.gridHeightFor(2));
+    }
+
+    @Test
+    void fieldMatchesExactSumAwayFromObjects() {
+        float[] objects = objects();
+        ParticleMesh particleMesh = new ParticleMesh(WIDTH, HEIGHT, 64, 32, ForkJoinPool.commonPool());
+        particleMesh.computeField(objects);
+
+        // a few cells away from every object the mesh field only differs by the deposit and sampling error
+        double sum = 0.0;
+        double max = 0.0;
+        int samples = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (nearestDistance(objects, x, y) < 16.0) {
+                    continue;
+                }
+
+                double expected = exactField(objects, x, y);
+                double error = Math.abs(particleMesh.sample(x, y) - expected) / expected;
+                sum += error;
+                max = Math.max(max, error);
+                samples++;
+            }
+        }
+
+        assertTrue(samples > 1000);
+        assertTrue(sum / samples < 0.03, "mean relative error " + sum / samples);
+        assertTrue(max < 0.25, "max relative error " + max);
+    }
+
+    @Test
+    void kernelDrawsMeshField() {
+        float[] objects = objects();
+        ParticleMesh particleMesh = new ParticleMesh(WIDTH, HEIGHT, 64, 32, ForkJoinPool.commonPool());
+
+        JavaBackend backend = new JavaBackend();
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, WIDTH, HEIGHT));
+        backend.registerKernel("/gravity.glsl", new GravityKernel(null, particleMesh));
+        backend.createTexture("Display");
+        backend.createComputeShader("GravityShader", "/gravity.glsl");
+        backend.createStorageBuffer("GravityShader", "ObjectData", objects);
+        backend.useProgram("GravityShader");
+        backend.setUIntUniform("Stage", 2);
+        backend.runComputeShader(WIDTH / 64, HEIGHT, 1);
+        backend.dispose();
+
+        CpuImage display = backend.getImage("Display");
+        for (int y = 0; y < HEIGHT; y += 9) {
+            for (int x = 0; x < WIDTH; x += 9) {
+                assertEquals(GravityKernel.sigmoid(particleMesh.sample(x, y)), display.get(x, y, 3));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package computeshader.raytracer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveRendererTest {
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 54;
+    private static final int UNIFORM_SAMPLES = 64;
+
+    // the default scene of OfflineRenderer
+    private static RenderJob job() {
+        return RenderJob.gridScene(5, 0, WIDTH, HEIGHT, UNIFORM_SAMPLES, 1);
+    }
+
+    private static double rmse(float[] expected, float[] actual) {
+        double sum = 0.0;
+        for (int i = 0; i < expected.length; i++) {
+            double difference = actual[i] - expected[i];
+            sum += difference * difference;
+        }
+        return Math.sqrt(sum / expected.length);
+    }
+
+    @Test
+    void reachesTheUniformErrorWithFewerSamples() {
+        RenderJob job = job();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        float[] reference = new OfflineRenderer(job.newTracer(), pool).render(1024, 99).clone();
+        float[] uniform = new OfflineRenderer(job.newTracer(), pool).render(UNIFORM_SAMPLES, 1).clone();
+        double uniformError = rmse(reference, uniform);
+
+        AdaptiveRenderer adaptive = new AdaptiveRenderer(job.newTracer(), pool);
+        double adaptiveError = rmse(reference, adaptive.render(8, 512, 0.01, 1));
+        long uniformSamples = (long) UNIFORM_SAMPLES * WIDTH * HEIGHT;
+        pool.shutdown();
+
+        assertTrue(adaptiveError <= uniformError, adaptiveError + " against uniform " + uniformError);
+        assertTrue(adaptive.getTotalSamples() < uniformSamples * 0.8,
+                adaptive.getTotalSamples() + " samples against uniform " + uniformSamples);
+        assertTrue(adaptive.getMaxTileError() <= 0.01);
+    }
+
+    @Test
+    void onlyNoisyTilesGetMoreSamples() {
+        AdaptiveRenderer adaptive = new AdaptiveRenderer(job().newTracer(), new ForkJoinPool(1));
+        adaptive.render(8, 512, 0.01, 1);
+
+        int[] samples = adaptive.getTileSamples();
+        // the sky is done after the first pass, the ground isn't
+        assertEquals(8, Arrays.stream(samples).min().getAsInt());
+        assertTrue(Arrays.stream(samples).max().getAsInt() > 8);
+        assertTrue(adaptive.getPasses() > 1);
+    }
+
+    @Test
+    void imageDoesNotDependOnThreadCount() {
+        float[] single = new AdaptiveRenderer(job().newTracer(), new ForkJoinPool(1)).render(4, 64, 0.02, 3).clone();
+        float[] parallel = new AdaptiveRenderer(job().newTracer(), new ForkJoinPool(3)).render(4, 64, 0.02, 3);
+
+        assertTrue(Arrays.equals(single, parallel));
+    }
+
+    @Test
+    void samplesToAddAimAtTheThreshold() {
+        // 1.5 times the error needs 2.25 times the samples, 10% margin on top
+        assertEquals(40 - 16, AdaptiveRenderer.samplesToAdd(16, 0.015, 0.01, 512));
+        assertEquals(113 - 100, AdaptiveRenderer.samplesToAdd(100, 0.0101, 0.01, 512));
+        // at most four times the samples in one pass and never past the max
+        assertEquals(32 - 8, AdaptiveRenderer.samplesToAdd(8, 0.02, 0.01, 512));
+        assertEquals(512 - 256, AdaptiveRenderer.samplesToAdd(256, 0.1, 0.01, 512));
+    }
+
+}
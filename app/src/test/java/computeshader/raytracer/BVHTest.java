@@ -0,0 +1,88 @@
+package computeshader.raytracer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+class BVHTest {
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 27;
+
+    private static float[] render(PathTracer tracer) {
+        Vector3f position = new Vector3f(3.0f, 4.0f, 9.0f);
+        Matrix4f invProjection = new Matrix4f().setPerspective((float) Math.toRadians(45.0), 1.0f, 0.1f, 100.0f)
+                .invert();
+        Matrix4f invView = new Matrix4f().setLookAt(position, new Vector3f(), new Vector3f(0.0f, 1.0f, 0.0f))
+                .invert();
+        tracer.setCamera(position, invProjection, invView);
+
+        float[] image = new float[WIDTH * HEIGHT * 3];
+        PathTracer.Path path = tracer.newPath();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                path.render(x, y, 2, y * WIDTH + x);
+                image[(y * WIDTH + x) * 3 + 0] = path.r();
+                image[(y * WIDTH + x) * 3 + 1] = path.g();
+                image[(y * WIDTH + x) * 3 + 2] = path.b();
+            }
+        }
+        return image;
+    }
+
+    private static float[] linearImage(float[][] scene) {
+        return render(new PathTracer(scene[0], scene[1], WIDTH, HEIGHT));
+    }
+
+    private static float[] bvhImage(float[][] scene, BVH bvh) {
+        return render(new PathTracer(scene[0], bvh.getSpheres(), bvh.getNodes(), WIDTH, HEIGHT));
+    }
+
+    @Test
+    void traversalMatchesLinearSearch() {
+        for (int n : new int[] { 5, 20 }) {
+            float[][] scene = SceneUtil.createGridScene(n, n);
+            assertArrayEquals(linearImage(scene), bvhImage(scene, new BVH(scene[1])));
+        }
+    }
+
+    @Test
+    void everySphereIsInOneLeaf() {
+        float[][] scene = SceneUtil.createGridScene(20, 1);
+        BVH bvh = new BVH(scene[1]);
+        float[] nodes = bvh.getNodes();
+        int numSpheres = scene[1].length / PathTracer.SPHERE_SIZE_F;
+
+        int[] seen = new int[numSpheres];
+        for (int node = 0; node < bvh.getNumNodes(); node++) {
+            int n = node * BVH.NODE_SIZE_F;
+            int miss = (int) nodes[n + 6];
+            assertTrue(miss > node && miss <= bvh.getNumNodes());
+
+            int count = (int) nodes[n + 8];
+            for (int i = (int) nodes[n + 7]; i < nodes[n + 7] + count; i++) {
+                seen[i]++;
+            }
+        }
+        for (int i = 0; i < numSpheres; i++) {
+            assertEquals(1, seen[i]);
+            assertEquals(i, (int) bvh.getSpheres()[bvh.getSlot(i) * PathTracer.SPHERE_SIZE_F + 4]);
+        }
+    }
+
+    @Test
+    void movedSphereIsRefit() {
+        float[][] scene = SceneUtil.createGridScene(5, 2);
+        BVH bvh = new BVH(scene[1]);
+
+        float[] position = new float[] { 1.5f, 1.0f, 2.5f };
+        bvh.moveSphere(42, position);
+        System.arraycopy(position, 0, scene[1], 42 * PathTracer.SPHERE_SIZE_F, 3);
+
+        assertArrayEquals(linearImage(scene), bvhImage(scene, bvh));
+    }
+
+}
@@ -0,0 +1,68 @@
+package computeshader.raytracer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.JavaBackend;
+
+class OfflineRendererTest {
+    // not a multiple of the tile size so the edge tiles are partial
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 45;
+
+    private static OfflineRenderer renderer(int threads) {
+        float[][] scene = SceneUtil.createGridScene(3, 5);
+        BVH bvh = new BVH(scene[1]);
+        PathTracer tracer = new PathTracer(scene[0], bvh.getSpheres(), bvh.getNodes(), WIDTH, HEIGHT);
+        Camera camera = new Camera(WIDTH, HEIGHT);
+        tracer.setCamera(camera.getPosition(), camera.getInvProjection(), camera.getInvView());
+        return new OfflineRenderer(tracer, new ForkJoinPool(threads));
+    }
+
+    @Test
+    void imageDoesNotDependOnThreadCount() {
+        float[] single = renderer(1).render(2, 11).clone();
+        float[] parallel = renderer(3).render(2, 11).clone();
+
+        assertArrayEquals(single, parallel);
+    }
+
+    @Test
+    void everyPixelIsRendered() {
+        OfflineRenderer renderer = renderer(2);
+        float[] image = renderer.render(1, 0);
+
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            assertTrue(image[i * 3 + 0] + image[i * 3 + 1] + image[i * 3 + 2] > 0.0f, "pixel " + i);
+        }
+        assertTrue(renderer.getRays() >= WIDTH * HEIGHT);
+    }
+
+    @Test
+    void seedChangesTheImage() {
+        float[] first = renderer(1).render(1, 1).clone();
+        float[] second = renderer(1).render(1, 2).clone();
+
+        assertFalse(Arrays.equals(first, second));
+        assertEquals(first.length, second.length);
+    }
+
+    @Test
+    void interactiveSceneIsTheOfflineScene() {
+        JavaBackend backend = new JavaBackend(1);
+        new RayTracer(backend, 64, 2, 7).runHeadless(1);
+        RenderJob job = RenderJob.gridScene(2, 7, 64, 36, 1, 0);
+
+        assertArrayEquals(job.materials(), backend.getStorageBuffer("MaterialParameters"));
+        assertArrayEquals(job.spheres(), backend.getStorageBuffer("SphereParameters"));
+        assertArrayEquals(job.nodes(), backend.getStorageBuffer("BVHNodes"));
+    }
+
+}
@@ -0,0 +1,120 @@
+package computeshader.raytracer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.CpuImage;
+import computeshader.core.JavaBackend;
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+class RayTraceKernelTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 8;
+
+    private final float[][] scene = SceneUtil.createGridScene(2, 3);
+    private final Vector3f position = new Vector3f(0.0f, 2.0f, 6.0f);
+    private final Matrix4f invProjection = new Matrix4f()
+            .setPerspective((float) Math.toRadians(45.0), 1.0f, 0.1f, 100.0f).invert();
+    private final Matrix4f invView = new Matrix4f()
+            .setLookAt(position, new Vector3f(), new Vector3f(0.0f, 1.0f, 0.0f)).invert();
+
+    private JavaBackend createBackend() {
+        JavaBackend backend = new JavaBackend();
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, WIDTH, HEIGHT));
+        backend.registerKernel("/raytrace.glsl", new RayTraceKernel());
+        backend.createTexture("Image");
+        backend.createTexture("Accumulation");
+        backend.createComputeShader("RayShader", "/raytrace.glsl");
+        backend.createStorageBuffer("RayShader", "ShaderParameters", new float[] { WIDTH, HEIGHT });
+        backend.createStorageBuffer("RayShader", "MaterialParameters", scene[0]);
+        backend.createStorageBuffer("RayShader", "SphereParameters", scene[1]);
+        backend.useProgram("RayShader");
+        backend.setVector3fUniform("CameraPosition", position);
+        backend.setMatrix4fUniform("InvProjection", invProjection);
+        backend.setMatrix4fUniform("InvView", invView);
+        backend.setUIntUniform("Samples", 1);
+        return backend;
+    }
+
+    private static void runFrame(JavaBackend backend, int frame) {
+        backend.setUIntUniform("Frame", frame);
+        backend.runComputeShader(WIDTH / 64, HEIGHT, 1);
+    }
+
+    @Test
+    void framesAccumulateNewSamples() {
+        JavaBackend backend = createBackend();
+        int frames = 4;
+        for (int frame = 0; frame < frames; frame++) {
+            runFrame(backend, frame);
+        }
+
+        PathTracer tracer = new PathTracer(scene[0], scene[1], WIDTH, HEIGHT);
+        tracer.setCamera(position, invProjection, invView);
+        PathTracer.Path path = tracer.newPath();
+
+        CpuImage image = backend.getImage("Image");
+        CpuImage accumulation = backend.getImage("Accumulation");
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                float sum = 0.0f;
+                for (int frame = 0; frame < frames; frame++) {
+                    path.render(x, y, 1, PathTracer.pixelSeed(y * WIDTH + x, frame));
+                    sum += path.r();
+                }
+
+                assertEquals(frames, accumulation.get(x, y, 3));
+                assertEquals(sum, accumulation.get(x, y, 0), 1e-5f);
+                assertEquals((float) Math.sqrt(sum / frames), image.get(x, y, 0), 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    void frameZeroRestartsTheSum() {
+        JavaBackend backend = createBackend();
+        for (int frame = 0; frame < 3; frame++) {
+            runFrame(backend, frame);
+        }
+        runFrame(backend, 0);
+
+        JavaBackend single = createBackend();
+        runFrame(single, 0);
+
+        CpuImage accumulation = backend.getImage("Accumulation");
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(1.0f, accumulation.get(x, y, 3));
+                assertEquals(single.getImage("Image").get(x, y, 1), backend.getImage("Image").get(x, y, 1));
+            }
+        }
+    }
+
+    @Test
+    void pixelSeedsDoNotRepeatAcrossFrames() {
+        // more pixels than the old pixelIndex + frame * 719393 offset, where streams repeated one frame later
+        int pixels = 1600 * 900;
+        int frames = 4;
+        int[] seeds = new int[pixels * frames];
+        for (int frame = 0; frame < frames; frame++) {
+            for (int pixel = 0; pixel < pixels; pixel++) {
+                seeds[frame * pixels + pixel] = PathTracer.pixelSeed(pixel, frame);
+            }
+        }
+
+        Arrays.sort(seeds);
+        int repeats = 0;
+        for (int i = 1; i < seeds.length; i++) {
+            if (seeds[i] == seeds[i - 1]) {
+                repeats++;
+            }
+        }
+        assertEquals(0, repeats);
+    }
+
+}
@@ -0,0 +1,87 @@
+package computeshader.raytracer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TileCoordinatorTest {
+    // 5x3 tiles, the last column and row partial
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 84;
+
+    private static RenderJob job() {
+        return RenderJob.gridScene(3, 5, WIDTH, HEIGHT, 4, 11);
+    }
+
+    @Test
+    void jobSurvivesSerialization() throws IOException {
+        RenderJob job = job();
+        RenderJob copy = RenderJob.read(new DataInputStream(new ByteArrayInputStream(job.toBytes())));
+
+        assertEquals(job.width(), copy.width());
+        assertEquals(job.seed(), copy.seed());
+        assertArrayEquals(job.spheres(), copy.spheres());
+        assertArrayEquals(job.nodes(), copy.nodes());
+        assertArrayEquals(job.invView(), copy.invView());
+    }
+
+    @Test
+    void workerProcessesRenderTheSingleProcessImage() throws Exception {
+        RenderJob job = job();
+        float[] expected = new OfflineRenderer(job.newTracer(), new ForkJoinPool(2)).render(job.samples(), job.seed())
+                .clone();
+
+        List<Process> workers = new ArrayList<>();
+        try (TileCoordinator coordinator = new TileCoordinator(job, 0)) {
+            CompletableFuture<float[]> image = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return coordinator.render(TimeUnit.MINUTES.toMillis(2));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            // a worker that dies with tiles in flight, they have to go to the next ones
+            workers.add(TileCoordinator.startLocalWorker(coordinator.getPort(), "1", "--fail-after", "2"));
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+            while (coordinator.getDroppedWorkers() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, coordinator.getDroppedWorkers());
+
+            // a slow one and a normal one, the normal one backs up what the slow one holds at the end
+            workers.add(TileCoordinator.startLocalWorker(coordinator.getPort(), "1", "--delay", "300"));
+            workers.add(TileCoordinator.startLocalWorker(coordinator.getPort(), "2"));
+
+            assertArrayEquals(expected, image.get(2, TimeUnit.MINUTES));
+        } finally {
+            for (Process worker : workers) {
+                if (!worker.waitFor(10, TimeUnit.SECONDS)) {
+                    worker.destroyForcibly();
+                }
+            }
+        }
+        assertTrue(workers.get(0).exitValue() != 0);
+    }
+
+    @Test
+    void workerWithoutOptionValuePrintsUsage() {
+        // returns before connecting anywhere
+        assertDoesNotThrow(() -> TileWorker.main(new String[] { "localhost", "1", "--delay" }));
+        assertDoesNotThrow(() -> TileWorker.main(new String[] { "localhost", "1", "2", "--fail-after" }));
+        assertDoesNotThrow(() -> TileWorker.main(new String[] { "localhost" }));
+    }
+
+}
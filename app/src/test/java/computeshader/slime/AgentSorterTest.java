@@ -0,0 +1,166 @@
+package computeshader.slime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.JavaBackend;
+
+class AgentSorterTest {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    // several radix blocks, not a multiple of the block size
+    private static final int N = 100_003;
+
+    @Test
+    void mortonInterleavesCells() {
+        assertEquals(0, AgentSorter.morton(0, 0));
+        assertEquals(1, AgentSorter.morton(1, 0));
+        assertEquals(2, AgentSorter.morton(0, 1));
+        assertEquals(3, AgentSorter.morton(1, 1));
+        assertEquals(4, AgentSorter.morton(2, 0));
+        assertEquals(0x5555, AgentSorter.morton(0xff, 0));
+        assertEquals(0xaaaa, AgentSorter.morton(0, 0xff));
+    }
+
+    @Test
+    void keyBitsCoverTheTrailMap() {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // 480 cells across, 9 bits a side
+        assertEquals(18, new AgentSorter(WIDTH, HEIGHT, 4, pool).getKeyBits());
+        assertEquals(24, new AgentSorter(3840, 2160, 1, pool).getKeyBits());
+
+        AgentSorter sorter = new AgentSorter(WIDTH, HEIGHT, 4, pool);
+        assertEquals(AgentSorter.morton(479, 269), sorter.key(WIDTH - 0.5f, HEIGHT - 0.5f));
+    }
+
+    @Test
+    void orderIsAStableSortByKey() {
+        float[] agents = AgentUtil.nAgents(N, WIDTH, HEIGHT, Color.RED);
+        float[] x = new float[N];
+        float[] y = new float[N];
+        for (int i = 0; i < N; i++) {
+            x[i] = agents[i * 6];
+            y[i] = agents[i * 6 + 1];
+        }
+
+        for (int threads : new int[] { 1, 4 }) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                // one pixel cells, three radix passes
+                AgentSorter sorter = new AgentSorter(WIDTH, HEIGHT, 1, pool);
+                int[] expected = IntStream.range(0, N).boxed()
+                        .sorted(Comparator.comparingInt(i -> sorter.key(x[i], y[i]))).mapToInt(i -> i).toArray();
+
+                int[] order = sorter.order(x, y, N);
+                assertArrayEquals(expected, Arrays.copyOf(order, N));
+                int[] keys = sorter.getKeys();
+                for (int i = 1; i < N; i++) {
+                    assertTrue(keys[i - 1] <= keys[i]);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void sortKeepsInterleavedAgentsWhole() {
+        float[] agents = AgentUtil.nAgentsRandomColor(N, WIDTH, HEIGHT);
+        float[] sorted = agents.clone();
+        AgentSorter sorter = new AgentSorter(WIDTH, HEIGHT, 8, ForkJoinPool.commonPool());
+        sorter.sort(sorted, new float[sorted.length], 6, N);
+
+        assertEquals(agentSet(agents), agentSet(sorted));
+        for (int i = 1; i < N; i++) {
+            assertTrue(sorter.key(sorted[(i - 1) * 6], sorted[(i - 1) * 6 + 1]) <= sorter.key(sorted[i * 6],
+                    sorted[i * 6 + 1]));
+        }
+    }
+
+    private static List<String> agentSet(float[] agents) {
+        return IntStream.range(0, agents.length / 6)
+                .mapToObj(i -> Arrays.toString(Arrays.copyOfRange(agents, i * 6, i * 6 + 6))).sorted().toList();
+    }
+
+    @Test
+    void sortedSimulationKeepsItsAgents() {
+        int width = 320;
+        int height = 180;
+        float[] params = new float[] { width, height, 6.0f, 0.6f, 0.6f, 1.0f, 0.5f, 0.5f, 100.0f, 0.3f };
+        float[] agents = AgentUtil.nAgents(1 << 12, width, height, Color.CYAN);
+
+        SlimeSimulation simulation = new SlimeSimulation(width, height, agents, params);
+        simulation.setSortInterval(2, 4);
+        for (int step = 0; step < 5; step++) {
+            simulation.step(step * 0.01f, 0.01f);
+        }
+        assertTrue(simulation.getSortNanos() > 0);
+
+        AgentSorter sorter = new AgentSorter(width, height, 4, ForkJoinPool.commonPool());
+        simulation.sortAgents();
+        for (int i = 1; i < simulation.getNumAgents(); i++) {
+            assertTrue(sorter.key(simulation.getAgentX(i - 1), simulation.getAgentY(i - 1)) <= sorter
+                    .key(simulation.getAgentX(i), simulation.getAgentY(i)));
+        }
+    }
+
+    @Test
+    void slimeMainSortsAgentData() {
+        JavaBackend backend = new JavaBackend(1);
+        SlimeMain slime = new SlimeMain(backend, 64, 64, 1024);
+        slime.setSortInterval(1, 4);
+        slime.runHeadless(2);
+        // sorting the agents for the next frame doesn't wait for the trail
+        assertTrue(slime.getFramePlan().independent("sort agents", "diffuse"));
+
+        float[] agents = backend.getStorageBuffer("AgentData");
+        AgentSorter sorter = new AgentSorter(64, 64, 4, ForkJoinPool.commonPool());
+        for (int i = 1; i < 1024; i++) {
+            assertTrue(sorter.key(agents[(i - 1) * 6], agents[(i - 1) * 6 + 1]) <= sorter.key(agents[i * 6],
+                    agents[i * 6 + 1]));
+        }
+    }
+
+    @Test
+    void newCellSizeRebuildsTheSorter() {
+        int width = 320;
+        int height = 180;
+        float[] params = new float[] { width, height, 6.0f, 0.6f, 0.6f, 1.0f, 0.5f, 0.5f, 100.0f, 0.3f };
+        SlimeSimulation simulation = new SlimeSimulation(width, height,
+                AgentUtil.nAgents(1 << 12, width, height, Color.CYAN), params);
+        simulation.setSortInterval(2, 4);
+        simulation.setSortInterval(2, 16);
+        simulation.sortAgents();
+
+        AgentSorter sorter = new AgentSorter(width, height, 16, ForkJoinPool.commonPool());
+        for (int i = 1; i < simulation.getNumAgents(); i++) {
+            assertTrue(sorter.key(simulation.getAgentX(i - 1), simulation.getAgentY(i - 1)) <= sorter
+                    .key(simulation.getAgentX(i), simulation.getAgentY(i)));
+        }
+    }
+
+    @Test
+    void slimeMainSortsOnce() {
+        SlimeMain slime = new SlimeMain(new JavaBackend(1), 64, 64, 1024);
+        // 0 never sorts, so there is no step to divide by it
+        slime.setSortInterval(0, 4);
+        slime.runHeadless(2);
+        assertFalse(slime.getFramePlan().steps().stream().anyMatch(step -> step.getName().equals("sort agents")));
+
+        slime.setSortInterval(1, 4);
+        assertThrows(IllegalStateException.class, () -> slime.setSortInterval(2, 4));
+    }
+
+}
@@ -0,0 +1,104 @@
+package computeshader.slime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class AgentUtilTest {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    // not a multiple of the chunk size
+    private static final int N = 100_003;
+    private static final long SEED = 42;
+
+    @FunctionalInterface
+    private interface Generator {
+        void generate(FloatBuffer agents, int n, int width, int height, long seed, ForkJoinPool pool);
+    }
+
+    private static final Generator[] GENERATORS = new Generator[] {
+            AgentUtil::nAgentsSatGradient,
+            AgentUtil::nAgentsHueGradient,
+            AgentUtil::nAgentsRainbow,
+            (agents, n, width, height, seed, pool) -> AgentUtil.nAgents(agents, n, width, height, Color.ORANGE, seed,
+                    pool),
+            AgentUtil::nAgentsRandomColor,
+            AgentUtil::nAgentsGradient,
+            AgentUtil::nAgentsRandom4Colors
+    };
+
+    private static float[] generate(Generator generator, int threads, long seed) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            FloatBuffer agents = AgentUtil.allocate(N);
+            generator.generate(agents, N, WIDTH, HEIGHT, seed, pool);
+            float[] result = new float[N * 6];
+            agents.get(0, result);
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void outputIsIdenticalAcrossThreadCounts() {
+        for (Generator generator : GENERATORS) {
+            float[] expected = generate(generator, 1, SEED);
+            for (int threads : new int[] { 2, 3, 8 }) {
+                assertArrayEquals(expected, generate(generator, threads, SEED), threads + " threads");
+            }
+        }
+    }
+
+    @Test
+    void heapAndDirectBuffersMatch() {
+        for (Generator generator : GENERATORS) {
+            float[] heap = new float[N * 6];
+            generator.generate(FloatBuffer.wrap(heap), N, WIDTH, HEIGHT, SEED, ForkJoinPool.commonPool());
+            assertArrayEquals(generate(generator, 2, SEED), heap);
+        }
+    }
+
+    @Test
+    void seedsGiveDifferentAgents() {
+        for (Generator generator : GENERATORS) {
+            assertFalse(Arrays.equals(generate(generator, 1, SEED), generate(generator, 1, SEED + 1)));
+        }
+    }
+
+    @Test
+    void agentsAreInRange() {
+        for (Generator generator : GENERATORS) {
+            float[] agents = generate(generator, 2, SEED);
+            for (int i = 0; i < N; i++) {
+                float x = agents[i * 6 + 0];
+                float y = agents[i * 6 + 1];
+                assertTrue(x >= 0.0f && x <= WIDTH && y >= 0.0f && y <= HEIGHT, "agent " + i);
+                assertTrue(agents[i * 6 + 2] >= 0.0f && agents[i * 6 + 2] < 360.0f);
+                for (int c = 3; c < 6; c++) {
+                    assertTrue(agents[i * 6 + c] >= 0.0f && agents[i * 6 + c] <= 1.0f, "agent " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void hsbMatchesColor() {
+        float[] agents = generate(AgentUtil::nAgentsHueGradient, 1, SEED);
+        for (int i = 0; i < N; i += 997) {
+            Color color = Color.getHSBColor((float) i / N, 1.0f, 1.0f);
+            assertEquals(color.getRed() / 255.0f, agents[i * 6 + 3], 0.5f / 255.0f + 1e-6f);
+            assertEquals(color.getGreen() / 255.0f, agents[i * 6 + 4], 0.5f / 255.0f + 1e-6f);
+            assertEquals(color.getBlue() / 255.0f, agents[i * 6 + 5], 0.5f / 255.0f + 1e-6f);
+        }
+    }
+
+}
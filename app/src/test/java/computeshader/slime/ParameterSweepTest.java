@@ -0,0 +1,135 @@
+package computeshader.slime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import computeshader.slime.ParameterSweep.Metrics;
+import computeshader.slime.ParameterSweep.Result;
+import computeshader.slime.ParameterSweep.Run;
+
+class ParameterSweepTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void gridIsEveryCombination() {
+        Map<String, float[]> axes = new LinkedHashMap<>();
+        axes.put("sensingDistance", new float[] { 10.0f, 20.0f });
+        axes.put("decayAmount", new float[] { 0.1f, 0.2f, 0.3f });
+        List<Run> runs = ParameterSweep.grid(axes, 100);
+
+        assertEquals(6, runs.size());
+        int distance = ParameterSweep.PARAMETERS.indexOf("sensingDistance");
+        int decay = ParameterSweep.PARAMETERS.indexOf("decayAmount");
+        int stepSize = ParameterSweep.PARAMETERS.indexOf("stepSize");
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            assertEquals(i, run.index());
+            assertEquals(100 + i, run.seed());
+            assertEquals(i / 3 == 0 ? 10.0f : 20.0f, run.parameters()[distance]);
+            assertEquals(0.1f * (i % 3 + 1), run.parameters()[decay], 1e-6f);
+            assertEquals(100.0f, run.parameters()[stepSize]);
+        }
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ParameterSweep.grid(Map.of("sensingDistanse", new float[] { 1.0f }), 0));
+    }
+
+    @Test
+    void randomSamplesStayInTheirRanges() {
+        List<Run> runs = ParameterSweep.random(200, Map.of("stepSize", new float[] { 50.0f, 60.0f }), 7);
+        assertEquals(200, runs.size());
+
+        int stepSize = ParameterSweep.PARAMETERS.indexOf("stepSize");
+        int diffuse = ParameterSweep.PARAMETERS.indexOf("diffuseAmount");
+        for (Run run : runs) {
+            assertTrue(run.parameters()[stepSize] >= 50.0f && run.parameters()[stepSize] <= 60.0f);
+            assertTrue(run.parameters()[diffuse] >= 0.0f && run.parameters()[diffuse] <= 1.0f);
+        }
+        assertArrayEquals(runs.get(17).parameters(),
+                ParameterSweep.random(200, Map.of("stepSize", new float[] { 50.0f, 60.0f }), 7).get(17).parameters());
+    }
+
+    @Test
+    void metricsOfAKnownTrail() {
+        // half the pixels white, half black
+        float[] channel = new float[100];
+        for (int i = 0; i < 50; i++) {
+            channel[i] = 1.0f;
+        }
+        Metrics metrics = Metrics.of(channel, channel, channel);
+        assertEquals(0.5, metrics.coverage(), 1e-9);
+        assertEquals(0.5, metrics.meanIntensity(), 1e-9);
+        assertEquals(1.0, metrics.entropy(), 1e-9);
+
+        float[] empty = new float[100];
+        Metrics none = Metrics.of(empty, empty, empty);
+        assertEquals(0.0, none.coverage());
+        assertEquals(0.0, none.entropy());
+    }
+
+    @Test
+    void writesARowPerRunWhateverTheThreadCount() throws IOException {
+        Map<String, float[]> axes = new LinkedHashMap<>();
+        axes.put("sensingAngle", new float[] { 0.3f, 0.6f });
+        axes.put("stepSize", new float[] { 50.0f, 100.0f });
+        List<Run> runs = ParameterSweep.grid(axes, 1);
+
+        ParameterSweep sweep = new ParameterSweep(64, 36, 256, 10);
+        sweep.setThreads(1);
+        Path serialCsv = directory.resolve("serial.csv");
+        List<Result> serial = sweep.run(runs, serialCsv);
+        sweep.setThreads(3);
+        sweep.setThumbnails(directory.resolve("thumbnails"));
+        List<Result> parallel = sweep.run(runs, directory.resolve("parallel.csv"));
+
+        List<String> lines = Files.readAllLines(serialCsv);
+        assertEquals(runs.size() + 1, lines.size());
+        assertTrue(lines.get(0).startsWith("run,seed,sensingDistance"));
+        assertEquals(2 + ParameterSweep.PARAMETERS.size() + 4, lines.get(1).split(",").length);
+        assertTrue(Files.exists(directory.resolve("thumbnails").resolve("run-00003.png")));
+
+        serial.sort(Comparator.comparingInt(result -> result.run().index()));
+        parallel.sort(Comparator.comparingInt(result -> result.run().index()));
+        for (int i = 0; i < runs.size(); i++) {
+            assertEquals(serial.get(i).metrics(), parallel.get(i).metrics());
+            assertTrue(serial.get(i).metrics().coverage() > 0.0);
+        }
+    }
+
+    @Test
+    void optionWithoutValuePrintsUsage() throws IOException {
+        Path csv = directory.resolve("sweep.csv");
+        ParameterSweep.main(new String[] { csv.toString(), "--steps", "2", "--seed" });
+
+        assertFalse(Files.exists(csv));
+    }
+
+    @Test
+    void malformedValuePrintsUsage() throws IOException {
+        Path csv = directory.resolve("sweep.csv");
+        String[][] options = { { "--range", "stepSize=5" }, { "--range", "stepSize=5:1" }, { "--size", "480" },
+                { "--size", "480x" }, { "--grid", "noSuchParameter=1,2" }, { "--steps", "two" },
+                { "--frames", "2" } };
+        for (String[] option : options) {
+            ParameterSweep.main(new String[] { csv.toString(), "--steps", "2", option[0], option[1] });
+
+            assertFalse(Files.exists(csv), String.join(" ", option));
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package computeshader.slime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import computeshader.core.CpuImage;
+import computeshader.core.JavaBackend;
+import computeshader.core.PixelFormat;
+import computeshader.core.ShaderApp.ShaderAppConfiguration;
+
+class SlimeSimulationTest {
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 256;
+    private static final int STEPS = 3;
+    private static final float DELTA = 0.01f;
+
+    private static float[] parameters() {
+        return new float[] { WIDTH, HEIGHT, 6.0f, 0.6f, 0.6f, 1.0f, 0.5f, 0.5f, 100.0f, 0.3f };
+    }
+
+    // 32x32 agents spaced 8 pixels apart, moving at most 1 pixel per step. the shader and SlimeSimulation sense and
+    // deposit into the trail in place with the agents of a step in no fixed order, so two agents on one pixel race
+    // and the result depends on who goes last. the comparison is only bit for bit while no agent reads or writes a
+    // pixel another agent deposits on, which these agents hold to for STEPS steps
+    private static float[] gridAgents() {
+        float[] agents = new float[32 * 32 * 6];
+        for (int i = 0; i < 32 * 32; i++) {
+            Color color = Color.getHSBColor(i / 1024.0f, 1.0f, 1.0f);
+            agents[i * 6 + 0] = (i % 32) * 8 + 4.5f;
+            agents[i * 6 + 1] = (i / 32) * 8 + 4.5f;
+            agents[i * 6 + 2] = i * 0.37f;
+            agents[i * 6 + 3] = color.getRed() / 255.0f;
+            agents[i * 6 + 4] = color.getGreen() / 255.0f;
+            agents[i * 6 + 5] = color.getBlue() / 255.0f;
+        }
+        return agents;
+    }
+
+    @Test
+    void matchesShaderPort() {
+        float[] agents = gridAgents();
+
+        JavaBackend backend = new JavaBackend();
+        backend.initialize(new ShaderAppConfiguration("Test", 0, 0, WIDTH, HEIGHT));
+        backend.registerKernel("/slime.glsl", new SlimeKernel());
+        backend.createTexture("AgentMap", PixelFormat.R32UI);
+        backend.createTexture("AgentMapOut", PixelFormat.R32UI);
+        // a full precision trail, SlimeMain's RGBA16F would round every store
+        backend.createTexture("TrailMap");
+        backend.createTexture("TrailMapOut");
+        backend.createComputeShader("AgentShader", "/slime.glsl");
+        backend.createStorageBuffer("AgentShader", "ShaderParameters", parameters());
+        backend.createStorageBuffer("AgentShader", "AgentData", agents);
+
+        SlimeSimulation simulation = new SlimeSimulation(WIDTH, HEIGHT, agents, parameters());
+
+        backend.useProgram("AgentShader");
+        for (int step = 0; step < STEPS; step++) {
+            backend.setUIntUniform("Stage", 0);
+            backend.setFloatUniform("Time", step);
+            backend.setFloatUniform("Delta", DELTA);
+            backend.runComputeShader(1, 1, 1);
+            backend.swapTextures("AgentMap", "AgentMapOut");
+            backend.setUIntUniform("Stage", 1);
+            backend.runComputeShader(WIDTH * HEIGHT / 1024, 1, 1);
+            backend.swapTextures("TrailMap", "TrailMapOut");
+
+            simulation.step(step, DELTA);
+        }
+        backend.dispose();
+
+        float[] shaderAgents = backend.getStorageBuffer("AgentData");
+        for (int i = 0; i < simulation.getNumAgents(); i++) {
+            assertEquals(shaderAgents[i * 6 + 0], simulation.getAgentX(i));
+            assertEquals(shaderAgents[i * 6 + 1], simulation.getAgentY(i));
+            assertEquals(shaderAgents[i * 6 + 2], simulation.getAgentAngle(i));
+        }
+
+        CpuImage image = new CpuImage(WIDTH, HEIGHT);
+        simulation.toImage(image);
+        assertArrayEquals(backend.getImage("TrailMap").toArray(), image.toArray());
+    }
+
+    @Test
+    void agentsStayOnTheTrailMap() {
+        int width = 320;
+        int height = 180;
+        float[] params = parameters();
+        params[0] = width;
+        params[1] = height;
+        params[8] = 5000.0f;
+
+        SlimeSimulation simulation = new SlimeSimulation(width, height,
+                AgentUtil.nAgentsRandomColor(1 << 14, width, height), params);
+        for (int step = 0; step < 20; step++) {
+            simulation.step(step * DELTA, DELTA);
+        }
+
+        for (int i = 0; i < simulation.getNumAgents(); i++) {
+            assertTrue(simulation.getAgentX(i) >= 0.0f && simulation.getAgentX(i) < width);
+            assertTrue(simulation.getAgentY(i) >= 0.0f && simulation.getAgentY(i) < height);
+        }
+        assertTrue(simulation.getAgentStepsPerSecond() > 0.0);
+    }
+
+    private static CpuImage randomTrail(int width, int height) {
+        Random random = new Random(21);
+        CpuImage image = new CpuImage(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.store(x, y, random.nextFloat(), random.nextFloat(), random.nextFloat(), random.nextFloat());
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void separableDiffuseMatchesNaive() {
+        // odd sizes so rows don't line up with anything
+        int width = 97;
+        int height = 61;
+        float[] params = parameters();
+        CpuImage trail = randomTrail(width, height);
+
+        SlimeSimulation separable = new SlimeSimulation(width, height, new float[0], params);
+        SlimeSimulation naive = new SlimeSimulation(width, height, new float[0], params);
+        separable.fromImage(trail);
+        naive.fromImage(trail);
+        separable.diffuse(DELTA);
+        naive.diffuseNaive(DELTA);
+
+        for (int channel = 0; channel < CpuImage.CHANNELS; channel++) {
+            float[] expected = naive.getTrail(channel);
+            float[] actual = separable.getTrail(channel);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], actual[i], 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    void diffuseDoesNotDependOnTheBands() {
+        int width = 200;
+        int height = 75;
+        CpuImage trail = randomTrail(width, height);
+
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool three = new ForkJoinPool(3);
+        SlimeSimulation serial = new SlimeSimulation(width, height, new float[0], parameters(), one);
+        SlimeSimulation banded = new SlimeSimulation(width, height, new float[0], parameters(), three);
+        serial.fromImage(trail);
+        banded.fromImage(trail);
+        for (int step = 0; step < STEPS; step++) {
+            serial.diffuse(DELTA);
+            banded.diffuse(DELTA);
+        }
+        one.shutdown();
+        three.shutdown();
+
+        for (int channel = 0; channel < CpuImage.CHANNELS; channel++) {
+            assertArrayEquals(serial.getTrail(channel), banded.getTrail(channel));
+        }
+    }
+
+}